@@ -0,0 +1,90 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * The host used when ConfigurationMaster runs inside of a Bukkit plugin.<br><br>
+ *
+ * Tasks are run using the server's scheduler, so they happen on the main thread.
+ *
+ * @author Holly (Thatsmusic99)
+ * @see CMHost
+ */
+public class BukkitHost implements CMHost {
+
+    // The plugin using the utility.
+    private final Plugin plugin;
+
+    /**
+     * Creates a host for a plugin.
+     *
+     * @param plugin The plugin using the utility.
+     */
+    public BukkitHost(@NotNull Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * The plugin this host is for.
+     *
+     * @return The plugin.
+     */
+    @NotNull
+    public Plugin getPlugin() {
+        return plugin;
+    }
+
+    @NotNull
+    @Override
+    public File getDataFolder() {
+        return plugin.getDataFolder();
+    }
+
+    @NotNull
+    @Override
+    public Logger getLogger() {
+        return plugin.getLogger();
+    }
+
+    @NotNull
+    @Override
+    public String getName() {
+        return plugin.getName();
+    }
+
+    @NotNull
+    @Override
+    public List<String> getAuthors() {
+        return plugin.getDescription().getAuthors();
+    }
+
+    @Nullable
+    @Override
+    public String getDescription() {
+        return plugin.getDescription().getDescription();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return plugin.isEnabled();
+    }
+
+    @Override
+    public void runTask(@NotNull Runnable task) {
+        plugin.getServer().getScheduler().runTask(plugin, task);
+    }
+
+    @NotNull
+    @Override
+    public Task runRepeatingTask(@NotNull Runnable task, long periodTicks) {
+        BukkitTask bukkitTask = plugin.getServer().getScheduler().runTaskTimer(plugin, task, periodTicks, periodTicks);
+        return bukkitTask::cancel;
+    }
+}
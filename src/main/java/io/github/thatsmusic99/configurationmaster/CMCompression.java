@@ -0,0 +1,138 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses and decompresses config files using gzip.<br><br>
+ *
+ * Compressed files are recognised by the two bytes every gzip file starts with, so a file
+ * can be read whether or not it is compressed, and switching compression on or off only
+ * takes effect the next time the file is written.
+ *
+ * @author Holly (Thatsmusic99)
+ * @see CMFile#setCompressed(boolean)
+ */
+final class CMCompression {
+
+    // The first two bytes of every gzip file.
+    private static final int MAGIC_1 = 0x1f;
+    private static final int MAGIC_2 = 0x8b;
+
+    private CMCompression() {}
+
+    /**
+     * Checks whether the contents of a file are compressed, without changing the buffer's position.
+     *
+     * @param contents The contents of the file.
+     * @return true if the contents start with the gzip magic bytes.
+     */
+    static boolean isCompressed(@NotNull ByteBuffer contents) {
+        int start = contents.position();
+        return contents.remaining() >= 2 && (contents.get(start) & 0xff) == MAGIC_1 && (contents.get(start + 1) & 0xff) == MAGIC_2;
+    }
+
+    /**
+     * Decompresses the contents of a file.
+     *
+     * @param contents The compressed contents, backed by an array.
+     * @return A buffer containing the decompressed contents.
+     * @throws IOException if the contents are not valid gzip.
+     */
+    @NotNull
+    static ByteBuffer decompress(@NotNull ByteBuffer contents) throws IOException {
+        // The last four bytes hold the original size, which saves growing the buffer as it's filled.
+        int expected = 8192;
+        if (contents.remaining() >= 18) {
+            int size = contents.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(contents.limit() - 4);
+            if (size > 0 && size < 64 * 1024 * 1024) {
+                expected = size;
+            }
+        }
+        byte[] output = new byte[expected];
+        int length = 0;
+        try (InputStream input = new GZIPInputStream(new ByteArrayInputStream(contents.array(), contents.arrayOffset() + contents.position(), contents.remaining()), 8192)) {
+            while (true) {
+                if (length == output.length) {
+                    // Only make more room if there's actually more to read.
+                    int next = input.read();
+                    if (next == -1) break;
+                    byte[] larger = new byte[output.length * 2];
+                    System.arraycopy(output, 0, larger, 0, length);
+                    output = larger;
+                    output[length++] = (byte) next;
+                }
+                int read = input.read(output, length, output.length - length);
+                if (read == -1) break;
+                length += read;
+            }
+        }
+        return ByteBuffer.wrap(output, 0, length);
+    }
+
+    /**
+     * Wraps a stream so that anything written to it is compressed.
+     *
+     * @param output The stream the compressed contents are written to.
+     * @return The stream to write to. This must be closed to finish off the compressed contents.
+     * @throws IOException if the stream could not be written to.
+     */
+    @NotNull
+    static OutputStream compressing(@NotNull OutputStream output) throws IOException {
+        return new GZIPOutputStream(output, 8192);
+    }
+
+    /**
+     * Compresses the contents of a file.
+     *
+     * @param contents The contents to be compressed.
+     * @return The compressed contents.
+     * @throws IOException if the contents could not be compressed.
+     */
+    @NotNull
+    static byte[] compress(@NotNull byte[] contents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(contents.length / 4 + 64);
+        try (OutputStream output = compressing(bytes)) {
+            output.write(contents);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Opens a file for reading, decompressing it as it is read if needed.
+     *
+     * @param file The file to be opened.
+     * @return A stream of the file's contents.
+     * @throws IOException if the file could not be opened.
+     */
+    @NotNull
+    static InputStream open(@NotNull File file) throws IOException {
+        return open(new FileInputStream(CMWriteBatch.readable(file)));
+    }
+
+    /**
+     * Wraps a stream of a file's contents, decompressing them as they are read if needed.
+     *
+     * @param stored The stream of the contents as they are stored. It is closed along with the returned stream.
+     * @return A stream of the file's contents.
+     * @throws IOException if the stream could not be read.
+     */
+    @NotNull
+    static InputStream open(@NotNull InputStream stored) throws IOException {
+        InputStream input = new BufferedInputStream(stored);
+        try {
+            input.mark(2);
+            boolean compressed = input.read() == MAGIC_1 && input.read() == MAGIC_2;
+            input.reset();
+            return compressed ? new GZIPInputStream(input, 8192) : input;
+        } catch (IOException ex) {
+            input.close();
+            throw ex;
+        }
+    }
+}
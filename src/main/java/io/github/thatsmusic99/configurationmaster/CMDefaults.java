@@ -0,0 +1,213 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CMDefaults collects a file's default options, comments and sections so that they can all be added at once.<br><br>
+ *
+ * Each call to {@link CMFile#addDefault(String, Object)} looks up the option's section in
+ * the defaults, the loaded config and the file being written. For files with thousands of
+ * options, such as translated messages, this adds up. When the defaults are added through
+ * this builder instead, each section is only looked up once, no matter how many options it
+ * has.<br><br>
+ *
+ * Everything is added in the same order it was given to the builder, and ends up the same
+ * as if it had been added using the methods in {@link CMFile}.
+ *
+ * <pre>
+ * public void loadDefaults() {
+ *     defaults()
+ *         .section("Messages")
+ *         .add("messages.join", "&amp;aWelcome!", "Sent when a player joins.")
+ *         .add("messages.quit", "&amp;cGoodbye!")
+ *         .apply();
+ * }
+ * </pre>
+ *
+ * @author Holly (Thatsmusic99)
+ * @see CMFile#defaults()
+ */
+public class CMDefaults {
+
+    // The file the defaults are being added to.
+    private final CMFile file;
+    // Everything to be added, in order.
+    private final List<Entry> entries;
+
+    CMDefaults(@NotNull CMFile file) {
+        this.file = file;
+        this.entries = new ArrayList<>();
+    }
+
+    /**
+     * Adds a default value to a specified path.
+     *
+     * @param path The path of the value to be set.
+     * @param value The actual value itself.
+     * @return This builder, so that calls can be chained.
+     * @see CMFile#addDefault(String, Object)
+     */
+    @NotNull
+    public CMDefaults add(@NotNull String path, Object value) {
+        entries.add(new Entry(Type.DEFAULT, path, value, null, null));
+        return this;
+    }
+
+    /**
+     * Adds a default value to a specified path, in addition to a comment.
+     *
+     * @param path The path of the value to be set.
+     * @param value The actual value itself.
+     * @param comment The comment that is placed above the option.
+     * @return This builder, so that calls can be chained.
+     * @see CMFile#addDefault(String, Object, String)
+     */
+    @NotNull
+    public CMDefaults add(@NotNull String path, Object value, @NotNull String comment) {
+        entries.add(new Entry(Type.DEFAULT, path, value, comment, null));
+        return this;
+    }
+
+    /**
+     * Adds a default value to a specified path, in addition to a comment and section.
+     *
+     * @param path The path of the value to be set.
+     * @param value The actual value itself.
+     * @param section The section that the option will be put under.
+     * @param comment The comment that is placed above the option.
+     * @return This builder, so that calls can be chained.
+     * @see CMFile#addDefault(String, Object, String, String)
+     */
+    @NotNull
+    public CMDefaults add(@NotNull String path, Object value, @NotNull String section, @NotNull String comment) {
+        entries.add(new Entry(Type.DEFAULT, path, value, comment, section));
+        return this;
+    }
+
+    /**
+     * Adds an example option, which is only added if the config is brand new.
+     *
+     * @param path The path of the option to be set.
+     * @param value The example value.
+     * @return This builder, so that calls can be chained.
+     * @see CMFile#addExample(String, Object)
+     */
+    @NotNull
+    public CMDefaults example(@NotNull String path, Object value) {
+        entries.add(new Entry(Type.EXAMPLE, path, value, null, null));
+        return this;
+    }
+
+    /**
+     * Adds an example option with a comment included.
+     *
+     * @param path The path of the option to be set.
+     * @param value The example value.
+     * @param comment The comment to be included.
+     * @return This builder, so that calls can be chained.
+     * @see CMFile#addExample(String, Object, String)
+     */
+    @NotNull
+    public CMDefaults example(@NotNull String path, Object value, @NotNull String comment) {
+        entries.add(new Entry(Type.EXAMPLE, path, value, comment, null));
+        return this;
+    }
+
+    /**
+     * Adds a comment underneath the last option and above the next one.
+     *
+     * @param comment The comment to be added.
+     * @return This builder, so that calls can be chained.
+     * @see CMFile#addComment(String)
+     */
+    @NotNull
+    public CMDefaults comment(@NotNull String comment) {
+        entries.add(new Entry(Type.COMMENT, null, null, comment, null));
+        return this;
+    }
+
+    /**
+     * Adds a comment above a specific option.
+     *
+     * @param path The path that the comment will be above.
+     * @param comment The comment itself.
+     * @return This builder, so that calls can be chained.
+     * @see CMFile#addComment(String, String)
+     */
+    @NotNull
+    public CMDefaults comment(@NotNull String path, @NotNull String comment) {
+        entries.add(new Entry(Type.COMMENT, path, null, comment, null));
+        return this;
+    }
+
+    /**
+     * Adds a section to the configuration.
+     *
+     * @param section The name of the section to be added.
+     * @return This builder, so that calls can be chained.
+     * @see CMFile#addSection(String)
+     */
+    @NotNull
+    public CMDefaults section(@NotNull String section) {
+        entries.add(new Entry(Type.SECTION, null, null, null, section));
+        return this;
+    }
+
+    /**
+     * Creates a "lenient" section, which users can add and remove options from freely.
+     *
+     * @param path The path of the section.
+     * @return This builder, so that calls can be chained.
+     * @see CMFile#addLenientSection(String)
+     */
+    @NotNull
+    public CMDefaults lenientSection(@NotNull String path) {
+        entries.add(new Entry(Type.LENIENT_SECTION, path, null, null, null));
+        return this;
+    }
+
+    /**
+     * Adds everything in the builder to the file.<br><br>
+     *
+     * This must be called within {@link CMFile#loadDefaults()}.
+     *
+     * @throws NullPointerException if the config is not being loaded.
+     */
+    public void apply() {
+        file.addDefaults(entries);
+        entries.clear();
+    }
+
+    enum Type {
+        DEFAULT,
+        EXAMPLE,
+        COMMENT,
+        SECTION,
+        LENIENT_SECTION
+    }
+
+    static class Entry {
+
+        final Type type;
+        @Nullable
+        final String path;
+        @Nullable
+        final Object value;
+        @Nullable
+        final String comment;
+        @Nullable
+        final String section;
+
+        Entry(@NotNull Type type, @Nullable String path, @Nullable Object value, @Nullable String comment, @Nullable String section) {
+            this.type = type;
+            this.path = path;
+            this.value = value;
+            this.comment = comment;
+            this.section = section;
+        }
+    }
+}
@@ -1,14 +1,32 @@
 package io.github.thatsmusic99.configurationmaster;
 
 import com.google.common.base.Charsets;
+import io.github.thatsmusic99.configurationmaster.format.CMFormat;
+import io.github.thatsmusic99.configurationmaster.format.YamlFormat;
+import io.github.thatsmusic99.configurationmaster.format.YamlScalars;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.bukkit.configuration.Configuration;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.MemoryConfiguration;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.configuration.serialization.ConfigurationSerialization;
 import org.bukkit.plugin.Plugin;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * CMFile is the specialised configuration file used by
@@ -37,29 +55,131 @@ import java.util.*;
  */
 public abstract class CMFile {
 
-    // The actual configuration file.
+    // Marks a typed value which is missing or couldn't be read.
+    private static final Object INVALID = new Object();
+    // How much of a YAML file is read in each step of an incremental reload, in characters.
+    private static final int RELOAD_PART_LENGTH = 32 * 1024;
+    // How many options a section needs before it's written out over several steps of an incremental reload.
+    private static final int RELOAD_SECTION_SIZE = 64;
+    // How closely the last access is kept track of, in milliseconds. Idle files are unloaded after minutes, not seconds.
+    private static final long ACCESS_GRANULARITY = 1000;
+    // How long can be spent each tick writing the journal into the config file, in milliseconds.
+    private static final long COMPACTION_BUDGET = 2;
+
+    // The actual configuration file. Whilst loading, this is the configuration being loaded.
+    @Nullable
+    private volatile FileConfiguration config;
+    // The configuration other threads read from, only replaced once a load has finished.
+    @Nullable
+    private volatile FileConfiguration published;
+    // The temporary config file that is used to order nodes. This only exists whilst loading.
     @Nullable
-    private FileConfiguration config;
-    // The temporary config file that is used to order nodes.
     private FileConfiguration tempConfig;
     // The file object for the config.
     private File configFile;
-    // Comments to be written above the provided options.
+    // Comments to be written above the provided options. This only exists whilst loading.
+    @Nullable
     private HashMap<String, String> comments;
-    // The currently written lines of the file.
+    // The currently written lines of the file. This only exists whilst loading.
+    @Nullable
     private List<String> currentLines;
+    // The comments rendered during the last load, reused if the comments haven't changed since.
+    @Nullable
+    private CMSkeleton skeleton;
     // If the file is newly generated or not.
     private boolean isNew;
-    // Comments pending to be added.
+    // Comments pending to be added. This only exists whilst loading.
+    @Nullable
     private List<String> pendingComments;
-    // The plugin using the utility.
-    private Plugin plugin;
+    // Whatever is using the utility, usually a plugin.
+    private CMHost host;
     // The folder that the config is to be stored in.
     private File folder;
     // The name of the config file.
     private String name;
     // Pending values to be moved to this file.
     private HashMap<String, Object> toBeMoved;
+    // The format the file is stored in.
+    @NotNull
+    private CMFormat format;
+    // Whether changes made using set() are written to a journal.
+    private boolean journalled;
+    // The journal that changes are written to, if enabled.
+    @Nullable
+    private CMJournal journal;
+    // The size the journal can grow to before it is written into the config file.
+    private long journalThreshold;
+    // How much of the journal was replayed during the last load, which can be removed once it has been written into the file.
+    private long journalReplayed;
+    // Whether writing the file failed since it was last loaded, in which case the journal has to be kept.
+    private boolean saveFailed;
+    // Whether the file is compressed when it's written.
+    private boolean compressed;
+    // The stored and decompressed size of the file when it was last read, and whether it was compressed.
+    private long storedSize;
+    private long contentSize;
+    private boolean readCompressed;
+    // Statistics from the last time the file was loaded.
+    @Nullable
+    private volatile CMLoadStats loadStats;
+    // How many versions of the file are kept in the history, or 0 to not keep any.
+    private int historySize;
+    // The previous versions of the file, oldest first, ending with the current version.
+    private final ArrayDeque<CMSnapshot> history;
+    // The current version of the file, only kept up to date if there's a history.
+    @Nullable
+    private volatile CMSnapshot snapshot;
+    // Whether a snapshot is being restored, so each change doesn't count as a new version.
+    private boolean restoring;
+    // The pack the file is stored in, if any.
+    @Nullable
+    private CMPack pack;
+    // Whether the journal is already waiting to be written into the config file.
+    private boolean compactionScheduled;
+    // Whether the file is currently being loaded.
+    private boolean loading;
+    // The thread loading the file, which reads from the configuration being loaded rather than the published one.
+    @Nullable
+    private volatile Thread loader;
+    // The reload being done a step at a time, if one is in progress.
+    @Nullable
+    private CMReloadTask reloadTask;
+    // Whether the file has been unloaded to save memory, and needs loading again when it's next used.
+    private volatile boolean unloaded;
+    // Whether options have been set since loading that would be lost if the file was unloaded.
+    private boolean modified;
+    // When the options were last read or set.
+    private volatile long lastAccessed;
+    // A sorted index of the config's paths, built when first needed.
+    @Nullable
+    private volatile CMPathIndex pathIndex;
+    // Messages that have already been prepared, by path.
+    private final Map<String, CMMessage> messages;
+    // Durations, sizes and enums that have already been read, by type and path.
+    private final Map<String, Object> typedValues;
+    // How each typed value that has been asked for is read, so they can be checked when the file is loaded.
+    private final Map<String, Function<String, ?>> typedParsers;
+    // Whether references to other options are resolved.
+    private boolean resolvingReferences;
+    // Keeps track of references to other options, created when first needed.
+    @Nullable
+    private CMReferences references;
+    // The files that reference options in this file.
+    private final Set<CMFile> referencingFiles;
+    // The file that this file overlays, if any.
+    @Nullable
+    private CMFile parent;
+    // The files that overlay this file.
+    private final Set<CMFile> overlays;
+    // Environment variables that override options, mapped by path.
+    private final LinkedHashMap<String, String> environmentOverrides;
+    // System properties that override options, mapped by path.
+    private final LinkedHashMap<String, String> propertyOverrides;
+    // The values of the overrides when the file was last loaded, by path. They're kept apart from
+    // the config so that nothing writing the config can ever write them into the file.
+    private volatile Map<String, Object> overrides;
+    // The values of the overrides read by the load in progress, put in place along with its options.
+    private Map<String, Object> loadingOverrides;
 
     private int defaultTitleWidth;
     @Nullable
@@ -80,7 +200,7 @@ public abstract class CMFile {
      * @param name The name of the config.
      */
     public CMFile(Plugin plugin, String name) {
-        this(plugin, plugin.getDataFolder(), name);
+        this(new BukkitHost(plugin), plugin.getDataFolder(), name);
     }
 
     /**
@@ -91,18 +211,55 @@ public abstract class CMFile {
      * @param name The name of the config file.
      */
     public CMFile(Plugin plugin, File folder, String name) {
-        this.plugin = plugin;
+        this(new BukkitHost(plugin), folder, name);
+    }
+
+    /**
+     * Initialisation of the config file outside of a Bukkit plugin, using just the host and config name.<br>
+     * This places the file inside the host's data folder. spigot-api still needs to be on the classpath.
+     *
+     * @param host Whatever is using the utility.
+     * @param name The name of the config.
+     * @see StandaloneHost
+     */
+    public CMFile(CMHost host, String name) {
+        this(host, host.getDataFolder(), name);
+    }
+
+    /**
+     * Initialisation of the config file outside of a Bukkit plugin, using the host, config name and folder.
+     * spigot-api still needs to be on the classpath.
+     *
+     * @param host Whatever is using the utility.
+     * @param folder The folder the configuration file is to be stored inside.
+     * @param name The name of the config file.
+     * @see StandaloneHost
+     */
+    public CMFile(CMHost host, File folder, String name) {
+        this.host = host;
         this.folder = folder;
         this.name = name;
 
         config = null;
         toBeMoved = new HashMap<>();
+        overlays = Collections.newSetFromMap(new WeakHashMap<>());
+        referencingFiles = Collections.newSetFromMap(new WeakHashMap<>());
+        messages = new ConcurrentHashMap<>();
+        typedValues = new ConcurrentHashMap<>();
+        typedParsers = new ConcurrentHashMap<>();
+        environmentOverrides = new LinkedHashMap<>();
+        propertyOverrides = new LinkedHashMap<>();
+        overrides = Collections.emptyMap();
+        loadingOverrides = overrides;
+        history = new ArrayDeque<>();
+        format = CMFormat.YAML;
+        journalThreshold = 512 * 1024;
 
         defaultTitleWidth = 75;
-        title = "-<( " + plugin.getName() + " )>-";
+        title = "-<( " + host.getName() + " )>-";
 
         StringBuilder authors = new StringBuilder();
-        List<String> authorsRaw = plugin.getDescription().getAuthors();
+        List<String> authorsRaw = host.getAuthors();
         for (int i = 0; i < authorsRaw.size(); i++) {
             String author = authorsRaw.get(i);
             authors.append(author);
@@ -116,7 +273,17 @@ public abstract class CMFile {
 
         externalLinks = new HashMap<>();
         linkSeparator = " - ";
-        description = plugin.getDescription().getDescription();
+        description = host.getDescription();
+    }
+
+    /**
+     * Whatever is using the utility, such as a plugin.
+     *
+     * @return The host of the file.
+     */
+    @NotNull
+    public CMHost getHost() {
+        return host;
     }
 
     /**
@@ -127,6 +294,257 @@ public abstract class CMFile {
         load();
     }
 
+    /**
+     * Reloads the file a few steps at a time, using the host to run each step on the next tick.
+     *
+     * @param budget How long can be spent reloading each tick.
+     * @param unit The unit of the budget.
+     * @return A future that is completed once the reloaded file is in place.
+     * @see #reloadIncrementally(Executor, long, TimeUnit)
+     */
+    @NotNull
+    public CompletableFuture<Void> reloadIncrementally(long budget, @NotNull TimeUnit unit) {
+        return reloadIncrementally(host::runTask, budget, unit);
+    }
+
+    /**
+     * Reloads the file a few steps at a time, rather than holding up the thread until it's done.<br><br>
+     *
+     * Reading the file, adding the defaults, writing the comments and saving are each done as
+     * separate steps, and large YAML files are read a section at a time. Each time the scheduler
+     * runs the reload, it works through steps until the budget is used up, then schedules itself
+     * again. Steps aren't stopped partway through, so a budget of 2 milliseconds is a target
+     * rather than a limit.<br><br>
+     *
+     * Until every step is done, the file keeps returning the options from before the reload
+     * started. The reloaded options - and a new snapshot, if a history is kept - are only put in
+     * place once the whole reload has finished. Options set in the meantime are set again on the
+     * reloaded file.<br><br>
+     *
+     * Since {@link #loadDefaults()} is called as one of the steps, the scheduler should run tasks
+     * on the main thread, such as <code>task -&gt; Bukkit.getScheduler().runTask(plugin, task)</code>.
+     * If the file is loaded normally before the reload finishes, the reload is cancelled.
+     *
+     * @param scheduler Runs each part of the reload, usually on the next tick.
+     * @param budget How long can be spent reloading each time the scheduler runs it.
+     * @param unit The unit of the budget.
+     * @return A future that is completed once the reloaded file is in place. If a reload is already in progress, its future is returned instead.
+     * @throws IllegalArgumentException if the budget isn't positive.
+     */
+    @NotNull
+    public synchronized CompletableFuture<Void> reloadIncrementally(@NotNull Executor scheduler, long budget, @NotNull TimeUnit unit) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("The budget must be positive, but was " + budget + ".");
+        }
+        if (reloadTask != null) return reloadTask.getFuture();
+        CMReloadTask task = new CMReloadTask(this, scheduler, unit.toNanos(budget));
+        task.then(() -> {
+            saveFailed = false;
+            createFile();
+            config = new YamlConfiguration();
+            readIncrementally(task, config, this::readFailed);
+        });
+        task.then(() -> {
+            task.replayed = replayJournal();
+            prepareScratch();
+        });
+        if (parent != null) {
+            task.then(() -> loadOverlay(task.replayed > 0));
+        } else {
+            task.then(this::mergeDefaults);
+            task.then(() -> {
+                config.options().copyDefaults(true);
+                if (!format.supportsComments()) {
+                    save(true);
+                    return;
+                }
+                // Large files are written out a few options at a time.
+                List<String> keys = new ArrayList<>(tempConfig.getKeys(false));
+                if (!keys.isEmpty()) {
+                    task.next(saveOptions(task, tempConfig, keys, 0, ""));
+                }
+            });
+            if (format.supportsComments()) {
+                task.then(this::writeHeaderAndComments);
+                task.then(() -> save(false));
+            }
+            task.then(() -> {
+                // If the file couldn't be written, what's on the disk is out of date, so keep what was loaded.
+                if (!saveFailed) {
+                    readIncrementally(task, config, Throwable::printStackTrace);
+                }
+            });
+            task.then(this::finishSave);
+        }
+        // Work out the new version of the file before it's put in place, since that can take a while for large files.
+        if (historySize > 0) {
+            task.then(() -> {
+                task.previousSnapshot = snapshot;
+                task.snapshot = CMSnapshot.of(snapshot, config);
+            });
+        }
+        reloadTask = task;
+        return task.start();
+    }
+
+    /**
+     * Runs a step of an incremental reload, with the file being loaded swapped in place of the current one.
+     */
+    synchronized void runReloadStep(@NotNull CMReloadTask task, @NotNull CMReloadTask.Step step) throws Exception {
+        // The reload may have been cancelled in the meantime.
+        if (reloadTask != task) return;
+        FileConfiguration current = config;
+        boolean wasNew = isNew;
+        Thread previousLoader = loader;
+        config = task.config;
+        tempConfig = task.tempConfig;
+        currentLines = task.currentLines;
+        comments = task.comments;
+        pendingComments = task.pendingComments;
+        isNew = task.isNew;
+        loading = true;
+        loader = Thread.currentThread();
+        try {
+            step.run();
+        } finally {
+            task.config = config;
+            task.tempConfig = tempConfig;
+            task.currentLines = currentLines;
+            task.comments = comments;
+            task.pendingComments = pendingComments;
+            task.isNew = isNew;
+            // Put everything back, so the current options are used until the reload has finished.
+            config = current;
+            isNew = wasNew;
+            loading = false;
+            loader = previousLoader;
+            tempConfig = null;
+            currentLines = null;
+            comments = null;
+            pendingComments = null;
+        }
+    }
+
+    /**
+     * Puts the file loaded by an incremental reload in place of the current one.
+     */
+    synchronized void publishReload(@NotNull CMReloadTask task) {
+        if (reloadTask != task) return;
+        long start = System.nanoTime();
+        reloadTask = null;
+        loading = true;
+        Thread previousLoader = loader;
+        loader = Thread.currentThread();
+        try {
+            config = task.config;
+            resetState();
+            // The version worked out earlier can only be used if nothing has been set since.
+            finishLoad(task.previousSnapshot == snapshot ? task.snapshot : null);
+        } finally {
+            loading = false;
+            loader = previousLoader;
+        }
+        // Anything set whilst the reload was in progress was set on the old options, so set it again.
+        for (Map.Entry<String, Object> change : task.takeChanges().entrySet()) {
+            set(change.getKey(), change.getValue());
+        }
+        loadStats = new CMLoadStats(storedSize, contentSize, readCompressed, task.getWorkTime() + System.nanoTime() - start);
+    }
+
+    /**
+     * Stops an incremental reload that failed, leaving the current options in place.
+     */
+    synchronized void abandonReload(@NotNull CMReloadTask task) {
+        if (reloadTask == task) {
+            reloadTask = null;
+        }
+    }
+
+    /**
+     * Reads the config file into a configuration as part of an incremental reload.<br><br>
+     *
+     * Large YAML files are split into sections, each of which is read as a step of its own.
+     */
+    private void readIncrementally(CMReloadTask task, FileConfiguration target, Consumer<Exception> onFailure) {
+        CharBuffer text;
+        try {
+            if (format != CMFormat.YAML) {
+                readFile(target);
+                return;
+            }
+            text = Charsets.UTF_8.decode(readContents());
+        } catch (Exception ex) {
+            onFailure.accept(ex);
+            return;
+        }
+        YamlFormat yaml = (YamlFormat) CMFormat.YAML;
+        List<YamlFormat.Part> parts = yaml.split(text, RELOAD_PART_LENGTH);
+        // Get rid of the options from when the file was last read.
+        for (String key : target.getKeys(false)) {
+            target.set(key, null);
+        }
+        if (!parts.isEmpty()) {
+            task.next(readPart(task, target, yaml, text, parts, 0, onFailure));
+        }
+    }
+
+    private CMReloadTask.Step readPart(CMReloadTask task, FileConfiguration target, YamlFormat yaml, CharSequence text,
+                                       List<YamlFormat.Part> parts, int index, Consumer<Exception> onFailure) {
+        return () -> {
+            try {
+                if (!yaml.loadPart(target, parts.get(index))) {
+                    // Bukkit has to read the whole file in one go instead.
+                    yaml.load(target, text);
+                    return;
+                }
+            } catch (Exception ex) {
+                onFailure.accept(ex);
+                return;
+            }
+            if (index + 1 < parts.size()) {
+                task.next(readPart(task, target, yaml, text, parts, index + 1, onFailure));
+            }
+        };
+    }
+
+    private CMReloadTask.Step saveOptions(CMReloadTask task, ConfigurationSection section, List<String> keys, int from, String indent) {
+        return () -> {
+            // Each option in a section is written out the same on its own as it is with the rest.
+            YamlConfiguration options = new YamlConfiguration();
+            int index = from;
+            do {
+                String key = keys.get(index++);
+                Object value = section.get(key);
+                // Large sections are split up too, so that one huge section doesn't have to be written out in one go.
+                if (value instanceof ConfigurationSection && ((ConfigurationSection) value).getKeys(false).size() >= RELOAD_SECTION_SIZE) {
+                    options.set(key, 0);
+                    String line = options.saveToString();
+                    options.set(key, null);
+                    if (line.endsWith(": 0\n") && line.indexOf('\n') == line.length() - 1) {
+                        currentLines.add(indent + line.substring(0, line.length() - 3));
+                        // Carry on with this section once the inner one has been written.
+                        if (index < keys.size()) {
+                            task.next(saveOptions(task, section, keys, index, indent));
+                        }
+                        ConfigurationSection inner = (ConfigurationSection) value;
+                        task.next(saveOptions(task, inner, new ArrayList<>(inner.getKeys(false)), 0, indent + "  "));
+                        return;
+                    }
+                }
+                options.set(key, value);
+                String saved = options.saveToString();
+                options.set(key, null);
+                if (!indent.isEmpty()) {
+                    saved = indent + saved.substring(0, saved.length() - 1).replace("\n", "\n" + indent) + "\n";
+                }
+                addSavedLines(saved);
+            } while (index < keys.size() && task.hasTime());
+            if (index < keys.size()) {
+                task.next(saveOptions(task, section, keys, index, indent));
+            }
+        };
+    }
+
     /**
      * Prompts the config to initiate CM's loading process.
      *
@@ -134,15 +552,26 @@ public abstract class CMFile {
      * <ul>
      *     <li>Create the config file - and required folder - if necessary.</li>
      *     <li>Load all existing options into the config to be read from.</li>
+     *     <li>Replays any journalled changes, if enabled.</li>
+     *     <li>If the file is an overlay, removes anything the same as its parent and stops here.</li>
      *     <li>Load all the defaults.</li>
      *     <li>Moving all old options to their new ones.</li>
      *     <li>Saves defaults to the configuration file.</li>
      *     <li>Loads the config header.</li>
      *     <li>Writes all comments.</li>
      *     <li>Saves the final results.</li>
+     *     <li>Applies any environment variable or system property overrides.</li>
+     *     <li>Resolves references to other options, if enabled.</li>
      *     <li>Anything required to happen post-save happens.</li>
      * </ul>
      *
+     * Everything used to write the file, such as the comments and the lines of the file,
+     * is only kept whilst loading, so that it doesn't take up memory afterwards.<br><br>
+     *
+     * The options are loaded into a new configuration, which is only put in place once the
+     * load has finished. Until then, other threads keep reading the options from before the
+     * load, and if the load fails, those options are kept.
+     *
      * @see #loadDefaults()
      * @see #moveTo(String, String)
      * @see #moveToNew()
@@ -150,9 +579,118 @@ public abstract class CMFile {
      * @see #writeComments()
      * @see #postSave()
      */
-    public void load() {
+    public synchronized void load() {
+        // Loading now replaces anything an incremental reload would have done.
+        if (reloadTask != null) {
+            reloadTask.cancel();
+            reloadTask = null;
+        }
+        loading = true;
+        Thread previousLoader = loader;
+        loader = Thread.currentThread();
+        long start = System.nanoTime();
+        try {
+            loadFile();
+            loadStats = new CMLoadStats(storedSize, contentSize, readCompressed, System.nanoTime() - start);
+        } finally {
+            loading = false;
+            loader = previousLoader;
+            // If the load didn't finish, carry on with the options from before it.
+            config = published;
+            releaseScratch();
+        }
+    }
+
+    private void loadFile() {
+        resetState();
+        saveFailed = false;
+        createFile();
+        // Try to load the current options from the config file
+        try {
+            config = new YamlConfiguration();
+            readFile(config);
+        } catch (Exception ex) {
+            readFailed(ex);
+        }
+        // Apply any changes that were made since the file was last written.
+        int replayed = replayJournal();
+        buildFile(replayed > 0);
+    }
+
+    /**
+     * Declares the defaults on the options being loaded, writes the file and puts them in place.
+     *
+     * @param changed true if the options were changed whilst loading, meaning an overlay needs to be saved.
+     */
+    private void buildFile(boolean changed) {
+        prepareScratch();
+        if (parent != null) {
+            // Overlays get their defaults from the file they overlay instead.
+            loadOverlay(changed);
+        } else {
+            // Get the plugin to load the default values of its config.
+            mergeDefaults();
+            // Handle the saving procedure.
+            initiateSave();
+        }
+        finishLoad(null);
+    }
+
+    /**
+     * Writes the current options to the file outside of a load.<br><br>
+     *
+     * This works the same way as loading, except that the options are copied from the current
+     * ones rather than read from the file. The copy is only put in place once it has been written,
+     * so other threads keep reading the current options until then.
+     */
+    private void saveLoaded() {
+        FileConfiguration current = published;
+        if (current == null) {
+            throw new NullPointerException("Configuration is not loaded yet, please use this method after calling the load method.");
+        }
+        // The file being written now replaces anything an incremental reload would have done.
+        if (reloadTask != null) {
+            reloadTask.cancel();
+            reloadTask = null;
+        }
+        loading = true;
+        Thread previousLoader = loader;
+        loader = Thread.currentThread();
+        try {
+            resetState();
+            saveFailed = false;
+            createFile();
+            config = copyOf(current);
+            // Everything in the journal is already in the options, so it can go once they're written.
+            try {
+                journalReplayed = journal != null ? journal.size() : 0;
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                journalReplayed = 0;
+            }
+            buildFile(true);
+        } finally {
+            loading = false;
+            loader = previousLoader;
+            // If the save didn't finish, carry on with the options from before it.
+            config = published;
+            releaseScratch();
+        }
+    }
+
+    private void resetState() {
+        modified = false;
+        pathIndex = null;
+        messages.clear();
+        typedValues.clear();
+        lastAccessed = System.currentTimeMillis();
+    }
+
+    private void createFile() {
         // Creates the config file object
-        configFile = new File(folder, name + ".yml");
+        configFile = new File(folder, name + format.getExtension());
+        // Packed files don't need anything creating, they're just missing from the pack until they're written.
+        if (isPacked()) return;
         // If the folder doesn't exist, create it
         if (!folder.exists()) {
             folder.mkdirs();
@@ -165,35 +703,257 @@ public abstract class CMFile {
                 ex.printStackTrace();
             }
         }
-        // Try to load the current options from the config file
+    }
+
+    private void readFailed(Exception ex) {
+        // Rename the file and warn the user
+        host.getLogger().warning("Could not read " + name + format.getExtension() + ":");
+        host.getLogger().warning(ex.getMessage());
+        host.getLogger().warning("The faulty configuration has been renamed to " + name + "-errored" + format.getExtension() + ".");
+        if (isPacked()) {
+            pack.rename(configFile.getName(), name + "-errored" + format.getExtension());
+        } else {
+            configFile.renameTo(new File(folder, name + "-errored" + format.getExtension()));
+        }
+        if (format == CMFormat.YAML) {
+            host.getLogger().warning("Please use http://yaml-online-parser.appspot.com/ to correct the problems in the file.");
+        }
+        host.getLogger().warning("If you are unsure on what to do, please contact the developers of this plugin.");
+    }
+
+    private int replayJournal() {
+        if (!journalled || format == CMFormat.STORE) return 0;
+        File journalFile = new File(folder, name + format.getExtension() + ".journal");
+        if (journal == null || !journal.getFile().equals(journalFile)) {
+            journal = new CMJournal(journalFile);
+        }
         try {
-            config = new YamlConfiguration();
-            config.load(configFile);
-        } catch (Exception ex) {
-            // Otherwise, rename it and warn the user
-            plugin.getLogger().warning("Could not read " + name + ".yml:");
-            plugin.getLogger().warning(ex.getMessage());
-            plugin.getLogger().warning("The faulty configuration has been renamed to " + name + "-errored.yml.");
-            configFile.renameTo(new File(folder, name + "-errored.yml"));
-            plugin.getLogger().warning("Please use http://yaml-online-parser.appspot.com/ to correct the problems in the file.");
-            plugin.getLogger().warning("If you are unsure on what to do, please contact the developers of this plugin.");
-        }
-        // If the config is empty, it's new
-        isNew = config.saveToString().isEmpty();
+            int replayed = journal.replay(config);
+            // Anything appended after this point hasn't been replayed, so it mustn't be removed with the rest.
+            journalReplayed = journal.size();
+            return replayed;
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            journalReplayed = 0;
+            return 0;
+        }
+    }
+
+    private void prepareScratch() {
+        // If the config is empty, it's new. Only a file with no options at all needs writing out to check.
+        isNew = config.getKeys(false).isEmpty() && config.saveToString().isEmpty();
         // Create a new empty configuration.
         tempConfig = new YamlConfiguration();
         currentLines = new ArrayList<>();
         comments = new HashMap<>();
         pendingComments = new ArrayList<>();
+    }
+
+    /**
+     * Works out the state used to write the file again if it's been let go of since loading,
+     * so that the saving methods can still be used on their own. The state is the same as
+     * loading would have left it just before the method was called, and is kept until the
+     * file is next loaded.<br><br>
+     *
+     * The defaults are declared again on a copy of the options, so that nothing other threads
+     * are reading is changed.
+     *
+     * @param stage How much of the file should already be in the lines.
+     * @return true if the state had to be worked out again.
+     */
+    private boolean restoreScratch(Stage stage) {
+        if (tempConfig != null) return false;
+        FileConfiguration current = config;
+        if (current == null) {
+            throw new NullPointerException("Configuration is not loaded yet, please use this method after calling the load method.");
+        }
+        boolean wasLoading = loading;
+        Thread previousLoader = loader;
+        config = copyOf(current);
+        prepareScratch();
+        loading = true;
+        loader = Thread.currentThread();
+        try {
+            if (parent == null) {
+                // The declared options and their comments come from the defaults, just like when loading.
+                mergeDefaults();
+            } else {
+                // Overlays write their options as they are.
+                for (Map.Entry<String, Object> entry : config.getValues(true).entrySet()) {
+                    if (entry.getValue() instanceof ConfigurationSection) {
+                        tempConfig.createSection(entry.getKey());
+                    } else {
+                        tempConfig.set(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+        } finally {
+            loading = wasLoading;
+            loader = previousLoader;
+            config = current;
+        }
+        if (stage == Stage.OPTIONS || !format.supportsComments()) return true;
+        addSavedLines(tempConfig.saveToString());
+        if (parent == null && stage != Stage.LINES) {
+            loadTitle();
+            if (stage == Stage.COMMENTS) {
+                writeComments();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the options of a configuration, so that the copy can be changed without affecting the original.
+     */
+    private static YamlConfiguration copyOf(ConfigurationSection source) {
+        YamlConfiguration copy = new YamlConfiguration();
+        for (Map.Entry<String, Object> entry : source.getValues(true).entrySet()) {
+            if (entry.getValue() instanceof ConfigurationSection) {
+                copy.createSection(entry.getKey());
+            } else {
+                copy.set(entry.getKey(), entry.getValue());
+            }
+        }
+        return copy;
+    }
+
+    private void releaseScratch() {
+        // None of this is needed until the next load, so let it be garbage collected.
+        tempConfig = null;
+        currentLines = null;
+        comments = null;
+        pendingComments = null;
+    }
 
-        // Get the plugin to load the default values of its config.
+    private void mergeDefaults() {
         loadDefaults();
         // Move any old values to their new counterparts.
         moveToNew();
         // Handle any extra values that may have been added by other files.
         handleReceivingValues();
-        // Handle the saving procedure.
-        initiateSave();
+    }
+
+    private void finishLoad(@Nullable CMSnapshot next) {
+        // Everything replayed from the journal has now been written into the file, unless writing it failed.
+        if (journal != null && journalReplayed > 0) {
+            if (saveFailed) {
+                host.getLogger().warning("Could not save " + name + format.getExtension() + ", so its journal has been kept to be replayed when it is next loaded.");
+            } else {
+                clearJournalOnceWritten(journal, journalReplayed);
+            }
+            journalReplayed = 0;
+        }
+        // Put the loaded options in place in one go, so that other threads never see them half loaded.
+        overrides = loadingOverrides;
+        published = config;
+        unloaded = false;
+        // Anything read from the old options in the meantime is out of date now.
+        pathIndex = null;
+        messages.clear();
+        typedValues.clear();
+        // Read any typed values again, so that problems are found now rather than when they're used.
+        for (String key : typedParsers.keySet()) {
+            readTypedValue(key);
+        }
+        // Record the new version, sharing everything that hasn't changed with the last one.
+        if (historySize > 0) {
+            recordSnapshot(next != null ? next : CMSnapshot.of(snapshot, config));
+        }
+        // Files referencing this one need to resolve their references again.
+        synchronized (referencingFiles) {
+            for (CMFile file : referencingFiles) {
+                file.sourceChanged(this, null);
+            }
+        }
+        // Any overlays need to read from the newly loaded options.
+        synchronized (overlays) {
+            for (CMFile overlay : overlays) {
+                if (overlay.config != null) {
+                    overlay.config.setDefaults(config);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the replayed changes from the journal once the file they were written into has reached the disk.<br><br>
+     *
+     * If the file was written as part of a {@link CMWriteBatch} or into a {@link CMPack}, that
+     * isn't until the batch is closed or the pack is written, so until then the journal is kept
+     * in case the server stops before it happens.
+     */
+    private void clearJournalOnceWritten(CMJournal journal, long replayed) {
+        Runnable clear = () -> {
+            try {
+                journal.clear(replayed);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        };
+        if (isPacked()) {
+            pack.whenPacked(configFile.getName(), clear);
+        } else {
+            CMWriteBatch.whenWritten(configFile, clear);
+        }
+    }
+
+    /**
+     * Loads the file as an overlay of its parent.<br><br>
+     *
+     * Any options that are the same as the parent's are removed, and the parent's
+     * config becomes the defaults of this one, so anything not in this file is read
+     * from the parent instead.
+     *
+     * @param changed true if the options were changed whilst loading, meaning they need to be saved.
+     */
+    private void loadOverlay(boolean changed) {
+        if (parent.config == null) {
+            parent.load();
+        }
+        // Go through the deepest options first, so that sections emptied out can be removed too.
+        List<String> paths = new ArrayList<>(config.getKeys(true));
+        Collections.reverse(paths);
+        for (String path : paths) {
+            Object value = config.get(path);
+            if (value instanceof ConfigurationSection) {
+                if (!((ConfigurationSection) value).getKeys(false).isEmpty() || !parent.config.isConfigurationSection(path)) continue;
+            } else if (!isInherited(path, value)) {
+                continue;
+            }
+            config.set(path, null);
+            changed = true;
+        }
+        config.setDefaults(parent.config);
+        config.options().copyDefaults(false);
+        // The header belongs to the parent, so don't copy it into every overlay.
+        config.options().copyHeader(false);
+        if (changed || isNew) {
+            try {
+                writeFile(config);
+            } catch (IOException ex) {
+                saveFailed = true;
+                ex.printStackTrace();
+            }
+        }
+        // Overrides and references are only applied once the file has been written.
+        applyOverrides();
+        resolveReferences();
+        // Do anything the plugin requires to do following loading the file.
+        postSave();
+    }
+
+    /**
+     * Checks whether an option is the same as what this file would inherit from its parent.
+     *
+     * @param path The path of the option.
+     * @param value The value of the option.
+     * @return true if the parent has the same value at the path.
+     */
+    private boolean isInherited(@NotNull String path, @Nullable Object value) {
+        if (parent == null || parent.config == null || value == null) return false;
+        Object inherited = parent.config.get(path);
+        return inherited != null && CMFormat.toPlain(inherited).equals(CMFormat.toPlain(value));
     }
 
     /**
@@ -206,8 +966,11 @@ public abstract class CMFile {
      *     <li>The description</li>
      *     <li>Any external links</li>
      * </ul>
+     *
+     * Outside of loading, the lines of the file are worked out again first, since they aren't kept afterwards.
      */
-    public void loadTitle() {
+    public synchronized void loadTitle() {
+        restoreScratch(Stage.LINES);
         List<String> title = new ArrayList<>();
         // Get the breaking line.
         StringBuilder breakingLineSB = new StringBuilder();
@@ -524,50 +1287,652 @@ public abstract class CMFile {
     }
 
     /**
-     * The method where all default values, comments and sections should be added inside.
-     * 
-     * @see #addComment(String) 
-     * @see #addComment(String, String) 
-     * @see #addDefault(String, Object) 
-     * @see #addDefault(String, Object, String) 
-     * @see #addDefault(String, Object, String, String) 
-     * @see #addExample(String, Object) 
-     * @see #addExample(String, Object, String) 
-     * @see #addSection(String) 
+     * The format that the config file is stored in.
+     *
+     * @return The format being used. By default, this is {@link CMFormat#YAML}.
+     * @see #setFormat(CMFormat)
      */
-    public abstract void loadDefaults();
+    @NotNull
+    public CMFormat getFormat() {
+        return format;
+    }
 
     /**
-     * Adds a default value to a specified path.
-     * If the path already exists, the value will not be used.
+     * Sets the format that the config file is stored in.<br><br>
      *
-     * @param path The path of the value to be set.
-     * @param value The actual value itself.
+     * Formats other than YAML do not support the header or comments, but are
+     * much faster to read and write. They are intended for files that are only
+     * written by the plugin itself, such as data files.<br><br>
      *
-     * @see org.bukkit.configuration.MemoryConfiguration#addDefault(String, Object)
-     * @throws NullPointerException if the config has not been initialised yet.
+     * This must be called before {@link #load()}. If a file already exists in
+     * another format, use {@link #convertFrom(CMFormat)} to keep its values.
+     *
+     * @param format The new format to be used.
+     * @see #getFormat()
      */
-    public void addDefault(@NotNull String path, Object value) {
-        if (config == null) {
-            throw new NullPointerException("Configuration is not loading yet, please use addDefault within the loadDefaults method.");
-        }
-        if (!pendingComments.isEmpty()) {
-            StringBuilder builder = new StringBuilder();
-            for (String str : pendingComments) {
-                builder.append(str).append("\n\n");
-            }
-            pendingComments.clear();
-            comments.put(path, builder.toString());
-        }
-        config.addDefault(path, value);
-        tempConfig.set(path, config.get(path));
+    public void setFormat(@NotNull CMFormat format) {
+        this.format = format;
     }
 
     /**
-     * Adds an example option.<br><br>
+     * Converts an existing file from an older format into the current format.<br><br>
      *
-     * Functions the same as {@link #addDefault(String, Object)}, however
-     * the default is only added if the config is brand new. The value will not
+     * If the file in the older format does not exist, or the file in the current
+     * format already exists, nothing happens. Otherwise, the old file is renamed to
+     * have ".old" on the end once it has been converted.
+     *
+     * @param oldFormat The format the file used to be stored in.
+     * @return true if the file was converted.
+     * @see CMFormat#convert(File, CMFormat, File, CMFormat)
+     */
+    public boolean convertFrom(@NotNull CMFormat oldFormat) {
+        File oldFile = new File(folder, name + oldFormat.getExtension());
+        File newFile = new File(folder, name + format.getExtension());
+        if (oldFormat == format || !oldFile.exists() || newFile.exists()) return false;
+        try {
+            CMFormat.convert(oldFile, oldFormat, newFile, format);
+        } catch (Exception ex) {
+            host.getLogger().warning("Could not convert " + oldFile.getName() + " to " + newFile.getName() + ":");
+            host.getLogger().warning(ex.getMessage());
+            return false;
+        }
+        oldFile.renameTo(new File(folder, oldFile.getName() + ".old"));
+        return true;
+    }
+
+    /**
+     * Whether the file is compressed when it's written.
+     *
+     * @return true if the file is compressed.
+     * @see #setCompressed(boolean)
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Sets whether the file is compressed using gzip when it's written.<br><br>
+     *
+     * This is intended for data files that are never edited by hand, which tend to be
+     * several times smaller once compressed. Files are read whether they're compressed
+     * or not, so this can be changed at any time, and takes effect the next time the
+     * file is written. Files using {@link CMFormat#STORE} are never compressed.
+     *
+     * @param compressed true to compress the file.
+     * @see #getLoadStats()
+     */
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    /**
+     * Statistics from the last time the file was loaded, such as how long it took and how well it was compressed.
+     *
+     * @return The statistics, or null if the file hasn't been loaded yet.
+     */
+    @Nullable
+    public CMLoadStats getLoadStats() {
+        return loadStats;
+    }
+
+    /**
+     * The pack that the file is stored in.
+     *
+     * @return The pack, or null if the file is stored on its own.
+     * @see #setPack(CMPack)
+     */
+    @Nullable
+    public CMPack getPack() {
+        return pack;
+    }
+
+    /**
+     * Stores the file in a pack, rather than on its own.<br><br>
+     *
+     * The file is then read from and written to the pack, without checking or creating the
+     * file itself. Anything written is kept in memory until {@link CMPack#repack()} is called,
+     * so this should be done once all the files in the pack have been loaded.<br><br>
+     *
+     * This must be called before {@link #load()}. Files using {@link CMFormat#STORE} ignore the pack.
+     *
+     * @param pack The pack to use, or null to store the file on its own again.
+     * @see CMPack#open(File, String)
+     */
+    public void setPack(@Nullable CMPack pack) {
+        this.pack = pack;
+    }
+
+    /**
+     * The file that this file overlays.
+     *
+     * @return The parent file, or null if this file is not an overlay.
+     * @see #setParent(CMFile)
+     */
+    @Nullable
+    public CMFile getParent() {
+        return parent;
+    }
+
+    /**
+     * Makes this file an overlay of another file.<br><br>
+     *
+     * An overlay only stores the options that are different to its parent. Anything
+     * else is read straight from the parent's config, which is shared between all of
+     * its overlays rather than being copied into each one. This is intended for files
+     * such as per-world or per-arena configs, where most options are the same as a
+     * base file.<br><br>
+     *
+     * Overlays do not use {@link #loadDefaults()}, {@link #moveToNew()} or comments,
+     * since these all come from the parent. Setting an option to the same value as the
+     * parent removes it from the overlay, and setting it to null makes it inherit the
+     * parent's value again.<br><br>
+     *
+     * This must be called before {@link #load()}. If the parent is not loaded yet, it will
+     * be loaded alongside this file, and whenever it is reloaded, its overlays will read
+     * the new options.
+     *
+     * @param parent The file to be overlaid, or null to stop this file being an overlay.
+     * @throws IllegalArgumentException if the parent is this file or one of its overlays.
+     */
+    public void setParent(@Nullable CMFile parent) {
+        for (CMFile file = parent; file != null; file = file.parent) {
+            if (file == this) {
+                throw new IllegalArgumentException("A file cannot overlay itself or one of its own overlays.");
+            }
+        }
+        if (this.parent != null) {
+            synchronized (this.parent.overlays) {
+                this.parent.overlays.remove(this);
+            }
+        }
+        this.parent = parent;
+        if (parent != null) {
+            synchronized (parent.overlays) {
+                parent.overlays.add(this);
+            }
+        }
+    }
+
+    /**
+     * Lets an environment variable override an option.<br><br>
+     *
+     * If the variable is set when the file is loaded, its value is read in place of the
+     * option by this file's getters, but is never written into the file. This allows options
+     * such as database hosts to be changed in containers without editing the config. The
+     * override is kept apart from the options themselves, so {@link #getConfig()} and
+     * snapshots still hold the option as it is stored, and setting the option changes what
+     * is stored without replacing the override.<br><br>
+     *
+     * The value is converted to the same type as the option it replaces. For example,
+     * if the option is a number, the variable must be a number too, otherwise it is
+     * ignored. Lists are separated by commas.
+     *
+     * @param path The path of the option to be overridden.
+     * @param variable The name of the environment variable.
+     * @see #addPropertyOverride(String, String)
+     */
+    public void addEnvironmentOverride(@NotNull String path, @NotNull String variable) {
+        environmentOverrides.put(path, variable);
+    }
+
+    /**
+     * Lets a system property - set using -D when starting the server - override an option.<br><br>
+     *
+     * This works the same way as {@link #addEnvironmentOverride(String, String)}. If both
+     * are set for the same option, the system property is used.
+     *
+     * @param path The path of the option to be overridden.
+     * @param property The name of the system property.
+     * @see #addEnvironmentOverride(String, String)
+     */
+    public void addPropertyOverride(@NotNull String path, @NotNull String property) {
+        propertyOverrides.put(path, property);
+    }
+
+    /**
+     * Removes any environment variable or system property overriding an option.
+     *
+     * @param path The path of the option.
+     */
+    public void removeOverride(@NotNull String path) {
+        environmentOverrides.remove(path);
+        propertyOverrides.remove(path);
+    }
+
+    /**
+     * Indicates whether references to other options are resolved.
+     *
+     * @return true if references are resolved.
+     * @see #setResolvingReferences(boolean)
+     */
+    public boolean isResolvingReferences() {
+        return resolvingReferences;
+    }
+
+    /**
+     * Sets whether references to other options are resolved.<br><br>
+     *
+     * When enabled, any part of a string option written as ${path} is replaced with the
+     * value of the option at that path, such as "${messages.prefix} Welcome!". If the
+     * whole option is a reference, it takes on the type of the option it references.
+     * Options in other files can be referenced using ${alias:path} once they have been
+     * added using {@link #addReferenceSource(String, CMFile)}.<br><br>
+     *
+     * References are resolved once when the file is loaded, so reading them is no slower
+     * than any other option. The file itself keeps the references rather than the results.
+     * If an option is changed using {@link #set(String, Object)}, or a referenced file is
+     * reloaded, only the options depending on it are resolved again.<br><br>
+     *
+     * This must be called before {@link #load()}.
+     *
+     * @param resolvingReferences true to resolve references.
+     */
+    public void setResolvingReferences(boolean resolvingReferences) {
+        this.resolvingReferences = resolvingReferences;
+        if (resolvingReferences && references == null) {
+            references = new CMReferences(host.getLogger(), name + format.getExtension());
+        } else if (!resolvingReferences) {
+            references = null;
+        }
+    }
+
+    /**
+     * Lets options in this file reference options in another file, using ${alias:path}.<br><br>
+     *
+     * This also enables resolving references if it hasn't been already.
+     *
+     * @param alias The name used to refer to the other file.
+     * @param file The other file.
+     * @see #setResolvingReferences(boolean)
+     */
+    public void addReferenceSource(@NotNull String alias, @NotNull CMFile file) {
+        setResolvingReferences(true);
+        references.addSource(alias, file);
+        synchronized (file.referencingFiles) {
+            file.referencingFiles.add(this);
+        }
+    }
+
+    /**
+     * Resolves every reference in the config, if enabled.
+     */
+    private void resolveReferences() {
+        if (references != null) {
+            references.resolveAll(config, loadingOverrides);
+        }
+    }
+
+    /**
+     * Reads the value of every override that has been set, ready to be put in place with the loaded options.
+     */
+    private void applyOverrides() {
+        Map<String, Object> values = new HashMap<>();
+        for (String path : environmentOverrides.keySet()) {
+            applyOverride(values, path, System.getenv(environmentOverrides.get(path)));
+        }
+        // System properties are read last, so they win over environment variables.
+        for (String path : propertyOverrides.keySet()) {
+            applyOverride(values, path, System.getProperty(propertyOverrides.get(path)));
+        }
+        loadingOverrides = values.isEmpty() ? Collections.emptyMap() : Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * Works out the value of an override, converting it to the type of the existing option.
+     *
+     * @param values The overrides worked out so far, which the value is added to.
+     * @param path The path of the option.
+     * @param raw The value of the override, or null if it has not been set.
+     */
+    private void applyOverride(@NotNull Map<String, Object> values, @NotNull String path, @Nullable String raw) {
+        if (raw == null) return;
+        Object current = config.get(path);
+        Object value;
+        if (current == null || current instanceof String) {
+            value = current == null ? YamlScalars.construct(YamlScalars.resolveTag(raw), raw) : raw;
+        } else if (current instanceof List) {
+            List<String> list = new ArrayList<>();
+            for (String item : raw.split(",")) {
+                list.add(item.trim());
+            }
+            value = list;
+        } else {
+            // Work out the type the same way YAML would, then make sure it matches.
+            Object parsed = YamlScalars.construct(YamlScalars.resolveTag(raw.trim()), raw.trim());
+            if (current instanceof Number && parsed instanceof Number) {
+                if (current instanceof Double || current instanceof Float) {
+                    value = ((Number) parsed).doubleValue();
+                } else if (current instanceof Long && parsed instanceof Integer) {
+                    value = ((Number) parsed).longValue();
+                } else if (parsed instanceof Double) {
+                    value = null;
+                } else {
+                    value = parsed;
+                }
+            } else {
+                value = current.getClass().isInstance(parsed) ? parsed : null;
+            }
+            if (value == null) {
+                host.getLogger().warning("Ignoring the override for " + path + " in " + name + format.getExtension() + ", "
+                        + raw + " is not a valid " + current.getClass().getSimpleName().toLowerCase(Locale.ROOT) + ".");
+                return;
+            }
+        }
+        values.put(path, value);
+    }
+
+    /**
+     * Finds the override for an option, which is read in place of what's in the config.
+     *
+     * @param config The config being read, which decides whether the overrides being loaded are used.
+     * @param path The path of the option.
+     * @return The value of the override, or null if it isn't overridden.
+     */
+    @Nullable
+    private Object overrideOf(@NotNull FileConfiguration config, @NotNull String path) {
+        Map<String, Object> values = config != published ? loadingOverrides : overrides;
+        Object value = values.isEmpty() ? null : values.get(path);
+        // Overlays inherit their parent's overrides, along with everything else they don't set themselves.
+        if (value == null && parent != null && !parent.overrides.isEmpty() && find(config, path) == null) {
+            value = parent.overrides.get(path);
+        }
+        return value;
+    }
+
+    /**
+     * Reads an option, or its override if it has one.
+     */
+    @Nullable
+    private Object read(@NotNull FileConfiguration config, @NotNull String path) {
+        Object override = overrideOf(config, path);
+        return override != null ? override : lookup(config, path);
+    }
+
+    /**
+     * Checks whether an option exists, or has an override.
+     */
+    private boolean has(@NotNull FileConfiguration config, @NotNull String path) {
+        return lookup(config, path) != null || overrideOf(config, path) != null;
+    }
+
+    /**
+     * Looks up an option, falling back to the config's defaults - or an overlay's parent - if it isn't set.<br><br>
+     *
+     * Bukkit creates an empty section whenever a path goes through a section only the defaults
+     * have, which would copy the parent's sections into an overlay just by reading them. This
+     * doesn't create anything.
+     *
+     * @param config The config to look in.
+     * @param path The path of the option.
+     * @return The option, or null if neither the config nor its defaults have it.
+     */
+    @Nullable
+    private static Object lookup(@NotNull Configuration config, @NotNull String path) {
+        Object value = find(config, path);
+        Configuration defaults = config.getDefaults();
+        return value != null || defaults == null ? value : lookup(defaults, path);
+    }
+
+    /**
+     * Looks up an option in a section, without looking at any defaults or creating anything.
+     *
+     * @param section The section to look in.
+     * @param path The path of the option, relative to the section.
+     * @return The option, or null if it isn't set.
+     */
+    @Nullable
+    private static Object find(@NotNull ConfigurationSection section, @NotNull String path) {
+        int start = 0;
+        for (int dot = path.indexOf('.'); dot != -1; dot = path.indexOf('.', start)) {
+            Object child = section.get(path.substring(start, dot), null);
+            if (!(child instanceof ConfigurationSection)) return null;
+            section = (ConfigurationSection) child;
+            start = dot + 1;
+        }
+        return section.get(path.substring(start), null);
+    }
+
+    /**
+     * Indicates whether changes made using {@link #set(String, Object)} are written to a journal.
+     *
+     * @return true if the file is journalled.
+     * @see #setJournalled(boolean)
+     */
+    public boolean isJournalled() {
+        return journalled;
+    }
+
+    /**
+     * Sets whether changes made using {@link #set(String, Object)} are written to a journal.<br><br>
+     *
+     * When enabled, each change is appended to a journal file next to the config file
+     * rather than requiring the whole file to be saved. The journal is replayed and
+     * written into the config file when it is next loaded, or once it grows larger
+     * than {@link #getJournalThreshold()}.<br><br>
+     *
+     * This must be called before {@link #load()}. It has no effect on {@link CMFormat#STORE},
+     * which already writes changes individually.
+     *
+     * @param journalled true to enable the journal.
+     * @see CMJournal
+     */
+    public void setJournalled(boolean journalled) {
+        this.journalled = journalled;
+        if (!journalled && journal != null) {
+            try {
+                journal.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            journal = null;
+        }
+    }
+
+    /**
+     * The size the journal can grow to before it is written into the config file.
+     *
+     * @return The maximum size of the journal in bytes. By default, this is 512KB.
+     * @see #setJournalThreshold(long)
+     */
+    public long getJournalThreshold() {
+        return journalThreshold;
+    }
+
+    /**
+     * Sets the size the journal can grow to before it is written into the config file.
+     *
+     * @param journalThreshold The maximum size of the journal in bytes.
+     * @see #getJournalThreshold()
+     */
+    public void setJournalThreshold(long journalThreshold) {
+        this.journalThreshold = journalThreshold;
+    }
+
+    /**
+     * The method where all default values, comments and sections should be added inside.<br><br>
+     *
+     * This is called on whichever thread loads the file, which is usually the main thread.
+     * Files registered with {@link CMService#register(CMFile, boolean)} to be loaded off of
+     * the main thread have this called on one of the service's I/O threads instead, so it
+     * must then only use things that are safe to use from any thread. Whilst it runs, the
+     * options being loaded are only visible to the thread loading them.
+     * 
+     * @see #addComment(String) 
+     * @see #addComment(String, String) 
+     * @see #addDefault(String, Object) 
+     * @see #addDefault(String, Object, String) 
+     * @see #addDefault(String, Object, String, String) 
+     * @see #addExample(String, Object) 
+     * @see #addExample(String, Object, String) 
+     * @see #addSection(String) 
+     */
+    public abstract void loadDefaults();
+
+    /**
+     * Adds a default value to a specified path.
+     * If the path already exists, the value will not be used.
+     *
+     * @param path The path of the value to be set.
+     * @param value The actual value itself.
+     *
+     * @see org.bukkit.configuration.MemoryConfiguration#addDefault(String, Object)
+     * @throws NullPointerException if the config has not been initialised yet.
+     */
+    public void addDefault(@NotNull String path, Object value) {
+        if (config == null) {
+            throw new NullPointerException("Configuration is not loading yet, please use addDefault within the loadDefaults method.");
+        }
+        value = expectType(path, value);
+        if (pendingComments != null && !pendingComments.isEmpty()) {
+            StringBuilder builder = new StringBuilder();
+            for (String str : pendingComments) {
+                builder.append(str).append("\n\n");
+            }
+            pendingComments.clear();
+            comments.put(path, builder.toString());
+        }
+        config.addDefault(path, value);
+        if (tempConfig != null) {
+            tempConfig.set(path, lookup(config, path));
+        }
+    }
+
+    /**
+     * Creates a builder for adding lots of defaults, comments and sections at once.<br><br>
+     *
+     * This should be used within the {@link #loadDefaults()} method, and is faster than
+     * calling {@link #addDefault(String, Object)} for each option when there are many.
+     *
+     * @return A new, empty builder.
+     * @see CMDefaults#apply()
+     */
+    @NotNull
+    public CMDefaults defaults() {
+        return new CMDefaults(this);
+    }
+
+    /**
+     * Adds everything from a defaults builder, in order.
+     *
+     * @param entries The defaults, comments and sections to be added.
+     */
+    void addDefaults(@NotNull List<CMDefaults.Entry> entries) {
+        if (config == null) {
+            throw new NullPointerException("Configuration is not loading yet, please use defaults within the loadDefaults method.");
+        }
+        if (config.getDefaults() == null) {
+            config.setDefaults(new MemoryConfiguration());
+        }
+        // The sections that options are placed into, by the path of the section. These are
+        // the section in the defaults, the loaded config and the file being written, in that order.
+        Map<String, ConfigurationSection[]> parents = new HashMap<>();
+        // Every path that has a section cached either at or inside of it.
+        Set<String> cachedPaths = new HashSet<>();
+        for (CMDefaults.Entry entry : entries) {
+            switch (entry.type) {
+                case COMMENT:
+                    if (entry.path == null) {
+                        addComment(entry.comment);
+                    } else {
+                        addComment(entry.path, entry.comment);
+                    }
+                    break;
+                case SECTION:
+                    addSection(entry.section);
+                    break;
+                case LENIENT_SECTION:
+                    // This can create sections, so start again with the cache.
+                    addLenientSection(entry.path);
+                    parents.clear();
+                    cachedPaths.clear();
+                    break;
+                case EXAMPLE:
+                    // Like addExample, the comment goes in after the option.
+                    if (isNew) {
+                        addCachedDefault(entry.path, entry.value, parents, cachedPaths);
+                    }
+                    if (entry.comment != null) {
+                        addComment(entry.path, entry.comment);
+                    }
+                    break;
+                case DEFAULT:
+                    if (entry.section != null) {
+                        addSection(entry.section);
+                    }
+                    if (entry.comment != null) {
+                        addComment(entry.path, entry.comment);
+                    }
+                    addCachedDefault(entry.path, entry.value, parents, cachedPaths);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Does the same as {@link #addDefault(String, Object)}, but looks up the option's sections
+     * in the cache rather than going through each config from the top.
+     */
+    private void addCachedDefault(String path, Object value, Map<String, ConfigurationSection[]> parents, Set<String> cachedPaths) {
+        value = expectType(path, value);
+        if (pendingComments != null && !pendingComments.isEmpty()) {
+            StringBuilder builder = new StringBuilder();
+            for (String str : pendingComments) {
+                builder.append(str).append("\n\n");
+            }
+            pendingComments.clear();
+            comments.put(path, builder.toString());
+        }
+        // If this replaces a cached section, or something above it, the cache is out of date.
+        if (cachedPaths.contains(path)) {
+            parents.clear();
+            cachedPaths.clear();
+        }
+        int dot = path.lastIndexOf('.');
+        String parentPath = dot == -1 ? "" : path.substring(0, dot);
+        String key = path.substring(dot + 1);
+        ConfigurationSection[] sections = parents.get(parentPath);
+        if (sections == null) {
+            sections = new ConfigurationSection[] {
+                    findSection(config.getDefaults(), parentPath, true),
+                    findSection(config, parentPath, false),
+                    tempConfig == null ? null : findSection(tempConfig, parentPath, true)
+            };
+            parents.put(parentPath, sections);
+            for (int i = parentPath.indexOf('.'); i != -1; i = parentPath.indexOf('.', i + 1)) {
+                cachedPaths.add(parentPath.substring(0, i));
+            }
+            cachedPaths.add(parentPath);
+        }
+        sections[0].set(key, value);
+        // The user's value is used if there is one, otherwise it's the default.
+        Object current = sections[1] == null ? null : sections[1].get(key, null);
+        if (sections[2] != null) {
+            sections[2].set(key, current != null ? current : sections[0].get(key));
+        }
+    }
+
+    /**
+     * Finds a section by its path, without looking in any defaults.
+     *
+     * @param root The config to look in.
+     * @param path The path of the section.
+     * @param create true to create the section if it doesn't exist.
+     * @return The section, or null if it doesn't exist and wasn't created.
+     */
+    @Nullable
+    private static ConfigurationSection findSection(ConfigurationSection root, String path, boolean create) {
+        if (path.isEmpty()) return root;
+        // Bukkit's own lookup would create the section if only the defaults have it.
+        Object section = find(root, path);
+        if (section instanceof ConfigurationSection) return (ConfigurationSection) section;
+        return create ? root.createSection(path) : null;
+    }
+
+    /**
+     * Adds an example option.<br><br>
+     *
+     * Functions the same as {@link #addDefault(String, Object)}, however
+     * the default is only added if the config is brand new. The value will not
      * be used either if the path already exists.<br><br>
      *
      * It serves the purpose of providing a user with an example option to use
@@ -619,14 +1984,20 @@ public abstract class CMFile {
      * @param path The path of the section.
      */
     public void addLenientSection(@NotNull String path) {
-        if (getConfig().get(path) == null) {
+        if (lookup(getConfig(), path) == null) {
             getConfig().createSection(path);
         }
-        tempConfig.set(path, getConfig().get(path));
+        if (tempConfig != null) {
+            tempConfig.set(path, lookup(getConfig(), path));
+        }
     }
 
     /**
-     * Sets a specific value to a specified path.
+     * Sets a specific value to a specified path.<br><br>
+     *
+     * If the file uses {@link CMFormat#STORE}, the change is written to the file straight away.
+     * If the file is journalled, the change is appended to the journal instead. If the file
+     * is an overlay and the value is the same as its parent's, the option is removed.
      *
      * @param path The path of the option to be set.
      * @param value The actual value itself.
@@ -635,11 +2006,258 @@ public abstract class CMFile {
      * @throws NullPointerException if the config has not been initialised yet.
      */
     public void set(@NotNull String path, Object value) {
+        FileConfiguration config = loaded();
         if (config == null) {
             throw new NullPointerException("Configuration is not loading yet, please use set within the loadDefaults method.");
         }
+        // Overlays don't need to store anything they would inherit anyways.
+        if (isInherited(path, value)) {
+            value = null;
+        }
         config.set(path, value);
-        tempConfig.set(path, config.get(path));
+        pathIndex = null;
+        messages.clear();
+        typedValues.clear();
+        // Only needed whilst loading, since the file is written afterwards.
+        if (tempConfig != null) {
+            tempConfig.set(path, config.get(path));
+        }
+        // Make sure the change isn't lost when an incremental reload replaces these options.
+        CMReloadTask reloadTask = this.reloadTask;
+        if (reloadTask != null && !loading) {
+            reloadTask.changed(path, value);
+        }
+        // Stores only need the one option to be written.
+        if (format == CMFormat.STORE && configFile != null) {
+            try {
+                CMStore store = CMStore.open(configFile);
+                store.put(path, value);
+                store.commit();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        } else if (journal == null && !loading) {
+            // Nothing has saved this change, so it'll be lost if the file is unloaded.
+            modified = true;
+        } else if (journal != null && !loading) {
+            // Changes made whilst loading are saved anyways.
+            try {
+                journal.append(path, config.get(path));
+                if (journal.size() >= journalThreshold) {
+                    scheduleCompaction();
+                }
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        // Resolve anything that references the option, now that the original value has been saved.
+        Set<String> changed = new LinkedHashSet<>();
+        changed.add(path);
+        if (references != null && !loading) {
+            changed.addAll(references.changed(config, path));
+        }
+        recordChanges(changed);
+        synchronized (referencingFiles) {
+            for (CMFile file : referencingFiles) {
+                file.sourceChanged(this, path);
+            }
+        }
+    }
+
+    /**
+     * Resolves any references to another file again after it has changed.
+     *
+     * @param source The file that changed.
+     * @param path The path of the option that was changed, or null if the whole file was reloaded.
+     */
+    private void sourceChanged(@NotNull CMFile source, @Nullable String path) {
+        FileConfiguration config = this.config;
+        CMReferences references = this.references;
+        if (config == null || references == null) return;
+        Set<String> changed = references.sourceChanged(config, source, path);
+        if (changed.isEmpty()) return;
+        // Anything read from the resolved options before is out of date now.
+        pathIndex = null;
+        messages.clear();
+        typedValues.clear();
+        recordChanges(changed);
+    }
+
+    /**
+     * Adds a new version to the history with the changed options, if a history is being kept.
+     */
+    private void recordChanges(Collection<String> paths) {
+        CMSnapshot current = snapshot;
+        FileConfiguration config = this.config;
+        // Whilst loading, a snapshot is taken once everything has loaded instead.
+        if (current == null || config == null || loading) return;
+        CMSnapshot next = current;
+        for (String path : paths) {
+            next = next.with(path, config.get(path, null));
+        }
+        if (next != current) {
+            recordSnapshot(next);
+        }
+    }
+
+    private synchronized void recordSnapshot(CMSnapshot next) {
+        snapshot = next;
+        // A restored snapshot is only added once it's finished.
+        if (restoring) return;
+        history.addLast(next);
+        while (history.size() > historySize) {
+            history.removeFirst();
+        }
+    }
+
+    /**
+     * How many versions of the file are kept in its history.
+     *
+     * @return The number of versions kept, or 0 if there's no history.
+     * @see #setHistorySize(int)
+     */
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    /**
+     * Sets how many versions of the file are kept, so that changes can be rolled back.<br><br>
+     *
+     * A new version is made each time the file is loaded or an option is set using
+     * {@link #set(String, Object)}. Each version shares everything that didn't change with
+     * the version before it, so the history costs little more memory than the file itself.
+     * Files with a history are not unloaded by {@link #unload()}.
+     *
+     * @param versions The number of versions to keep, including the current one, or 0 to not keep a history.
+     * @see #getHistory()
+     * @see #rollback(int)
+     */
+    public synchronized void setHistorySize(int versions) {
+        this.historySize = Math.max(versions, 0);
+        if (historySize == 0) {
+            snapshot = null;
+            history.clear();
+            return;
+        }
+        while (history.size() > historySize) {
+            history.removeFirst();
+        }
+        if (snapshot == null && config != null) {
+            recordSnapshot(CMSnapshot.of(null, config));
+        }
+    }
+
+    /**
+     * Takes a snapshot of the file's current options.<br><br>
+     *
+     * If a history is being kept, this is the latest version in it and costs nothing.
+     * Otherwise, a new snapshot is made from the config.
+     *
+     * @return The snapshot of the file.
+     * @throws NullPointerException if the config has not been loaded yet.
+     */
+    @NotNull
+    public CMSnapshot getSnapshot() {
+        FileConfiguration config = loaded();
+        if (config == null) {
+            throw new NullPointerException("Configuration is not loaded yet, please use this method after calling the load method.");
+        }
+        CMSnapshot current = snapshot;
+        return current != null ? current : CMSnapshot.of(null, config);
+    }
+
+    /**
+     * The versions of the file that are being kept.
+     *
+     * @return A copy of the history, oldest first, ending with the current version.
+     * @see #setHistorySize(int)
+     */
+    @NotNull
+    public synchronized List<CMSnapshot> getHistory() {
+        return new ArrayList<>(history);
+    }
+
+    /**
+     * Restores the file's options to how they were in a snapshot.<br><br>
+     *
+     * Only the options that differ are set, using {@link #set(String, Object)}, so the
+     * changes are saved the same way as any others. The result is added to the history
+     * as a single new version.
+     *
+     * @param target The snapshot to restore.
+     * @return The number of options that were changed.
+     * @throws NullPointerException if the config has not been loaded yet.
+     */
+    public int rollback(@NotNull CMSnapshot target) {
+        CMSnapshot current = getSnapshot();
+        List<CMSnapshot.Change> changes = current.diff(target);
+        restoring = true;
+        try {
+            for (CMSnapshot.Change change : changes) {
+                restore(change.getPath(), change.getNewValue());
+            }
+        } finally {
+            restoring = false;
+        }
+        CMSnapshot restored = snapshot;
+        if (restored != null && restored != current) {
+            recordSnapshot(restored);
+        }
+        return changes.size();
+    }
+
+    /**
+     * Restores the file's options to how they were a number of versions ago.
+     *
+     * @param versions How many versions to go back, such as 1 for the version before the current one.
+     * @return true if the history went back far enough.
+     * @see #rollback(CMSnapshot)
+     */
+    public boolean rollback(int versions) {
+        List<CMSnapshot> history = getHistory();
+        int index = history.size() - 1 - versions;
+        if (versions <= 0 || index < 0) return false;
+        rollback(history.get(index));
+        return true;
+    }
+
+    private void restore(String path, @Nullable Object value) {
+        // Snapshots store sections as maps, which need to become sections again.
+        if (value instanceof Map && !((Map<?, ?>) value).containsKey(ConfigurationSerialization.SERIALIZED_TYPE_KEY)) {
+            set(path, null);
+            Map<?, ?> map = (Map<?, ?>) value;
+            if (map.isEmpty()) {
+                getConfig().createSection(path);
+                recordChanges(Collections.singleton(path));
+            }
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                restore(path + "." + entry.getKey(), entry.getValue());
+            }
+            return;
+        }
+        set(path, CMFormat.fromPlain(value));
+    }
+
+    /**
+     * Schedules the journal to be written into the config file.<br><br>
+     *
+     * This is a reload of the file on the main thread, since {@link #loadDefaults()} is
+     * expected to be called there. It is done using {@link #reloadIncrementally(long, TimeUnit)}
+     * so that it is spread over a few ticks rather than holding up one, and only happens
+     * once however many changes are made before it has finished.
+     */
+    private synchronized void scheduleCompaction() {
+        if (compactionScheduled || !host.isEnabled()) return;
+        compactionScheduled = true;
+        reloadIncrementally(COMPACTION_BUDGET, TimeUnit.MILLISECONDS).whenComplete((result, ex) -> {
+            synchronized (this) {
+                compactionScheduled = false;
+            }
+            // A normal load cancelling it has already written the journal in.
+            if (ex != null && !(ex instanceof CancellationException)) {
+                ex.printStackTrace();
+            }
+        });
     }
 
     /**
@@ -699,6 +2317,8 @@ public abstract class CMFile {
      * @param comment The comment to be added.
      */
     public void addComment(@NotNull String comment) {
+        // Comments can only be written whilst loading.
+        if (pendingComments == null) return;
         pendingComments.add(comment);
     }
 
@@ -712,6 +2332,8 @@ public abstract class CMFile {
      * @param comment The comment itself.
      */
     public void addComment(@NotNull String path, @NotNull String comment) {
+        // Comments can only be written whilst loading.
+        if (pendingComments == null) return;
         StringBuilder builder = new StringBuilder();
         for (String str : pendingComments) {
             builder.append(str).append("\n\n");
@@ -738,6 +2360,8 @@ public abstract class CMFile {
      * @param section The name of the section to be added.
      */
     public void addSection(@NotNull String section) {
+        // Sections can only be written whilst loading.
+        if (pendingComments == null) return;
         pendingComments.add("CONFIG_SECTION: " + section);
     }
 
@@ -749,10 +2373,11 @@ public abstract class CMFile {
      * @return The integer stored in path, returns defaultValue if not found.
      */
     public int getInteger(@NotNull String path, int defaultValue) {
+        FileConfiguration config = loaded();
         if (config == null) {
             throw new NullPointerException("Configuration is not loaded yet, please use this method after calling the load method.");
         }
-        if (!config.contains(path)) return defaultValue;
+        if (!has(config, path)) return defaultValue;
         try {
             return Integer.parseInt(getString(path));
         } catch (NumberFormatException | NullPointerException ex) {
@@ -778,10 +2403,11 @@ public abstract class CMFile {
      * @return The double stored in path, returns defaultValue if not found.
      */
     public double getDouble(@NotNull String path, double defaultValue) {
+        FileConfiguration config = loaded();
         if (config == null) {
             throw new NullPointerException("Configuration is not loaded yet, please use this method after calling the load method.");
         }
-        if (!config.contains(path)) return defaultValue;
+        if (!has(config, path)) return defaultValue;
         try {
             return Double.parseDouble(getString(path));
         } catch (NumberFormatException | NullPointerException ex) {
@@ -790,92 +2416,344 @@ public abstract class CMFile {
     }
 
     /**
-     * Returns a double value specified at the given path.
+     * Returns a double value specified at the given path.
+     *
+     * @param path The path to be used.
+     * @return The value stored in the path. If not found, it returns 0.
+     */
+    public double getDouble(@NotNull String path) {
+        return getDouble(path, 0);
+    }
+
+    /**
+     * Returns a float value specified at the given path. If a float value is not found, the specified default value is returned.
+     *
+     * @param path The path to be used.
+     * @param defaultValue The value to be returned if one is not found at the specified path.
+     * @return The float stored in path, returns defaultValue if not found.
+     */
+    public float getFloat(@NotNull String path, float defaultValue) {
+        FileConfiguration config = loaded();
+        if (config == null) {
+            throw new NullPointerException("Configuration is not loaded yet, please use this method after calling the load method.");
+        }
+        if (!has(config, path)) return defaultValue;
+        try {
+            return Float.parseFloat(getString(path));
+        } catch (NumberFormatException | NullPointerException ex) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns a float value specified at the given path.
+     *
+     * @param path The path to be used.
+     * @return The value stored in the path. If not found, it returns 0.
+     */
+    public float getFloat(@NotNull String path) {
+        return getFloat(path, 0);
+    }
+
+    /**
+     * Returns a string specified at the given path. If the path does not exist, the specified default value is returned.
+     *
+     * @param path The path to be used.
+     * @param defaultValue The value to be returned if one is not found at the specified path.
+     * @return The string stored in path, returns defaultValue if not found.
+     */
+    public String getString(@NotNull String path, @Nullable String defaultValue) {
+        FileConfiguration config = loaded();
+        if (config == null) {
+            throw new NullPointerException("Configuration is not loaded yet, please use this method after calling the load method.");
+        }
+        Object value = read(config, path);
+        if (value == null) return defaultValue;
+        return value instanceof ConfigurationSection ? null : value.toString();
+    }
+
+    /**
+     * Returns a string value specified at the given path.
+     *
+     * @param path The path to be used.
+     * @return The value stored in the path. If not found, it returns null.
+     */
+    @Nullable
+    public String getString(@NotNull String path) {
+        return getString(path, null);
+    }
+
+    /**
+     * Returns an object specified at the given path. If the path does not exist, the specified default value is returned.
+     *
+     * @param path The path to be used.
+     * @param defaultValue The value to be returned if one is not found at the specified path.
+     * @return The object stored in path, returns defaultValue if not found.
+     */
+    public Object get(@NotNull String path, @Nullable Object defaultValue) {
+        FileConfiguration config = loaded();
+        if (config == null) {
+            throw new NullPointerException("Configuration is not loaded yet, please use this method after calling the load method.");
+        }
+        Object override = overrideOf(config, path);
+        if (override != null) return override;
+        // Overlays read anything they don't have from their parent.
+        Object value = parent != null ? lookup(config, path) : find(config, path);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Returns an object value specified at the given path.
+     *
+     * @param path The path to be used.
+     * @return The value stored in the path. If not found, it returns null.
+     */
+    public Object get(@NotNull String path) {
+        return get(path, null);
+    }
+
+    /**
+     * Returns a message specified at the given path, ready to be sent.<br><br>
+     *
+     * The message's colour codes are translated and its placeholders are found the first
+     * time it is asked for, and this is kept until the file is reloaded or the message
+     * is changed. If the message is a list, each line is joined with a new line.
+     *
+     * @param path The path to be used.
+     * @param defaultValue The message to be used if one is not found at the specified path.
+     * @return The prepared message, or null if there isn't one and defaultValue is null.
+     * @see CMMessage#render(Object...)
+     */
+    @Nullable
+    public CMMessage getMessage(@NotNull String path, @Nullable String defaultValue) {
+        CMMessage message = usesCaches() ? messages.get(path) : null;
+        if (message != null) {
+            touch();
+            return message;
+        }
+        FileConfiguration config = loaded();
+        if (config == null) {
+            throw new NullPointerException("Configuration is not loaded yet, please use this method after calling the load method.");
+        }
+        Object value = read(config, path);
+        String raw;
+        if (value instanceof List) {
+            StringBuilder builder = new StringBuilder();
+            for (Object line : (List<?>) value) {
+                if (builder.length() > 0) builder.append("\n");
+                builder.append(line);
+            }
+            raw = builder.toString();
+        } else if (value != null && !(value instanceof ConfigurationSection)) {
+            raw = String.valueOf(value);
+        } else if (defaultValue != null) {
+            // Defaults aren't kept, since they could be different each time.
+            return new CMMessage(defaultValue);
+        } else {
+            return null;
+        }
+        message = new CMMessage(raw);
+        cache(messages, path, message, config);
+        return message;
+    }
+
+    /**
+     * Returns a message specified at the given path, ready to be sent.
+     *
+     * @param path The path to be used.
+     * @return The prepared message. If not found, it returns null.
+     * @see #getMessage(String, String)
+     */
+    @Nullable
+    public CMMessage getMessage(@NotNull String path) {
+        return getMessage(path, null);
+    }
+
+    /**
+     * Returns a duration specified at the given path, such as "5m" or "1h30s". If a duration is not found, the specified default value is returned.<br><br>
+     *
+     * The duration is only read once, and is read again whenever the file is reloaded.
+     * If it is invalid, a warning is logged at that point.
+     *
+     * @param path The path to be used.
+     * @param defaultValue The value to be returned if a duration is not found at the specified path.
+     * @return The duration stored in path, returns defaultValue if not found.
+     * @see CMValueParser#parseDuration(String)
+     */
+    public Duration getDuration(@NotNull String path, @Nullable Duration defaultValue) {
+        return getTyped("duration:" + path, CMValueParser::parseDuration, defaultValue);
+    }
+
+    /**
+     * Returns a duration specified at the given path, such as "5m" or "1h30s".
+     *
+     * @param path The path to be used.
+     * @return The duration stored in the path. If not found, it returns a duration of 0.
+     */
+    @NotNull
+    public Duration getDuration(@NotNull String path) {
+        return getDuration(path, Duration.ZERO);
+    }
+
+    /**
+     * Returns a size in bytes specified at the given path, such as "64MB". If a size is not found, the specified default value is returned.<br><br>
+     *
+     * The size is only read once, and is read again whenever the file is reloaded.
+     * If it is invalid, a warning is logged at that point.
+     *
+     * @param path The path to be used.
+     * @param defaultValue The value to be returned if a size is not found at the specified path.
+     * @return The number of bytes stored in path, returns defaultValue if not found.
+     * @see CMValueParser#parseByteSize(String)
+     */
+    public long getByteSize(@NotNull String path, long defaultValue) {
+        Long size = getTyped("size:" + path, CMValueParser::parseByteSize, null);
+        return size == null ? defaultValue : size;
+    }
+
+    /**
+     * Returns a size in bytes specified at the given path, such as "64MB".
      *
      * @param path The path to be used.
-     * @return The value stored in the path. If not found, it returns 0.
+     * @return The number of bytes stored in the path. If not found, it returns 0.
      */
-    public double getDouble(@NotNull String path) {
-        return getDouble(path, 0);
+    public long getByteSize(@NotNull String path) {
+        return getByteSize(path, 0);
     }
 
     /**
-     * Returns a float value specified at the given path. If a float value is not found, the specified default value is returned.
+     * Returns an enum constant specified at the given path, such as a material or sound. If a constant is not found, the specified default value is returned.<br><br>
+     *
+     * The constant is only looked up once, and is looked up again whenever the file is
+     * reloaded. If it is invalid, a warning is logged at that point.
      *
      * @param path The path to be used.
-     * @param defaultValue The value to be returned if one is not found at the specified path.
-     * @return The float stored in path, returns defaultValue if not found.
+     * @param type The enum the constant belongs to.
+     * @param defaultValue The value to be returned if a constant is not found at the specified path.
+     * @param <E> The type of the enum.
+     * @return The constant stored in path, returns defaultValue if not found.
+     * @see CMValueParser#parseEnum(Class, String)
      */
-    public float getFloat(@NotNull String path, float defaultValue) {
-        if (config == null) {
-            throw new NullPointerException("Configuration is not loaded yet, please use this method after calling the load method.");
-        }
-        if (!config.contains(path)) return defaultValue;
-        try {
-            return Float.parseFloat(getString(path));
-        } catch (NumberFormatException | NullPointerException ex) {
-            return defaultValue;
-        }
+    public <E extends Enum<E>> E getEnum(@NotNull String path, @NotNull Class<E> type, @Nullable E defaultValue) {
+        return getTyped(type.getName() + ":" + path, value -> CMValueParser.parseEnum(type, value), defaultValue);
     }
 
     /**
-     * Returns a float value specified at the given path.
+     * Returns an enum constant specified at the given path, such as a material or sound.
      *
      * @param path The path to be used.
-     * @return The value stored in the path. If not found, it returns 0.
+     * @param type The enum the constant belongs to.
+     * @param <E> The type of the enum.
+     * @return The constant stored in the path. If not found, it returns null.
      */
-    public float getFloat(@NotNull String path) {
-        return getFloat(path, 0);
+    @Nullable
+    public <E extends Enum<E>> E getEnum(@NotNull String path, @NotNull Class<E> type) {
+        return getEnum(path, type, null);
     }
 
     /**
-     * Returns a string specified at the given path. If the path does not exist, the specified default value is returned.
+     * Marks an option as a duration, so that it is checked whenever the file is loaded - including the first time -
+     * rather than when {@link #getDuration(String)} is first used.<br><br>
      *
-     * @param path The path to be used.
-     * @param defaultValue The value to be returned if one is not found at the specified path.
-     * @return The string stored in path, returns defaultValue if not found.
+     * This should be used within the {@link #loadDefaults()} method. Options with a {@link Duration} as their default
+     * are marked automatically.
+     *
+     * @param path The path of the option.
      */
-    public String getString(@NotNull String path, @Nullable String defaultValue) {
-        if (config == null) {
-            throw new NullPointerException("Configuration is not loaded yet, please use this method after calling the load method.");
-        }
-        if (!config.contains(path)) return defaultValue;
-        return config.getString(path);
+    public void expectDuration(@NotNull String path) {
+        typedParsers.putIfAbsent("duration:" + path, CMValueParser::parseDuration);
     }
 
     /**
-     * Returns a string value specified at the given path.
+     * Marks an option as a size in bytes, so that it is checked whenever the file is loaded - including the first time -
+     * rather than when {@link #getByteSize(String)} is first used.<br><br>
      *
-     * @param path The path to be used.
-     * @return The value stored in the path. If not found, it returns null.
+     * This should be used within the {@link #loadDefaults()} method.
+     *
+     * @param path The path of the option.
      */
-    @Nullable
-    public String getString(@NotNull String path) {
-        return getString(path, null);
+    public void expectByteSize(@NotNull String path) {
+        typedParsers.putIfAbsent("size:" + path, CMValueParser::parseByteSize);
     }
 
     /**
-     * Returns an object specified at the given path. If the path does not exist, the specified default value is returned.
+     * Marks an option as an enum constant, so that it is checked whenever the file is loaded - including the first time -
+     * rather than when {@link #getEnum(String, Class)} is first used.<br><br>
      *
-     * @param path The path to be used.
-     * @param defaultValue The value to be returned if one is not found at the specified path.
-     * @return The object stored in path, returns defaultValue if not found.
+     * This should be used within the {@link #loadDefaults()} method. Options with an enum constant as their default
+     * are marked automatically.
+     *
+     * @param path The path of the option.
+     * @param type The enum the constant belongs to.
+     * @param <E> The type of the enum.
      */
-    public Object get(@NotNull String path, @Nullable Object defaultValue) {
-        if (config == null) {
-            throw new NullPointerException("Configuration is not loaded yet, please use this method after calling the load method.");
+    public <E extends Enum<E>> void expectEnum(@NotNull String path, @NotNull Class<E> type) {
+        typedParsers.putIfAbsent(type.getName() + ":" + path, value -> CMValueParser.parseEnum(type, value));
+    }
+
+    /**
+     * Marks an option as a typed value if its default is a duration or enum constant.
+     *
+     * @param path The path of the option.
+     * @param value The default value.
+     * @return The value as it is written in the file.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object expectType(@NotNull String path, Object value) {
+        if (value instanceof Duration) {
+            expectDuration(path);
+            return CMValueParser.formatDuration((Duration) value);
+        } else if (value instanceof Enum) {
+            expectEnum(path, (Class) ((Enum<?>) value).getDeclaringClass());
+            return ((Enum<?>) value).name();
         }
-        return config.get(path, defaultValue);
+        return value;
     }
 
     /**
-     * Returns an object value specified at the given path.
+     * Returns a typed value, reading it if it hasn't been read since the file was loaded.
      *
-     * @param path The path to be used.
-     * @return The value stored in the path. If not found, it returns null.
+     * @param key The type of the value, followed by a colon and its path.
+     * @param parser How the value is read.
+     * @param defaultValue The value to be returned if it is missing or invalid.
+     * @param <T> The type of the value.
+     * @return The value.
      */
-    public Object get(@NotNull String path) {
-        return get(path, null);
+    @SuppressWarnings("unchecked")
+    private <T> T getTyped(@NotNull String key, @NotNull Function<String, T> parser, @Nullable T defaultValue) {
+        Object value = usesCaches() ? typedValues.get(key) : null;
+        if (value == null) {
+            typedParsers.putIfAbsent(key, parser);
+            value = readTypedValue(key);
+        } else {
+            touch();
+        }
+        return value == INVALID ? defaultValue : (T) value;
+    }
+
+    /**
+     * Reads a typed value from the config and stores it.
+     *
+     * @param key The type of the value, followed by a colon and its path.
+     * @return The value, or {@link #INVALID} if it's missing or couldn't be read.
+     */
+    private Object readTypedValue(@NotNull String key) {
+        FileConfiguration config = loaded();
+        if (config == null) {
+            throw new NullPointerException("Configuration is not loaded yet, please use this method after calling the load method.");
+        }
+        String path = key.substring(key.indexOf(':') + 1);
+        Object raw = read(config, path);
+        Object value = INVALID;
+        if (raw != null && !(raw instanceof ConfigurationSection)) {
+            try {
+                value = typedParsers.get(key).apply(String.valueOf(raw));
+            } catch (IllegalArgumentException ex) {
+                host.getLogger().warning("Invalid option " + path + " in " + name + format.getExtension() + ": " + ex.getMessage());
+            }
+        }
+        cache(typedValues, key, value, config);
+        return value;
     }
 
     /**
@@ -886,10 +2764,11 @@ public abstract class CMFile {
      * @return The long stored in path, returns defaultValue if not found.
      */
     public long getLong(@NotNull String path, long defaultValue) {
+        FileConfiguration config = loaded();
         if (config == null) {
             throw new NullPointerException("Configuration is not loaded yet, please use this method after calling the load method.");
         }
-        if (!config.contains(path)) return defaultValue;
+        if (!has(config, path)) return defaultValue;
         try {
             return Long.parseLong(getString(path));
         } catch (NumberFormatException | NullPointerException ex) {
@@ -915,10 +2794,11 @@ public abstract class CMFile {
      * @return The byte stored in path, returns defaultValue if not found.
      */
     public byte getByte(@NotNull String path, byte defaultValue) {
+        FileConfiguration config = loaded();
         if (config == null) {
             throw new NullPointerException("Configuration is not loaded yet, please use this method after calling the load method.");
         }
-        if (!config.contains(path)) return defaultValue;
+        if (!has(config, path)) return defaultValue;
         try {
             return Byte.parseByte(getString(path));
         } catch (NumberFormatException | NullPointerException ex) {
@@ -944,10 +2824,11 @@ public abstract class CMFile {
      * @return The short stored in path, returns defaultValue if not found.
      */
     public short getShort(@NotNull String path, short defaultValue) {
+        FileConfiguration config = loaded();
         if (config == null) {
             throw new NullPointerException("Configuration is not loaded yet, please use this method after calling the load method.");
         }
-        if (!config.contains(path)) return defaultValue;
+        if (!has(config, path)) return defaultValue;
         try {
             return Short.parseShort(getString(path));
         } catch (NumberFormatException | NullPointerException ex) {
@@ -973,10 +2854,11 @@ public abstract class CMFile {
      * @return The boolean stored in path, returns defaultValue if not found.
      */
     public boolean getBoolean(@NotNull String path, boolean defaultValue) {
+        FileConfiguration config = loaded();
         if (config == null) {
             throw new NullPointerException("Configuration is not loaded yet, please use this method after calling the load method.");
         }
-        if (!config.contains(path)) return defaultValue;
+        if (!has(config, path)) return defaultValue;
         try {
             return Boolean.parseBoolean(getString(path));
         } catch (NumberFormatException | NullPointerException ex) {
@@ -1002,10 +2884,15 @@ public abstract class CMFile {
      * @return The list stored in path, returns defaultValue if not found.
      */
     public List<?> getList(@NotNull String path, List<?> defaultValue) {
+        FileConfiguration config = loaded();
         if (config == null) {
             throw new NullPointerException("Configuration is not loaded yet, please use this method after calling the load method.");
         }
-        return config.getList(path, defaultValue);
+        Object value = overrideOf(config, path);
+        if (value == null) {
+            value = parent != null ? lookup(config, path) : find(config, path);
+        }
+        return value instanceof List ? (List<?>) value : defaultValue;
     }
 
     /**
@@ -1026,12 +2913,20 @@ public abstract class CMFile {
      * @return The list stored in path, returns defaultValue if not found.
      */
     public List<String> getStringList(@NotNull String path, List<String> defaultValue) {
+        FileConfiguration config = loaded();
         if (config == null) {
             throw new NullPointerException("Configuration is not loaded yet, please use this method after calling the load method.");
         }
-        if (!config.contains(path)) return defaultValue;
-        if (!(config.get(path) instanceof List)) return defaultValue;
-        return config.getStringList(path);
+        Object value = read(config, path);
+        if (!(value instanceof List)) return defaultValue;
+        // The same items Bukkit would turn into strings.
+        List<String> list = new ArrayList<>();
+        for (Object item : (List<?>) value) {
+            if (item instanceof String || item instanceof Number || item instanceof Boolean || item instanceof Character) {
+                list.add(String.valueOf(item));
+            }
+        }
+        return list;
     }
 
     /**
@@ -1044,6 +2939,56 @@ public abstract class CMFile {
         return getStringList(path, new ArrayList<>());
     }
 
+    /**
+     * Reads several options from the same section at once.<br><br>
+     *
+     * The section is only looked up once, so this is faster than calling a getter for
+     * each option. The values are returned in the same order as the keys.
+     *
+     * @param section The path of the section to read from, or null for the root of the config.
+     * @param keys The keys to be read, relative to the section.
+     * @return The values of each key. Any that don't exist - or all of them, if the section doesn't exist - are null.
+     * @see #getRecord(String, String...)
+     */
+    @NotNull
+    public Object[] getAll(@Nullable String section, @NotNull String... keys) {
+        FileConfiguration config = loaded();
+        if (config == null) {
+            throw new NullPointerException("Configuration is not loaded yet, please use this method after calling the load method.");
+        }
+        Object[] values = new Object[keys.length];
+        boolean root = section == null || section.isEmpty();
+        // getConfigurationSection would create the section in an overlay if only its parent has it.
+        Object found = root ? config : lookup(config, section);
+        ConfigurationSection options = found instanceof ConfigurationSection ? (ConfigurationSection) found : null;
+        for (int i = 0; i < keys.length; i++) {
+            String path = root ? keys[i] : section + "." + keys[i];
+            Object value = overrideOf(config, path);
+            if (value == null && options != null) {
+                value = find(options, keys[i]);
+                // Anything the section doesn't have itself may still be inherited.
+                if (value == null && config.getDefaults() != null) {
+                    value = lookup(config.getDefaults(), path);
+                }
+            }
+            values[i] = value;
+        }
+        return values;
+    }
+
+    /**
+     * Reads several options from the same section at once into a record.
+     *
+     * @param section The path of the section to read from, or null for the root of the config.
+     * @param keys The keys to be read, relative to the section.
+     * @return The record containing each value.
+     * @see #getAll(String, String...)
+     */
+    @NotNull
+    public CMRecord getRecord(@Nullable String section, @NotNull String... keys) {
+        return new CMRecord(keys, getAll(section, keys));
+    }
+
     /**
      * Anything that the plugin may want to do after finishing the loading
      * process.
@@ -1073,7 +3018,9 @@ public abstract class CMFile {
         // If the option exists...
         if (config.contains(oldPath)) {
             Object object = config.get(oldPath);
-            tempConfig.set(newPath, object);
+            if (tempConfig != null) {
+                tempConfig.set(newPath, object);
+            }
             config.set(oldPath, null);
         }
     }
@@ -1105,12 +3052,26 @@ public abstract class CMFile {
      * @see #moveTo(String, String, CMFile)
      */
     public void handleReceivingValues() {
+        if (tempConfig == null) return;
         for (String path : toBeMoved.keySet()) {
             tempConfig.set(path, toBeMoved.get(path));
         }
         toBeMoved.clear();
     }
 
+    /**
+     * Indicates whether writing the file failed since it was last loaded.<br><br>
+     *
+     * When this happens, the file on the disk is out of date, so any journalled changes
+     * are kept to be replayed the next time it is loaded.
+     *
+     * @return true if the file could not be written.
+     * @see #save(boolean)
+     */
+    public synchronized boolean hasSaveFailed() {
+        return saveFailed;
+    }
+
     /**
      * Indicates whether the file is newly generated or not.
      *
@@ -1127,20 +3088,257 @@ public abstract class CMFile {
      */
     @Nullable
     public FileConfiguration getConfig() {
-        return config;
+        return loaded();
+    }
+
+    /**
+     * Returns the loaded config, loading it again first if it has been unloaded.
+     *
+     * @return The config, or null if the file has never been loaded.
+     */
+    @Nullable
+    private FileConfiguration loaded() {
+        touch();
+        // Whatever is loading the file reads the options it's loading, everything else reads the last ones loaded.
+        FileConfiguration current = loader == Thread.currentThread() ? config : published;
+        if (current == null && unloaded) {
+            synchronized (this) {
+                if (unloaded) {
+                    load();
+                }
+                current = published;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Records that the file has been used. The time is only written once it's further out of
+     * date than {@link #ACCESS_GRANULARITY}, so that reading options doesn't write to memory shared
+     * between threads every time.
+     */
+    private void touch() {
+        long now = System.currentTimeMillis();
+        if (now - lastAccessed >= ACCESS_GRANULARITY) {
+            lastAccessed = now;
+        }
+    }
+
+    /**
+     * Indicates whether the file's options are currently loaded into memory.
+     *
+     * @return true if the file is loaded.
+     * @see #unload()
+     */
+    public boolean isLoaded() {
+        return published != null;
+    }
+
+    /**
+     * Returns when the file's options were last read or set, to within a second.
+     *
+     * @return The time of the last access in milliseconds.
+     * @see System#currentTimeMillis()
+     */
+    public long getLastAccessed() {
+        return lastAccessed;
+    }
+
+    /**
+     * Unloads the file's options to free up memory.<br><br>
+     *
+     * The next time an option is read or set, the file is loaded again using {@link #load()},
+     * so this is safe to call on files that are rarely used. A file is not unloaded if it
+     * has options set that haven't been saved, if other files overlay it, or if it keeps a history.
+     *
+     * @return true if the file was unloaded.
+     * @see CMRegistry
+     */
+    public synchronized boolean unload() {
+        if (config == null || loading || modified || historySize > 0 || reloadTask != null) return false;
+        synchronized (overlays) {
+            if (!overlays.isEmpty()) return false;
+        }
+        unloaded = true;
+        config = null;
+        published = null;
+        pathIndex = null;
+        messages.clear();
+        typedValues.clear();
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The file the options are stored in. If the file is in a pack, this is its name within the pack rather than a real file.
+     *
+     * @return The config file, which may not have been created yet.
+     * @see #getPack()
+     */
+    @NotNull
+    public File getFile() {
+        return configFile != null ? configFile : new File(folder, name + format.getExtension());
+    }
+
+    /**
+     * The amount of space the file takes up on the disk, used to estimate how much memory it uses when loaded.
+     *
+     * @return The size of the file in bytes, or 0 if it has not been created.
+     */
+    public long getFileSize() {
+        if (configFile == null) return 0;
+        return isPacked() ? pack.size(configFile.getName()) : configFile.length();
+    }
+
+    /**
+     * Returns a sorted index of every path in the config.<br><br>
+     *
+     * The index is built the first time it is needed after loading, and is rebuilt
+     * after {@link #set(String, Object)} is used. Changes made directly to {@link #getConfig()}
+     * are not picked up until then.
+     *
+     * @return The index of the config's paths.
+     * @throws NullPointerException if the config has not been loaded yet.
+     */
+    @NotNull
+    public CMPathIndex getPathIndex() {
+        CMPathIndex index = usesCaches() ? pathIndex : null;
+        if (index != null) {
+            touch();
+            return index;
+        }
+        FileConfiguration config = loaded();
+        if (config == null) {
+            throw new NullPointerException("Configuration is not loaded yet, please use this method after calling the load method.");
+        }
+        index = new CMPathIndex(config);
+        if (config == published) {
+            pathIndex = index;
+            // A load may have finished in the meantime, in which case the index is already out of date.
+            if (config != published) {
+                pathIndex = null;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Whether the cached messages, typed values and path index can be used. Whatever is loading
+     * the file can't use them until the loaded options are in place, since they're from the old ones.
+     */
+    private boolean usesCaches() {
+        return loader != Thread.currentThread() || config == published;
+    }
+
+    /**
+     * Caches a value read from the options, as long as they are the ones in place.
+     */
+    private <V> void cache(Map<String, V> cache, String key, V value, FileConfiguration from) {
+        if (from != published) return;
+        cache.put(key, value);
+        // A load may have finished in the meantime, in which case the value is already out of date.
+        if (from != published) {
+            cache.remove(key, value);
+        }
     }
 
     /**
-     * Initiates the comment writing process.
+     * Returns the keys directly inside a section, without walking the config.
+     *
+     * @param section The path of the section, or null for the root of the config.
+     * @return A read-only, sorted set of the keys inside the section.
+     * @see CMPathIndex#keysUnder(String)
+     */
+    @NotNull
+    public SortedSet<String> keysUnder(@Nullable String section) {
+        return getPathIndex().keysUnder(section);
+    }
+
+    /**
+     * Returns the full paths of everything inside a section, without walking the config.
+     *
+     * @param section The path of the section, or null for the root of the config.
+     * @return A read-only, sorted view of the full paths inside the section.
+     * @see CMPathIndex#getDeepKeys(String)
      */
-    public void writeComments() {
-        // For each comment to be made...
-        for (String path : comments.keySet()) {
-            // Get all the divisions made in the config
-            String[] divisions = path.split("\\.");
+    @NotNull
+    public NavigableSet<String> getDeepKeys(@Nullable String section) {
+        return getPathIndex().getDeepKeys(section);
+    }
 
-            writeComment(path, divisions, 0, 0);
+    /**
+     * Streams every option in the config file through a visitor, without loading it.<br><br>
+     *
+     * This is intended for very large data files where loading the whole file at once
+     * would use up too much memory. Neither {@link #load()} nor {@link #loadDefaults()}
+     * need to be called beforehand.<br><br>
+     *
+     * The file is read the same way it is when loaded, so compressed and packed files are
+     * read too. Only YAML can be streamed an option at a time; files in other formats are
+     * read in full first and then handed to the visitor in the same way.
+     *
+     * @param visitor The visitor that each option is handed to.
+     * @throws IOException if the file could not be read.
+     * @throws InvalidConfigurationException if the file is not valid for its format.
+     * @see CMStreamReader#read(Reader, CMStreamReader.EntryVisitor)
+     */
+    public void stream(@NotNull CMStreamReader.EntryVisitor visitor) throws IOException, InvalidConfigurationException {
+        // Stores keep their own file, which has to be opened as a store.
+        if (format == CMFormat.STORE) {
+            File file = getFile();
+            if (!file.exists()) return;
+            FileConfiguration options = new YamlConfiguration();
+            format.load(options, file);
+            CMStreamReader.read(options, visitor);
+            return;
+        }
+        try (InputStream input = openStored()) {
+            // If there's no file yet, there's nothing to stream.
+            if (input == null) return;
+            if (format == CMFormat.YAML) {
+                CMStreamReader.read(new BufferedReader(new InputStreamReader(input, Charsets.UTF_8)), visitor);
+                return;
+            }
+            // Other formats can't be read an option at a time, so read them in full and hand the options over the same way.
+            FileConfiguration options = new YamlConfiguration();
+            format.load(options, input);
+            CMStreamReader.read(options, visitor);
         }
+    }
+
+    /**
+     * Reads the options under a section of the config file into a compact index, without loading it.
+     *
+     * @param section The section to be indexed, or null to index the whole file.
+     * @return The index containing every option under the section.
+     * @throws IOException if the file could not be read.
+     * @throws InvalidConfigurationException if the file is not valid for its format.
+     * @see #stream(CMStreamReader.EntryVisitor)
+     */
+    @NotNull
+    public CMStreamReader.Index index(@Nullable String section) throws IOException, InvalidConfigurationException {
+        return CMStreamReader.index(this::stream, section);
+    }
+
+    /**
+     * Initiates the comment writing process.<br><br>
+     *
+     * The comments are rendered once and kept between loads, so as long as the comments
+     * declared by the file don't change, later loads only have to merge them into the
+     * saved options. Outside of loading, the lines of the file are worked out again first,
+     * since they aren't kept afterwards.
+     */
+    public synchronized void writeComments() {
+        restoreScratch(Stage.TITLE);
+        // Reuse the rendered comments from the last load if nothing has changed, then write each one above its option.
+        skeleton = CMSkeleton.of(skeleton, comments);
+        currentLines = skeleton.merge(currentLines);
 
         // However, if there's any comments left, write them in.
         for (String str : pendingComments) {
@@ -1174,124 +3372,205 @@ public abstract class CMFile {
     }
 
     /**
-     * Method used to write a specified comment.
+     * Reads the config file - or its entry in the pack - into a configuration, decompressing it if needed.
+     */
+    private void readFile(FileConfiguration target) throws IOException, InvalidConfigurationException {
+        // Stores read their own file, so can't be compressed or packed.
+        if (format == CMFormat.STORE) {
+            format.load(target, configFile);
+            storedSize = contentSize = configFile.length();
+            readCompressed = false;
+            return;
+        }
+        format.load(target, readContents());
+    }
+
+    /**
+     * Reads the contents of the config file - or its entry in the pack - decompressing them if needed.
+     */
+    private ByteBuffer readContents() throws IOException {
+        ByteBuffer contents = isPacked() ? pack.read(configFile.getName()) : CMFormat.read(configFile);
+        if (contents == null) {
+            contents = ByteBuffer.allocate(0);
+        }
+        storedSize = contents.remaining();
+        // Compressed files are spotted by how they start, so the setting doesn't matter when reading.
+        readCompressed = CMCompression.isCompressed(contents);
+        if (readCompressed) {
+            contents = CMCompression.decompress(contents);
+        }
+        contentSize = contents.remaining();
+        return contents;
+    }
+
+    /**
+     * Opens the config file - or its entry in the pack - for reading, decompressing it as it's read if needed.
      *
-     * @param path The path the comment must be written at.
-     * @param divisions The number of sections the part can be split up into.
-     * @param iteration How far we're down the pathway (in terms of different sections).
-     * @param startingLine The line we're starting from.
+     * @return A stream of the file's contents, or null if it doesn't exist yet.
      */
-    private void writeComment(String path, String[] divisions, int iteration, int startingLine) {
-        StringBuilder indent = new StringBuilder();
-        for (int j = 0; j < iteration; j++) {
-            indent.append("  ");
+    @Nullable
+    private InputStream openStored() throws IOException {
+        File file = getFile();
+        if (isPacked()) {
+            ByteBuffer contents = pack.read(file.getName());
+            if (contents == null) return null;
+            return CMCompression.open(new ByteArrayInputStream(contents.array(), contents.arrayOffset() + contents.position(), contents.remaining()));
         }
-        // Go through each line in the file
-        for (int i = startingLine; i < currentLines.size(); i++) {
-            String line = currentLines.get(i);
-            // If the line doesn't have an equal or larger indent, then the line could not be found.
-            if (!line.startsWith(indent.toString())) return;
-            // If it's already a comment, leave it be.
-            if (line.startsWith("#")) continue;
-            if (line.startsWith(indent.toString() + divisions[iteration] + ":") ||
-                    line.startsWith(indent.toString() + "'" + divisions[iteration] + "':")) {
-                iteration += 1;
-                if (iteration == divisions.length) {
-                    int currentLine = i;
-                    if (iteration == 1) {
-                        currentLines.add(currentLine, "");
-                        currentLine++;
-                    }
-                    String[] rawComment = comments.get(path).split("\n");
-                    for (String commentPart : rawComment) {
-                        if (commentPart.isEmpty()) {
-                            currentLines.add(currentLine, "");
-                        } else {
-                            if (commentPart.startsWith("CONFIG_SECTION: ")) {
-                                String section = commentPart.split(": ")[1];
-                                StringBuilder length = new StringBuilder();
-                                length.append("###");
-                                for (int j = 0; j < section.length(); j++) {
-                                    length.append("#");
-                                }
-                                length.append("###");
-                                currentLines.add(currentLine, length.toString());
-                                currentLines.add(currentLine, "#  " + section + "  #");
-                                currentLines.add(currentLine, length.toString());
-                                currentLine += 3;
-                                continue;
-                            } else {
-                                currentLines.add(currentLine, indent + "# " + commentPart);
-                            }
+        if (!CMWriteBatch.readable(file).exists()) return null;
+        return CMCompression.open(file);
+    }
 
-                        }
-                        currentLine++;
-                    }
-                    break;
-                } else {
-                    writeComment(path, divisions, iteration, i + 1);
-                }
-            }
+    /**
+     * Writes a configuration to the config file, or its entry in the pack.
+     */
+    private void writeFile(FileConfiguration source) throws IOException {
+        if (format == CMFormat.STORE) {
+            format.save(source, configFile);
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        // Compress the values as they're written, rather than afterwards.
+        try (OutputStream output = compressed ? CMCompression.compressing(bytes) : bytes) {
+            format.save(source, output);
+        }
+        writeStored(bytes.toByteArray());
+    }
+
+    /**
+     * Writes the contents of the config file, or its entry in the pack.
+     */
+    private void writeFile(byte[] contents) throws IOException {
+        writeStored(compressed ? CMCompression.compress(contents) : contents);
+    }
+
+    private void writeStored(byte[] contents) throws IOException {
+        if (isPacked()) {
+            pack.write(configFile.getName(), contents);
+        } else {
+            CMWriteBatch.write(configFile, contents);
         }
     }
 
+    private boolean isPacked() {
+        return pack != null && format != CMFormat.STORE;
+    }
+
     /**
-     * Saves the changes or comments made to the configuration to the file.
+     * Saves the changes or comments made to the configuration to the file.<br><br>
+     *
+     * If the file could not be written, the error is printed and {@link #hasSaveFailed()}
+     * returns true. The journal is then kept rather than emptied when loading finishes, so
+     * no changes are lost.<br><br>
+     *
+     * Outside of loading, what's saved is worked out again from the defaults and current options
+     * first, since it isn't kept afterwards.
      *
      * @param isConfigSaving true if saving default values, false if saving comments.
      */
-    public void save(boolean isConfigSaving) {
+    public synchronized void save(boolean isConfigSaving) {
+        // Saving the options is what adds them to the lines, so they mustn't be there already.
+        restoreScratch(isConfigSaving ? Stage.OPTIONS : Stage.COMMENTS);
         try {
-            if (isConfigSaving) {
-                tempConfig.save(configFile);
-                BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(configFile), Charsets.UTF_8));
-                String currentLine;
-                while ((currentLine = reader.readLine()) != null) {
-                    if (currentLine.startsWith("#")) continue;
-                    currentLines.add(currentLine);
+            // Formats without comments just have their values written straight away.
+            if (!format.supportsComments()) {
+                if (isConfigSaving) {
+                    writeFile(tempConfig);
                 }
-                reader.close();
+                return;
+            }
+            if (isConfigSaving) {
+                // The lines only need to be worked out here, they're written once the comments are added.
+                addSavedLines(tempConfig.saveToString());
             } else {
-                // Opens up a new file writer
-                BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(configFile), Charsets.UTF_8));
+                StringBuilder builder = new StringBuilder();
                 // For each line to write...
                 for (String line : currentLines) {
                     // Write that and add in a break.
-                    writer.write(line);
-                    writer.write("\n");
+                    builder.append(line).append("\n");
                 }
-                // Close the writer.
-                writer.close();
+                // Replace the file in one go, so that it's never left half written.
+                writeFile(builder.toString().getBytes(Charsets.UTF_8));
             }
-
         } catch (IOException ex) {
+            saveFailed = true;
             ex.printStackTrace();
         }
     }
 
+    private void addSavedLines(String saved) {
+        for (String currentLine : saved.split("\n", -1)) {
+            if (currentLine.startsWith("#")) continue;
+            currentLines.add(currentLine);
+        }
+        // The dumped text ends with a line break, which isn't a line of its own.
+        if (!currentLines.isEmpty() && currentLines.get(currentLines.size() - 1).isEmpty()) {
+            currentLines.remove(currentLines.size() - 1);
+        }
+    }
+
     /**
-     * Used to begin all saving procedures, such as saving options and writing comments.
+     * Used to begin all saving procedures, such as saving options and writing comments.<br><br>
+     *
+     * Outside of loading, the current options are written to the file the same way loading
+     * writes them, which includes calling {@link #loadDefaults()} again. The options that were
+     * written are put in place once the file has been saved.
      */
-    public void initiateSave() {
+    public synchronized void initiateSave() {
+        if (!loading) {
+            saveLoaded();
+            return;
+        }
+        saveOptions();
+        // The header and comments can only be written if the format supports them.
+        if (format.supportsComments()) {
+            writeHeaderAndComments();
+            // Save the new comments.
+            save(false);
+        }
+        // Load the new options into the config that may have been changed from, unless they couldn't be written.
+        if (!saveFailed) {
+            try {
+                readFile(config);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        finishSave();
+    }
+
+    private void saveOptions() {
         // Save the current default options.
         config.options().copyDefaults(true);
         save(true);
+    }
+
+    private void writeHeaderAndComments() {
         // Load the config title.
         loadTitle();
         // Write all the comments.
         writeComments();
-        // Save the new comments.
-        save(false);
-        // Load the new options into the config that may have been changed from
-        try {
-            config.load(configFile);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    }
+
+    private void finishSave() {
+        // Apply any overrides and references on top of what was saved.
+        applyOverrides();
+        resolveReferences();
         // Do anything the plugin requires to do following saving of a config file.
         postSave();
     }
 
+    // How far through writing the file the saving methods are, so that their state can be worked out again.
+    private enum Stage {
+        // Only the options, before any lines are added.
+        OPTIONS,
+        // The lines of the options, before the title is added.
+        LINES,
+        // The lines and title, before the comments are added.
+        TITLE,
+        // Everything, ready to be written.
+        COMMENTS
+    }
+
     public enum Pos {
         RIGHT,
         CENTER,
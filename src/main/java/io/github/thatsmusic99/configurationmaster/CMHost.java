@@ -0,0 +1,103 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * CMHost is whatever a CMFile is running inside of - usually a Bukkit plugin.<br><br>
+ *
+ * CMFile only needs a few things from its plugin: somewhere to log warnings, the
+ * details shown in the title of the file, and a way to run tasks later. Keeping
+ * these behind an interface means that files don't need a plugin instance or a
+ * running server.<br><br>
+ *
+ * It does not remove the need for spigot-api. CMFile is still built on Bukkit's
+ * configuration classes, such as YamlConfiguration and MemorySection, so spigot-api
+ * has to be on the classpath wherever ConfigurationMaster is used - including in a
+ * proxy, a web panel or a command line tool.
+ *
+ * @author Holly (Thatsmusic99)
+ * @see BukkitHost
+ * @see StandaloneHost
+ */
+public interface CMHost {
+
+    /**
+     * The folder that config files are stored in by default.
+     *
+     * @return The data folder.
+     */
+    @NotNull
+    File getDataFolder();
+
+    /**
+     * The logger used to warn about problems with config files.
+     *
+     * @return The logger.
+     */
+    @NotNull
+    Logger getLogger();
+
+    /**
+     * The name shown in the title of config files.
+     *
+     * @return The name of the host.
+     */
+    @NotNull
+    String getName();
+
+    /**
+     * The authors credited in the title of config files.
+     *
+     * @return The list of authors, which may be empty.
+     */
+    @NotNull
+    List<String> getAuthors();
+
+    /**
+     * The description shown in the title of config files.
+     *
+     * @return The description, or null if there isn't one.
+     */
+    @Nullable
+    String getDescription();
+
+    /**
+     * Indicates whether the host is still running, and so can run tasks.
+     *
+     * @return true if tasks can be run.
+     */
+    boolean isEnabled();
+
+    /**
+     * Runs a task on the thread that config files are loaded on, as soon as possible.
+     *
+     * @param task The task to be run.
+     */
+    void runTask(@NotNull Runnable task);
+
+    /**
+     * Runs a task repeatedly on the thread that config files are loaded on.
+     *
+     * @param task The task to be run.
+     * @param periodTicks How often the task is run, in ticks (twentieths of a second).
+     * @return The running task, which can be used to cancel it.
+     */
+    @NotNull
+    Task runRepeatingTask(@NotNull Runnable task, long periodTicks);
+
+    /**
+     * A task that has been scheduled by the host.
+     */
+    interface Task {
+
+        /**
+         * Stops the task from running again.
+         */
+        void cancel();
+    }
+}
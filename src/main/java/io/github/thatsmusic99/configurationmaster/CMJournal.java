@@ -0,0 +1,248 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import com.google.common.base.Charsets;
+import io.github.thatsmusic99.configurationmaster.format.BinaryFormat;
+import io.github.thatsmusic99.configurationmaster.format.CMFormat;
+import org.bukkit.configuration.ConfigurationSection;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * CMJournal is an append-only log of changes made to a CMFile whilst it is running.<br><br>
+ *
+ * Rather than rewriting the entire config file every time an option is set, each
+ * change is appended to the journal as a small record. The next time the file is
+ * loaded, the journal is replayed over the top of it, written into the config file
+ * as normal and then emptied.<br><br>
+ *
+ * Each record carries a checksum, so if the server stops partway through writing
+ * one, the damaged record is ignored and removed when the journal is replayed.
+ *
+ * @author Holly (Thatsmusic99)
+ * @see CMFile#setJournalled(boolean)
+ */
+public class CMJournal implements Closeable {
+
+    // The file that changes are appended to.
+    private final File file;
+    // The channel used to append changes, opened when first needed.
+    @Nullable
+    private FileChannel channel;
+
+    /**
+     * Creates a journal which is stored in the provided file.<br><br>
+     *
+     * The file is not created until the first change is appended.
+     *
+     * @param file The file the journal is stored in.
+     */
+    public CMJournal(@NotNull File file) {
+        this.file = file;
+    }
+
+    /**
+     * The file that the journal is stored in.
+     *
+     * @return The journal's file.
+     */
+    @NotNull
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Appends a change to the end of the journal.<br><br>
+     *
+     * The change has reached the disk once this returns, unless a {@link CMWriteBatch} is open
+     * on the current thread, in which case it is flushed when the batch is closed. If the
+     * change could not be written, the journal is left as it was before.
+     *
+     * @param path The path of the option that has changed.
+     * @param value The new value of the option. If null, the option has been removed.
+     * @throws IOException if the change could not be written.
+     */
+    public synchronized void append(@NotNull String path, @Nullable Object value) throws IOException {
+        // Build up the body first so that its length and checksum can go in front of it.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bytes);
+        byte[] pathBytes = path.getBytes(Charsets.UTF_8);
+        body.writeInt(pathBytes.length);
+        body.write(pathBytes);
+        BinaryFormat.writeValue(body, value);
+        body.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.size() + 8);
+        buffer.putInt(bytes.size());
+        buffer.putInt((int) crc.getValue());
+        buffer.put(bytes.toByteArray());
+        buffer.flip();
+
+        if (channel == null) {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        long start = channel.size();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            // Inside of a batch, the journal is flushed once along with everything else.
+            if (!CMWriteBatch.flushLater(this)) {
+                channel.force(false);
+            }
+        } catch (IOException ex) {
+            // Replaying stops at a damaged record, so leaving half of one here would lose every change appended after it.
+            try {
+                channel.truncate(start);
+            } catch (IOException truncateEx) {
+                ex.addSuppressed(truncateEx);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Makes sure every change appended so far has reached the disk.
+     *
+     * @throws IOException if the journal could not be flushed.
+     */
+    public synchronized void flush() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Applies every change in the journal to the provided configuration, in the order they were made.<br><br>
+     *
+     * If the end of the journal is damaged, the damaged part is removed.
+     *
+     * @param config The configuration for the changes to be applied to.
+     * @return The number of changes that were applied.
+     * @throws IOException if the journal could not be read.
+     */
+    public synchronized int replay(@NotNull ConfigurationSection config) throws IOException {
+        if (!file.exists()) return 0;
+        int applied = 0;
+        long valid = 0;
+        long size = file.length();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (valid + 8 <= size) {
+                int length = input.readInt();
+                int checksum = input.readInt();
+                if (length <= 0 || valid + 8 + length > size) break;
+                byte[] body = new byte[length];
+                input.readFully(body);
+                CRC32 crc = new CRC32();
+                crc.update(body);
+                if ((int) crc.getValue() != checksum) break;
+
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+                byte[] pathBytes = new byte[record.readInt()];
+                record.readFully(pathBytes);
+                String path = new String(pathBytes, Charsets.UTF_8);
+                Object value = CMFormat.fromPlain(BinaryFormat.readValue(record));
+                // Maps become sections, the same as they would when loaded from the file.
+                if (value instanceof Map) {
+                    config.createSection(path, (Map<?, ?>) value);
+                } else {
+                    config.set(path, value);
+                }
+                applied++;
+                valid += 8 + length;
+            }
+        } catch (EOFException ignored) {
+            // The last record was only partly written.
+        }
+        // Get rid of anything that couldn't be read.
+        if (valid < size) {
+            try (FileChannel truncating = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                truncating.truncate(valid);
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * The size of the journal on the disk.
+     *
+     * @return The number of bytes in the journal.
+     * @throws IOException if the size could not be checked.
+     */
+    public synchronized long size() throws IOException {
+        return channel != null ? channel.size() : file.length();
+    }
+
+    /**
+     * Empties the journal, once all of its changes have been written to the config file.
+     *
+     * @throws IOException if the journal could not be emptied.
+     */
+    public synchronized void clear() throws IOException {
+        if (channel != null) {
+            channel.truncate(0);
+        } else if (file.exists()) {
+            try (FileChannel truncating = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                truncating.truncate(0);
+            }
+        }
+    }
+
+    /**
+     * Removes the changes at the start of the journal, keeping any appended after them.<br><br>
+     *
+     * This is used once the changes that were replayed have been written to the config file,
+     * which may be some time after they were replayed if the file is saved in a batch or pack.
+     *
+     * @param size The number of bytes at the start of the journal to remove, usually its size when it was replayed.
+     * @throws IOException if the journal could not be emptied.
+     */
+    public synchronized void clear(long size) throws IOException {
+        if (size <= 0) return;
+        long current = size();
+        if (current <= size) {
+            clear();
+            return;
+        }
+        // Copy what's left into a new journal, then swap it in, so nothing is lost if the server stops partway through.
+        File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        try (FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+             FileChannel target = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = size;
+            while (position < current) {
+                position += source.transferTo(position, current - position, target);
+            }
+            target.force(true);
+        }
+        close();
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Closes the journal. Any further changes will reopen it.
+     *
+     * @throws IOException if the journal could not be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics about the last time a CMFile was loaded, such as how long it took and how well it was compressed.
+ *
+ * @author Holly (Thatsmusic99)
+ * @see CMFile#getLoadStats()
+ */
+public final class CMLoadStats {
+
+    // How much space the file takes up where it's stored, in bytes.
+    private final long storedSize;
+    // How large the file is once decompressed, in bytes.
+    private final long contentSize;
+    // Whether the file was compressed.
+    private final boolean compressed;
+    // How long loading took, in nanoseconds.
+    private final long loadTime;
+    // When loading finished, in milliseconds since the epoch.
+    private final long loadedAt;
+
+    CMLoadStats(long storedSize, long contentSize, boolean compressed, long loadTime) {
+        this(storedSize, contentSize, compressed, loadTime, System.currentTimeMillis());
+    }
+
+    private CMLoadStats(long storedSize, long contentSize, boolean compressed, long loadTime, long loadedAt) {
+        this.storedSize = storedSize;
+        this.contentSize = contentSize;
+        this.compressed = compressed;
+        this.loadTime = loadTime;
+        this.loadedAt = loadedAt;
+    }
+
+    /**
+     * Adds up the statistics of several files, as if they were one big file.
+     *
+     * @param stats The statistics to be combined.
+     * @return The combined statistics, which count as compressed if any of the files were.
+     */
+    @NotNull
+    static CMLoadStats combine(@NotNull Iterable<CMLoadStats> stats) {
+        long storedSize = 0;
+        long contentSize = 0;
+        boolean compressed = false;
+        long loadTime = 0;
+        long loadedAt = 0;
+        for (CMLoadStats stat : stats) {
+            storedSize += stat.storedSize;
+            contentSize += stat.contentSize;
+            compressed |= stat.compressed;
+            loadTime += stat.loadTime;
+            loadedAt = Math.max(loadedAt, stat.loadedAt);
+        }
+        return new CMLoadStats(storedSize, contentSize, compressed, loadTime, loadedAt);
+    }
+
+    /**
+     * How much space the file takes up on the disk, or in its pack.
+     *
+     * @return The stored size in bytes.
+     */
+    public long getStoredSize() {
+        return storedSize;
+    }
+
+    /**
+     * How large the file is once it has been decompressed. If it isn't compressed, this is the same as the stored size.
+     *
+     * @return The decompressed size in bytes.
+     */
+    public long getContentSize() {
+        return contentSize;
+    }
+
+    /**
+     * Whether the file was compressed when it was read.
+     *
+     * @return true if the file was compressed.
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * How many times smaller the file is when stored, such as 6.0 for a file compressed to a sixth of its size.
+     *
+     * @return The compression ratio, or 1 if the file isn't compressed or is empty.
+     */
+    public double getCompressionRatio() {
+        if (storedSize == 0 || !compressed) return 1;
+        return (double) contentSize / storedSize;
+    }
+
+    /**
+     * How long the file took to load, including writing any new defaults and comments.
+     *
+     * @param unit The unit of time to be returned.
+     * @return The time taken.
+     */
+    public long getLoadTime(@NotNull TimeUnit unit) {
+        return unit.convert(loadTime, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * When the file finished loading.
+     *
+     * @return The time in milliseconds since the epoch.
+     */
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "CMLoadStats{storedSize=" + storedSize + ", contentSize=" + contentSize + ", compressed=" + compressed
+                + ", compressionRatio=" + String.format(Locale.ROOT, "%.2f", getCompressionRatio()) + ", loadTime=" + getLoadTime(TimeUnit.MICROSECONDS) + "us}";
+    }
+}
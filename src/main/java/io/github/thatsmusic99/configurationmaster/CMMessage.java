@@ -0,0 +1,161 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.bukkit.ChatColor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * CMMessage is a message from a config file that has been prepared to be sent.<br><br>
+ *
+ * When the message is created, its colour codes are translated and it is split up into
+ * the text between placeholders - such as {player} or {amount} - and the placeholders
+ * themselves. Filling in the placeholders is then just a matter of joining the pieces
+ * back together, rather than translating colours and replacing text on every send.<br><br>
+ *
+ * A placeholder is a name made of letters, numbers, underscores, dashes or dots inside
+ * curly brackets. Anything else inside curly brackets is left as it is.
+ *
+ * @author Holly (Thatsmusic99)
+ * @see CMFile#getMessage(String)
+ */
+public class CMMessage {
+
+    // The text between each placeholder. There is always one more of these than placeholders.
+    private final String[] text;
+    // The name of each placeholder, without the curly brackets.
+    private final String[] placeholders;
+    // Roughly how long the message is without any placeholders filled in.
+    private final int length;
+
+    /**
+     * Prepares a message, translating any colour codes that use the provided character.
+     *
+     * @param message The message to be prepared.
+     * @param colorChar The character used for colour codes, usually &amp;.
+     */
+    public CMMessage(@NotNull String message, char colorChar) {
+        String translated = ChatColor.translateAlternateColorCodes(colorChar, message);
+        List<String> text = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        // Where the current piece of text starts, and where to look for the next placeholder from.
+        int start = 0;
+        int search = 0;
+        int open;
+        while ((open = translated.indexOf('{', search)) != -1) {
+            int close = open + 1;
+            while (close < translated.length() && isNameChar(translated.charAt(close))) {
+                close++;
+            }
+            // If it's not a proper placeholder, carry on looking after the bracket.
+            if (close == open + 1 || close >= translated.length() || translated.charAt(close) != '}') {
+                search = open + 1;
+                continue;
+            }
+            text.add(translated.substring(start, open));
+            placeholders.add(translated.substring(open + 1, close));
+            start = close + 1;
+            search = start;
+        }
+        text.add(translated.substring(start));
+        this.text = text.toArray(new String[0]);
+        this.placeholders = placeholders.toArray(new String[0]);
+        this.length = translated.length();
+    }
+
+    /**
+     * Prepares a message, translating any colour codes that use &amp;.
+     *
+     * @param message The message to be prepared.
+     */
+    public CMMessage(@NotNull String message) {
+        this(message, '&');
+    }
+
+    /**
+     * The names of the placeholders in the message, in the order they appear.
+     *
+     * @return A read-only list of the placeholders, without their curly brackets.
+     */
+    @NotNull
+    public List<String> getPlaceholders() {
+        return Collections.unmodifiableList(Arrays.asList(placeholders));
+    }
+
+    /**
+     * Fills in the placeholders of the message.<br><br>
+     *
+     * Any placeholders that aren't provided are left as they are.
+     *
+     * @param values The value of each placeholder, using the placeholder name without brackets.
+     * @return The finished message.
+     */
+    @NotNull
+    public String render(@NotNull Map<String, ?> values) {
+        if (placeholders.length == 0) return text[0];
+        StringBuilder builder = new StringBuilder(length + placeholders.length * 8);
+        for (int i = 0; i < placeholders.length; i++) {
+            builder.append(text[i]);
+            Object value = values.get(placeholders[i]);
+            appendValue(builder, i, value, value != null || values.containsKey(placeholders[i]));
+        }
+        return builder.append(text[placeholders.length]).toString();
+    }
+
+    /**
+     * Fills in the placeholders of the message.<br><br>
+     *
+     * The placeholders are provided as pairs of names and values, such as
+     * <code>render("player", name, "amount", 5)</code>. Any placeholders that
+     * aren't provided are left as they are.
+     *
+     * @param pairs The name of each placeholder followed by its value.
+     * @return The finished message.
+     * @throws IllegalArgumentException if a name doesn't have a value.
+     */
+    @NotNull
+    public String render(@NotNull Object... pairs) {
+        if (pairs.length % 2 != 0) {
+            throw new IllegalArgumentException("Each placeholder needs a value.");
+        }
+        if (placeholders.length == 0) return text[0];
+        StringBuilder builder = new StringBuilder(length + placeholders.length * 8);
+        for (int i = 0; i < placeholders.length; i++) {
+            builder.append(text[i]);
+            boolean found = false;
+            Object value = null;
+            for (int j = 0; j < pairs.length; j += 2) {
+                if (placeholders[i].equals(pairs[j])) {
+                    value = pairs[j + 1];
+                    found = true;
+                    break;
+                }
+            }
+            appendValue(builder, i, value, found);
+        }
+        return builder.append(text[placeholders.length]).toString();
+    }
+
+    /**
+     * The message with its colour codes translated, but without any placeholders filled in.
+     *
+     * @return The message.
+     */
+    @Override
+    public String toString() {
+        return render(Collections.emptyMap());
+    }
+
+    private void appendValue(StringBuilder builder, int index, @Nullable Object value, boolean found) {
+        if (found) {
+            builder.append(value);
+        } else {
+            builder.append('{').append(placeholders[index]).append('}');
+        }
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+    }
+}
@@ -0,0 +1,381 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import io.github.thatsmusic99.configurationmaster.format.CMFormat;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * CMPack stores a whole folder of config files in a single archive.<br><br>
+ *
+ * Plugins which keep a file for every kit, quest or NPC can end up with thousands of tiny
+ * files, and checking, creating and opening each one of them adds up when the server starts.
+ * Once a CMFile is given a pack using {@link CMFile#setPack(CMPack)}, it is read from and
+ * written to the pack instead, which is read from the disk in one go when it is opened.<br><br>
+ *
+ * Changes are kept in memory until {@link #repack()} is called, which writes the whole
+ * archive again. To edit the files by hand, use {@link #export()} to write them out as
+ * normal files. Any of those files that are changed are picked up the next time the pack
+ * is opened or refreshed, and put back into the archive.<br><br>
+ *
+ * Packs can't hold files using {@link CMFormat#STORE}, since those write to their own file
+ * directly.
+ *
+ * @author Holly (Thatsmusic99)
+ * @see CMFile#setPack(CMPack)
+ */
+public final class CMPack {
+
+    // Marks the start of a pack, "CMPK".
+    private static final int MAGIC = 0x434D504B;
+    private static final byte VERSION = 1;
+    // The file extension used by packs.
+    private static final String EXTENSION = ".cmpack";
+
+    // The folder containing the files that have been packed.
+    private final File folder;
+    // The archive itself.
+    private final File file;
+    // The contents of the archive as it was last read or written.
+    private byte[] archive;
+    // Where each file starts in the archive, and how long it is, by name.
+    private final Map<String, int[]> index;
+    // Files that have changed since the archive was written, by name. A null value means the file was removed.
+    private final Map<String, byte[]> pending;
+    // Files exported from the pack that have been changed, and should be removed once they're packed again.
+    private final Set<File> absorbed;
+    // When the archive was last written, used to tell whether exported files have been changed since.
+    private long packedAt;
+    // Actions waiting for the changed files to be written into the archive.
+    private final List<Runnable> waiting;
+
+    private CMPack(@NotNull File folder, @NotNull File file) {
+        this.folder = folder;
+        this.file = file;
+        this.archive = new byte[0];
+        this.index = new HashMap<>();
+        this.pending = new LinkedHashMap<>();
+        this.absorbed = new LinkedHashSet<>();
+        this.waiting = new ArrayList<>();
+    }
+
+    /**
+     * Opens the pack for a folder, creating it if it doesn't exist yet.<br><br>
+     *
+     * The archive is stored in the folder as name.cmpack. Any config files in the folder that
+     * are newer than the archive - including every file, if there's no archive yet - are
+     * added to it, and the archive is written again straight away.
+     *
+     * @param folder The folder that the config files are stored in.
+     * @param name The name of the archive, without the extension.
+     * @return The pack.
+     * @throws IOException if the archive could not be read or written.
+     */
+    @NotNull
+    public static CMPack open(@NotNull File folder, @NotNull String name) throws IOException {
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+        CMPack pack = new CMPack(folder, new File(folder, name + EXTENSION));
+        pack.read();
+        if (pack.refresh() > 0) {
+            pack.repack();
+        }
+        return pack;
+    }
+
+    /**
+     * The archive that the files are stored in.
+     *
+     * @return The archive file.
+     */
+    @NotNull
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * The names of every file in the pack, including changes that haven't been packed yet.
+     *
+     * @return A sorted copy of the file names, such as "kit.yml".
+     */
+    @NotNull
+    public synchronized SortedSet<String> getFileNames() {
+        SortedSet<String> names = new TreeSet<>(index.keySet());
+        for (Map.Entry<String, byte[]> entry : pending.entrySet()) {
+            if (entry.getValue() == null) {
+                names.remove(entry.getKey());
+            } else {
+                names.add(entry.getKey());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Whether the pack contains a file.
+     *
+     * @param name The name of the file, such as "kit.yml".
+     * @return true if the file is in the pack.
+     */
+    public synchronized boolean contains(@NotNull String name) {
+        if (pending.containsKey(name)) return pending.get(name) != null;
+        return index.containsKey(name);
+    }
+
+    /**
+     * Whether anything has changed since the archive was last written.
+     *
+     * @return true if {@link #repack()} has anything to write.
+     */
+    public synchronized boolean isChanged() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * Reads a file from the pack.
+     *
+     * @param name The name of the file.
+     * @return A buffer containing the file, or null if it isn't in the pack.
+     */
+    @Nullable
+    synchronized ByteBuffer read(@NotNull String name) {
+        if (pending.containsKey(name)) {
+            byte[] data = pending.get(name);
+            return data == null ? null : ByteBuffer.wrap(data);
+        }
+        int[] entry = index.get(name);
+        return entry == null ? null : ByteBuffer.wrap(archive, entry[0], entry[1]);
+    }
+
+    /**
+     * The size of a file in the pack.
+     *
+     * @param name The name of the file.
+     * @return The size of the file in bytes, or 0 if it isn't in the pack.
+     */
+    synchronized long size(@NotNull String name) {
+        ByteBuffer data = read(name);
+        return data == null ? 0 : data.remaining();
+    }
+
+    /**
+     * Writes a file into the pack. It is kept in memory until the pack is written again.
+     *
+     * @param name The name of the file.
+     * @param data The new contents of the file.
+     */
+    synchronized void write(@NotNull String name, @NotNull byte[] data) {
+        ByteBuffer current = read(name);
+        // Files are written every time they're loaded, so don't count it as a change if nothing's different.
+        if (current != null && current.equals(ByteBuffer.wrap(data))) return;
+        pending.put(name, data);
+    }
+
+    /**
+     * Runs an action once a file has been written into the archive on the disk.<br><br>
+     *
+     * Files written to the pack are only kept in memory until {@link #repack()} is called, so
+     * anything that relies on them being saved has to wait until then. If the file hasn't
+     * changed since the archive was written, the action is run straight away.
+     *
+     * @param name The name of the file.
+     * @param action The action to run.
+     * @see CMWriteBatch#whenWritten(File, Runnable)
+     */
+    synchronized void whenPacked(@NotNull String name, @NotNull Runnable action) {
+        if (!pending.containsKey(name)) {
+            CMWriteBatch.whenWritten(file, action);
+            return;
+        }
+        waiting.add(action);
+    }
+
+    /**
+     * Renames a file in the pack, such as when it can't be read.
+     *
+     * @param from The current name of the file.
+     * @param to The new name of the file.
+     */
+    synchronized void rename(@NotNull String from, @NotNull String to) {
+        ByteBuffer data = read(from);
+        if (data == null) return;
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        pending.put(to, bytes);
+        pending.put(from, null);
+    }
+
+    /**
+     * Checks the folder for config files that have been changed since the archive was written, and adds them to the pack.<br><br>
+     *
+     * Only the folder itself is listed, so this is much cheaper than checking each file.
+     *
+     * @return The number of files that were added.
+     * @throws IOException if one of the files could not be read.
+     */
+    public synchronized int refresh() throws IOException {
+        File[] files = folder.listFiles();
+        if (files == null) return 0;
+        int added = 0;
+        for (File loose : files) {
+            if (!isConfigFile(loose.getName()) || loose.lastModified() <= packedAt || !loose.isFile()) continue;
+            byte[] data;
+            try (FileChannel channel = FileChannel.open(loose.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) == -1) break;
+                }
+                data = Arrays.copyOf(buffer.array(), buffer.position());
+            }
+            pending.put(loose.getName(), data);
+            absorbed.add(loose);
+            added++;
+        }
+        return added;
+    }
+
+    /**
+     * Writes the archive again with any changes made since it was last written.<br><br>
+     *
+     * If it is written outside of a {@link CMWriteBatch}, any exported files that were
+     * changed and picked up by the pack are removed afterwards.
+     *
+     * @return true if anything had changed and the archive was written.
+     * @throws IOException if the archive could not be written.
+     */
+    public synchronized boolean repack() throws IOException {
+        if (pending.isEmpty() && file.exists()) return false;
+        // Gather up every file, with the changed ones replacing what's in the archive.
+        SortedMap<String, ByteBuffer> files = new TreeMap<>();
+        for (String name : index.keySet()) {
+            files.put(name, read(name));
+        }
+        for (Map.Entry<String, byte[]> entry : pending.entrySet()) {
+            if (entry.getValue() == null) {
+                files.remove(entry.getKey());
+            } else {
+                files.put(entry.getKey(), ByteBuffer.wrap(entry.getValue()));
+            }
+        }
+        long now = System.currentTimeMillis();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+        output.writeLong(now);
+        output.writeInt(files.size());
+        // The index comes first, so that it can be read without going through the files themselves.
+        int offset = 0;
+        for (Map.Entry<String, ByteBuffer> entry : files.entrySet()) {
+            output.writeUTF(entry.getKey());
+            output.writeInt(offset);
+            output.writeInt(entry.getValue().remaining());
+            offset += entry.getValue().remaining();
+        }
+        for (ByteBuffer data : files.values()) {
+            output.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        }
+        output.flush();
+        byte[] written = bytes.toByteArray();
+        CMWriteBatch.write(file, written);
+
+        parse(written);
+        pending.clear();
+        // Anything waiting for the files to be saved can go ahead once the archive is on the disk.
+        for (Runnable action : waiting) {
+            CMWriteBatch.whenWritten(file, action);
+        }
+        waiting.clear();
+        // If the archive is part of a batch, it might not make it onto the disk, so keep the files that were picked up.
+        if (CMWriteBatch.current() == null) {
+            for (File loose : absorbed) {
+                loose.delete();
+            }
+        }
+        absorbed.clear();
+        return true;
+    }
+
+    /**
+     * Writes every file in the pack out to the folder as a normal file, so that they can be edited by hand.<br><br>
+     *
+     * Files that are then changed are added back into the pack the next time it is opened,
+     * or when {@link #refresh()} is called. Files that aren't changed are ignored.
+     *
+     * @return The number of files written.
+     * @throws IOException if any of the files could not be written.
+     */
+    public synchronized int export() throws IOException {
+        // Write any changes first, so that the exported files aren't mistaken for newer ones.
+        repack();
+        int exported = 0;
+        for (String name : getFileNames()) {
+            ByteBuffer data = read(name);
+            if (data == null) continue;
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            CMWriteBatch.writeNow(new File(folder, name), bytes, packedAt);
+            exported++;
+        }
+        return exported;
+    }
+
+    private void read() throws IOException {
+        File readable = CMWriteBatch.readable(file);
+        if (!readable.exists()) return;
+        byte[] data;
+        // The whole archive is read in one go, rather than opening each file separately.
+        try (FileChannel channel = FileChannel.open(readable.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) == -1) break;
+            }
+            data = Arrays.copyOf(buffer.array(), buffer.position());
+        }
+        parse(data);
+    }
+
+    private void parse(byte[] data) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(data));
+        if (input.readInt() != MAGIC) {
+            throw new IOException(file.getName() + " is not a config pack.");
+        }
+        byte version = input.readByte();
+        if (version != VERSION) {
+            throw new IOException(file.getName() + " uses an unknown pack version (" + version + ").");
+        }
+        long packedAt = input.readLong();
+        int count = input.readInt();
+        Map<String, int[]> index = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            index.put(input.readUTF(), new int[]{input.readInt(), input.readInt()});
+        }
+        // Everything else is the files themselves.
+        int start = data.length - input.available();
+        for (int[] entry : index.values()) {
+            entry[0] += start;
+            if (entry[0] < start || entry[1] < 0 || entry[0] + entry[1] > data.length) {
+                throw new IOException(file.getName() + " is damaged.");
+            }
+        }
+        this.archive = data;
+        this.index.clear();
+        this.index.putAll(index);
+        this.packedAt = packedAt;
+    }
+
+    private static boolean isConfigFile(String name) {
+        for (CMFormat format : new CMFormat[]{CMFormat.YAML, CMFormat.JSON, CMFormat.BINARY}) {
+            if (!name.endsWith(format.getExtension())) continue;
+            // Files that couldn't be read are left alone.
+            return !name.endsWith("-errored" + format.getExtension());
+        }
+        return false;
+    }
+}
@@ -0,0 +1,113 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.bukkit.configuration.Configuration;
+import org.bukkit.configuration.ConfigurationSection;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CMPathIndex is a sorted index of every path in a loaded config.<br><br>
+ *
+ * Listing the keys of a section through Bukkit walks the section and builds a new set
+ * every time, which adds up when it happens on every GUI open. The index is built once
+ * and hands out read-only views instead, with the keys of each section being cached the
+ * first time they are asked for.<br><br>
+ *
+ * Paths are sorted alphabetically rather than in the order they appear in the file.
+ *
+ * @author Holly (Thatsmusic99)
+ * @see CMFile#getPathIndex()
+ */
+public class CMPathIndex {
+
+    // Every path in the config, sorted.
+    private final NavigableSet<String> paths;
+    // The keys directly inside each section, cached once they have been asked for.
+    private final Map<String, SortedSet<String>> children;
+
+    /**
+     * Builds an index of every path in a configuration, including any paths in its defaults.
+     *
+     * @param config The configuration to be indexed.
+     */
+    public CMPathIndex(@NotNull Configuration config) {
+        TreeSet<String> paths = new TreeSet<>(config.getKeys(true));
+        // Overlays read anything they don't have from their defaults.
+        if (config.getDefaults() != null) {
+            paths.addAll(config.getDefaults().getKeys(true));
+        }
+        this.paths = Collections.unmodifiableNavigableSet(paths);
+        this.children = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the keys directly inside a section, the same as {@link ConfigurationSection#getKeys(boolean)} with false.
+     *
+     * @param section The path of the section, or null for the root of the config.
+     * @return A read-only, sorted set of the keys inside the section.
+     */
+    @NotNull
+    public SortedSet<String> keysUnder(@Nullable String section) {
+        String prefix = section == null ? "" : section;
+        SortedSet<String> keys = children.get(prefix);
+        if (keys != null) return keys;
+        TreeSet<String> found = new TreeSet<>();
+        int start = prefix.isEmpty() ? 0 : prefix.length() + 1;
+        for (String path : getDeepKeys(section)) {
+            // Only the keys one level down.
+            if (path.indexOf('.', start) == -1) {
+                found.add(path.substring(start));
+            }
+        }
+        keys = Collections.unmodifiableSortedSet(found);
+        children.put(prefix, keys);
+        return keys;
+    }
+
+    /**
+     * Returns the full paths of everything inside a section, the same as {@link ConfigurationSection#getKeys(boolean)} with true.
+     *
+     * @param section The path of the section, or null for the root of the config.
+     * @return A read-only, sorted view of the full paths inside the section.
+     */
+    @NotNull
+    public NavigableSet<String> getDeepKeys(@Nullable String section) {
+        if (section == null || section.isEmpty()) return paths;
+        // Every path inside the section sits between "section." and "section/".
+        return paths.subSet(section + ".", true, section + "/", false);
+    }
+
+    /**
+     * Returns the full paths between two paths.
+     *
+     * @param from The lowest path to be included.
+     * @param to The path to stop at, which isn't included.
+     * @return A read-only, sorted view of the paths in the range.
+     */
+    @NotNull
+    public NavigableSet<String> getKeysBetween(@NotNull String from, @NotNull String to) {
+        return paths.subSet(from, true, to, false);
+    }
+
+    /**
+     * Checks whether a path exists in the index.
+     *
+     * @param path The path to be checked.
+     * @return true if the path exists.
+     */
+    public boolean contains(@NotNull String path) {
+        return paths.contains(path);
+    }
+
+    /**
+     * The number of paths in the index, including sections.
+     *
+     * @return The size of the index.
+     */
+    public int size() {
+        return paths.size();
+    }
+}
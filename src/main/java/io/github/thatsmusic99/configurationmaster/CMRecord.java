@@ -0,0 +1,184 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * CMRecord holds several options that were read from the same section at once.<br><br>
+ *
+ * Rather than calling a getter for every option of - for example - a kit, the section
+ * is looked up once and every option is read into the record. Options are then fetched
+ * using their position in the list of keys that was asked for, which is just an array
+ * lookup.<br><br>
+ *
+ * The getters convert values the same way the getters in {@link CMFile} do.
+ *
+ * @author Holly (Thatsmusic99)
+ * @see CMFile#getRecord(String, String...)
+ */
+public class CMRecord {
+
+    // The keys that were read, relative to the section.
+    private final String[] keys;
+    // The values of each key, in the same order.
+    private final Object[] values;
+
+    CMRecord(@NotNull String[] keys, @NotNull Object[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * The number of options in the record.
+     *
+     * @return The number of keys that were read.
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Returns the key that was read at a given position.
+     *
+     * @param index The position of the key.
+     * @return The key, relative to the section it was read from.
+     */
+    @NotNull
+    public String getKey(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Returns the raw value read at a given position.
+     *
+     * @param index The position of the key.
+     * @return The value, or null if it doesn't exist.
+     */
+    @Nullable
+    public Object get(int index) {
+        return values[index];
+    }
+
+    /**
+     * Returns a string read at a given position.
+     *
+     * @param index The position of the key.
+     * @return The value as a string, or null if it doesn't exist.
+     */
+    @Nullable
+    public String getString(int index) {
+        Object value = values[index];
+        return value == null ? null : String.valueOf(value);
+    }
+
+    /**
+     * Returns an integer read at a given position. If an integer is not found, the default value is returned.
+     *
+     * @param index The position of the key.
+     * @param defaultValue The value to be returned if an integer is not found.
+     * @return The integer, or defaultValue if not found.
+     */
+    public int getInteger(int index, int defaultValue) {
+        Object value = values[index];
+        if (value instanceof Integer) return (Integer) value;
+        if (value == null) return defaultValue;
+        try {
+            return Integer.parseInt(String.valueOf(value));
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns a long read at a given position. If a long is not found, the default value is returned.
+     *
+     * @param index The position of the key.
+     * @param defaultValue The value to be returned if a long is not found.
+     * @return The long, or defaultValue if not found.
+     */
+    public long getLong(int index, long defaultValue) {
+        Object value = values[index];
+        if (value instanceof Integer || value instanceof Long) return ((Number) value).longValue();
+        if (value == null) return defaultValue;
+        try {
+            return Long.parseLong(String.valueOf(value));
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns a double read at a given position. If a double is not found, the default value is returned.
+     *
+     * @param index The position of the key.
+     * @param defaultValue The value to be returned if a double is not found.
+     * @return The double, or defaultValue if not found.
+     */
+    public double getDouble(int index, double defaultValue) {
+        Object value = values[index];
+        if (value instanceof Double) return (Double) value;
+        if (value == null) return defaultValue;
+        try {
+            return Double.parseDouble(String.valueOf(value));
+        } catch (NumberFormatException ex) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Returns a boolean read at a given position. If the value does not exist, the default value is returned.
+     *
+     * @param index The position of the key.
+     * @param defaultValue The value to be returned if the value does not exist.
+     * @return The boolean, or defaultValue if not found.
+     */
+    public boolean getBoolean(int index, boolean defaultValue) {
+        Object value = values[index];
+        if (value instanceof Boolean) return (Boolean) value;
+        if (value == null) return defaultValue;
+        return Boolean.parseBoolean(String.valueOf(value));
+    }
+
+    /**
+     * Returns a list of strings read at a given position. If a list is not found, the default value is returned.
+     *
+     * @param index The position of the key.
+     * @param defaultValue The value to be returned if a list is not found.
+     * @return The list of strings, or defaultValue if not found.
+     */
+    public List<String> getStringList(int index, List<String> defaultValue) {
+        Object value = values[index];
+        if (!(value instanceof List)) return defaultValue;
+        List<String> list = new ArrayList<>();
+        for (Object item : (List<?>) value) {
+            if (item != null) {
+                list.add(String.valueOf(item));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns a copy of every value in the record.
+     *
+     * @return The values, in the same order as the keys.
+     */
+    @NotNull
+    public Object[] toArray() {
+        return Arrays.copyOf(values, values.length);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("CMRecord{");
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) builder.append(", ");
+            builder.append(keys[i]).append('=').append(values[i]);
+        }
+        return builder.append('}').toString();
+    }
+}
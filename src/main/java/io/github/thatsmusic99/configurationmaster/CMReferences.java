@@ -0,0 +1,220 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Resolves references to other options - written as ${path} - inside of a CMFile's values.<br><br>
+ *
+ * References are resolved once when the file is loaded, and the results are placed
+ * straight into the config so that reading them costs nothing extra. The original
+ * values are kept, along with which options depend on which, so that when an option
+ * changes, only the values referencing it need to be resolved again.<br><br>
+ *
+ * Options in other files can be referenced as ${alias:path}, where the alias is the
+ * name the other file was added with.
+ *
+ * @author Holly (Thatsmusic99)
+ * @see CMFile#setResolvingReferences(boolean)
+ * @see CMFile#addReferenceSource(String, CMFile)
+ */
+final class CMReferences {
+
+    // Used to warn about references that can't be resolved.
+    private final Logger logger;
+    // The name of the file, used in warnings.
+    private final String fileName;
+    // Other files that can be referenced, by alias.
+    private final Map<String, CMFile> sources;
+    // The original value of every option containing a reference, by path.
+    private final Map<String, String> templates;
+    // The options that depend on each referenced path.
+    private final Map<String, Set<String>> dependents;
+    // Overridden options, which references read in place of what's in the config.
+    private Map<String, Object> overrides;
+
+    CMReferences(@NotNull Logger logger, @NotNull String fileName) {
+        this.logger = logger;
+        this.fileName = fileName;
+        this.sources = new LinkedHashMap<>();
+        this.templates = new HashMap<>();
+        this.dependents = new HashMap<>();
+        this.overrides = Collections.emptyMap();
+    }
+
+    synchronized void addSource(@NotNull String alias, @NotNull CMFile file) {
+        sources.put(alias, file);
+    }
+
+    /**
+     * Finds every option containing a reference and resolves it.
+     *
+     * @param config The config to resolve references in.
+     * @param overrides The overridden options, by path, which are kept until references are next resolved.
+     */
+    synchronized void resolveAll(@NotNull ConfigurationSection config, @NotNull Map<String, Object> overrides) {
+        this.overrides = overrides;
+        templates.clear();
+        dependents.clear();
+        for (String path : config.getKeys(true)) {
+            Object value = config.get(path);
+            if (value instanceof String && ((String) value).contains("${")) {
+                templates.put(path, (String) value);
+            }
+        }
+        resolve(config, templates.keySet());
+    }
+
+    /**
+     * Resolves everything that depends on an option which has just been changed.<br><br>
+     *
+     * If the option itself now contains a reference, that is resolved too.
+     *
+     * @param config The config to resolve references in.
+     * @param path The path of the option that was changed.
+     * @return The paths of the options that were resolved again.
+     */
+    synchronized Set<String> changed(@NotNull ConfigurationSection config, @NotNull String path) {
+        // The option itself might have gained or lost a reference.
+        templates.keySet().removeIf(template -> template.equals(path) || template.startsWith(path + "."));
+        Object value = config.get(path);
+        if (value instanceof String && ((String) value).contains("${")) {
+            templates.put(path, (String) value);
+        }
+        Set<String> affected = new LinkedHashSet<>();
+        if (templates.containsKey(path)) {
+            affected.add(path);
+        }
+        collectDependents(path, affected);
+        resolve(config, affected);
+        return affected;
+    }
+
+    /**
+     * Resolves everything that depends on an option in another file which has just been changed.
+     *
+     * @param config The config to resolve references in.
+     * @param source The file that was changed.
+     * @param path The path of the option that was changed, or null if the whole file was reloaded.
+     * @return The paths of the options that were resolved again.
+     */
+    synchronized Set<String> sourceChanged(@NotNull ConfigurationSection config, @NotNull CMFile source, @Nullable String path) {
+        Set<String> affected = new LinkedHashSet<>();
+        for (Map.Entry<String, CMFile> entry : sources.entrySet()) {
+            if (entry.getValue() != source) continue;
+            collectDependents(path == null ? entry.getKey() + ":" : entry.getKey() + ":" + path, affected);
+        }
+        resolve(config, affected);
+        return affected;
+    }
+
+    /**
+     * Adds every option that depends on a path - directly or through other options - to a set.
+     */
+    private void collectDependents(String path, Set<String> affected) {
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(path);
+        while (!queue.isEmpty()) {
+            String changed = queue.poll();
+            for (Map.Entry<String, Set<String>> entry : dependents.entrySet()) {
+                String referenced = entry.getKey();
+                // Anything inside a changed section, or anything in a reloaded file, counts too.
+                boolean matches = referenced.equals(changed) || referenced.startsWith(changed.endsWith(":") ? changed : changed + ".")
+                        || changed.startsWith(referenced + ".");
+                if (!matches) continue;
+                for (String dependent : entry.getValue()) {
+                    if (affected.add(dependent)) {
+                        queue.add(dependent);
+                    }
+                }
+            }
+        }
+    }
+
+    private void resolve(ConfigurationSection config, Collection<String> paths) {
+        Map<String, Boolean> state = new HashMap<>();
+        for (String path : new ArrayList<>(paths)) {
+            if (templates.containsKey(path)) {
+                resolve(config, path, state);
+            }
+        }
+    }
+
+    /**
+     * Resolves a single option, resolving anything it references first.
+     *
+     * @param state Whether each option is being resolved (false) or has been resolved (true).
+     * @return The resolved value, or null if it is part of a cycle.
+     */
+    @Nullable
+    private Object resolve(ConfigurationSection config, String path, Map<String, Boolean> state) {
+        Boolean resolved = state.get(path);
+        if (resolved != null) {
+            if (resolved) return config.get(path);
+            logger.warning("The option " + path + " in " + fileName + " references itself, so it can't be resolved.");
+            return null;
+        }
+        state.put(path, false);
+        String template = templates.get(path);
+        // Clear out the old dependencies first, they'll be added again below.
+        for (Set<String> paths : dependents.values()) {
+            paths.remove(path);
+        }
+
+        Object result;
+        int start = template.indexOf("${");
+        int end = template.indexOf('}', start);
+        if (start == 0 && end == template.length() - 1) {
+            // If the whole value is a reference, keep the type of what's referenced.
+            String reference = template.substring(2, end);
+            dependents.computeIfAbsent(reference, key -> new HashSet<>()).add(path);
+            result = lookup(config, reference, path, state);
+            if (result == null) {
+                result = template;
+            }
+        } else {
+            StringBuilder builder = new StringBuilder();
+            int last = 0;
+            while (start != -1 && end != -1) {
+                builder.append(template, last, start);
+                String reference = template.substring(start + 2, end);
+                dependents.computeIfAbsent(reference, key -> new HashSet<>()).add(path);
+                Object value = lookup(config, reference, path, state);
+                builder.append(value == null ? template.substring(start, end + 1) : value);
+                last = end + 1;
+                start = template.indexOf("${", last);
+                end = start == -1 ? -1 : template.indexOf('}', start);
+            }
+            builder.append(template, last, template.length());
+            result = builder.toString();
+        }
+        config.set(path, result);
+        state.put(path, true);
+        return result;
+    }
+
+    @Nullable
+    private Object lookup(ConfigurationSection config, String reference, String path, Map<String, Boolean> state) {
+        int colon = reference.indexOf(':');
+        Object value;
+        if (colon > 0 && sources.containsKey(reference.substring(0, colon))) {
+            value = sources.get(reference.substring(0, colon)).get(reference.substring(colon + 1));
+        } else if (templates.containsKey(reference)) {
+            // Cycles have already been warned about.
+            return resolve(config, reference, state);
+        } else if (overrides.containsKey(reference)) {
+            value = overrides.get(reference);
+        } else {
+            value = config.get(reference);
+        }
+        if (value == null || value instanceof ConfigurationSection) {
+            logger.warning("The option " + path + " in " + fileName + " references " + reference + ", which doesn't exist.");
+            return null;
+        }
+        return value;
+    }
+}
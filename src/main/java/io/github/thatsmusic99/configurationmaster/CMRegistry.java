@@ -0,0 +1,170 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CMRegistry keeps track of a plugin's config files and unloads the ones that aren't being used.<br><br>
+ *
+ * Plugins which have lots of rarely used files - such as old event configs - would otherwise
+ * keep every single one of them in memory for as long as the server is running. Once a file
+ * is registered, it is unloaded if it hasn't been read for a while, or if the loaded files
+ * take up more than the memory budget, starting with the least recently used one.<br><br>
+ *
+ * Unloaded files are loaded again as soon as one of their options is read, so nothing needs
+ * to change in how the files are used.
+ *
+ * @author Holly (Thatsmusic99)
+ * @see CMFile#unload()
+ */
+public class CMRegistry {
+
+    // Whatever the files belong to, usually a plugin.
+    private final CMHost host;
+    // Every file being tracked.
+    private final Set<CMFile> files;
+    // How long a file can go unused before it is unloaded, in milliseconds.
+    private long idleTimeout;
+    // How much disk space the loaded files can take up before some are unloaded, in bytes.
+    private long memoryBudget;
+    // The task checking for files to unload.
+    @Nullable
+    private CMHost.Task task;
+
+    /**
+     * Creates a registry for a plugin's files.<br><br>
+     *
+     * By default, files are unloaded after going unused for 30 minutes, and there is no memory budget.
+     *
+     * @param plugin The plugin the files belong to.
+     */
+    public CMRegistry(@NotNull Plugin plugin) {
+        this(new BukkitHost(plugin));
+    }
+
+    /**
+     * Creates a registry for files outside of a Bukkit plugin.
+     *
+     * @param host Whatever the files belong to.
+     * @see StandaloneHost
+     */
+    public CMRegistry(@NotNull CMHost host) {
+        this.host = host;
+        this.files = new LinkedHashSet<>();
+        this.idleTimeout = TimeUnit.MINUTES.toMillis(30);
+        this.memoryBudget = 0;
+    }
+
+    /**
+     * Starts tracking a file so that it can be unloaded when it isn't being used.
+     *
+     * @param file The file to be tracked.
+     */
+    public synchronized void register(@NotNull CMFile file) {
+        files.add(file);
+    }
+
+    /**
+     * Stops tracking a file. It will be left loaded from now on.
+     *
+     * @param file The file to stop tracking.
+     */
+    public synchronized void unregister(@NotNull CMFile file) {
+        files.remove(file);
+    }
+
+    /**
+     * Sets how long a file can go without being used before it is unloaded.
+     *
+     * @param time The amount of time, or 0 to never unload files for being idle.
+     * @param unit The unit of time being used.
+     */
+    public synchronized void setIdleTimeout(long time, @NotNull TimeUnit unit) {
+        this.idleTimeout = unit.toMillis(time);
+    }
+
+    /**
+     * Sets how much memory the loaded files can use before the least recently used ones are unloaded.<br><br>
+     *
+     * Since the exact memory used by a file is expensive to work out, the size of each file
+     * on the disk is used instead.
+     *
+     * @param bytes The budget in bytes, or 0 for no budget.
+     */
+    public synchronized void setMemoryBudget(long bytes) {
+        this.memoryBudget = bytes;
+    }
+
+    /**
+     * Starts checking for files to unload every so often.<br><br>
+     *
+     * The check runs on the main thread, since loading files again may call
+     * {@link CMFile#loadDefaults()}.
+     *
+     * @param periodTicks How often the check is made, in ticks.
+     */
+    public synchronized void start(long periodTicks) {
+        stop();
+        task = host.runRepeatingTask(this::unloadUnused, periodTicks);
+    }
+
+    /**
+     * Stops checking for files to unload.
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * Unloads any files that have been idle for too long, then any more that are needed to stay within the memory budget.
+     *
+     * @return The number of files that were unloaded.
+     */
+    public synchronized int unloadUnused() {
+        long now = System.currentTimeMillis();
+        int unloaded = 0;
+        List<CMFile> loaded = new ArrayList<>();
+        for (CMFile file : files) {
+            if (!file.isLoaded()) continue;
+            if (idleTimeout > 0 && now - file.getLastAccessed() >= idleTimeout && file.unload()) {
+                unloaded++;
+            } else {
+                loaded.add(file);
+            }
+        }
+        if (memoryBudget <= 0) return unloaded;
+
+        long total = 0;
+        for (CMFile file : loaded) {
+            total += file.getFileSize();
+        }
+        // Go through the least recently used files first.
+        loaded.sort(Comparator.comparingLong(CMFile::getLastAccessed));
+        for (CMFile file : loaded) {
+            if (total <= memoryBudget) break;
+            long size = file.getFileSize();
+            if (file.unload()) {
+                total -= size;
+                unloaded++;
+            }
+        }
+        return unloaded;
+    }
+
+    /**
+     * The files being tracked.
+     *
+     * @return A copy of the files being tracked.
+     */
+    @NotNull
+    public synchronized List<CMFile> getFiles() {
+        return new ArrayList<>(files);
+    }
+}
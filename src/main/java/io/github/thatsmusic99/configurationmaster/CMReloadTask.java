@@ -0,0 +1,205 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.bukkit.configuration.file.FileConfiguration;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs a reload of a CMFile a few steps at a time, rather than all in one go.<br><br>
+ *
+ * Each time the task is run, it works through as many steps as it can within its time
+ * budget, then asks the scheduler to run it again. The file being loaded is kept here in
+ * the meantime, so anything reading from the CMFile between runs still sees the options
+ * from before the reload started. Only once every step is done is the new file put in
+ * place of the old one.
+ *
+ * @author Holly (Thatsmusic99)
+ * @see CMFile#reloadIncrementally(Executor, long, java.util.concurrent.TimeUnit)
+ */
+final class CMReloadTask implements Runnable {
+
+    // The file being reloaded.
+    private final CMFile file;
+    // Runs the task again, usually on the next tick.
+    private final Executor scheduler;
+    // How long each run can take before waiting for the next one, in nanoseconds.
+    private final long budget;
+    // The steps left to do, in order.
+    private final ArrayDeque<Step> steps;
+    // Completed once the reload has finished.
+    private final CompletableFuture<Void> future;
+    // Options set on the file whilst the reload was in progress, which are set again on the reloaded file.
+    private final Map<String, Object> changes;
+    // How much time has been spent on the reload so far, in nanoseconds.
+    private long workTime;
+    // When the current run started.
+    private long runStart;
+
+    // The state of the file being loaded, which is swapped into the CMFile whilst each step runs.
+    @Nullable
+    FileConfiguration config;
+    @Nullable
+    FileConfiguration tempConfig;
+    @Nullable
+    List<String> currentLines;
+    @Nullable
+    HashMap<String, String> comments;
+    @Nullable
+    List<String> pendingComments;
+    boolean isNew;
+    // The number of changes replayed from the journal.
+    int replayed;
+    // The version of the reloaded file, worked out before it's put in place, and the version it was based on.
+    @Nullable
+    CMSnapshot snapshot;
+    @Nullable
+    CMSnapshot previousSnapshot;
+
+    CMReloadTask(@NotNull CMFile file, @NotNull Executor scheduler, long budget) {
+        this.file = file;
+        this.scheduler = scheduler;
+        this.budget = budget;
+        this.steps = new ArrayDeque<>();
+        this.future = new CompletableFuture<>();
+        this.changes = new LinkedHashMap<>();
+    }
+
+    /**
+     * Adds a step to the end of the reload.
+     *
+     * @param step The step to be added.
+     */
+    void then(@NotNull Step step) {
+        steps.addLast(step);
+    }
+
+    /**
+     * Adds a step to be run straight after the current one, such as when a step is split up further.
+     *
+     * @param step The step to be added.
+     */
+    void next(@NotNull Step step) {
+        steps.addFirst(step);
+    }
+
+    /**
+     * Schedules the first run of the task.
+     *
+     * @return The future that is completed once the reload has finished.
+     */
+    @NotNull
+    CompletableFuture<Void> start() {
+        schedule();
+        return future;
+    }
+
+    @NotNull
+    CompletableFuture<Void> getFuture() {
+        return future;
+    }
+
+    /**
+     * Stops the reload, leaving the file as it was before it started.
+     */
+    void cancel() {
+        future.cancel(false);
+    }
+
+    /**
+     * Records an option that was set whilst the reload was in progress.
+     *
+     * @param path The path of the option.
+     * @param value The value it was set to.
+     */
+    synchronized void changed(@NotNull String path, @Nullable Object value) {
+        // Setting it again moves it to the end, so the changes are applied in the order they were last made.
+        changes.remove(path);
+        changes.put(path, value);
+    }
+
+    /**
+     * Takes the options that were set whilst the reload was in progress.
+     *
+     * @return The changes, in the order they were made.
+     */
+    @NotNull
+    synchronized Map<String, Object> takeChanges() {
+        Map<String, Object> taken = new LinkedHashMap<>(changes);
+        changes.clear();
+        return taken;
+    }
+
+    /**
+     * Whether there's any time left in the current run, for steps that can stop early and carry on in another step.
+     *
+     * @return true if the budget hasn't been used up yet.
+     */
+    boolean hasTime() {
+        return System.nanoTime() - runStart < budget;
+    }
+
+    /**
+     * How much time has been spent running the steps of the reload, not including the time spent waiting in between.
+     *
+     * @return The time taken in nanoseconds.
+     */
+    long getWorkTime() {
+        return workTime;
+    }
+
+    @Override
+    public void run() {
+        if (future.isDone()) return;
+        long start = System.nanoTime();
+        runStart = start;
+        try {
+            // The time is only checked between steps, so a step is never stopped partway through.
+            // At least one step is run each time though, otherwise a small enough budget would never get anywhere.
+            boolean ran = false;
+            while (!steps.isEmpty() && !future.isDone() && (!ran || System.nanoTime() - start < budget)) {
+                file.runReloadStep(this, steps.poll());
+                ran = true;
+            }
+            if (future.isDone()) return;
+            // Only put the new file in place if there's still time to, otherwise wait for the next run.
+            boolean finished = steps.isEmpty() && (!ran || System.nanoTime() - start < budget);
+            workTime += System.nanoTime() - start;
+            if (!finished) {
+                schedule();
+                return;
+            }
+            file.publishReload(this);
+            future.complete(null);
+        } catch (Exception ex) {
+            file.abandonReload(this);
+            future.completeExceptionally(ex);
+        }
+    }
+
+    private void schedule() {
+        try {
+            scheduler.execute(this);
+        } catch (RuntimeException ex) {
+            // Most likely the plugin has been disabled, so the reload can never finish.
+            file.abandonReload(this);
+            future.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * A single step of the reload.
+     */
+    interface Step {
+
+        /**
+         * Does the step. Whilst it is running, the CMFile holds the file being loaded rather than the current one.
+         *
+         * @throws Exception if the reload could not continue.
+         */
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,444 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import io.github.thatsmusic99.configurationmaster.format.CMFormat;
+import org.bukkit.Bukkit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * CMService lets every plugin using ConfigurationMaster share the same threads and file watcher.<br><br>
+ *
+ * When the ConfigurationMaster plugin is installed, it provides a single service that other
+ * plugins register their files with, rather than each plugin loading and watching its files
+ * on its own. The service owns:
+ * <ul>
+ *     <li>One pool of I/O threads with a fixed size. Files registered to be loaded off of the
+ *     main thread are reloaded on these in parallel, and the files reloaded on each thread are
+ *     written to the disk in one batch.</li>
+ *     <li>One watch service, which reloads files when they are changed on the disk.</li>
+ *     <li>The /cm reload command, which reloads every registered file, and /cm stats, which
+ *     shows their combined load statistics.</li>
+ * </ul>
+ *
+ * By default, files are reloaded on the main thread a step at a time using
+ * {@link CMFile#reloadIncrementally(long, TimeUnit)}, since {@link CMFile#loadDefaults()} is
+ * usually written expecting to run there. Files whose defaults are safe to load from any thread
+ * can opt in to the I/O threads with {@link #register(CMFile, boolean)}.
+ *
+ * <pre>
+ * CMService service = CMService.get();
+ * if (service != null) {
+ *     service.register(config);
+ * }
+ * </pre>
+ *
+ * Plugins that shade ConfigurationMaster into their own package have their own copy of this
+ * class, so they can't see the service and {@link #get()} returns null. Their files should be
+ * loaded as normal instead.
+ *
+ * @author Holly (Thatsmusic99)
+ * @see ConfigurationMaster
+ */
+public final class CMService implements Closeable {
+
+    // How long to wait for a file to stop changing before reloading it, in milliseconds.
+    private static final long WATCH_DELAY = 500;
+
+    // Whatever is running the service, usually the ConfigurationMaster plugin.
+    private final CMHost host;
+    // The registered files, mapped to whether they have to be loaded on the main thread.
+    private final Map<CMFile, Boolean> files;
+    // The threads files are reloaded on.
+    private final ThreadPoolExecutor executor;
+    // The number of threads reloading files.
+    private final int threads;
+    // How long files loaded on the main thread can spend reloading each tick, in nanoseconds.
+    private volatile long reloadBudget;
+    // Watches the folders of the registered files for changes, created when first needed.
+    @Nullable
+    private WatchService watcher;
+    // The folders being watched.
+    private final Set<Path> watched;
+    // Whether the service has been closed.
+    private volatile boolean closed;
+
+    /**
+     * Creates a service. Usually, this is only done by the ConfigurationMaster plugin, and other plugins use {@link #get()}.
+     *
+     * @param host Whatever is running the service.
+     * @param threads The number of threads that files are reloaded on.
+     * @throws IllegalArgumentException if there isn't at least one thread.
+     */
+    public CMService(@NotNull CMHost host, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("There must be at least one thread, but " + threads + " were given.");
+        }
+        this.host = host;
+        this.files = new LinkedHashMap<>();
+        this.threads = threads;
+        this.reloadBudget = TimeUnit.MILLISECONDS.toNanos(2);
+        this.watched = new HashSet<>();
+        AtomicInteger count = new AtomicInteger();
+        // If there's more work than the queue can hold, whoever is adding it does it themselves rather than piling up more.
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(1024), runnable -> {
+            Thread thread = new Thread(runnable, "ConfigurationMaster I/O #" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        // Don't keep threads around between reloads.
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Gets the service provided by the ConfigurationMaster plugin.
+     *
+     * @return The service, or null if the plugin isn't installed or enabled, or this isn't running on a server.
+     */
+    @Nullable
+    public static CMService get() {
+        try {
+            if (Bukkit.getServer() == null) return null;
+            return Bukkit.getServicesManager().load(CMService.class);
+        } catch (LinkageError ex) {
+            // Bukkit isn't there at all.
+            return null;
+        }
+    }
+
+    /**
+     * Registers a file so that it is reloaded and watched by the service. The file is reloaded on the main thread.
+     *
+     * @param file The file to be registered.
+     * @see #register(CMFile, boolean)
+     */
+    public void register(@NotNull CMFile file) {
+        register(file, true);
+    }
+
+    /**
+     * Registers a file so that it is reloaded and watched by the service.<br><br>
+     *
+     * Files loaded off of the main thread are reloaded on the service's own threads, so their
+     * {@link CMFile#loadDefaults()} must not use parts of the server that can only be used from
+     * the main thread. Other threads keep reading the options from before the reload until it
+     * has finished. Files are unregistered automatically once their plugin has been disabled.
+     *
+     * @param file The file to be registered.
+     * @param mainThread true if the file has to be loaded on the main thread, false to load it on the I/O threads.
+     */
+    public void register(@NotNull CMFile file, boolean mainThread) {
+        synchronized (files) {
+            files.put(file, mainThread);
+        }
+        watch(file);
+    }
+
+    /**
+     * Stops reloading and watching a file.
+     *
+     * @param file The file to be unregistered.
+     */
+    public void unregister(@NotNull CMFile file) {
+        synchronized (files) {
+            files.remove(file);
+        }
+    }
+
+    /**
+     * The files registered with the service, leaving out any whose plugin has been disabled.
+     *
+     * @return A copy of the registered files.
+     */
+    @NotNull
+    public List<CMFile> getFiles() {
+        synchronized (files) {
+            // Plugins don't have to unregister their files when they're disabled, so tidy up after them.
+            files.keySet().removeIf(file -> !file.getHost().isEnabled());
+            return new ArrayList<>(files.keySet());
+        }
+    }
+
+    /**
+     * The threads that files are reloaded on. Plugins can use these for their own file work too,
+     * rather than creating threads of their own.
+     *
+     * @return The executor running the I/O threads.
+     */
+    @NotNull
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets how long each file loaded on the main thread can spend reloading each tick.
+     *
+     * @param budget The amount of time.
+     * @param unit The unit of time being used.
+     * @see CMFile#reloadIncrementally(long, TimeUnit)
+     */
+    public void setReloadBudget(long budget, @NotNull TimeUnit unit) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("The budget must be positive, but was " + budget + ".");
+        }
+        this.reloadBudget = unit.toNanos(budget);
+    }
+
+    /**
+     * Reloads every registered file.
+     *
+     * @return A future that is completed once every file has been reloaded.
+     * @see #reload(Collection)
+     */
+    @NotNull
+    public CompletableFuture<Void> reloadAll() {
+        return reload(getFiles());
+    }
+
+    /**
+     * Reloads files in parallel.<br><br>
+     *
+     * The files are shared out between the service's threads, keeping overlays with the file
+     * they overlay so that they are loaded in order. Each thread writes the files it loads in
+     * one {@link CMWriteBatch}. Files that have to be loaded on the main thread are reloaded
+     * a step at a time there instead. If a file fails to load, a warning is logged and the
+     * rest are still reloaded.
+     *
+     * @param files The files to be reloaded.
+     * @return A future that is completed once every file has been reloaded.
+     */
+    @NotNull
+    public CompletableFuture<Void> reload(@NotNull Collection<CMFile> files) {
+        // Files overlaying each other are kept together, with the file they overlay first.
+        Map<CMFile, List<CMFile>> families = new LinkedHashMap<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (CMFile file : files) {
+            boolean mainThread;
+            synchronized (this.files) {
+                mainThread = this.files.getOrDefault(file, true);
+            }
+            if (mainThread) {
+                futures.add(file.reloadIncrementally(reloadBudget, TimeUnit.NANOSECONDS).handle((result, ex) -> {
+                    if (ex != null) {
+                        warn(file, ex);
+                    }
+                    watch(file);
+                    return null;
+                }));
+                continue;
+            }
+            CMFile root = file;
+            while (root.getParent() != null) {
+                root = root.getParent();
+            }
+            families.computeIfAbsent(root, key -> new ArrayList<>()).add(file);
+        }
+        List<List<CMFile>> sorted = new ArrayList<>(families.values());
+        for (List<CMFile> family : sorted) {
+            family.sort(Comparator.comparingInt(CMService::depth));
+        }
+        // Share out the largest families first, so that each thread ends up with a similar amount of work.
+        sorted.sort(Comparator.comparingLong(CMService::size).reversed());
+        int groups = Math.min(threads, sorted.size());
+        List<List<CMFile>> work = new ArrayList<>();
+        long[] sizes = new long[groups];
+        for (int i = 0; i < groups; i++) {
+            work.add(new ArrayList<>());
+        }
+        for (List<CMFile> family : sorted) {
+            int smallest = 0;
+            for (int i = 1; i < groups; i++) {
+                if (sizes[i] < sizes[smallest]) smallest = i;
+            }
+            work.get(smallest).addAll(family);
+            sizes[smallest] += size(family);
+        }
+        for (List<CMFile> group : work) {
+            futures.add(CompletableFuture.runAsync(() -> loadAll(group), executor));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * The load statistics of the registered files, combined for each plugin.
+     *
+     * @return The combined statistics, by plugin name. Plugins with no loaded files are left out.
+     */
+    @NotNull
+    public SortedMap<String, CMLoadStats> getStats() {
+        Map<String, List<CMLoadStats>> byPlugin = new HashMap<>();
+        for (CMFile file : getFiles()) {
+            CMLoadStats stats = file.getLoadStats();
+            if (stats == null) continue;
+            byPlugin.computeIfAbsent(file.getHost().getName(), key -> new ArrayList<>()).add(stats);
+        }
+        SortedMap<String, CMLoadStats> combined = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<CMLoadStats>> entry : byPlugin.entrySet()) {
+            combined.put(entry.getKey(), CMLoadStats.combine(entry.getValue()));
+        }
+        return combined;
+    }
+
+    /**
+     * The load statistics of every registered file combined.
+     *
+     * @return The combined statistics.
+     */
+    @NotNull
+    public CMLoadStats getTotalStats() {
+        List<CMLoadStats> all = new ArrayList<>();
+        for (CMFile file : getFiles()) {
+            CMLoadStats stats = file.getLoadStats();
+            if (stats != null) {
+                all.add(stats);
+            }
+        }
+        return CMLoadStats.combine(all);
+    }
+
+    /**
+     * Stops watching for changes and shuts down the I/O threads, waiting a few seconds for any reloads to finish.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (watched) {
+            if (watcher != null) {
+                try {
+                    watcher.close();
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
+                watcher = null;
+            }
+        }
+        executor.shutdown();
+        try {
+            // Give files being written a chance to make it onto the disk.
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void loadAll(List<CMFile> group) {
+        // Everything loaded on this thread is flushed to the disk together.
+        try (CMWriteBatch batch = CMWriteBatch.begin()) {
+            for (CMFile file : group) {
+                try {
+                    file.load();
+                } catch (RuntimeException ex) {
+                    warn(file, ex);
+                }
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        for (CMFile file : group) {
+            watch(file);
+        }
+    }
+
+    private void warn(CMFile file, Throwable ex) {
+        host.getLogger().warning("Could not reload " + file.getFile().getName() + " from " + file.getHost().getName() + ":");
+        host.getLogger().warning(String.valueOf(ex.getMessage()));
+    }
+
+    private void watch(CMFile file) {
+        // Packed files and stores aren't written as normal files.
+        if (closed || file.getPack() != null || file.getFormat() == CMFormat.STORE) return;
+        File folder = file.getFile().getAbsoluteFile().getParentFile();
+        if (folder == null || !folder.isDirectory()) return;
+        Path path = folder.toPath();
+        synchronized (watched) {
+            if (closed || watched.contains(path)) return;
+            try {
+                if (watcher == null) {
+                    watcher = path.getFileSystem().newWatchService();
+                    Thread watchThread = new Thread(this::watchForChanges, "ConfigurationMaster Watcher");
+                    watchThread.setDaemon(true);
+                    watchThread.start();
+                }
+                path.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+                watched.add(path);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    private void watchForChanges() {
+        WatchService watcher;
+        synchronized (watched) {
+            watcher = this.watcher;
+        }
+        if (watcher == null) return;
+        try {
+            while (!closed) {
+                Set<Path> changed = new HashSet<>();
+                collect(watcher.take(), changed);
+                // Editors often write a file in several goes, so wait for it to settle down first.
+                WatchKey key;
+                while ((key = watcher.poll(WATCH_DELAY, TimeUnit.MILLISECONDS)) != null) {
+                    collect(key, changed);
+                }
+                List<CMFile> reload = new ArrayList<>();
+                for (CMFile file : getFiles()) {
+                    if (!changed.contains(file.getFile().getAbsoluteFile().toPath())) continue;
+                    // Unloaded files will read the changes anyways when they're next used.
+                    if (!file.isLoaded()) continue;
+                    // Loading the file writes it too, so only reload it if it's been changed since.
+                    CMLoadStats stats = file.getLoadStats();
+                    if (stats != null && file.getFile().lastModified() <= stats.getLoadedAt()) continue;
+                    reload.add(file);
+                }
+                if (!reload.isEmpty()) {
+                    reload(reload);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ex) {
+            // The service has been closed.
+        }
+    }
+
+    private void collect(WatchKey key, Set<Path> changed) {
+        Path folder = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Too much changed to keep track of, so check every file in the folder.
+                for (CMFile file : getFiles()) {
+                    Path path = file.getFile().getAbsoluteFile().toPath();
+                    if (folder.equals(path.getParent())) {
+                        changed.add(path);
+                    }
+                }
+                continue;
+            }
+            changed.add(folder.resolve((Path) event.context()).toAbsolutePath());
+        }
+        key.reset();
+    }
+
+    private static int depth(CMFile file) {
+        int depth = 0;
+        for (CMFile parent = file.getParent(); parent != null; parent = parent.getParent()) {
+            depth++;
+        }
+        return depth;
+    }
+
+    private static long size(List<CMFile> family) {
+        long size = 0;
+        for (CMFile file : family) {
+            size += file.getFileSize();
+        }
+        return size;
+    }
+}
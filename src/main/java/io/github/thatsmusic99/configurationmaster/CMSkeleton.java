@@ -0,0 +1,257 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * The rendered comments of a CMFile, kept between loads so that they only need to be built once.<br><br>
+ *
+ * Each comment is turned into the exact lines written above its option - indentation, section
+ * banners and all - the first time the file is loaded. On later loads, the comments declared
+ * by the file are compared against the ones the skeleton was built from, and if nothing has
+ * changed, the same lines are reused.<br><br>
+ *
+ * The comments are then merged into the saved options in a single pass over the file, rather
+ * than searching the whole file again for each comment.
+ *
+ * @author Holly (Thatsmusic99)
+ * @see CMFile#writeComments()
+ */
+final class CMSkeleton {
+
+    // The comments the skeleton was built from, used to check whether it can be reused.
+    private final Map<String, String> comments;
+    // The hash of the comments, so that most changes are spotted without comparing every comment.
+    private final int fingerprint;
+    // The lines to write above each option, by path.
+    private final Map<String, List<String>> blocks;
+
+    private CMSkeleton(@NotNull Map<String, String> comments, int fingerprint) {
+        this.comments = new HashMap<>(comments);
+        this.fingerprint = fingerprint;
+        this.blocks = new HashMap<>();
+        for (Map.Entry<String, String> entry : comments.entrySet()) {
+            blocks.put(entry.getKey(), render(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Returns a skeleton for the provided comments, reusing the previous one if the comments haven't changed.
+     *
+     * @param previous The skeleton used last time the file was loaded, if any.
+     * @param comments The comments declared by the file this time.
+     * @return The skeleton to use.
+     */
+    @NotNull
+    static CMSkeleton of(@Nullable CMSkeleton previous, @NotNull Map<String, String> comments) {
+        int fingerprint = comments.hashCode();
+        if (previous != null && previous.fingerprint == fingerprint && previous.comments.equals(comments)) {
+            return previous;
+        }
+        return new CMSkeleton(comments, fingerprint);
+    }
+
+    /**
+     * Writes the comments above their options.<br><br>
+     *
+     * The path of each option is worked out from its indentation as the lines are read,
+     * so the file is only gone through once.
+     *
+     * @param lines The saved lines of the file.
+     * @return The lines with the comments added.
+     */
+    @NotNull
+    List<String> merge(@NotNull List<String> lines) {
+        if (blocks.isEmpty()) return lines;
+        List<String> result = new ArrayList<>(lines.size() + blocks.size() * 3);
+        // The key at each level of indentation leading up to the current line.
+        List<String> keys = new ArrayList<>();
+        for (String line : lines) {
+            String key = keyOf(line);
+            if (key == null) {
+                result.add(line);
+                continue;
+            }
+            int depth = indentOf(line) / 2;
+            // If the line is indented further than it could be, it's not an option.
+            if (depth > keys.size()) {
+                result.add(line);
+                continue;
+            }
+            while (keys.size() > depth) {
+                keys.remove(keys.size() - 1);
+            }
+            keys.add(key);
+            String path = pathOf(keys);
+            if (path != null) {
+                List<String> block = blocks.get(path);
+                if (block != null) {
+                    result.addAll(block);
+                }
+            }
+            result.add(line);
+        }
+        return result;
+    }
+
+    /**
+     * Builds the lines written above an option.
+     */
+    private static List<String> render(String path, String comment) {
+        String[] divisions = path.split("\\.");
+        StringBuilder indent = new StringBuilder();
+        for (int j = 1; j < divisions.length; j++) {
+            indent.append("  ");
+        }
+        List<String> lines = new ArrayList<>();
+        // Top level options get a gap above them.
+        if (divisions.length == 1) {
+            lines.add("");
+        }
+        for (String commentPart : comment.split("\n")) {
+            if (commentPart.isEmpty()) {
+                lines.add("");
+            } else if (commentPart.startsWith("CONFIG_SECTION: ")) {
+                String section = commentPart.split(": ")[1];
+                StringBuilder length = new StringBuilder();
+                length.append("###");
+                for (int j = 0; j < section.length(); j++) {
+                    length.append("#");
+                }
+                length.append("###");
+                lines.add(length.toString());
+                lines.add("#  " + section + "  #");
+                lines.add(length.toString());
+            } else {
+                lines.add(indent + "# " + commentPart);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Gets the key of an option from its line, or null if the line isn't the start of an option.
+     */
+    @Nullable
+    private static String keyOf(String line) {
+        int indent = indentOf(line);
+        if (indent == line.length() || indent % 2 != 0) return null;
+        char first = line.charAt(indent);
+        // Comments and list entries.
+        if (first == '#' || first == '-') return null;
+        // Keys are quoted when they contain anything that can't be written plainly.
+        if (first == '\'' || first == '"') {
+            StringBuilder key = new StringBuilder();
+            int end = first == '"' ? readDoubleQuoted(line, indent + 1, key) : readSingleQuoted(line, indent + 1, key);
+            if (end == -1 || end + 1 >= line.length() || line.charAt(end + 1) != ':') return null;
+            if (end + 2 < line.length() && line.charAt(end + 2) != ' ') return null;
+            return key.toString();
+        }
+        for (int i = indent; i < line.length(); i++) {
+            if (line.charAt(i) != ':') continue;
+            if (i + 1 == line.length() || line.charAt(i + 1) == ' ') {
+                return line.substring(indent, i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads a single quoted key, where two quotes stand for one.
+     *
+     * @return The position of the closing quote, or -1 if there isn't one.
+     */
+    private static int readSingleQuoted(String line, int start, StringBuilder key) {
+        for (int i = start; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c != '\'') {
+                key.append(c);
+            } else if (i + 1 < line.length() && line.charAt(i + 1) == '\'') {
+                key.append('\'');
+                i++;
+            } else {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads a double quoted key, decoding any escapes in it.
+     *
+     * @return The position of the closing quote, or -1 if there isn't one or an escape can't be read.
+     */
+    private static int readDoubleQuoted(String line, int start, StringBuilder key) {
+        for (int i = start; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') return i;
+            if (c != '\\') {
+                key.append(c);
+                continue;
+            }
+            if (++i == line.length()) return -1;
+            int hexLength = 0;
+            switch (line.charAt(i)) {
+                case '0': key.append('\0'); break;
+                case 'a': key.append('\u0007'); break;
+                case 'b': key.append('\b'); break;
+                case 't':
+                case '\t': key.append('\t'); break;
+                case 'n': key.append('\n'); break;
+                case 'v': key.append('\u000B'); break;
+                case 'f': key.append('\f'); break;
+                case 'r': key.append('\r'); break;
+                case 'e': key.append('\u001B'); break;
+                case ' ': key.append(' '); break;
+                case '"': key.append('"'); break;
+                case '\\': key.append('\\'); break;
+                case 'N': key.append('\u0085'); break;
+                case '_': key.append('\u00A0'); break;
+                case 'L': key.append('\u2028'); break;
+                case 'P': key.append('\u2029'); break;
+                case 'x': hexLength = 2; break;
+                case 'u': hexLength = 4; break;
+                case 'U': hexLength = 8; break;
+                default: return -1;
+            }
+            if (hexLength == 0) continue;
+            if (i + hexLength >= line.length()) return -1;
+            try {
+                key.appendCodePoint(Integer.parseInt(line.substring(i + 1, i + 1 + hexLength), 16));
+            } catch (IllegalArgumentException ex) {
+                return -1;
+            }
+            i += hexLength;
+        }
+        return -1;
+    }
+
+    private static int indentOf(String line) {
+        int indent = 0;
+        while (indent < line.length() && line.charAt(indent) == ' ') {
+            indent++;
+        }
+        return indent;
+    }
+
+    /**
+     * Joins the keys into a path, or returns null if one of them can't be part of a path.
+     */
+    @Nullable
+    private static String pathOf(List<String> keys) {
+        if (keys.size() == 1) {
+            String key = keys.get(0);
+            return key.indexOf('.') == -1 ? key : null;
+        }
+        StringBuilder path = new StringBuilder();
+        for (String key : keys) {
+            // A key containing a dot can't be reached through a path.
+            if (key.indexOf('.') != -1) return null;
+            if (path.length() > 0) path.append('.');
+            path.append(key);
+        }
+        return path.toString();
+    }
+}
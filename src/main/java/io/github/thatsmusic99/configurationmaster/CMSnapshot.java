@@ -0,0 +1,548 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import io.github.thatsmusic99.configurationmaster.format.CMFormat;
+import org.bukkit.configuration.ConfigurationSection;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * CMSnapshot is a read-only copy of a CMFile's options at a point in time.<br><br>
+ *
+ * Snapshots are stored as hash tries, one for each section, which are never changed once
+ * created. When an option is changed or the file is reloaded, the new snapshot is built from
+ * the previous one, and only the parts of the trie leading to a change are copied. Everything
+ * else - which is usually almost all of it - is shared between the two, so keeping many
+ * versions of a file costs little more than keeping one.<br><br>
+ *
+ * Comparing two snapshots skips anything they share, so working out what changed between
+ * them only takes as long as the changes themselves.<br><br>
+ *
+ * Values are stored the same way {@link CMFormat#toPlain(Object)} returns them, with lists
+ * and maps made read-only.
+ *
+ * @author Holly (Thatsmusic99)
+ * @see CMFile#getSnapshot()
+ * @see CMFile#rollback(CMSnapshot)
+ */
+public final class CMSnapshot {
+
+    // The top level of the config.
+    private final Node root;
+    // Which version of the file this is, starting from 1.
+    private final long version;
+    // When the snapshot was taken.
+    private final long created;
+
+    private CMSnapshot(@NotNull Node root, long version) {
+        this.root = root;
+        this.version = version;
+        this.created = System.currentTimeMillis();
+    }
+
+    /**
+     * Takes a snapshot of a config, sharing anything that hasn't changed with the previous snapshot.
+     *
+     * @param previous The previous snapshot of the config, if there is one.
+     * @param config The config to take a snapshot of.
+     * @return The new snapshot, or the previous one if nothing has changed.
+     */
+    @NotNull
+    static CMSnapshot of(@Nullable CMSnapshot previous, @NotNull ConfigurationSection config) {
+        Node root = section(previous == null ? null : previous.root, config);
+        if (previous != null && root == previous.root) return previous;
+        return new CMSnapshot(root, previous == null ? 1 : previous.version + 1);
+    }
+
+    /**
+     * Creates a new snapshot with an option changed.
+     *
+     * @param path The path of the option.
+     * @param value The new value of the option, as it is stored in the config, or null to remove it.
+     * @return The new snapshot, or this one if nothing has changed.
+     */
+    @NotNull
+    CMSnapshot with(@NotNull String path, @Nullable Object value) {
+        Node root = set(this.root, path.split("\\."), 0, value);
+        return root == this.root ? this : new CMSnapshot(root, version + 1);
+    }
+
+    /**
+     * Which version of the file this snapshot is. Each change made to the file increases this by one.
+     *
+     * @return The version number.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * When the snapshot was taken.
+     *
+     * @return The time in milliseconds since the epoch.
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * Gets the value of an option.
+     *
+     * @param path The path of the option.
+     * @return The value, a map if the path is a section, or null if it doesn't exist.
+     */
+    @Nullable
+    public Object get(@NotNull String path) {
+        Object value = root;
+        for (String key : path.split("\\.")) {
+            if (!(value instanceof Node)) return null;
+            value = ((Node) value).get(key, key.hashCode(), 0);
+        }
+        return plain(value);
+    }
+
+    /**
+     * Whether an option or section exists.
+     *
+     * @param path The path of the option.
+     * @return true if it exists.
+     */
+    public boolean contains(@NotNull String path) {
+        return get(path) != null;
+    }
+
+    /**
+     * The number of options in the snapshot, not counting sections.
+     *
+     * @return The number of options.
+     */
+    public int size() {
+        return count(root);
+    }
+
+    /**
+     * Works out the changes needed to turn this snapshot into another.<br><br>
+     *
+     * If a whole section was added or removed, it is given as a single change with the
+     * section as a map.
+     *
+     * @param other The snapshot to compare with.
+     * @return The changes, sorted by path.
+     */
+    @NotNull
+    public List<Change> diff(@NotNull CMSnapshot other) {
+        List<Change> changes = new ArrayList<>();
+        diff("", root, other.root, changes);
+        changes.sort(Comparator.comparing(Change::getPath));
+        return changes;
+    }
+
+    @Override
+    public String toString() {
+        return "CMSnapshot{version=" + version + ", options=" + size() + "}";
+    }
+
+    /**
+     * A single option that differs between two snapshots.
+     */
+    public static final class Change {
+
+        private final String path;
+        @Nullable
+        private final Object oldValue;
+        @Nullable
+        private final Object newValue;
+
+        private Change(@NotNull String path, @Nullable Object oldValue, @Nullable Object newValue) {
+            this.path = path;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+        }
+
+        /**
+         * The path of the option.
+         *
+         * @return The path.
+         */
+        @NotNull
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * The value in the snapshot being compared from.
+         *
+         * @return The old value, or null if the option was added.
+         */
+        @Nullable
+        public Object getOldValue() {
+            return oldValue;
+        }
+
+        /**
+         * The value in the snapshot being compared to.
+         *
+         * @return The new value, or null if the option was removed.
+         */
+        @Nullable
+        public Object getNewValue() {
+            return newValue;
+        }
+
+        @Override
+        public String toString() {
+            return path + ": " + oldValue + " -> " + newValue;
+        }
+    }
+
+    // -- Building snapshots --
+
+    /**
+     * Builds the trie for a section, reusing as much of the previous trie as possible.
+     */
+    private static Node section(@Nullable Node previous, ConfigurationSection section) {
+        Node node = previous == null ? Node.EMPTY : previous;
+        Set<String> keys = section.getKeys(false);
+        for (String key : keys) {
+            // Only the section's own values, not any defaults.
+            Object value = section.get(key, null);
+            if (value == null) continue;
+            node = node.put(key, key.hashCode(), convert(node.get(key, key.hashCode(), 0), value), 0);
+        }
+        if (previous == null) return node;
+        // Then remove anything that's no longer there.
+        List<String> removed = new ArrayList<>();
+        forEach(previous, leaf -> {
+            if (!keys.contains(leaf.key) || section.get(leaf.key, null) == null) {
+                removed.add(leaf.key);
+            }
+        });
+        for (String key : removed) {
+            node = node.remove(key, key.hashCode(), 0);
+        }
+        return node;
+    }
+
+    private static Node set(Node node, String[] keys, int i, @Nullable Object value) {
+        String key = keys[i];
+        int hash = key.hashCode();
+        Object child = node.get(key, hash, 0);
+        if (i == keys.length - 1) {
+            return value == null ? node.remove(key, hash, 0) : node.put(key, hash, convert(child, value), 0);
+        }
+        Node section;
+        if (child instanceof Node) {
+            section = (Node) child;
+        } else {
+            // There's nothing to remove, and setting a value would create the section.
+            if (value == null) return node;
+            section = Node.EMPTY;
+        }
+        Node updated = set(section, keys, i + 1, value);
+        return updated == child ? node : node.put(key, hash, updated, 0);
+    }
+
+    private static Object convert(@Nullable Object previous, Object value) {
+        if (value instanceof ConfigurationSection) {
+            return section(previous instanceof Node ? (Node) previous : null, (ConfigurationSection) value);
+        }
+        return freeze(CMFormat.toPlain(value));
+    }
+
+    private static Object freeze(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                map.put(String.valueOf(entry.getKey()), freeze(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(map);
+        } else if (value instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (List<?>) value) {
+                list.add(freeze(item));
+            }
+            return Collections.unmodifiableList(list);
+        }
+        return value;
+    }
+
+    /**
+     * Turns a section's trie into a map, leaving anything else as it is.
+     */
+    @Nullable
+    private static Object plain(@Nullable Object value) {
+        if (!(value instanceof Node)) return value;
+        Map<String, Object> map = new LinkedHashMap<>();
+        forEach((Node) value, leaf -> map.put(leaf.key, plain(leaf.value)));
+        return Collections.unmodifiableMap(map);
+    }
+
+    private static int count(Node node) {
+        int[] count = new int[1];
+        forEach(node, leaf -> count[0] += leaf.value instanceof Node ? count((Node) leaf.value) : 1);
+        return count[0];
+    }
+
+    // -- Comparing snapshots --
+
+    private static void diff(String prefix, Node a, Node b, List<Change> changes) {
+        if (a == b) return;
+        int bits = a.bitmap | b.bitmap;
+        while (bits != 0) {
+            int bit = Integer.lowestOneBit(bits);
+            bits &= ~bit;
+            Object left = (a.bitmap & bit) == 0 ? null : a.slots[a.index(bit)];
+            Object right = (b.bitmap & bit) == 0 ? null : b.slots[b.index(bit)];
+            // Anything shared between the two can be skipped entirely.
+            if (left == right) continue;
+            if (left instanceof Node && right instanceof Node) {
+                diff(prefix, (Node) left, (Node) right, changes);
+                continue;
+            }
+            Map<String, Leaf> leftLeaves = new HashMap<>();
+            Map<String, Leaf> rightLeaves = new HashMap<>();
+            collect(left, leftLeaves);
+            collect(right, rightLeaves);
+            for (Leaf leaf : leftLeaves.values()) {
+                Leaf other = rightLeaves.get(leaf.key);
+                if (other == null) {
+                    changes.add(new Change(prefix + leaf.key, plain(leaf.value), null));
+                } else if (other != leaf) {
+                    compare(prefix + leaf.key, leaf.value, other.value, changes);
+                }
+            }
+            for (Leaf leaf : rightLeaves.values()) {
+                if (!leftLeaves.containsKey(leaf.key)) {
+                    changes.add(new Change(prefix + leaf.key, null, plain(leaf.value)));
+                }
+            }
+        }
+    }
+
+    private static void compare(String path, Object left, Object right, List<Change> changes) {
+        if (left == right) return;
+        if (left instanceof Node && right instanceof Node) {
+            diff(path + ".", (Node) left, (Node) right, changes);
+        } else if (left instanceof Node || right instanceof Node || !left.equals(right)) {
+            changes.add(new Change(path, plain(left), plain(right)));
+        }
+    }
+
+    private static void collect(@Nullable Object slot, Map<String, Leaf> leaves) {
+        if (slot == null) return;
+        forEachSlot(slot, leaf -> leaves.put(leaf.key, leaf));
+    }
+
+    // -- The trie itself --
+
+    private interface LeafVisitor {
+        void visit(Leaf leaf);
+    }
+
+    private static void forEach(Node node, LeafVisitor visitor) {
+        for (Object slot : node.slots) {
+            forEachSlot(slot, visitor);
+        }
+    }
+
+    private static void forEachSlot(Object slot, LeafVisitor visitor) {
+        if (slot instanceof Leaf) {
+            visitor.visit((Leaf) slot);
+        } else if (slot instanceof Node) {
+            forEach((Node) slot, visitor);
+        } else {
+            for (Leaf leaf : ((Collision) slot).leaves) {
+                visitor.visit(leaf);
+            }
+        }
+    }
+
+    /**
+     * A key and its value. If the value is a Node, it is a section.
+     */
+    private static final class Leaf {
+
+        final String key;
+        final int hash;
+        final Object value;
+
+        Leaf(String key, int hash, Object value) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Keys whose hashes are exactly the same.
+     */
+    private static final class Collision {
+
+        final int hash;
+        final Leaf[] leaves;
+
+        Collision(int hash, Leaf[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+    }
+
+    /**
+     * A level of the trie, using five bits of each key's hash to pick one of 32 slots.
+     * Only the slots in use are stored. Each slot is a Leaf, a Collision, or a Node one level deeper.
+     */
+    private static final class Node {
+
+        static final Node EMPTY = new Node(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        static int bit(int hash, int shift) {
+            return 1 << ((hash >>> shift) & 31);
+        }
+
+        int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Nullable
+        Object get(String key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) return null;
+            Object slot = slots[index(bit)];
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return leaf.key.equals(key) ? leaf.value : null;
+            } else if (slot instanceof Node) {
+                return ((Node) slot).get(key, hash, shift + 5);
+            }
+            for (Leaf leaf : ((Collision) slot).leaves) {
+                if (leaf.key.equals(key)) return leaf.value;
+            }
+            return null;
+        }
+
+        Node put(String key, int hash, Object value, int shift) {
+            int bit = bit(hash, shift);
+            int index = index(bit);
+            if ((bitmap & bit) == 0) {
+                Object[] copy = new Object[slots.length + 1];
+                System.arraycopy(slots, 0, copy, 0, index);
+                copy[index] = new Leaf(key, hash, value);
+                System.arraycopy(slots, index, copy, index + 1, slots.length - index);
+                return new Node(bitmap | bit, copy);
+            }
+            Object slot = slots[index];
+            Object updated = putSlot(slot, key, hash, value, shift + 5);
+            if (updated == slot) return this;
+            Object[] copy = slots.clone();
+            copy[index] = updated;
+            return new Node(bitmap, copy);
+        }
+
+        private static Object putSlot(Object slot, String key, int hash, Object value, int shift) {
+            if (slot instanceof Node) {
+                return ((Node) slot).put(key, hash, value, shift);
+            }
+            if (slot instanceof Collision) {
+                Collision collision = (Collision) slot;
+                if (collision.hash != hash) {
+                    return new Node(bit(collision.hash, shift), new Object[]{collision}).put(key, hash, value, shift);
+                }
+                for (int i = 0; i < collision.leaves.length; i++) {
+                    Leaf leaf = collision.leaves[i];
+                    if (!leaf.key.equals(key)) continue;
+                    if (same(leaf.value, value)) return collision;
+                    Leaf[] leaves = collision.leaves.clone();
+                    leaves[i] = new Leaf(key, hash, value);
+                    return new Collision(hash, leaves);
+                }
+                Leaf[] leaves = Arrays.copyOf(collision.leaves, collision.leaves.length + 1);
+                leaves[collision.leaves.length] = new Leaf(key, hash, value);
+                return new Collision(hash, leaves);
+            }
+            Leaf leaf = (Leaf) slot;
+            if (leaf.key.equals(key)) {
+                return same(leaf.value, value) ? leaf : new Leaf(key, hash, value);
+            }
+            Leaf added = new Leaf(key, hash, value);
+            if (leaf.hash == hash) {
+                return new Collision(hash, new Leaf[]{leaf, added});
+            }
+            return merge(leaf, added, shift);
+        }
+
+        /**
+         * Creates the levels needed to tell two leaves with different hashes apart.
+         */
+        private static Node merge(Leaf a, Leaf b, int shift) {
+            int bitA = bit(a.hash, shift);
+            int bitB = bit(b.hash, shift);
+            if (bitA == bitB) {
+                return new Node(bitA, new Object[]{merge(a, b, shift + 5)});
+            }
+            boolean aFirst = ((a.hash >>> shift) & 31) < ((b.hash >>> shift) & 31);
+            return new Node(bitA | bitB, aFirst ? new Object[]{a, b} : new Object[]{b, a});
+        }
+
+        /**
+         * Whether a value can be kept as it is. Sections are only the same if they're the same trie.
+         */
+        private static boolean same(Object current, Object value) {
+            if (current == value) return true;
+            return !(current instanceof Node) && !(value instanceof Node) && current.equals(value);
+        }
+
+        Node remove(String key, int hash, int shift) {
+            int bit = bit(hash, shift);
+            if ((bitmap & bit) == 0) return this;
+            int index = index(bit);
+            Object slot = slots[index];
+            Object updated = removeSlot(slot, key, hash, shift + 5);
+            if (updated == slot) return this;
+            if (updated != null) {
+                Object[] copy = slots.clone();
+                copy[index] = updated;
+                return new Node(bitmap, copy);
+            }
+            if (slots.length == 1) return EMPTY;
+            Object[] copy = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, copy, 0, index);
+            System.arraycopy(slots, index + 1, copy, index, slots.length - index - 1);
+            return new Node(bitmap & ~bit, copy);
+        }
+
+        @Nullable
+        private static Object removeSlot(Object slot, String key, int hash, int shift) {
+            if (slot instanceof Leaf) {
+                return ((Leaf) slot).key.equals(key) ? null : slot;
+            }
+            if (slot instanceof Node) {
+                Node node = (Node) slot;
+                Node updated = node.remove(key, hash, shift);
+                if (updated == node) return node;
+                if (updated.slots.length == 0) return null;
+                // A level with only one leaf left isn't needed any more.
+                if (updated.slots.length == 1 && !(updated.slots[0] instanceof Node)) return updated.slots[0];
+                return updated;
+            }
+            Collision collision = (Collision) slot;
+            for (int i = 0; i < collision.leaves.length; i++) {
+                if (!collision.leaves[i].key.equals(key)) continue;
+                if (collision.leaves.length == 2) return collision.leaves[1 - i];
+                Leaf[] leaves = new Leaf[collision.leaves.length - 1];
+                System.arraycopy(collision.leaves, 0, leaves, 0, i);
+                System.arraycopy(collision.leaves, i + 1, leaves, i, collision.leaves.length - i - 1);
+                return new Collision(hash, leaves);
+            }
+            return collision;
+        }
+    }
+}
@@ -0,0 +1,559 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import com.google.common.base.Charsets;
+import io.github.thatsmusic99.configurationmaster.format.BinaryFormat;
+import io.github.thatsmusic99.configurationmaster.format.CMFormat;
+import org.bukkit.configuration.serialization.ConfigurationSerialization;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * CMStore is a small, embedded key-value store which keeps its options sorted by path.<br><br>
+ *
+ * It is used to back data-sized CMFiles, where rewriting the whole file every
+ * time one option changes would be far too slow. Each option is stored as its own
+ * record in an append-only file, so changing an option only costs as much as
+ * writing that one record.<br><br>
+ *
+ * Changes are grouped into commits. A commit is only applied once its commit marker
+ * has been written and flushed to the disk; if the server crashes partway through,
+ * the unfinished commit is simply thrown away the next time the store is opened.<br><br>
+ *
+ * Only the position of each record is kept in memory. Once enough old records have
+ * built up in the file, it is compacted into a fresh file which is then moved over
+ * the original.
+ *
+ * @author Holly (Thatsmusic99)
+ */
+public class CMStore implements Closeable {
+
+    // Stores that are currently open, so that each file is only opened once.
+    private static final HashMap<File, CMStore> OPEN_STORES = new HashMap<>();
+    // How many bytes of old records there must be before compacting is considered.
+    private static final long COMPACT_THRESHOLD = 1024 * 1024;
+    // Used in the pending changes to mark a removed option.
+    private static final Object REMOVED = new Object();
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte COMMIT = 3;
+
+    // The file that the records are stored in.
+    private final File file;
+    // The channel used to read and append records.
+    private FileChannel channel;
+    // Every option in the store, mapped to where its record is.
+    private final TreeMap<String, Entry> index;
+    // Changes that have not been committed yet.
+    private final LinkedHashMap<String, Object> pending;
+    // The number of bytes taken up by records that are no longer used.
+    private long garbage;
+
+    private CMStore(File file) throws IOException {
+        this.file = file;
+        this.index = new TreeMap<>();
+        this.pending = new LinkedHashMap<>();
+        open();
+    }
+
+    /**
+     * Opens the store kept in the provided file, creating it if it does not exist.<br><br>
+     *
+     * If the store is already open, the same instance is returned.
+     *
+     * @param file The file that the store is kept in.
+     * @return The opened store.
+     * @throws IOException if the file could not be opened.
+     */
+    @NotNull
+    public static CMStore open(@NotNull File file) throws IOException {
+        File key = file.getAbsoluteFile();
+        synchronized (OPEN_STORES) {
+            CMStore store = OPEN_STORES.get(key);
+            if (store == null) {
+                store = new CMStore(key);
+                OPEN_STORES.put(key, store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * Returns the value stored at the given path, including any uncommitted changes.
+     *
+     * @param path The path to be used.
+     * @return The value stored in the path. If not found, it returns null.
+     * @throws IOException if the record could not be read.
+     */
+    @Nullable
+    public synchronized Object get(@NotNull String path) throws IOException {
+        if (pending.containsKey(path)) {
+            Object value = pending.get(path);
+            return value == REMOVED ? null : value;
+        }
+        Entry entry = index.get(path);
+        return entry == null ? null : readRecord(entry).value;
+    }
+
+    /**
+     * Returns whether a value is stored at the given path, including any uncommitted changes.
+     *
+     * @param path The path to be checked.
+     * @return true if there is a value stored at the path.
+     */
+    public synchronized boolean contains(@NotNull String path) {
+        if (pending.containsKey(path)) {
+            return pending.get(path) != REMOVED;
+        }
+        return index.containsKey(path);
+    }
+
+    /**
+     * Returns all of the paths stored under a section, in sorted order.<br><br>
+     *
+     * This only looks at the in-memory index, so no records are read.
+     *
+     * @param section The section to be searched, or an empty string for every path.
+     * @return A sorted set of every full path inside of the section.
+     */
+    @NotNull
+    public synchronized SortedSet<String> keys(@NotNull String section) {
+        TreeSet<String> keys = new TreeSet<>(range(index, section).keySet());
+        // Bring in any uncommitted changes.
+        for (Map.Entry<String, Object> change : pending.entrySet()) {
+            if (!isUnder(change.getKey(), section)) continue;
+            if (change.getValue() == REMOVED) {
+                keys.remove(change.getKey());
+            } else {
+                keys.add(change.getKey());
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Reads all of the values stored under a section, in sorted order.
+     *
+     * @param section The section to be read, or an empty string for the whole store.
+     * @return A sorted map of every full path inside of the section and its value.
+     * @throws IOException if any records could not be read.
+     */
+    @NotNull
+    public synchronized SortedMap<String, Object> scan(@NotNull String section) throws IOException {
+        TreeMap<String, Object> values = new TreeMap<>();
+        for (String key : keys(section)) {
+            values.put(key, get(key));
+        }
+        return values;
+    }
+
+    /**
+     * Stores a value at the given path. The change is not saved until {@link #commit()} is called.<br><br>
+     *
+     * Maps and sections are split up into one record per option, and anything
+     * previously stored under the path is removed. An empty map is kept as an
+     * empty section.
+     *
+     * @param path The path of the value to be set.
+     * @param value The value itself. If null, the path is removed.
+     */
+    public synchronized void put(@NotNull String path, @Nullable Object value) {
+        remove(path);
+        if (value == null) return;
+        // An option can't be inside of another option, so remove any that are in the way.
+        for (int i = path.indexOf('.'); i != -1; i = path.indexOf('.', i + 1)) {
+            String parent = path.substring(0, i);
+            if (contains(parent)) {
+                pending.put(parent, REMOVED);
+            }
+        }
+        flatten(path, CMFormat.toPlain(value));
+    }
+
+    /**
+     * Removes the value at the given path, along with everything under it.
+     * The change is not saved until {@link #commit()} is called.
+     *
+     * @param path The path to be removed.
+     */
+    public synchronized void remove(@NotNull String path) {
+        for (String key : keys(path)) {
+            pending.put(key, REMOVED);
+        }
+        if (contains(path)) {
+            pending.put(path, REMOVED);
+        }
+    }
+
+    /**
+     * Writes all pending changes to the file as a single commit.<br><br>
+     *
+     * Once this method returns, the changes have been flushed to the disk and will
+     * survive a crash. If there are no pending changes, nothing happens.<br><br>
+     *
+     * If the changes could not be written, whatever was written of them is removed again
+     * and they are kept pending, so that committing again can retry them.
+     *
+     * @throws IOException if the changes could not be written.
+     */
+    public synchronized void commit() throws IOException {
+        if (pending.isEmpty()) return;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        // Work out where each record will sit in the file.
+        long start = channel.size();
+        HashMap<String, Entry> written = new HashMap<>();
+        for (Map.Entry<String, Object> change : pending.entrySet()) {
+            long offset = start + output.size();
+            Entry entry = writeRecord(output, change.getValue() == REMOVED ? DELETE : PUT, change.getKey(), change.getValue());
+            entry.offset = offset;
+            written.put(change.getKey(), entry);
+        }
+        writeRecord(output, COMMIT, "", null);
+        output.flush();
+
+        // Append the records and make sure they reach the disk.
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, start + buffer.position());
+            }
+            channel.force(false);
+        } catch (IOException ex) {
+            // Anything left behind would stop the store being read past it when it's next opened,
+            // taking every later commit with it, so cut the file back to where it was.
+            try {
+                channel.truncate(start);
+                channel.force(false);
+            } catch (IOException truncateEx) {
+                ex.addSuppressed(truncateEx);
+            }
+            throw ex;
+        }
+
+        // Only now update the index.
+        for (Map.Entry<String, Entry> change : written.entrySet()) {
+            Entry old = change.getValue().type == DELETE ? index.remove(change.getKey()) : index.put(change.getKey(), change.getValue());
+            if (old != null) {
+                garbage += old.size;
+            }
+            // Delete records are only useful until the file is compacted.
+            if (change.getValue().type == DELETE) {
+                garbage += change.getValue().size;
+            }
+        }
+        pending.clear();
+
+        // If over half the file is made up of old records, compact it.
+        if (garbage > COMPACT_THRESHOLD && garbage * 2 > channel.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Throws away all pending changes that have not been committed.
+     */
+    public synchronized void rollback() {
+        pending.clear();
+    }
+
+    /**
+     * Rewrites the file so that it only contains the records which are still in use.<br><br>
+     *
+     * The new file is written and flushed separately, then moved over the original,
+     * so the store is never left half-written.
+     *
+     * @throws IOException if the file could not be compacted.
+     */
+    public synchronized void compact() throws IOException {
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        TreeMap<String, Entry> newIndex = new TreeMap<>();
+        try (FileChannel output = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long position = 0;
+            // Copy each record across as it is, without decoding it.
+            for (Map.Entry<String, Entry> entry : index.entrySet()) {
+                Entry old = entry.getValue();
+                long copied = 0;
+                while (copied < old.size) {
+                    copied += channel.transferTo(old.offset + copied, old.size - copied, output);
+                }
+                Entry moved = new Entry(old.type, old.size, old.checksum);
+                moved.offset = position;
+                newIndex.put(entry.getKey(), moved);
+                position += old.size;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            writeRecord(new DataOutputStream(bytes), COMMIT, "", null);
+            output.write(ByteBuffer.wrap(bytes.toByteArray()), position);
+            output.force(true);
+        }
+        channel.close();
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index.clear();
+        index.putAll(newIndex);
+        garbage = 0;
+    }
+
+    /**
+     * Returns whether the record currently stored at a path would be identical to the provided value.<br><br>
+     *
+     * This compares checksums held in memory, so no records are read.
+     *
+     * @param path The path to be checked.
+     * @param value The value to compare against.
+     * @return true if the stored record is the same as the one the value would produce.
+     */
+    public synchronized boolean isStored(@NotNull String path, @Nullable Object value) {
+        if (pending.containsKey(path)) return false;
+        Entry entry = index.get(path);
+        if (entry == null) return false;
+        try {
+            Entry compared = writeRecord(new DataOutputStream(new ByteArrayOutputStream()), PUT, path, value);
+            return compared.size == entry.size && compared.checksum == entry.checksum;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Closes the store. Any uncommitted changes are thrown away.
+     *
+     * @throws IOException if the file could not be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        synchronized (OPEN_STORES) {
+            OPEN_STORES.remove(file);
+        }
+        pending.clear();
+        channel.close();
+    }
+
+    /**
+     * Writes a snapshot of a set of options, laid out the same way as a store file.<br><br>
+     *
+     * Every option is written as a record, followed by a single commit marker, so the
+     * snapshot is exactly what a freshly compacted store would contain. It can be saved
+     * as a store file or read back using {@link #readSnapshot(InputStream)}.
+     *
+     * @param options The options to be written, by full path.
+     * @param output The stream to write to. It is not closed afterwards.
+     * @throws IOException if the stream could not be written to.
+     */
+    public static void writeSnapshot(@NotNull SortedMap<String, Object> options, @NotNull OutputStream output) throws IOException {
+        DataOutputStream data = new DataOutputStream(output);
+        for (Map.Entry<String, Object> option : options.entrySet()) {
+            writeRecord(data, PUT, option.getKey(), option.getValue());
+        }
+        writeRecord(data, COMMIT, "", null);
+        data.flush();
+    }
+
+    /**
+     * Reads the options from a snapshot or a copy of a store file.<br><br>
+     *
+     * Only committed changes are read, the same as when a store is opened, so anything
+     * after the last commit marker is ignored.
+     *
+     * @param input The stream to read from. It is not closed afterwards.
+     * @return Every option in the snapshot, by full path.
+     * @throws IOException if the stream could not be read.
+     */
+    @NotNull
+    public static SortedMap<String, Object> readSnapshot(@NotNull InputStream input) throws IOException {
+        // Read it all first, so that a damaged length can't make us try to read past the end.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        TreeMap<String, Object> options = new TreeMap<>();
+        LinkedHashMap<String, Object> uncommitted = new LinkedHashMap<>();
+        long remaining = bytes.size();
+        while (remaining >= 8) {
+            int length = data.readInt();
+            int checksum = data.readInt();
+            // Anything damaged was never committed.
+            if (length <= 0 || length > remaining - 8) break;
+            byte[] body = new byte[length];
+            data.readFully(body);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if ((int) crc.getValue() != checksum) break;
+            remaining -= length + 8;
+
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+            byte type = record.readByte();
+            String key = readKey(record);
+            if (type == COMMIT) {
+                for (Map.Entry<String, Object> change : uncommitted.entrySet()) {
+                    if (change.getValue() == REMOVED) {
+                        options.remove(change.getKey());
+                    } else {
+                        options.put(change.getKey(), change.getValue());
+                    }
+                }
+                uncommitted.clear();
+            } else {
+                uncommitted.put(key, type == PUT ? BinaryFormat.readValue(record) : REMOVED);
+            }
+        }
+        return options;
+    }
+
+    private void open() throws IOException {
+        if (file.getParentFile() != null && !file.getParentFile().exists()) {
+            file.getParentFile().mkdirs();
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Go through every record, only applying changes that have been committed.
+        DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        HashMap<String, Entry> uncommitted = new LinkedHashMap<>();
+        long position = 0;
+        long committed = 0;
+        long size = channel.size();
+        while (position < size) {
+            Entry entry;
+            try {
+                entry = readHeader(input, size - position);
+            } catch (IOException ex) {
+                // The record was only partly written, so stop here.
+                break;
+            }
+            if (entry == null) break;
+            entry.offset = position;
+            position += entry.size;
+            if (entry.type == COMMIT) {
+                for (Map.Entry<String, Entry> change : uncommitted.entrySet()) {
+                    Entry old = change.getValue().type == DELETE ? index.remove(change.getKey()) : index.put(change.getKey(), change.getValue());
+                    if (old != null) garbage += old.size;
+                    if (change.getValue().type == DELETE) garbage += change.getValue().size;
+                }
+                uncommitted.clear();
+                committed = position;
+            } else {
+                uncommitted.put(entry.key, entry);
+            }
+        }
+        // Get rid of anything after the last commit, since it was never completed.
+        if (committed < size) {
+            channel.truncate(committed);
+            channel.force(false);
+        }
+    }
+
+    private void flatten(String path, Object value) {
+        // Empty maps are kept as they are, so that empty sections are not lost.
+        // Serialized objects are kept whole too, so that they can be deserialized again.
+        if (value instanceof Map && !((Map<?, ?>) value).isEmpty()
+                && !((Map<?, ?>) value).containsKey(ConfigurationSerialization.SERIALIZED_TYPE_KEY)) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                flatten(path + "." + entry.getKey(), entry.getValue());
+            }
+        } else if (value != null) {
+            pending.put(path, value);
+        }
+    }
+
+    private Record readRecord(Entry entry) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(entry.size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, entry.offset + buffer.position()) < 0) {
+                throw new EOFException("Record at " + entry.offset + " runs past the end of " + file.getName());
+            }
+        }
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(buffer.array(), 8, entry.size - 8));
+        input.readByte();
+        Record record = new Record();
+        record.key = readKey(input);
+        record.value = BinaryFormat.readValue(input);
+        return record;
+    }
+
+    // Reads a record's header and checks it, returning null if it is damaged.
+    private static Entry readHeader(DataInputStream input, long remaining) throws IOException {
+        if (remaining < 8) return null;
+        int length = input.readInt();
+        int checksum = input.readInt();
+        if (length <= 0 || length > remaining - 8) return null;
+        byte[] body = new byte[length];
+        input.readFully(body);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != checksum) return null;
+        Entry entry = new Entry(body[0], length + 8, checksum);
+        entry.key = readKey(new DataInputStream(new ByteArrayInputStream(body, 1, length - 1)));
+        return entry;
+    }
+
+    private static Entry writeRecord(DataOutputStream output, byte type, String key, Object value) throws IOException {
+        // Build up the body first so that its length and checksum can go in front of it.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bytes);
+        body.writeByte(type);
+        byte[] keyBytes = key.getBytes(Charsets.UTF_8);
+        body.writeInt(keyBytes.length);
+        body.write(keyBytes);
+        if (type == PUT) {
+            BinaryFormat.writeValue(body, value);
+        }
+        body.flush();
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        output.writeInt(bytes.size());
+        output.writeInt((int) crc.getValue());
+        bytes.writeTo(output);
+        return new Entry(type, bytes.size() + 8, (int) crc.getValue());
+    }
+
+    private static String readKey(DataInputStream input) throws IOException {
+        byte[] keyBytes = new byte[input.readInt()];
+        input.readFully(keyBytes);
+        return new String(keyBytes, Charsets.UTF_8);
+    }
+
+    private static <T> SortedMap<String, T> range(TreeMap<String, T> map, String section) {
+        if (section.isEmpty()) return map;
+        // '/' comes straight after '.', so every path in the section falls in this range.
+        return map.subMap(section + ".", section + "/");
+    }
+
+    private static boolean isUnder(String path, String section) {
+        return section.isEmpty() || path.startsWith(section + ".");
+    }
+
+    // Where a record is stored, and enough about it to tell whether it has changed.
+    private static class Entry {
+        private final byte type;
+        private final int size;
+        private final int checksum;
+        private long offset;
+        private String key;
+
+        private Entry(byte type, int size, int checksum) {
+            this.type = type;
+            this.size = size;
+            this.checksum = checksum;
+        }
+    }
+
+    private static class Record {
+        private String key;
+        private Object value;
+    }
+}
@@ -0,0 +1,422 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import com.google.common.base.Charsets;
+import io.github.thatsmusic99.configurationmaster.format.CMFormat;
+import io.github.thatsmusic99.configurationmaster.format.YamlScalars;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.events.*;
+import org.yaml.snakeyaml.nodes.Tag;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * CMStreamReader reads a YAML file as a stream of parser events rather
+ * than loading the whole document into memory.<br><br>
+ *
+ * This is intended for data-style files - such as player homes or warps -
+ * which can be hundreds of megabytes in size. Each option is handed to an
+ * {@link EntryVisitor} as soon as it has been read, so only the option
+ * currently being read is ever held in memory.<br><br>
+ *
+ * If the values are needed later on, {@link #index(File)} can be used
+ * instead, which stores every option in a compact, sorted {@link Index}
+ * rather than a tree of sections.
+ *
+ * @author Holly (Thatsmusic99)
+ */
+public class CMStreamReader {
+
+    private CMStreamReader() {}
+
+    /**
+     * Streams every option in the provided file through a visitor.<br><br>
+     *
+     * Compressed files are decompressed as they're read.
+     *
+     * @param file The file to be read.
+     * @param visitor The visitor that each option is handed to.
+     * @throws IOException if the file could not be read.
+     * @throws InvalidConfigurationException if the file does not contain valid YAML.
+     */
+    public static void read(@NotNull File file, @NotNull EntryVisitor visitor) throws IOException, InvalidConfigurationException {
+        try (Reader reader = new BufferedReader(new InputStreamReader(CMCompression.open(file), Charsets.UTF_8))) {
+            read(reader, visitor);
+        }
+    }
+
+    /**
+     * Streams every option provided by a reader through a visitor.<br><br>
+     *
+     * Sections are not handed to the visitor as values; instead,
+     * {@link EntryVisitor#enterSection(String)} is called before any of their options are read.
+     * Lists are handed over as a whole, since they are usually small.
+     *
+     * @param reader The reader providing the YAML content.
+     * @param visitor The visitor that each option is handed to.
+     * @throws InvalidConfigurationException if the content is not valid YAML.
+     */
+    public static void read(@NotNull Reader reader, @NotNull EntryVisitor visitor) throws InvalidConfigurationException {
+        try {
+            Iterator<Event> events = new Yaml().parse(reader).iterator();
+            Map<String, Object> anchors = new HashMap<>();
+            while (events.hasNext()) {
+                Event event = events.next();
+                // Skip the stream and document markers.
+                if (event instanceof StreamStartEvent || event instanceof DocumentStartEvent
+                        || event instanceof DocumentEndEvent || event instanceof StreamEndEvent) continue;
+                // Bukkit requires the top level to be a map, so we do too.
+                if (!(event instanceof MappingStartEvent)) {
+                    // An empty document is just an empty config.
+                    if (event instanceof ScalarEvent && ((ScalarEvent) event).getValue().isEmpty()) continue;
+                    throw new InvalidConfigurationException("Top level is not a Map.");
+                }
+                readMapping(events, "", visitor, anchors);
+            }
+        } catch (InvalidConfigurationException ex) {
+            throw ex;
+        } catch (RuntimeException ex) {
+            // SnakeYAML reports parsing problems as runtime exceptions.
+            throw new InvalidConfigurationException(ex);
+        }
+    }
+
+    /**
+     * Reads the provided file into a compact index.<br><br>
+     *
+     * Unlike a loaded configuration, no sections are created; every option is stored
+     * against its full path inside two sorted arrays.
+     *
+     * @param file The file to be read.
+     * @return The index containing every option in the file.
+     * @throws IOException if the file could not be read.
+     * @throws InvalidConfigurationException if the file does not contain valid YAML.
+     */
+    @NotNull
+    public static Index index(@NotNull File file) throws IOException, InvalidConfigurationException {
+        return index(file, null);
+    }
+
+    /**
+     * Reads the options under a specific section of the provided file into a compact index.<br><br>
+     *
+     * Any other section is skipped whilst being parsed, so it is never kept in memory.
+     * Compressed files are decompressed as they're read.
+     *
+     * @param file The file to be read.
+     * @param prefix The section to be indexed, or null to index the whole file.
+     * @return The index containing every option under the section.
+     * @throws IOException if the file could not be read.
+     * @throws InvalidConfigurationException if the file does not contain valid YAML.
+     */
+    @NotNull
+    public static Index index(@NotNull File file, @Nullable String prefix) throws IOException, InvalidConfigurationException {
+        try (Reader reader = new BufferedReader(new InputStreamReader(CMCompression.open(file), Charsets.UTF_8))) {
+            return index(reader, prefix);
+        }
+    }
+
+    /**
+     * Reads the options under a specific section of the YAML provided by a reader into a compact index.
+     *
+     * @param reader The reader providing the YAML content.
+     * @param prefix The section to be indexed, or null to index everything.
+     * @return The index containing every option under the section.
+     * @throws InvalidConfigurationException if the content is not valid YAML.
+     */
+    @NotNull
+    public static Index index(@NotNull Reader reader, @Nullable String prefix) throws InvalidConfigurationException {
+        Index.Builder builder = new Index.Builder(prefix);
+        read(reader, builder);
+        return builder.build();
+    }
+
+    /**
+     * Hands every option in a section that has already been loaded to a visitor, the same way as if it were streamed.<br><br>
+     *
+     * This is used for formats that can't be streamed, so that they can still be read through the same visitors.
+     *
+     * @param section The section to be read.
+     * @param visitor The visitor that each option is handed to.
+     */
+    public static void read(@NotNull ConfigurationSection section, @NotNull EntryVisitor visitor) {
+        for (String key : section.getKeys(false)) {
+            Object value = section.get(key);
+            String path = section.getCurrentPath().isEmpty() ? key : section.getCurrentPath() + "." + key;
+            if (value instanceof ConfigurationSection) {
+                if (visitor.enterSection(path)) {
+                    read((ConfigurationSection) value, visitor);
+                }
+            } else {
+                // Streamed values are plain lists and maps, so these should be too.
+                visitor.visit(path, CMFormat.toPlain(value));
+            }
+        }
+    }
+
+    /**
+     * Reads the options under a specific section from a source into a compact index.
+     *
+     * @param source Where the options are streamed from, such as a CMFile.
+     * @param prefix The section to be indexed, or null to index everything.
+     * @return The index containing every option under the section.
+     * @throws IOException if the options could not be read.
+     * @throws InvalidConfigurationException if the options could not be parsed.
+     */
+    @NotNull
+    static Index index(@NotNull Source source, @Nullable String prefix) throws IOException, InvalidConfigurationException {
+        Index.Builder builder = new Index.Builder(prefix);
+        source.stream(builder);
+        return builder.build();
+    }
+
+    private static void readMapping(Iterator<Event> events, String prefix, EntryVisitor visitor, Map<String, Object> anchors) throws InvalidConfigurationException {
+        while (true) {
+            Event keyEvent = next(events);
+            // If the mapping has ended, go back to the parent.
+            if (keyEvent instanceof MappingEndEvent) return;
+            if (!(keyEvent instanceof ScalarEvent)) {
+                throw new InvalidConfigurationException("Complex keys are not supported at " + keyEvent.getStartMark());
+            }
+            // Bukkit uses the string form of whatever the key resolves to.
+            String key = String.valueOf(resolve((ScalarEvent) keyEvent));
+            String path = prefix.isEmpty() ? key : prefix + "." + key;
+
+            Event valueEvent = next(events);
+            if (valueEvent instanceof MappingStartEvent) {
+                if (((MappingStartEvent) valueEvent).getAnchor() != null) {
+                    throw new InvalidConfigurationException("Anchored sections cannot be streamed at " + valueEvent.getStartMark());
+                }
+                // Either read the section or skip over it entirely.
+                if (visitor.enterSection(path)) {
+                    readMapping(events, path, visitor, anchors);
+                } else {
+                    skip(events);
+                }
+            } else {
+                visitor.visit(path, readValue(valueEvent, events, anchors));
+            }
+        }
+    }
+
+    private static Object readValue(Event event, Iterator<Event> events, Map<String, Object> anchors) throws InvalidConfigurationException {
+        if (event instanceof ScalarEvent) {
+            Object value = resolve((ScalarEvent) event);
+            // Scalar anchors are cheap to keep hold of, so they are allowed.
+            if (((ScalarEvent) event).getAnchor() != null) {
+                anchors.put(((ScalarEvent) event).getAnchor(), value);
+            }
+            return value;
+        } else if (event instanceof AliasEvent) {
+            String anchor = ((AliasEvent) event).getAnchor();
+            if (!anchors.containsKey(anchor)) {
+                throw new InvalidConfigurationException("Only scalar aliases can be streamed at " + event.getStartMark());
+            }
+            return anchors.get(anchor);
+        } else if (event instanceof SequenceStartEvent) {
+            // Lists are built up fully, since they are typically small.
+            List<Object> list = new ArrayList<>();
+            Event item;
+            while (!((item = next(events)) instanceof SequenceEndEvent)) {
+                list.add(readValue(item, events, anchors));
+            }
+            return list;
+        } else if (event instanceof MappingStartEvent) {
+            // Maps inside of lists are built up the same way.
+            Map<String, Object> map = new LinkedHashMap<>();
+            Event key;
+            while (!((key = next(events)) instanceof MappingEndEvent)) {
+                map.put(String.valueOf(readValue(key, events, anchors)), readValue(next(events), events, anchors));
+            }
+            return map;
+        }
+        throw new InvalidConfigurationException("Unexpected " + event + " at " + event.getStartMark());
+    }
+
+    private static void skip(Iterator<Event> events) throws InvalidConfigurationException {
+        // Count how many collections deep we are, and stop once the section has been closed.
+        int depth = 1;
+        while (depth > 0) {
+            Event event = next(events);
+            if (event instanceof CollectionStartEvent) {
+                depth++;
+            } else if (event instanceof CollectionEndEvent) {
+                depth--;
+            }
+        }
+    }
+
+    private static Event next(Iterator<Event> events) throws InvalidConfigurationException {
+        if (!events.hasNext()) {
+            throw new InvalidConfigurationException("Unexpected end of the YAML stream.");
+        }
+        return events.next();
+    }
+
+    private static Object resolve(ScalarEvent event) {
+        // Quoted scalars are always strings, unless they've been tagged otherwise.
+        if (event.getTag() == null || event.getTag().equals("!")) {
+            if (!event.getImplicit().canOmitTagInPlainScalar()) {
+                return event.getValue();
+            }
+            return YamlScalars.construct(YamlScalars.resolveTag(event.getValue()), event.getValue());
+        }
+        return YamlScalars.construct(new Tag(event.getTag()), event.getValue());
+    }
+
+    /**
+     * Something which options can be streamed from.
+     */
+    interface Source {
+
+        void stream(@NotNull EntryVisitor visitor) throws IOException, InvalidConfigurationException;
+    }
+
+    /**
+     * A visitor which receives each option as it is read.
+     */
+    public interface EntryVisitor {
+
+        /**
+         * Called for every option that is read.
+         *
+         * @param path The full path of the option.
+         * @param value The value of the option. Lists and maps within lists are provided in full.
+         */
+        void visit(@NotNull String path, @Nullable Object value);
+
+        /**
+         * Called before any of a section's options are read.
+         *
+         * @param path The full path of the section.
+         * @return true if the section should be read, false if it should be skipped entirely.
+         */
+        default boolean enterSection(@NotNull String path) {
+            return true;
+        }
+    }
+
+    /**
+     * A compact, read-only index of options which have been streamed from a file.<br><br>
+     *
+     * All paths are kept in a sorted array, with their values in a second array
+     * at the same positions. Looking up a path is a binary search, and all options
+     * under a section sit next to each other.
+     */
+    public static class Index {
+
+        private final String[] paths;
+        private final Object[] values;
+
+        private Index(String[] paths, Object[] values) {
+            this.paths = paths;
+            this.values = values;
+        }
+
+        /**
+         * The number of options stored in the index.
+         *
+         * @return The number of options.
+         */
+        public int size() {
+            return paths.length;
+        }
+
+        /**
+         * Returns whether an option exists at the given path.
+         *
+         * @param path The path to be checked.
+         * @return true if the option exists.
+         */
+        public boolean contains(@NotNull String path) {
+            return Arrays.binarySearch(paths, path) >= 0;
+        }
+
+        /**
+         * Returns the value stored at the given path.
+         *
+         * @param path The path to be used.
+         * @return The value stored in the path. If not found, it returns null.
+         */
+        @Nullable
+        public Object get(@NotNull String path) {
+            int index = Arrays.binarySearch(paths, path);
+            return index < 0 ? null : values[index];
+        }
+
+        /**
+         * Returns the full paths of all options under the given section.
+         *
+         * @param section The section to be searched.
+         * @return A list of every option path inside of the section, in sorted order.
+         */
+        @NotNull
+        public List<String> getPaths(@NotNull String section) {
+            // '/' comes straight after '.', so every option in the section falls in this range.
+            int start = insertionPoint(section + ".");
+            int end = insertionPoint(section + "/");
+            return Collections.unmodifiableList(Arrays.asList(paths).subList(start, end));
+        }
+
+        private int insertionPoint(String path) {
+            int index = Arrays.binarySearch(paths, path);
+            return index < 0 ? -index - 1 : index;
+        }
+
+        private static class Builder implements EntryVisitor {
+
+            @Nullable
+            private final String prefix;
+            private String[] paths = new String[64];
+            private Object[] values = new Object[64];
+            private int size;
+
+            private Builder(@Nullable String prefix) {
+                this.prefix = prefix;
+            }
+
+            @Override
+            public void visit(@NotNull String path, @Nullable Object value) {
+                if (!isWanted(path)) return;
+                // Grow the arrays if need be.
+                if (size == paths.length) {
+                    paths = Arrays.copyOf(paths, size * 2);
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                paths[size] = path;
+                values[size] = value;
+                size++;
+            }
+
+            @Override
+            public boolean enterSection(@NotNull String path) {
+                // Sections leading up to the prefix have to be entered too.
+                return prefix == null || isWanted(path) || prefix.startsWith(path + ".");
+            }
+
+            private boolean isWanted(String path) {
+                return prefix == null || path.equals(prefix) || path.startsWith(prefix + ".");
+            }
+
+            private Index build() {
+                // Sort the paths, bringing the values along with them.
+                Integer[] order = new Integer[size];
+                for (int i = 0; i < size; i++) {
+                    order[i] = i;
+                }
+                Arrays.sort(order, Comparator.comparing(i -> paths[i]));
+                String[] sortedPaths = new String[size];
+                Object[] sortedValues = new Object[size];
+                for (int i = 0; i < size; i++) {
+                    sortedPaths[i] = paths[order[i]];
+                    sortedValues[i] = values[order[i]];
+                }
+                return new Index(sortedPaths, sortedValues);
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CMStringPool shares identical strings between every loaded config file.<br><br>
+ *
+ * Configs tend to repeat the same keys and values - such as "enabled", "permission"
+ * or colour code prefixes - thousands of times, and each time a file is read, a new
+ * string is made for every one of them. When a file is loaded, its keys and short
+ * values are passed through this pool, so that only one copy of each is kept.<br><br>
+ *
+ * The pool only holds weak references, so strings that are no longer used by any
+ * config can still be garbage collected. It is split into stripes, each with a lock
+ * of its own, so that files being loaded on different threads rarely wait on each other.
+ *
+ * @author Holly (Thatsmusic99)
+ */
+public final class CMStringPool {
+
+    // The number of stripes the pool is split into. This has to be a power of two.
+    private static final int STRIPES = 32;
+    // The pooled strings, split up by hash. The values are weak too, otherwise the keys could never be collected.
+    private static final Map<String, WeakReference<String>>[] POOL = createStripes();
+    // Whether values are pooled as well as keys.
+    private static volatile boolean poolingValues = true;
+    // The longest value that will be pooled.
+    private static volatile int maxValueLength = 64;
+    // The number of strings that were replaced with a pooled copy.
+    private static final LongAdder duplicates = new LongAdder();
+    // Roughly how many bytes those duplicates would have taken up.
+    private static final LongAdder bytesSaved = new LongAdder();
+
+    private CMStringPool() {}
+
+    /**
+     * Returns the pooled copy of a key, adding it to the pool if there isn't one yet.
+     *
+     * @param key The key to be pooled.
+     * @return The pooled copy of the key.
+     */
+    @NotNull
+    public static String intern(@NotNull String key) {
+        Map<String, WeakReference<String>> stripe = stripe(key);
+        String pooled;
+        synchronized (stripe) {
+            WeakReference<String> reference = stripe.get(key);
+            pooled = reference == null ? null : reference.get();
+            if (pooled == null) {
+                stripe.put(key, new WeakReference<>(key));
+                return key;
+            }
+        }
+        if (pooled != key) {
+            duplicates.increment();
+            bytesSaved.add(estimateSize(key));
+        }
+        return pooled;
+    }
+
+    /**
+     * Returns the pooled copy of a value, if values are being pooled and it is short enough.
+     *
+     * @param value The value to be pooled.
+     * @return The pooled copy of the value, or the value itself if it isn't pooled.
+     * @see #setPoolingValues(boolean)
+     * @see #setMaxValueLength(int)
+     */
+    @NotNull
+    public static String internValue(@NotNull String value) {
+        if (!poolingValues || value.length() > maxValueLength) return value;
+        return intern(value);
+    }
+
+    /**
+     * Indicates whether values are pooled as well as keys.
+     *
+     * @return true if values are pooled. By default, this is true.
+     */
+    public static boolean isPoolingValues() {
+        return poolingValues;
+    }
+
+    /**
+     * Sets whether values are pooled as well as keys.
+     *
+     * @param poolingValues true to pool values.
+     */
+    public static void setPoolingValues(boolean poolingValues) {
+        CMStringPool.poolingValues = poolingValues;
+    }
+
+    /**
+     * The longest value that will be pooled. Longer values are rarely repeated, so they're left alone.
+     *
+     * @return The maximum length of a pooled value. By default, this is 64.
+     */
+    public static int getMaxValueLength() {
+        return maxValueLength;
+    }
+
+    /**
+     * Sets the longest value that will be pooled.
+     *
+     * @param maxValueLength The maximum length of a pooled value.
+     */
+    public static void setMaxValueLength(int maxValueLength) {
+        CMStringPool.maxValueLength = maxValueLength;
+    }
+
+    /**
+     * The number of strings in the pool that are still in use.
+     *
+     * @return The size of the pool.
+     */
+    public static int size() {
+        int size = 0;
+        for (Map<String, WeakReference<String>> stripe : POOL) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * The number of strings that have been replaced with a pooled copy.
+     *
+     * @return The number of duplicate strings found.
+     */
+    public static long getDuplicates() {
+        return duplicates.sum();
+    }
+
+    /**
+     * Roughly how much memory has been saved by using pooled copies of strings.<br><br>
+     *
+     * This is worked out using the usual size of a string on a 64-bit JVM with compressed pointers.
+     *
+     * @return The estimated number of bytes saved.
+     */
+    public static long getBytesSaved() {
+        return bytesSaved.sum();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, WeakReference<String>>[] createStripes() {
+        Map<String, WeakReference<String>>[] stripes = new Map[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new WeakHashMap<>();
+        }
+        return stripes;
+    }
+
+    private static Map<String, WeakReference<String>> stripe(String key) {
+        // Mix in the high bits too, like HashMap does, so that the stripes are used evenly.
+        int hash = key.hashCode();
+        return POOL[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    // A string object plus its character array, both rounded up to 8 bytes.
+    private static long estimateSize(String value) {
+        boolean latin = true;
+        for (int i = 0; i < value.length() && latin; i++) {
+            latin = value.charAt(i) < 256;
+        }
+        long array = 16 + (latin ? value.length() : value.length() * 2L);
+        return 24 + ((array + 7) & ~7);
+    }
+}
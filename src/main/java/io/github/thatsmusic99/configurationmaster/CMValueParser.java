@@ -0,0 +1,198 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * CMValueParser reads the kinds of values that plugins commonly store as strings,
+ * such as durations ("1h30m"), sizes ("64MB") and enum names ("DIAMOND_SWORD").<br><br>
+ *
+ * These are used by the typed getters in {@link CMFile}, but can be used on their own too.
+ *
+ * @author Holly (Thatsmusic99)
+ * @see CMFile#getDuration(String)
+ * @see CMFile#getByteSize(String)
+ * @see CMFile#getEnum(String, Class)
+ */
+public final class CMValueParser {
+
+    private CMValueParser() {}
+
+    /**
+     * Reads a duration.<br><br>
+     *
+     * A duration is made up of numbers followed by a unit - ms, s, m, h, d or w - such
+     * as "5m" or "1h30s". A number on its own is taken as seconds. ISO-8601 durations,
+     * such as "PT5M", are also accepted.
+     *
+     * @param value The duration to be read.
+     * @return The duration.
+     * @throws IllegalArgumentException if the value is not a valid duration.
+     */
+    @NotNull
+    public static Duration parseDuration(@NotNull String value) {
+        String input = value.trim().toLowerCase(Locale.ROOT);
+        if (input.isEmpty()) throw new IllegalArgumentException("The duration is empty.");
+        if (input.startsWith("p") || input.startsWith("-p")) {
+            try {
+                return Duration.parse(input.toUpperCase(Locale.ROOT));
+            } catch (RuntimeException ex) {
+                throw new IllegalArgumentException(value + " is not a valid duration.", ex);
+            }
+        }
+        Duration duration = Duration.ZERO;
+        int i = 0;
+        while (i < input.length()) {
+            // Read the number.
+            int start = i;
+            while (i < input.length() && (Character.isDigit(input.charAt(i)) || input.charAt(i) == '.')) {
+                i++;
+            }
+            if (start == i) throw new IllegalArgumentException(value + " is not a valid duration.");
+            double amount;
+            try {
+                amount = Double.parseDouble(input.substring(start, i));
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException(value + " is not a valid duration.", ex);
+            }
+            // Then the unit.
+            while (i < input.length() && input.charAt(i) == ' ') i++;
+            start = i;
+            while (i < input.length() && Character.isLetter(input.charAt(i))) {
+                i++;
+            }
+            long millis;
+            switch (input.substring(start, i)) {
+                case "ms":
+                    millis = 1;
+                    break;
+                case "":
+                case "s":
+                    millis = 1000;
+                    break;
+                case "m":
+                    millis = 60 * 1000;
+                    break;
+                case "h":
+                    millis = 60 * 60 * 1000;
+                    break;
+                case "d":
+                    millis = 24 * 60 * 60 * 1000;
+                    break;
+                case "w":
+                    millis = 7 * 24 * 60 * 60 * 1000;
+                    break;
+                default:
+                    throw new IllegalArgumentException(value + " has an unknown unit of time.");
+            }
+            duration = duration.plusMillis(Math.round(amount * millis));
+            while (i < input.length() && input.charAt(i) == ' ') i++;
+        }
+        return duration;
+    }
+
+    /**
+     * Writes a duration the same way it would be read by {@link #parseDuration(String)}, such as "1h30s".<br><br>
+     *
+     * Negative durations are written in ISO-8601, such as "-PT5M".
+     *
+     * @param duration The duration to be written.
+     * @return The written duration.
+     */
+    @NotNull
+    public static String formatDuration(@NotNull Duration duration) {
+        if (duration.isNegative()) return duration.toString();
+        if (duration.isZero()) return "0s";
+        StringBuilder builder = new StringBuilder();
+        long millis = duration.toMillis();
+        // Largest unit first, leaving out any that aren't needed.
+        long[] sizes = {24 * 60 * 60 * 1000, 60 * 60 * 1000, 60 * 1000, 1000, 1};
+        String[] units = {"d", "h", "m", "s", "ms"};
+        for (int i = 0; i < sizes.length; i++) {
+            if (millis >= sizes[i]) {
+                builder.append(millis / sizes[i]).append(units[i]);
+                millis %= sizes[i];
+            }
+        }
+        // Anything smaller than a millisecond can only be written in full.
+        return duration.getNano() % 1000000 != 0 ? duration.toString() : builder.toString();
+    }
+
+    /**
+     * Reads a size in bytes.<br><br>
+     *
+     * A size is a number followed by an optional unit - B, KB, MB, GB or TB - such as
+     * "64MB" or "1.5 GB". Each unit is 1024 times larger than the previous one, and the
+     * B can be left off ("64M").
+     *
+     * @param value The size to be read.
+     * @return The number of bytes.
+     * @throws IllegalArgumentException if the value is not a valid size.
+     */
+    public static long parseByteSize(@NotNull String value) {
+        String input = value.trim().toUpperCase(Locale.ROOT);
+        int i = 0;
+        while (i < input.length() && (Character.isDigit(input.charAt(i)) || input.charAt(i) == '.')) {
+            i++;
+        }
+        if (i == 0) throw new IllegalArgumentException(value + " is not a valid size.");
+        double amount;
+        try {
+            amount = Double.parseDouble(input.substring(0, i));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(value + " is not a valid size.", ex);
+        }
+        String unit = input.substring(i).trim();
+        // KiB and KB mean the same thing here.
+        if (unit.endsWith("IB")) {
+            unit = unit.substring(0, unit.length() - 2);
+        } else if (unit.endsWith("B")) {
+            unit = unit.substring(0, unit.length() - 1);
+        }
+        int power;
+        switch (unit) {
+            case "":
+                power = 0;
+                break;
+            case "K":
+                power = 1;
+                break;
+            case "M":
+                power = 2;
+                break;
+            case "G":
+                power = 3;
+                break;
+            case "T":
+                power = 4;
+                break;
+            default:
+                throw new IllegalArgumentException(value + " has an unknown unit of size.");
+        }
+        return Math.round(amount * Math.pow(1024, power));
+    }
+
+    /**
+     * Reads the name of an enum constant.<br><br>
+     *
+     * Case is ignored, and spaces or dashes can be used instead of underscores,
+     * so "diamond sword" will be read as DIAMOND_SWORD.
+     *
+     * @param type The enum the constant belongs to.
+     * @param value The name of the constant.
+     * @param <E> The type of the enum.
+     * @return The enum constant.
+     * @throws IllegalArgumentException if the enum doesn't have a constant with that name.
+     */
+    @NotNull
+    public static <E extends Enum<E>> E parseEnum(@NotNull Class<E> type, @NotNull String value) {
+        String name = value.trim().toUpperCase(Locale.ROOT).replace(' ', '_').replace('-', '_');
+        try {
+            return Enum.valueOf(type, name);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException(value + " is not a valid " + type.getSimpleName() + ".", ex);
+        }
+    }
+}
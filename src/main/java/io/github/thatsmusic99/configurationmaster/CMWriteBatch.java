@@ -0,0 +1,302 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * CMWriteBatch writes config files safely, and lets lots of files be written to the disk together.<br><br>
+ *
+ * Files are never written over directly. The new contents are written to a temporary file
+ * next to the original, which is then moved over it in one step. If the server crashes or
+ * the disk fills up partway through, the original file is left as it was, rather than being
+ * left half written.<br><br>
+ *
+ * Making sure a file has actually reached the disk is slow, so when many files are saved at
+ * once - such as when the server starts or everything is reloaded - they can be saved in a
+ * batch. Each file is written to its temporary file straight away, but nothing replaces the
+ * original files until the batch is closed, at which point all of them are flushed to the
+ * disk together and moved into place.
+ *
+ * <pre>
+ * try (CMWriteBatch batch = CMWriteBatch.begin()) {
+ *     messages.load();
+ *     settings.load();
+ * }
+ * </pre>
+ *
+ * Changes appended to a {@link CMJournal} whilst a batch is open are flushed along with
+ * the files, rather than one at a time.<br><br>
+ *
+ * Batches only apply to the thread that began them. Files saved on other threads are
+ * written straight away.
+ *
+ * @author Holly (Thatsmusic99)
+ */
+public final class CMWriteBatch implements Closeable {
+
+    // The batch currently open on each thread.
+    private static final ThreadLocal<CMWriteBatch> CURRENT = new ThreadLocal<>();
+    // How files and folders are opened to be written and flushed. Only replaced by tests, to see what reaches the disk.
+    static ChannelOpener opener = FileChannel::open;
+
+    // The temporary file holding the new contents of each file, in the order they were written.
+    private final Map<File, File> pending;
+    // Actions waiting for each file to be moved into place, by file.
+    private final Map<File, List<Runnable>> waiting;
+    // Journals that have been appended to and still need flushing.
+    private final Set<CMJournal> journals;
+    // Whether the batch has been closed.
+    private boolean closed;
+
+    private CMWriteBatch() {
+        this.pending = new LinkedHashMap<>();
+        this.waiting = new HashMap<>();
+        this.journals = new LinkedHashSet<>();
+    }
+
+    /**
+     * Starts a batch on the current thread.<br><br>
+     *
+     * Everything saved on this thread until the batch is closed is written to the disk together.
+     *
+     * @return The new batch.
+     * @throws IllegalStateException if a batch is already open on this thread.
+     */
+    @NotNull
+    public static CMWriteBatch begin() {
+        if (CURRENT.get() != null) {
+            throw new IllegalStateException("A write batch is already open on this thread.");
+        }
+        CMWriteBatch batch = new CMWriteBatch();
+        CURRENT.set(batch);
+        return batch;
+    }
+
+    /**
+     * The batch open on the current thread.
+     *
+     * @return The batch, or null if there isn't one.
+     */
+    @Nullable
+    public static CMWriteBatch current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Writes a file safely.<br><br>
+     *
+     * If a batch is open on the current thread, the file is added to it. Otherwise, it is
+     * flushed to the disk and moved into place straight away.
+     *
+     * @param file The file to be written.
+     * @param data The new contents of the file.
+     * @throws IOException if the file could not be written.
+     */
+    public static void write(@NotNull File file, @NotNull byte[] data) throws IOException {
+        CMWriteBatch batch = CURRENT.get();
+        File temp = tempFile(file);
+        writeTemp(temp, data, batch == null);
+        if (batch != null) {
+            batch.pending.put(file.getAbsoluteFile(), temp);
+            return;
+        }
+        move(temp, file);
+        syncFolder(file.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * Runs an action once a file written on this thread has safely reached the disk.<br><br>
+     *
+     * If the file is waiting in the current batch, the action is run once the batch has moved
+     * it into place. If the batch fails to write the file, the action is never run. Otherwise,
+     * the file has already been written, so the action is run straight away.
+     *
+     * @param file The file that has been written.
+     * @param action The action to run.
+     */
+    public static void whenWritten(@NotNull File file, @NotNull Runnable action) {
+        CMWriteBatch batch = CURRENT.get();
+        File key = file.getAbsoluteFile();
+        if (batch == null || !batch.pending.containsKey(key)) {
+            action.run();
+            return;
+        }
+        batch.waiting.computeIfAbsent(key, k -> new ArrayList<>()).add(action);
+    }
+
+    /**
+     * Leaves a journal to be flushed when the batch open on the current thread is closed.
+     *
+     * @param journal The journal that has been appended to.
+     * @return true if a batch will flush it, or false if there isn't a batch and it should be flushed now.
+     */
+    static boolean flushLater(@NotNull CMJournal journal) {
+        CMWriteBatch batch = CURRENT.get();
+        if (batch == null) return false;
+        batch.journals.add(journal);
+        return true;
+    }
+
+    /**
+     * Writes a file safely straight away, ignoring any batch, and sets when it was last modified.
+     *
+     * @param file The file to be written.
+     * @param data The new contents of the file.
+     * @param lastModified When the file should appear to have last been modified, in milliseconds since the epoch.
+     * @throws IOException if the file could not be written.
+     */
+    static void writeNow(@NotNull File file, @NotNull byte[] data, long lastModified) throws IOException {
+        File temp = tempFile(file);
+        writeTemp(temp, data, true);
+        temp.setLastModified(lastModified);
+        move(temp, file);
+        syncFolder(file.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * Returns the file to read from in place of a file that is still waiting in the current batch.<br><br>
+     *
+     * This lets files be loaded again after they've been saved, before the batch has been closed.
+     *
+     * @param file The file to be read.
+     * @return The temporary file holding its new contents, or the file itself if it isn't waiting to be written.
+     */
+    @NotNull
+    public static File readable(@NotNull File file) {
+        CMWriteBatch batch = CURRENT.get();
+        if (batch == null) return file;
+        File temp = batch.pending.get(file.getAbsoluteFile());
+        return temp == null ? file : temp;
+    }
+
+    /**
+     * The number of files waiting to be written.
+     *
+     * @return The number of files in the batch.
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * Flushes every file in the batch to the disk and moves them into place.<br><br>
+     *
+     * All of the files are flushed before any of them are moved, so each folder only
+     * needs to be flushed once afterwards.
+     *
+     * @throws IOException if any of the files could not be written. The rest are still written.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+        IOException failure = null;
+        // Flush everything first...
+        for (CMJournal journal : journals) {
+            try {
+                journal.flush();
+            } catch (IOException ex) {
+                failure = failure == null ? ex : failure;
+            }
+        }
+        journals.clear();
+        Map<File, File> ready = new LinkedHashMap<>();
+        for (Map.Entry<File, File> entry : pending.entrySet()) {
+            try (FileChannel channel = opener.open(entry.getValue().toPath(), StandardOpenOption.WRITE)) {
+                channel.force(true);
+                ready.put(entry.getKey(), entry.getValue());
+            } catch (IOException ex) {
+                failure = failure == null ? ex : failure;
+                entry.getValue().delete();
+            }
+        }
+        // ...then move each file into place.
+        Set<File> folders = new LinkedHashSet<>();
+        List<File> moved = new ArrayList<>();
+        for (Map.Entry<File, File> entry : ready.entrySet()) {
+            try {
+                move(entry.getValue(), entry.getKey());
+                folders.add(entry.getKey().getParentFile());
+                moved.add(entry.getKey());
+            } catch (IOException ex) {
+                failure = failure == null ? ex : failure;
+            }
+        }
+        pending.clear();
+        // Make sure the moves themselves are saved.
+        for (File folder : folders) {
+            syncFolder(folder);
+        }
+        // Only now is it safe to do anything that relied on the files being written.
+        for (File file : moved) {
+            List<Runnable> actions = waiting.get(file);
+            if (actions == null) continue;
+            for (Runnable action : actions) {
+                action.run();
+            }
+        }
+        waiting.clear();
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Opens a channel to a file or folder.
+     */
+    @FunctionalInterface
+    interface ChannelOpener {
+        FileChannel open(Path path, OpenOption... options) throws IOException;
+    }
+
+    private static File tempFile(File file) {
+        return new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+    }
+
+    private static void writeTemp(File temp, byte[] data, boolean sync) throws IOException {
+        try (FileChannel channel = opener.open(temp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (sync) {
+                channel.force(true);
+            }
+        } catch (IOException ex) {
+            // Don't leave half a file lying around.
+            temp.delete();
+            throw ex;
+        }
+    }
+
+    private static void move(File temp, File file) throws IOException {
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void syncFolder(@Nullable File folder) {
+        if (folder == null) return;
+        // Not every system lets folders be flushed, in which case the move is saved whenever the system gets to it.
+        try (FileChannel channel = opener.open(folder.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+}
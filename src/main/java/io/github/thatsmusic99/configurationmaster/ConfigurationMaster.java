@@ -1,11 +1,114 @@
 package io.github.thatsmusic99.configurationmaster;
 
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ConfigurationMaster plugin, which provides a {@link CMService} for every other plugin using ConfigurationMaster to share.
+ *
+ * @author Holly (Thatsmusic99)
+ * @see CMService#get()
+ */
 public class ConfigurationMaster extends JavaPlugin {
 
+    // The service shared with other plugins, whilst the plugin is enabled.
+    @Nullable
+    private CMService service;
+
     @Override
     public void onEnable() {
+        // Leave a core for the server itself, and don't take over the disk either.
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+        service = new CMService(new BukkitHost(this), threads);
+        getServer().getServicesManager().register(CMService.class, service, this, ServicePriority.Normal);
+    }
+
+    @Override
+    public void onDisable() {
+        getServer().getServicesManager().unregisterAll(this);
+        if (service != null) {
+            service.close();
+            service = null;
+        }
+    }
+
+    @Override
+    public boolean onCommand(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
+        CMService service = this.service;
+        if (service == null) return true;
+        // Returning false shows the usage from the plugin.yml.
+        if (args.length != 1) return false;
+        switch (args[0].toLowerCase(Locale.ROOT)) {
+            case "reload":
+                reload(sender, service);
+                return true;
+            case "stats":
+                showStats(sender, service);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void reload(CommandSender sender, CMService service) {
+        List<CMFile> files = service.getFiles();
+        sender.sendMessage(ChatColor.GRAY + "Reloading " + files.size() + " config files...");
+        long start = System.nanoTime();
+        service.reload(files).whenComplete((result, ex) -> {
+            long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            // The reload finishes on another thread, so tell the sender back on the main one.
+            if (!isEnabled()) return;
+            getServer().getScheduler().runTask(this, () ->
+                    sender.sendMessage(ChatColor.GREEN + "Reloaded " + files.size() + " config files in " + time + "ms."));
+        });
+    }
+
+    private void showStats(CommandSender sender, CMService service) {
+        // Count the files for each plugin, since the combined stats don't say how many there are.
+        Map<String, Integer> counts = new HashMap<>();
+        for (CMFile file : service.getFiles()) {
+            if (file.getLoadStats() == null) continue;
+            counts.merge(file.getHost().getName(), 1, Integer::sum);
+        }
+        SortedMap<String, CMLoadStats> stats = service.getStats();
+        if (stats.isEmpty()) {
+            sender.sendMessage(ChatColor.GRAY + "No config files have been loaded through ConfigurationMaster yet.");
+            return;
+        }
+        sender.sendMessage(ChatColor.GOLD + "ConfigurationMaster load statistics:");
+        for (Map.Entry<String, CMLoadStats> entry : stats.entrySet()) {
+            sender.sendMessage(describe(entry.getKey(), counts.getOrDefault(entry.getKey(), 0), entry.getValue()));
+        }
+        int total = 0;
+        for (int count : counts.values()) {
+            total += count;
+        }
+        sender.sendMessage(describe("Total", total, service.getTotalStats()));
+    }
+
+    private static String describe(String name, int files, CMLoadStats stats) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(ChatColor.YELLOW).append(name).append(ChatColor.GRAY).append(": ")
+                .append(files).append(files == 1 ? " file, " : " files, ")
+                .append(formatSize(stats.getStoredSize())).append(" on disk");
+        if (stats.isCompressed()) {
+            builder.append(" (").append(formatSize(stats.getContentSize())).append(" uncompressed)");
+        }
+        builder.append(", loaded in ").append(stats.getLoadTime(TimeUnit.MILLISECONDS)).append("ms");
+        return builder.toString();
+    }
 
+    private static String formatSize(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+        return String.format(Locale.ROOT, "%.1f MB", bytes / (1024.0 * 1024));
     }
 }
@@ -0,0 +1,158 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * A host used when ConfigurationMaster runs outside of a Minecraft server.<br><br>
+ *
+ * Tasks are run one at a time on a single background thread, which stands in for
+ * the server's main thread. Call {@link #shutdown()} once the files are no longer
+ * needed to stop it.<br><br>
+ *
+ * No server is needed, but spigot-api still is, since config files are read into
+ * Bukkit's configuration classes. Since ConfigurationMaster only depends on it with
+ * the provided scope, anything using this host has to add spigot-api itself.
+ *
+ * @author Holly (Thatsmusic99)
+ * @see CMHost
+ */
+public class StandaloneHost implements CMHost {
+
+    // The name shown in the title of config files.
+    private final String name;
+    // The folder config files are stored in by default.
+    private final File dataFolder;
+    // The logger used for warnings.
+    private final Logger logger;
+    // The authors credited in the title of config files.
+    private final List<String> authors;
+    // The description shown in the title of config files.
+    @Nullable
+    private String description;
+    // The thread tasks are run on, created when first needed.
+    @Nullable
+    private ScheduledExecutorService executor;
+    // Whether the host has been shut down.
+    private volatile boolean shutdown;
+
+    /**
+     * Creates a host with a name and a folder to store files in.
+     *
+     * @param name The name shown in the title of config files, also used for the logger.
+     * @param dataFolder The folder config files are stored in by default.
+     */
+    public StandaloneHost(@NotNull String name, @NotNull File dataFolder) {
+        this.name = name;
+        this.dataFolder = dataFolder;
+        this.logger = Logger.getLogger(name);
+        this.authors = new ArrayList<>();
+    }
+
+    /**
+     * Adds an author to be credited in the title of config files.
+     *
+     * @param author The name of the author.
+     * @return This host, so that calls can be chained.
+     */
+    @NotNull
+    public StandaloneHost addAuthor(@NotNull String author) {
+        authors.add(author);
+        return this;
+    }
+
+    /**
+     * Sets the description shown in the title of config files.
+     *
+     * @param description The description, or null for none.
+     * @return This host, so that calls can be chained.
+     */
+    @NotNull
+    public StandaloneHost setDescription(@Nullable String description) {
+        this.description = description;
+        return this;
+    }
+
+    @NotNull
+    @Override
+    public File getDataFolder() {
+        return dataFolder;
+    }
+
+    @NotNull
+    @Override
+    public Logger getLogger() {
+        return logger;
+    }
+
+    @NotNull
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @NotNull
+    @Override
+    public List<String> getAuthors() {
+        return Collections.unmodifiableList(authors);
+    }
+
+    @Nullable
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return !shutdown;
+    }
+
+    @Override
+    public void runTask(@NotNull Runnable task) {
+        getExecutor().execute(task);
+    }
+
+    @NotNull
+    @Override
+    public Task runRepeatingTask(@NotNull Runnable task, long periodTicks) {
+        long period = periodTicks * 50;
+        ScheduledFuture<?> future = getExecutor().scheduleAtFixedRate(task, period, period, TimeUnit.MILLISECONDS);
+        return () -> future.cancel(false);
+    }
+
+    /**
+     * Stops running tasks. Any that are waiting to run are cancelled.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private synchronized ScheduledExecutorService getExecutor() {
+        if (shutdown) {
+            throw new IllegalStateException("The host has been shut down.");
+        }
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name + " ConfigurationMaster");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+}
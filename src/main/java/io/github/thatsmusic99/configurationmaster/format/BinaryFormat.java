@@ -0,0 +1,214 @@
+package io.github.thatsmusic99.configurationmaster.format;
+
+import com.google.common.base.Charsets;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * A compact binary format for files that are never edited by hand.<br><br>
+ *
+ * Every value is written as a one byte type tag followed by its data. Strings,
+ * lists and maps are prefixed by their length, so they can be read back without
+ * any scanning or type resolution.<br><br>
+ *
+ * The value encoding is also available through {@link #writeValue(DataOutput, Object)}
+ * and {@link #readValue(DataInput)}, so that other parts of ConfigurationMaster can
+ * store individual values the same way.
+ *
+ * @see CMFormat#BINARY
+ */
+public class BinaryFormat extends CMFormat {
+
+    // The bytes at the start of every binary file, the last being the version.
+    private static final byte[] MAGIC = {'C', 'M', 'B', 1};
+
+    private static final byte NULL = 0;
+    private static final byte MAP = 1;
+    private static final byte LIST = 2;
+    private static final byte STRING = 3;
+    private static final byte INT = 4;
+    private static final byte LONG = 5;
+    private static final byte DOUBLE = 6;
+    private static final byte TRUE = 7;
+    private static final byte FALSE = 8;
+    private static final byte BIG_INTEGER = 9;
+
+    BinaryFormat() {}
+
+    @NotNull
+    @Override
+    public String getExtension() {
+        return ".cmb";
+    }
+
+    @Override
+    public boolean supportsComments() {
+        return false;
+    }
+
+    @Override
+    public void load(@NotNull FileConfiguration config, @NotNull InputStream input) throws IOException, InvalidConfigurationException {
+        DataInputStream data = new DataInputStream(input);
+        clear(config);
+        byte[] magic = new byte[MAGIC.length];
+        int read = data.read(magic);
+        // An empty file is just an empty config.
+        if (read <= 0) return;
+        if (read < magic.length) {
+            data.readFully(magic, read, magic.length - read);
+        }
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new InvalidConfigurationException("Not a ConfigurationMaster binary file, or an unsupported version.");
+        }
+        Object value = readValue(data);
+        if (!(value instanceof Map)) {
+            throw new InvalidConfigurationException("Top level is not a Map.");
+        }
+        fill((Map<?, ?>) value, config);
+    }
+
+    @Override
+    public void save(@NotNull FileConfiguration config, @NotNull OutputStream output) throws IOException {
+        DataOutputStream data = new DataOutputStream(output);
+        data.write(MAGIC);
+        writeValue(data, toPlain(config));
+        data.flush();
+    }
+
+    /**
+     * Writes a single value in the binary encoding.<br><br>
+     *
+     * Sections and serializable objects are written as maps. Any value that has no
+     * binary type is written as a string, the same as it would be in JSON.
+     *
+     * @param output The output to write to.
+     * @param value The value to be written.
+     * @throws IOException if the output could not be written to.
+     */
+    public static void writeValue(@NotNull DataOutput output, @Nullable Object value) throws IOException {
+        value = toPlain(value);
+        if (value == null) {
+            output.writeByte(NULL);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            output.writeByte(MAP);
+            writeVarInt(output, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(output, String.valueOf(entry.getKey()));
+                writeValue(output, entry.getValue());
+            }
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            output.writeByte(LIST);
+            writeVarInt(output, list.size());
+            for (Object item : list) {
+                writeValue(output, item);
+            }
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            output.writeByte(INT);
+            output.writeInt(((Number) value).intValue());
+        } else if (value instanceof Long) {
+            output.writeByte(LONG);
+            output.writeLong((Long) value);
+        } else if (value instanceof Double || value instanceof Float) {
+            output.writeByte(DOUBLE);
+            output.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof BigInteger) {
+            output.writeByte(BIG_INTEGER);
+            writeString(output, value.toString());
+        } else if (value instanceof Boolean) {
+            output.writeByte((Boolean) value ? TRUE : FALSE);
+        } else {
+            output.writeByte(STRING);
+            writeString(output, String.valueOf(value));
+        }
+    }
+
+    /**
+     * Reads a single value written by {@link #writeValue(DataOutput, Object)}.
+     *
+     * @param input The input to read from.
+     * @return The value that was read. Maps are returned as plain maps rather than sections.
+     * @throws IOException if the input could not be read, or contains an unknown type.
+     */
+    @Nullable
+    public static Object readValue(@NotNull DataInput input) throws IOException {
+        byte type = input.readByte();
+        switch (type) {
+            case NULL:
+                return null;
+            case MAP:
+                int mapSize = readVarInt(input);
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < mapSize; i++) {
+                    map.put(readString(input), readValue(input));
+                }
+                return map;
+            case LIST:
+                int listSize = readVarInt(input);
+                List<Object> list = new ArrayList<>(listSize);
+                for (int i = 0; i < listSize; i++) {
+                    list.add(readValue(input));
+                }
+                return list;
+            case STRING:
+                return readString(input);
+            case INT:
+                return input.readInt();
+            case LONG:
+                return input.readLong();
+            case DOUBLE:
+                return input.readDouble();
+            case TRUE:
+                return true;
+            case FALSE:
+                return false;
+            case BIG_INTEGER:
+                return new BigInteger(readString(input));
+            default:
+                throw new IOException("Unknown binary value type " + type);
+        }
+    }
+
+    private static void writeString(DataOutput output, String str) throws IOException {
+        byte[] bytes = str.getBytes(Charsets.UTF_8);
+        writeVarInt(output, bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(DataInput input) throws IOException {
+        byte[] bytes = new byte[readVarInt(input)];
+        input.readFully(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    private static void writeVarInt(DataOutput output, int value) throws IOException {
+        // Seven bits at a time, with the top bit marking that more bytes follow.
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput input) throws IOException {
+        int value = 0;
+        int shift = 0;
+        byte current;
+        do {
+            if (shift > 28) {
+                throw new IOException("Binary length is too long.");
+            }
+            current = input.readByte();
+            value |= (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,282 @@
+package io.github.thatsmusic99.configurationmaster.format;
+
+import io.github.thatsmusic99.configurationmaster.CMStringPool;
+import io.github.thatsmusic99.configurationmaster.CMWriteBatch;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.configuration.serialization.ConfigurationSerializable;
+import org.bukkit.configuration.serialization.ConfigurationSerialization;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * CMFormat is the storage format used to read and write a CMFile.<br><br>
+ *
+ * By default, every CMFile is stored as YAML so that it can be edited by hand.
+ * Files that are only ever written by the plugin itself - such as data files -
+ * can instead use {@link #JSON} or {@link #BINARY}, which are much cheaper to
+ * parse and serialise. Large data files can use {@link #STORE}, which only
+ * writes the options that have changed. Either way, the file is still read through the same
+ * getters, defaults and migration methods in CMFile.<br><br>
+ *
+ * Only YAML supports the header and comments; other formats simply store the values.
+ *
+ * @author Holly (Thatsmusic99)
+ */
+public abstract class CMFormat {
+
+    /**
+     * The default format, which keeps all comments and can be edited by hand.
+     */
+    public static final CMFormat YAML = new YamlFormat();
+    /**
+     * A compact JSON format, parsed and written without going through SnakeYAML.
+     */
+    public static final CMFormat JSON = new JsonFormat();
+    /**
+     * A compact binary format, intended for files that are never edited by hand.
+     */
+    public static final CMFormat BINARY = new BinaryFormat();
+    /**
+     * An embedded key-value store, where changing one option only writes that option.
+     */
+    public static final CMFormat STORE = new StoreFormat();
+
+    /**
+     * The file extension used by the format, including the dot.
+     *
+     * @return The file extension, such as ".yml".
+     */
+    @NotNull
+    public abstract String getExtension();
+
+    /**
+     * Whether the format can store the header and comments generated by CMFile.
+     *
+     * @return true if comments are supported.
+     */
+    public abstract boolean supportsComments();
+
+    /**
+     * Reads the contents of a stream into the provided configuration.<br><br>
+     *
+     * Any values already in the configuration are replaced, although its defaults are kept.
+     *
+     * @param config The configuration that the values will be loaded into.
+     * @param input The stream to read from. It is not closed afterwards.
+     * @throws IOException if the stream could not be read.
+     * @throws InvalidConfigurationException if the contents are not valid for this format.
+     */
+    public abstract void load(@NotNull FileConfiguration config, @NotNull InputStream input) throws IOException, InvalidConfigurationException;
+
+    /**
+     * Writes the contents of the provided configuration to a stream.
+     *
+     * @param config The configuration to be written.
+     * @param output The stream to write to. It is not closed afterwards.
+     * @throws IOException if the stream could not be written to.
+     */
+    public abstract void save(@NotNull FileConfiguration config, @NotNull OutputStream output) throws IOException;
+
+    /**
+     * Reads a file into the provided configuration.<br><br>
+     *
+     * If the file has been saved in a {@link CMWriteBatch} that hasn't been closed yet,
+     * the new contents are read.
+     *
+     * @param config The configuration that the values will be loaded into.
+     * @param file The file to be read.
+     * @throws IOException if the file could not be read.
+     * @throws InvalidConfigurationException if the contents are not valid for this format.
+     */
+    public void load(@NotNull FileConfiguration config, @NotNull File file) throws IOException, InvalidConfigurationException {
+        load(config, read(file));
+    }
+
+    /**
+     * Reads the contents of a buffer into the provided configuration.
+     *
+     * @param config The configuration that the values will be loaded into.
+     * @param contents The contents to be read, backed by an array.
+     * @throws IOException if the contents could not be read.
+     * @throws InvalidConfigurationException if the contents are not valid for this format.
+     */
+    public void load(@NotNull FileConfiguration config, @NotNull ByteBuffer contents) throws IOException, InvalidConfigurationException {
+        load(config, new ByteArrayInputStream(contents.array(), contents.arrayOffset() + contents.position(), contents.remaining()));
+    }
+
+    /**
+     * Reads the whole of a file in one go.<br><br>
+     *
+     * The file's size is checked first, so that the contents can be read straight into a
+     * buffer of the right size rather than being copied between smaller buffers. If the file
+     * has been saved in a {@link CMWriteBatch} that hasn't been closed yet, the new contents
+     * are read.
+     *
+     * @param file The file to be read.
+     * @return A buffer containing the file's contents, backed by an array.
+     * @throws IOException if the file could not be read.
+     */
+    @NotNull
+    public static ByteBuffer read(@NotNull File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(CMWriteBatch.readable(file).toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE - 8) {
+                throw new IOException(file.getName() + " is too large to be loaded.");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) == -1) break;
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    /**
+     * Writes the provided configuration to a file.<br><br>
+     *
+     * The file is replaced in one step, so it is never left half written.
+     *
+     * @param config The configuration to be written.
+     * @param file The file to be written to.
+     * @throws IOException if the file could not be written to.
+     * @see CMWriteBatch#write(File, byte[])
+     */
+    public void save(@NotNull FileConfiguration config, @NotNull File file) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        save(config, output);
+        CMWriteBatch.write(file, output.toByteArray());
+    }
+
+    /**
+     * Converts a file from one format into another.<br><br>
+     *
+     * Any comments in the source file are lost if the target format does not support them.
+     * The source file is left untouched.
+     *
+     * @param source The file to be converted.
+     * @param from The format the source file is currently stored in.
+     * @param target The file to write the converted values to.
+     * @param to The format to be converted to.
+     * @throws IOException if either file could not be read or written to.
+     * @throws InvalidConfigurationException if the source file is not valid for its format.
+     */
+    public static void convert(@NotNull File source, @NotNull CMFormat from, @NotNull File target, @NotNull CMFormat to) throws IOException, InvalidConfigurationException {
+        FileConfiguration config = new YamlConfiguration();
+        from.load(config, source);
+        to.save(config, target);
+    }
+
+    /**
+     * Turns a section - and everything inside of it - into plain maps and lists.<br><br>
+     *
+     * Serializable objects, such as item stacks and locations, are turned into maps
+     * the same way Bukkit stores them in YAML.
+     *
+     * @param value The value to be converted.
+     * @return The value made up of only maps, lists and simple values.
+     */
+    public static Object toPlain(Object value) {
+        if (value instanceof ConfigurationSection) {
+            ConfigurationSection section = (ConfigurationSection) value;
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (String key : section.getKeys(false)) {
+                map.put(key, toPlain(section.get(key)));
+            }
+            return map;
+        } else if (value instanceof ConfigurationSerializable) {
+            ConfigurationSerializable serializable = (ConfigurationSerializable) value;
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put(ConfigurationSerialization.SERIALIZED_TYPE_KEY, ConfigurationSerialization.getAlias(serializable.getClass()));
+            for (Map.Entry<String, Object> entry : serializable.serialize().entrySet()) {
+                map.put(entry.getKey(), toPlain(entry.getValue()));
+            }
+            return map;
+        } else if (value instanceof Map) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                map.put(String.valueOf(entry.getKey()), toPlain(entry.getValue()));
+            }
+            return map;
+        } else if (value instanceof Collection) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (Collection<?>) value) {
+                list.add(toPlain(item));
+            }
+            return list;
+        }
+        return value;
+    }
+
+    /**
+     * Turns a plain value back into what Bukkit would have loaded from YAML.<br><br>
+     *
+     * Maps tagged as serialized objects are deserialized; everything else is left as it is.
+     *
+     * @param value The value to be converted.
+     * @return The converted value.
+     */
+    public static Object fromPlain(Object value) {
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            Map<String, Object> result = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                result.put(String.valueOf(entry.getKey()), fromPlain(entry.getValue()));
+            }
+            if (result.containsKey(ConfigurationSerialization.SERIALIZED_TYPE_KEY)) {
+                return ConfigurationSerialization.deserializeObject(result);
+            }
+            return result;
+        } else if (value instanceof List) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (List<?>) value) {
+                list.add(fromPlain(item));
+            }
+            return list;
+        }
+        return value;
+    }
+
+    /**
+     * Removes all values from a configuration before a new file is loaded into it.
+     *
+     * @param config The configuration to be cleared.
+     */
+    protected static void clear(@NotNull FileConfiguration config) {
+        for (String key : config.getKeys(false)) {
+            config.set(key, null);
+        }
+    }
+
+    /**
+     * Places a map of plain values into a section, creating sub-sections for any nested maps.<br><br>
+     *
+     * Keys and short values are shared with other files through {@link CMStringPool}.
+     *
+     * @param map The values to be placed.
+     * @param section The section to place them into.
+     */
+    protected static void fill(@NotNull Map<?, ?> map, @NotNull ConfigurationSection section) {
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            String key = CMStringPool.intern(String.valueOf(entry.getKey()));
+            Object value = fromPlain(entry.getValue());
+            if (value instanceof String) {
+                value = CMStringPool.internValue((String) value);
+            }
+            // Nested maps become sections, like Bukkit does with YAML.
+            if (value instanceof Map) {
+                fill((Map<?, ?>) value, section.createSection(key));
+            } else {
+                section.set(key, value);
+            }
+        }
+    }
+}
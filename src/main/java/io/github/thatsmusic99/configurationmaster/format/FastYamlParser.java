@@ -0,0 +1,666 @@
+package io.github.thatsmusic99.configurationmaster.format;
+
+import io.github.thatsmusic99.configurationmaster.CMStringPool;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.serialization.ConfigurationSerialization;
+import org.jetbrains.annotations.NotNull;
+import org.yaml.snakeyaml.nodes.Tag;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * A single-pass parser for the narrow subset of YAML that CMFile itself writes.<br><br>
+ *
+ * It reads block mappings, lists of scalars, plain and quoted scalars (including
+ * ones folded over several lines), literal block scalars, empty flow collections and comments, placing
+ * the values straight into the configuration rather than going through SnakeYAML's
+ * composer, constructor and Bukkit's conversion into sections.<br><br>
+ *
+ * As soon as it finds anything outside of that subset - anchors, tags, folded scalars,
+ * flow collections, maps inside of lists, serialized objects and so on - it gives up
+ * and returns false, so that the file can be loaded by SnakeYAML instead.
+ */
+final class FastYamlParser {
+
+    // The text being parsed.
+    private final CharSequence text;
+    // The start of the line currently being looked at.
+    private int pos;
+    // Information about the current line, set by loadLine().
+    private int lineEnd;
+    private int indent;
+    private int contentStart;
+    // Where the key read by readKey() ends.
+    private int keyEnd;
+
+    private FastYamlParser(CharSequence text) {
+        this.text = text;
+        // Skip the byte order mark if there is one.
+        this.pos = text.length() > 0 && text.charAt(0) == '\uFEFF' ? 1 : 0;
+    }
+
+    /**
+     * Parses YAML into the provided configuration.<br><br>
+     *
+     * If false is returned, the configuration may contain some of the values that were
+     * read before giving up, so it should be cleared before loading the text another way.
+     *
+     * @param text The YAML to be parsed.
+     * @param config The configuration to place the values into.
+     * @return true if the whole text was parsed, false if it contains something unsupported.
+     */
+    static boolean parse(@NotNull CharSequence text, @NotNull FileConfiguration config) {
+        try {
+            FastYamlParser parser = new FastYamlParser(text);
+            if (parser.loadLine()) {
+                // The top level has to be a map that isn't indented.
+                if (parser.indent != 0 || parser.isListItem()) return false;
+                parser.parseMapping(config, 0);
+                // Anything left over means the indentation didn't line up.
+                if (parser.loadLine()) return false;
+            }
+        } catch (Unsupported ex) {
+            return false;
+        }
+        // Bukkit keeps the comments at the top as the header, so do the same.
+        String header = parseHeader(text);
+        if (header.length() > 0) {
+            config.options().header(header);
+        }
+        return true;
+    }
+
+    /**
+     * Parses part of a YAML file into the provided configuration, on top of anything it already contains.
+     *
+     * @param part The part to be parsed, as returned by {@link #split(CharSequence, int)}.
+     * @param config The configuration to place the values into.
+     * @return true if the whole part was parsed, false if it contains something unsupported.
+     */
+    static boolean parse(@NotNull YamlFormat.Part part, @NotNull FileConfiguration config) {
+        // Find the section the part belongs in, which an earlier part may have already created.
+        ConfigurationSection section = config;
+        for (String key : part.path) {
+            ConfigurationSection child = section.getConfigurationSection(key);
+            section = child == null ? section.createSection(key) : child;
+        }
+        try {
+            FastYamlParser parser = new FastYamlParser(part.text);
+            if (parser.loadLine()) {
+                if (parser.indent != part.indent || parser.isListItem()) return false;
+                parser.parseMapping(section, part.indent);
+                if (parser.loadLine()) return false;
+            }
+        } catch (Unsupported ex) {
+            return false;
+        }
+        // Only the first part can have the header at the top of it.
+        if (part.first) {
+            String header = parseHeader(part.text);
+            if (header.length() > 0) {
+                config.options().header(header);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Splits YAML text into parts that can each be parsed on their own.<br><br>
+     *
+     * A part can start at any option that isn't inside of a list or a value, so even one
+     * huge section can be split up. Each part remembers which section it starts in. If
+     * the text uses anything that isn't supported, it's returned as a single part.
+     *
+     * @param text The YAML to be split.
+     * @param partLength The length each part should be at least, unless it's the last one.
+     * @return The parts of the text, in order.
+     */
+    @NotNull
+    static List<YamlFormat.Part> split(@NotNull CharSequence text, int partLength) {
+        List<YamlFormat.Part> parts = new ArrayList<>();
+        FastYamlParser parser = new FastYamlParser(text);
+        // The keys of the sections the current line is inside of, and how far each one is indented.
+        List<String> keys = new ArrayList<>();
+        List<Integer> indents = new ArrayList<>();
+        // Anything indented further than this is part of a value or list, so can't start a part.
+        int valueIndent = -1;
+        int start = 0;
+        List<String> startPath = new ArrayList<>();
+        int startIndent = 0;
+        try {
+            while (parser.loadLine()) {
+                int indent = parser.indent;
+                if (valueIndent >= 0 && indent > valueIndent) {
+                    parser.nextLine(parser.lineEnd);
+                    continue;
+                }
+                valueIndent = -1;
+                while (!indents.isEmpty() && indents.get(indents.size() - 1) >= indent) {
+                    keys.remove(keys.size() - 1);
+                    indents.remove(indents.size() - 1);
+                }
+                if (parser.isListItem()) {
+                    valueIndent = indent;
+                    parser.nextLine(parser.lineEnd);
+                    continue;
+                }
+                // Working out what a key is can be slow, so only do so for sections.
+                String key = null;
+                char first = text.charAt(parser.contentStart);
+                if (first == '\'' || first == '"') {
+                    key = parser.readKey();
+                } else {
+                    if (parser.isIndicator(first, parser.contentStart)) throw new Unsupported();
+                    parser.keyEnd = parser.findColon(parser.contentStart);
+                }
+                // Start a new part once this one is long enough, or if this option is outside of the section it started in.
+                if (parser.pos - start >= partLength || indent < startIndent) {
+                    parts.add(new YamlFormat.Part(text.subSequence(start, parser.pos), startPath, startIndent, parts.isEmpty()));
+                    start = parser.pos;
+                    startPath = new ArrayList<>(keys);
+                    startIndent = indent;
+                }
+                int i = parser.keyEnd + 1;
+                if (i < parser.lineEnd && text.charAt(i) != ' ') throw new Unsupported();
+                i = parser.skipSpaces(i);
+                if (i >= parser.lineEnd || text.charAt(i) == '#') {
+                    // A section, or a list on the following lines.
+                    keys.add(key != null ? key : parser.readKey());
+                    indents.add(indent);
+                } else {
+                    valueIndent = indent;
+                }
+                parser.nextLine(parser.lineEnd);
+            }
+        } catch (Unsupported ex) {
+            // The text will have to be parsed by SnakeYAML anyways.
+            parts.clear();
+            start = 0;
+            startPath = new ArrayList<>();
+            startIndent = 0;
+        }
+        if (start < text.length() || parts.isEmpty()) {
+            parts.add(new YamlFormat.Part(text.subSequence(start, text.length()), startPath, startIndent, parts.isEmpty()));
+        }
+        return parts;
+    }
+
+    private void parseMapping(ConfigurationSection section, int mappingIndent) throws Unsupported {
+        while (loadLine()) {
+            if (indent < mappingIndent) return;
+            if (indent > mappingIndent || isListItem()) throw new Unsupported();
+
+            // The same keys turn up in lots of files, so share them.
+            String key = CMStringPool.intern(readKey());
+            // Skip the colon and any spaces after it.
+            int i = keyEnd + 1;
+            if (i < lineEnd && text.charAt(i) != ' ') throw new Unsupported();
+            i = skipSpaces(i);
+
+            if (i >= lineEnd || text.charAt(i) == '#') {
+                // The value is on the following lines, if anywhere.
+                nextLine(lineEnd);
+                if (!loadLine()) {
+                    section.set(key, null);
+                    return;
+                }
+                if (isListItem() && indent >= mappingIndent) {
+                    section.set(key, parseList(indent));
+                } else if (indent > mappingIndent) {
+                    parseMapping(section.createSection(key), indent);
+                } else {
+                    section.set(key, null);
+                }
+            } else {
+                Object value = pooled(parseValue(i, mappingIndent));
+                if (value instanceof LinkedHashMap) {
+                    section.createSection(key);
+                } else {
+                    section.set(key, value);
+                }
+            }
+        }
+    }
+
+    // Reads the key at the start of the current line, leaving keyEnd at the colon after it.
+    private String readKey() throws Unsupported {
+        int i = contentStart;
+        String key;
+        char first = text.charAt(i);
+        if (first == '\'' || first == '"') {
+            StringBuilder builder = new StringBuilder();
+            i = readQuoted(i, builder, false);
+            key = builder.toString();
+            if (i >= lineEnd || text.charAt(i) != ':') throw new Unsupported();
+        } else {
+            if (isIndicator(first, i)) throw new Unsupported();
+            int colon = findColon(i);
+            String raw = trimEnd(i, colon);
+            Tag tag = YamlScalars.resolveTag(raw);
+            if (!YamlScalars.isSupported(tag, raw)) throw new Unsupported();
+            Object resolved = YamlScalars.construct(tag, raw);
+            // Bukkit can't handle null keys.
+            if (resolved == null) throw new Unsupported();
+            key = String.valueOf(resolved);
+            i = colon;
+        }
+        // Serialized objects need to go through Bukkit.
+        if (key.equals(ConfigurationSerialization.SERIALIZED_TYPE_KEY)) throw new Unsupported();
+        keyEnd = i;
+        return key;
+    }
+
+    private List<Object> parseList(int listIndent) throws Unsupported {
+        List<Object> list = new ArrayList<>();
+        while (loadLine()) {
+            if (indent != listIndent || !isListItem()) {
+                if (indent > listIndent) throw new Unsupported();
+                break;
+            }
+            int i = skipSpaces(contentStart + 1);
+            // Empty items and nested lists aren't supported.
+            if (i >= lineEnd || text.charAt(i) == '#' || (text.charAt(i) == '-' && (i + 1 >= lineEnd || text.charAt(i + 1) == ' '))) {
+                throw new Unsupported();
+            }
+            list.add(pooled(parseValue(i, listIndent)));
+        }
+        return list;
+    }
+
+    // Shares short strings with other files.
+    private static Object pooled(Object value) {
+        return value instanceof String ? CMStringPool.internValue((String) value) : value;
+    }
+
+    // Parses an inline value, moving on to the line after it.
+    private Object parseValue(int i, int ownerIndent) throws Unsupported {
+        char first = text.charAt(i);
+        if (first == '\'' || first == '"') {
+            StringBuilder builder = new StringBuilder();
+            int end = readQuoted(i, builder, true);
+            // Only a comment is allowed after the closing quote.
+            end = skipSpaces(end);
+            if (end < lineEnd && text.charAt(end) != '#') throw new Unsupported();
+            nextLine(lineEnd);
+            return builder.toString();
+        } else if (first == '[' || first == '{') {
+            // Only empty flow collections are supported.
+            int end = skipSpaces(i + 1);
+            if (end >= lineEnd || text.charAt(end) != (first == '[' ? ']' : '}')) throw new Unsupported();
+            end = skipSpaces(end + 1);
+            if (end < lineEnd && text.charAt(end) != '#') throw new Unsupported();
+            nextLine(lineEnd);
+            return first == '[' ? new ArrayList<>() : new LinkedHashMap<>();
+        } else if (first == '|') {
+            return parseLiteral(i, ownerIndent);
+        } else if (isIndicator(first, i)) {
+            throw new Unsupported();
+        }
+        return parsePlain(i, ownerIndent);
+    }
+
+    // Parses a literal block scalar, which SnakeYAML uses for any string with line breaks.
+    private String parseLiteral(int i, int ownerIndent) throws Unsupported {
+        // Only the chomping indicator is supported, not an explicit indent.
+        char chomping = ' ';
+        i++;
+        if (i < lineEnd && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            chomping = text.charAt(i);
+            i++;
+        }
+        i = skipSpaces(i);
+        if (i < lineEnd && text.charAt(i) != '#') throw new Unsupported();
+        nextLine(lineEnd);
+
+        StringBuilder builder = new StringBuilder();
+        int blockIndent = -1;
+        int breaks = 0;
+        while (pos < text.length()) {
+            int start = pos;
+            int end = findLineEnd(start);
+            int content = skipSpaces(start, end);
+            if (content >= end) {
+                // Blank lines before the first line would need the indent to be worked out differently.
+                if (blockIndent == -1) throw new Unsupported();
+                breaks++;
+                nextLine(end);
+                continue;
+            }
+            if (blockIndent == -1) {
+                // The first line decides how far the block is indented.
+                if (content - start <= ownerIndent) break;
+                blockIndent = content - start;
+            } else if (content - start < blockIndent) {
+                break;
+            }
+            for (int j = 0; j < breaks; j++) {
+                builder.append('\n');
+            }
+            if (builder.length() > 0 || breaks > 0) {
+                builder.append('\n');
+            }
+            breaks = 0;
+            builder.append(text, start + blockIndent, end);
+            nextLine(end);
+        }
+        // The chomping indicator decides what happens to the final line breaks.
+        if (chomping == '+') {
+            if (blockIndent != -1) builder.append('\n');
+            for (int j = 0; j < breaks; j++) {
+                builder.append('\n');
+            }
+        } else if (chomping == ' ' && blockIndent != -1) {
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    private Object parsePlain(int i, int ownerIndent) throws Unsupported {
+        StringBuilder builder = new StringBuilder();
+        boolean ended = appendPlainLine(builder, i);
+        nextLine(lineEnd);
+        // Lines that are indented further carry on the scalar, folded onto one line.
+        int breaks = 0;
+        while (!ended && pos < text.length()) {
+            int start = pos;
+            int end = findLineEnd(start);
+            int content = skipSpaces(start, end);
+            if (content >= end) {
+                // Blank lines become line breaks.
+                breaks++;
+                nextLine(end);
+                continue;
+            }
+            if (content - start <= ownerIndent) {
+                break;
+            }
+            if (text.charAt(content) == '\t' || text.charAt(content) == '#') throw new Unsupported();
+            if (breaks == 0) {
+                builder.append(' ');
+            } else {
+                for (int j = 0; j < breaks; j++) {
+                    builder.append('\n');
+                }
+            }
+            breaks = 0;
+            lineEnd = end;
+            ended = appendPlainLine(builder, content);
+            nextLine(end);
+        }
+        // Leave any trailing blank lines to be skipped by the next line.
+        String raw = builder.toString();
+        Tag tag = YamlScalars.resolveTag(raw);
+        if (!YamlScalars.isSupported(tag, raw)) throw new Unsupported();
+        return YamlScalars.construct(tag, raw);
+    }
+
+    // Adds a line of a plain scalar to the builder, returning true if a comment ended the scalar.
+    private boolean appendPlainLine(StringBuilder builder, int i) throws Unsupported {
+        for (int j = i; j < lineEnd; j++) {
+            char c = text.charAt(j);
+            if (c == '#' && j > i && isSpace(text.charAt(j - 1))) {
+                // A comment ends the scalar, so it can't carry on after that.
+                builder.append(text, i, trimEndIndex(i, j));
+                return true;
+            }
+            // Anything that looks like a map isn't a plain scalar.
+            if (c == ':' && (j + 1 >= lineEnd || isSpace(text.charAt(j + 1)))) throw new Unsupported();
+        }
+        builder.append(text, i, trimEndIndex(i, lineEnd));
+        return false;
+    }
+
+    // Reads a quoted scalar starting at i, returning the position after the closing quote.
+    private int readQuoted(int i, StringBuilder builder, boolean multiline) throws Unsupported {
+        char quote = text.charAt(i);
+        boolean doubleQuoted = quote == '"';
+        // How much of the builder has to be kept if the line is folded.
+        int keep = 0;
+        i++;
+        while (true) {
+            if (i >= text.length()) throw new Unsupported();
+            char c = text.charAt(i);
+            if (c == quote) {
+                // Two single quotes make one.
+                if (!doubleQuoted && i + 1 < text.length() && text.charAt(i + 1) == '\'') {
+                    builder.append('\'');
+                    keep = builder.length();
+                    i += 2;
+                    continue;
+                }
+                lineEnd = findLineEnd(i);
+                return i + 1;
+            } else if (c == '\\' && doubleQuoted) {
+                if (i + 1 >= text.length()) throw new Unsupported();
+                char escape = text.charAt(i + 1);
+                if (escape == '\n' || escape == '\r') {
+                    // An escaped line break joins the lines without a space.
+                    if (!multiline) throw new Unsupported();
+                    i = foldBreaks(i + 1, builder, false);
+                    keep = builder.length();
+                    continue;
+                }
+                i = readEscape(i + 1, builder);
+                keep = builder.length();
+            } else if (c == '\n' || c == '\r') {
+                if (!multiline) throw new Unsupported();
+                // Trailing spaces before a line break are dropped.
+                builder.setLength(keep);
+                i = foldBreaks(i, builder, true);
+                keep = builder.length();
+            } else {
+                builder.append(c);
+                if (!isSpace(c)) {
+                    keep = builder.length();
+                }
+                i++;
+            }
+        }
+    }
+
+    // Folds the line breaks starting at i into the builder, returning where the text carries on.
+    private int foldBreaks(int i, StringBuilder builder, boolean addSpace) throws Unsupported {
+        int breaks = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (c == '\r') {
+                i++;
+            } else if (c == '\n') {
+                breaks++;
+                i++;
+                // Document markers can't appear inside of a scalar.
+                if (startsWith(i, "---") || startsWith(i, "...")) throw new Unsupported();
+            } else if (isSpace(c)) {
+                i++;
+            } else {
+                break;
+            }
+        }
+        // One line break becomes a space, any more become line breaks.
+        if (breaks == 1 && addSpace) {
+            builder.append(' ');
+        } else {
+            for (int j = 1; j < breaks; j++) {
+                builder.append('\n');
+            }
+        }
+        return i;
+    }
+
+    private int readEscape(int i, StringBuilder builder) throws Unsupported {
+        char escape = text.charAt(i);
+        int hexLength = 0;
+        switch (escape) {
+            case '0': builder.append('\0'); break;
+            case 'a': builder.append('\u0007'); break;
+            case 'b': builder.append('\b'); break;
+            case 't':
+            case '\t': builder.append('\t'); break;
+            case 'n': builder.append('\n'); break;
+            case 'v': builder.append('\u000B'); break;
+            case 'f': builder.append('\f'); break;
+            case 'r': builder.append('\r'); break;
+            case 'e': builder.append('\u001B'); break;
+            case ' ': builder.append(' '); break;
+            case '"': builder.append('"'); break;
+            case '\\': builder.append('\\'); break;
+            case 'N': builder.append('\u0085'); break;
+            case '_': builder.append(' '); break;
+            case 'L': builder.append(' '); break;
+            case 'P': builder.append(' '); break;
+            case 'x': hexLength = 2; break;
+            case 'u': hexLength = 4; break;
+            case 'U': hexLength = 8; break;
+            default: throw new Unsupported();
+        }
+        if (hexLength == 0) return i + 1;
+        if (i + 1 + hexLength > text.length()) throw new Unsupported();
+        try {
+            int codePoint = Integer.parseInt(text.subSequence(i + 1, i + 1 + hexLength).toString(), 16);
+            builder.appendCodePoint(codePoint);
+        } catch (IllegalArgumentException ex) {
+            throw new Unsupported();
+        }
+        return i + 1 + hexLength;
+    }
+
+    // Moves to the next line that has something on it, returning false if there are none left.
+    private boolean loadLine() throws Unsupported {
+        while (pos < text.length()) {
+            int end = findLineEnd(pos);
+            int content = skipSpaces(pos, end);
+            if (content < end && text.charAt(content) != '#') {
+                // Tabs can't be used for indentation.
+                if (text.charAt(content) == '\t') throw new Unsupported();
+                lineEnd = end;
+                indent = content - pos;
+                contentStart = content;
+                // Directives and document markers aren't supported.
+                if (indent == 0 && (text.charAt(content) == '%' || startsWith(content, "---") || startsWith(content, "..."))) {
+                    throw new Unsupported();
+                }
+                return true;
+            }
+            nextLine(end);
+        }
+        return false;
+    }
+
+    private boolean isListItem() {
+        return text.charAt(contentStart) == '-' && (contentStart + 1 >= lineEnd || text.charAt(contentStart + 1) == ' ');
+    }
+
+    private boolean isIndicator(char c, int i) {
+        switch (c) {
+            case '&': case '*': case '!': case '|': case '>': case '%': case '@': case '`':
+            case '[': case ']': case '{': case '}': case ',': case '#': case '\'': case '"':
+                return true;
+            case '-': case '?': case ':':
+                // These are only indicators when followed by a space.
+                return i + 1 >= lineEnd || isSpace(text.charAt(i + 1));
+            default:
+                return false;
+        }
+    }
+
+    // Finds the colon that ends a plain key.
+    private int findColon(int i) throws Unsupported {
+        for (int j = i; j < lineEnd; j++) {
+            char c = text.charAt(j);
+            if (c == ':' && (j + 1 >= lineEnd || text.charAt(j + 1) == ' ')) return j;
+            if (c == '#' && isSpace(text.charAt(j - 1))) break;
+        }
+        throw new Unsupported();
+    }
+
+    private int findLineEnd(int i) {
+        while (i < text.length() && text.charAt(i) != '\n') {
+            i++;
+        }
+        // Carriage returns are not part of the line.
+        if (i > 0 && i <= text.length() && text.charAt(i - 1) == '\r') {
+            return i - 1;
+        }
+        return i;
+    }
+
+    private void nextLine(int end) {
+        // Move past the carriage return and line feed.
+        while (end < text.length() && text.charAt(end) != '\n') {
+            end++;
+        }
+        pos = Math.min(end + 1, text.length());
+    }
+
+    private int skipSpaces(int i) {
+        return skipSpaces(i, lineEnd);
+    }
+
+    private int skipSpaces(int i, int end) {
+        while (i < end && text.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private String trimEnd(int start, int end) {
+        return text.subSequence(start, trimEndIndex(start, end)).toString();
+    }
+
+    private int trimEndIndex(int start, int end) {
+        while (end > start && isSpace(text.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private boolean startsWith(int i, String prefix) {
+        if (i + prefix.length() > text.length()) return false;
+        for (int j = 0; j < prefix.length(); j++) {
+            if (text.charAt(i + j) != prefix.charAt(j)) return false;
+        }
+        // Markers have to be on their own or followed by a space.
+        int after = i + prefix.length();
+        return after >= text.length() || text.charAt(after) == ' ' || text.charAt(after) == '\n' || text.charAt(after) == '\r';
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    // The same as Bukkit's header parsing, so that a loaded file behaves the same either way.
+    private static String parseHeader(CharSequence input) {
+        StringBuilder result = new StringBuilder();
+        boolean foundHeader = false;
+        int start = 0;
+        for (int line = 0; start <= input.length(); line++) {
+            int end = start;
+            while (end < input.length() && input.charAt(end) != '\n') {
+                end++;
+            }
+            int contentEnd = end > start && input.charAt(end - 1) == '\r' ? end - 1 : end;
+            if (contentEnd - start >= 2 && input.charAt(start) == '#' && input.charAt(start + 1) == ' ') {
+                if (line > 0) result.append('\n');
+                result.append(input, start + 2, contentEnd);
+                foundHeader = true;
+            } else if (foundHeader && contentEnd == start) {
+                result.append('\n');
+            } else if (foundHeader) {
+                break;
+            }
+            start = end + 1;
+        }
+        return result.toString();
+    }
+
+    // Thrown whenever something outside of the supported subset is found.
+    private static class Unsupported extends Exception {
+
+        private Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+}
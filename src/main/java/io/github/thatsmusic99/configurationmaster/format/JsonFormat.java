@@ -0,0 +1,229 @@
+package io.github.thatsmusic99.configurationmaster.format;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.CharStreams;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * A compact JSON format, read and written using Gson's streaming reader and writer.<br><br>
+ *
+ * Whole numbers are loaded as integers - or longs if they are too large - the same way
+ * SnakeYAML would load them, so getters behave identically to a YAML file.<br><br>
+ *
+ * NaN and infinite numbers are written without quotes, as JavaScript would write them,
+ * and are loaded back as doubles. The same words in quotes stay as strings.
+ *
+ * @see CMFormat#JSON
+ */
+public class JsonFormat extends CMFormat {
+
+    JsonFormat() {}
+
+    @NotNull
+    @Override
+    public String getExtension() {
+        return ".json";
+    }
+
+    @Override
+    public boolean supportsComments() {
+        return false;
+    }
+
+    @Override
+    public void load(@NotNull FileConfiguration config, @NotNull InputStream input) throws IOException, InvalidConfigurationException {
+        String json = CharStreams.toString(new InputStreamReader(input, Charsets.UTF_8));
+        JsonReader reader = new JsonReader(new StringReader(json));
+        reader.setLenient(true);
+        clear(config);
+        try {
+            // An empty file is just an empty config.
+            if (reader.peek() == JsonToken.END_DOCUMENT) return;
+            Object value = new Tokens(json).read(reader);
+            if (!(value instanceof Map)) {
+                throw new InvalidConfigurationException("Top level is not a JSON object.");
+            }
+            fill((Map<?, ?>) value, config);
+        } catch (EOFException ex) {
+            // Thrown by Gson if the file has nothing in it.
+        } catch (IllegalStateException | NumberFormatException ex) {
+            throw new InvalidConfigurationException(ex);
+        }
+    }
+
+    @Override
+    public void save(@NotNull FileConfiguration config, @NotNull OutputStream output) throws IOException {
+        JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(output, Charsets.UTF_8)));
+        // NaN and infinite numbers are allowed in YAML, so they have to be allowed here too.
+        writer.setLenient(true);
+        write(writer, toPlain(config));
+        writer.flush();
+    }
+
+    /**
+     * Reads values from a JSON document, keeping track of which ones were written as NaN or Infinity without quotes.<br><br>
+     *
+     * Gson's lenient reader treats any unquoted word as a string and doesn't say whether it had quotes,
+     * so the document is scanned first. Every name and value Gson reads is one token in the scan.
+     */
+    private static class Tokens {
+
+        // The tokens which are unquoted NaN or infinite numbers.
+        private final BitSet nonFinite = new BitSet();
+        // The number of names and values read so far.
+        private int token;
+
+        Tokens(String json) {
+            int index = 0;
+            int i = 0;
+            // Gson skips these too.
+            if (json.startsWith("\ufeff")) i++;
+            if (json.startsWith(")]}'\n", i)) i += 5;
+            while (i < json.length()) {
+                char c = json.charAt(i);
+                if (c == '"' || c == '\'') {
+                    // Skip to the closing quote, minding any escaped characters.
+                    i++;
+                    while (i < json.length() && json.charAt(i) != c) {
+                        i += json.charAt(i) == '\\' ? 2 : 1;
+                    }
+                    i++;
+                    index++;
+                } else if (c == '#' || json.startsWith("//", i)) {
+                    int end = json.indexOf('\n', i);
+                    i = end == -1 ? json.length() : end + 1;
+                } else if (json.startsWith("/*", i)) {
+                    int end = json.indexOf("*/", i + 2);
+                    i = end == -1 ? json.length() : end + 2;
+                } else if (isLiteral(c)) {
+                    // Numbers, true, false, null and unquoted strings.
+                    int start = i;
+                    while (i < json.length() && isLiteral(json.charAt(i))) i++;
+                    String literal = json.substring(start, i);
+                    if (literal.equals("NaN") || literal.equals("Infinity") || literal.equals("-Infinity")) {
+                        nonFinite.set(index);
+                    }
+                    index++;
+                } else {
+                    // Brackets, separators and whitespace. "=>" separates names from values too.
+                    i += json.startsWith("=>", i) ? 2 : 1;
+                }
+            }
+        }
+
+        // The same characters Gson allows in unquoted words.
+        private static boolean isLiteral(char c) {
+            switch (c) {
+                case '/':
+                case '\\':
+                case ';':
+                case '#':
+                case '=':
+                case '{':
+                case '}':
+                case '[':
+                case ']':
+                case ':':
+                case ',':
+                case ' ':
+                case '\t':
+                case '\f':
+                case '\r':
+                case '\n':
+                    return false;
+                default:
+                    return true;
+            }
+        }
+
+        Object read(JsonReader reader) throws IOException {
+            switch (reader.peek()) {
+                case BEGIN_OBJECT:
+                    Map<String, Object> map = new LinkedHashMap<>();
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+                        token++;
+                        map.put(name, read(reader));
+                    }
+                    reader.endObject();
+                    return map;
+                case BEGIN_ARRAY:
+                    List<Object> list = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        list.add(read(reader));
+                    }
+                    reader.endArray();
+                    return list;
+                case STRING:
+                    String value = reader.nextString();
+                    return nonFinite.get(token++) ? Double.valueOf(value) : value;
+                case NUMBER:
+                    token++;
+                    return parseNumber(reader.nextString());
+                case BOOLEAN:
+                    token++;
+                    return reader.nextBoolean();
+                case NULL:
+                    token++;
+                    reader.nextNull();
+                    return null;
+                default:
+                    throw new IllegalStateException("Unexpected " + reader.peek() + " at " + reader.getPath());
+            }
+        }
+    }
+
+    private static Number parseNumber(String number) {
+        // Anything with a decimal point or exponent is a double.
+        for (int i = 0; i < number.length(); i++) {
+            char c = number.charAt(i);
+            if (c == '.' || c == 'e' || c == 'E') {
+                return Double.valueOf(number);
+            }
+        }
+        // Otherwise use the smallest type that holds the number.
+        BigInteger result = new BigInteger(number);
+        if (result.bitLength() < 32) {
+            return result.intValue();
+        } else if (result.bitLength() < 64) {
+            return result.longValue();
+        }
+        return result;
+    }
+
+    private static void write(JsonWriter writer, Object value) throws IOException {
+        if (value == null) {
+            writer.nullValue();
+        } else if (value instanceof Map) {
+            writer.beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                writer.name(String.valueOf(entry.getKey()));
+                write(writer, entry.getValue());
+            }
+            writer.endObject();
+        } else if (value instanceof List) {
+            writer.beginArray();
+            for (Object item : (List<?>) value) {
+                write(writer, item);
+            }
+            writer.endArray();
+        } else if (value instanceof Number) {
+            writer.value((Number) value);
+        } else if (value instanceof Boolean) {
+            writer.value((Boolean) value);
+        } else {
+            writer.value(String.valueOf(value));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package io.github.thatsmusic99.configurationmaster.format;
+
+import io.github.thatsmusic99.configurationmaster.CMStore;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A format backed by a {@link CMStore}, intended for per-player or per-entity data files.<br><br>
+ *
+ * Every option is kept as its own record, so saving the file only writes the
+ * options that have actually changed. When a CMFile using this format calls
+ * {@link io.github.thatsmusic99.configurationmaster.CMFile#set(String, Object)},
+ * the change is committed to the store straight away.<br><br>
+ *
+ * The store needs to read and write records anywhere in the file, so only files get
+ * these cheap updates. Streams instead hold a snapshot of the whole store, laid out
+ * the same way as a freshly compacted store file, so a snapshot can be saved as a
+ * store or read from a copy of one. Options are kept in sorted order.
+ *
+ * @see CMFormat#STORE
+ */
+public class StoreFormat extends CMFormat {
+
+    StoreFormat() {}
+
+    @NotNull
+    @Override
+    public String getExtension() {
+        return ".cmdb";
+    }
+
+    @Override
+    public boolean supportsComments() {
+        return false;
+    }
+
+    /**
+     * Reads a snapshot of a store into the provided configuration.
+     *
+     * @param config The configuration that the values will be loaded into.
+     * @param input The stream to read from. It is not closed afterwards.
+     * @throws IOException if the stream could not be read.
+     * @see CMStore#readSnapshot(InputStream)
+     */
+    @Override
+    public void load(@NotNull FileConfiguration config, @NotNull InputStream input) throws IOException {
+        load(config, CMStore.readSnapshot(input));
+    }
+
+    /**
+     * Writes a snapshot of the provided configuration, laid out the same way as a store file.
+     *
+     * @param config The configuration to be written.
+     * @param output The stream to write to. It is not closed afterwards.
+     * @throws IOException if the stream could not be written to.
+     * @see CMStore#writeSnapshot(SortedMap, OutputStream)
+     */
+    @Override
+    public void save(@NotNull FileConfiguration config, @NotNull OutputStream output) throws IOException {
+        SortedMap<String, Object> options = new TreeMap<>();
+        flatten(config, options);
+        CMStore.writeSnapshot(options, output);
+    }
+
+    @Override
+    public void load(@NotNull FileConfiguration config, @NotNull File file) throws IOException, InvalidConfigurationException {
+        load(config, CMStore.open(file).scan(""));
+    }
+
+    private static void load(FileConfiguration config, SortedMap<String, Object> options) {
+        clear(config);
+        for (Map.Entry<String, Object> entry : options.entrySet()) {
+            Object value = fromPlain(entry.getValue());
+            // Empty maps are stored for empty sections.
+            if (value instanceof Map) {
+                fill((Map<?, ?>) value, config.createSection(entry.getKey()));
+            } else {
+                config.set(entry.getKey(), value);
+            }
+        }
+    }
+
+    @Override
+    public void save(@NotNull FileConfiguration config, @NotNull File file) throws IOException {
+        CMStore store = CMStore.open(file);
+        Map<String, Object> options = new HashMap<>();
+        flatten(config, options);
+        // Remove anything that is no longer in the config.
+        for (String key : store.keys("")) {
+            if (!options.containsKey(key)) {
+                store.remove(key);
+            }
+        }
+        // Then only write the options which are different to what is stored.
+        for (Map.Entry<String, Object> option : options.entrySet()) {
+            if (!store.isStored(option.getKey(), option.getValue())) {
+                store.put(option.getKey(), option.getValue());
+            }
+        }
+        store.commit();
+    }
+
+    private static void flatten(ConfigurationSection section, Map<String, Object> options) {
+        for (String key : section.getKeys(false)) {
+            Object value = section.get(key);
+            if (value instanceof ConfigurationSection) {
+                ConfigurationSection child = (ConfigurationSection) value;
+                // Empty sections are stored as empty maps.
+                if (child.getKeys(false).isEmpty()) {
+                    options.put(child.getCurrentPath(), new LinkedHashMap<>());
+                } else {
+                    flatten(child, options);
+                }
+            } else {
+                options.put(section.getCurrentPath().isEmpty() ? key : section.getCurrentPath() + "." + key, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package io.github.thatsmusic99.configurationmaster.format;
+
+import com.google.common.base.Charsets;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The default YAML format, which is written by Bukkit itself.<br><br>
+ *
+ * Files are read using a parser specialised for the YAML CMFile writes,
+ * falling back to Bukkit for anything it doesn't understand.
+ *
+ * @see CMFormat#YAML
+ */
+public class YamlFormat extends CMFormat {
+
+    YamlFormat() {}
+
+    @NotNull
+    @Override
+    public String getExtension() {
+        return ".yml";
+    }
+
+    @Override
+    public boolean supportsComments() {
+        return true;
+    }
+
+    @Override
+    public void load(@NotNull FileConfiguration config, @NotNull InputStream input) throws IOException, InvalidConfigurationException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+        load(config, new String(bytes.toByteArray(), Charsets.UTF_8));
+    }
+
+    /**
+     * Reads YAML into the provided configuration.<br><br>
+     *
+     * The contents are decoded in one go, and the parser reads straight from the
+     * decoded text without splitting it up into lines first.
+     *
+     * @param config The configuration that the values will be loaded into.
+     * @param contents The contents to be read.
+     * @throws InvalidConfigurationException if the contents are not valid YAML.
+     */
+    @Override
+    public void load(@NotNull FileConfiguration config, @NotNull ByteBuffer contents) throws InvalidConfigurationException {
+        CharBuffer text = Charsets.UTF_8.decode(contents);
+        load(config, text);
+    }
+
+    /**
+     * Loads YAML text into the provided configuration.<br><br>
+     *
+     * Files written by CMFile are read by a much faster parser which only understands
+     * the parts of YAML that CMFile uses. If the text uses anything else, it is loaded
+     * by Bukkit and SnakeYAML as normal instead.
+     *
+     * @param config The configuration that the values will be loaded into.
+     * @param contents The YAML to be loaded.
+     * @throws InvalidConfigurationException if the contents are not valid YAML.
+     */
+    public void load(@NotNull FileConfiguration config, @NotNull CharSequence contents) throws InvalidConfigurationException {
+        clear(config);
+        if (FastYamlParser.parse(contents, config)) return;
+        // Get rid of anything the fast parser read before giving up.
+        clear(config);
+        config.loadFromString(contents.toString());
+    }
+
+    /**
+     * Splits YAML text into parts that can be loaded one after another using {@link #loadPart(FileConfiguration, Part)}.<br><br>
+     *
+     * Parts can start at any option that isn't inside of a list, so even a single large section
+     * can be split up. The text isn't copied, each part is a view of the original. Text which
+     * the faster parser can't read is returned as a single part.
+     *
+     * @param contents The YAML to be split.
+     * @param partLength The length each part should be at least, unless it's the last one.
+     * @return The parts of the text, in order.
+     */
+    @NotNull
+    public List<Part> split(@NotNull CharSequence contents, int partLength) {
+        return FastYamlParser.split(contents, partLength);
+    }
+
+    /**
+     * Loads part of a YAML file into the provided configuration, on top of the parts before it.<br><br>
+     *
+     * Only the faster parser is used, since Bukkit can only load whole files. If false is
+     * returned, the whole file should be loaded using {@link #load(FileConfiguration, CharSequence)}
+     * instead.
+     *
+     * @param config The configuration that the values will be loaded into.
+     * @param part The part to be loaded, as returned by {@link #split(CharSequence, int)}.
+     * @return true if the part was loaded, false if it needs to be loaded by Bukkit.
+     */
+    public boolean loadPart(@NotNull FileConfiguration config, @NotNull Part part) {
+        return FastYamlParser.parse(part, config);
+    }
+
+    @Override
+    public void save(@NotNull FileConfiguration config, @NotNull OutputStream output) throws IOException {
+        output.write(config.saveToString().getBytes(Charsets.UTF_8));
+    }
+
+    /**
+     * Part of a YAML file, along with the section it starts in.
+     *
+     * @see #split(CharSequence, int)
+     */
+    public static final class Part {
+
+        // The text of the part.
+        final CharSequence text;
+        // The keys of the section the part starts in, outermost first.
+        final List<String> path;
+        // How far the options at the start of the part are indented.
+        final int indent;
+        // Whether this is the first part of the file.
+        final boolean first;
+
+        Part(CharSequence text, List<String> path, int indent, boolean first) {
+            this.text = text;
+            this.path = path;
+            this.indent = indent;
+            this.first = first;
+        }
+
+        /**
+         * The length of the part's text.
+         *
+         * @return The number of characters in the part.
+         */
+        public int length() {
+            return text.length();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package io.github.thatsmusic99.configurationmaster.format;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+import java.math.BigInteger;
+import java.util.Locale;
+
+/**
+ * Works out the type of YAML scalars the same way SnakeYAML does, without going
+ * through SnakeYAML's composer and constructor.<br><br>
+ *
+ * This is shared by everything in ConfigurationMaster that reads YAML itself,
+ * so that values come out as the same types Bukkit would have loaded.
+ */
+public final class YamlScalars {
+
+    // Used to work out the type of plain scalars, the same way SnakeYAML does it.
+    private static final Resolver RESOLVER = new Resolver();
+
+    private YamlScalars() {}
+
+    /**
+     * Works out the tag SnakeYAML would give to an unquoted scalar.
+     *
+     * @param value The raw value of the scalar.
+     * @return The resolved tag, such as {@link Tag#INT}.
+     */
+    @NotNull
+    public static Tag resolveTag(@NotNull String value) {
+        return RESOLVER.resolve(NodeId.scalar, value, true);
+    }
+
+    /**
+     * Converts a scalar into the same type that SnakeYAML would construct for its tag.
+     *
+     * @param tag The tag that has been resolved for the scalar.
+     * @param value The raw value of the scalar.
+     * @return The converted value. Any unknown types, and numbers written in base 60, are returned as a string.
+     */
+    @Nullable
+    public static Object construct(@NotNull Tag tag, @NotNull String value) {
+        try {
+            if (Tag.NULL.equals(tag)) {
+                return null;
+            } else if (Tag.BOOL.equals(tag)) {
+                String lower = value.toLowerCase(Locale.ROOT);
+                return lower.equals("true") || lower.equals("yes") || lower.equals("on");
+            } else if (Tag.INT.equals(tag)) {
+                return parseInt(value);
+            } else if (Tag.FLOAT.equals(tag)) {
+                return parseFloat(value);
+            }
+        } catch (NumberFormatException ignored) {
+            // Sexagesimal numbers and the like are left as they are.
+        }
+        return value;
+    }
+
+    /**
+     * Returns whether {@link #construct(Tag, String)} produces exactly what SnakeYAML would for this scalar.
+     *
+     * @param tag The tag that has been resolved for the scalar.
+     * @param value The raw value of the scalar.
+     * @return true if the scalar can be constructed here.
+     */
+    public static boolean isSupported(@NotNull Tag tag, @NotNull String value) {
+        if (Tag.STR.equals(tag) || Tag.NULL.equals(tag) || Tag.BOOL.equals(tag)) return true;
+        // Base 60 numbers are the only numbers that aren't handled.
+        return (Tag.INT.equals(tag) || Tag.FLOAT.equals(tag)) && value.indexOf(':') == -1;
+    }
+
+    private static Number parseInt(String value) {
+        String number = value.replace("_", "");
+        int sign = 1;
+        if (number.startsWith("-")) {
+            sign = -1;
+            number = number.substring(1);
+        } else if (number.startsWith("+")) {
+            number = number.substring(1);
+        }
+        int radix = 10;
+        if (number.startsWith("0x")) {
+            radix = 16;
+            number = number.substring(2);
+        } else if (number.startsWith("0b")) {
+            radix = 2;
+            number = number.substring(2);
+        } else if (number.startsWith("0") && number.length() > 1) {
+            radix = 8;
+            number = number.substring(1);
+        }
+        if (number.contains(":")) {
+            throw new NumberFormatException("Sexagesimal integers are not handled here.");
+        }
+        // Use the smallest type that holds the number, as SnakeYAML does.
+        BigInteger result = new BigInteger(sign < 0 ? "-" + number : number, radix);
+        if (result.bitLength() < 32) {
+            return result.intValue();
+        } else if (result.bitLength() < 64) {
+            return result.longValue();
+        }
+        return result;
+    }
+
+    private static Double parseFloat(String value) {
+        String number = value.replace("_", "").toLowerCase(Locale.ROOT);
+        if (number.equals(".inf") || number.equals("+.inf")) {
+            return Double.POSITIVE_INFINITY;
+        } else if (number.equals("-.inf")) {
+            return Double.NEGATIVE_INFINITY;
+        } else if (number.equals(".nan")) {
+            return Double.NaN;
+        } else if (number.contains(":")) {
+            throw new NumberFormatException("Sexagesimal floats are not handled here.");
+        }
+        return Double.valueOf(number);
+    }
+}
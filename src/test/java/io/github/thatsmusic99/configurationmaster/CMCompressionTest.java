@@ -0,0 +1,141 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import io.github.thatsmusic99.configurationmaster.format.CMFormat;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CMCompressionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StandaloneHost host;
+
+    @Before
+    public void setUp() {
+        host = new StandaloneHost("Test", folder.getRoot());
+    }
+
+    @After
+    public void tearDown() {
+        host.shutdown();
+    }
+
+    @Test
+    public void compressesAndDecompressesAnySize() throws Exception {
+        Random random = new Random(1);
+        for (int size : new int[]{0, 1, 8192, 100_000}) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            byte[] compressed = CMCompression.compress(data);
+            assertTrue(CMCompression.isCompressed(ByteBuffer.wrap(compressed)));
+
+            // The compressed contents sit in the middle of a larger array.
+            byte[] padded = new byte[compressed.length + 5];
+            System.arraycopy(compressed, 0, padded, 3, compressed.length);
+            ByteBuffer contents = ByteBuffer.wrap(padded, 3, compressed.length);
+            assertTrue(CMCompression.isCompressed(contents));
+            ByteBuffer decompressed = CMCompression.decompress(contents);
+            assertEquals(3, contents.position());
+            assertArrayEquals(data, Arrays.copyOfRange(decompressed.array(), decompressed.position(), decompressed.limit()));
+
+            try (InputStream input = CMCompression.open(new ByteArrayInputStream(compressed))) {
+                byte[] streamed = new byte[size + 1];
+                int length = 0;
+                for (int read; (read = input.read(streamed, length, streamed.length - length)) > 0; ) {
+                    length += read;
+                }
+                assertEquals(size, length);
+                assertArrayEquals(data, Arrays.copyOf(streamed, size));
+            }
+        }
+        assertFalse(CMCompression.isCompressed(ByteBuffer.wrap("a: 1".getBytes("UTF-8"))));
+        assertFalse(CMCompression.isCompressed(ByteBuffer.allocate(1)));
+    }
+
+    @Test
+    public void readsFilesWhetherOrNotTheyAreCompressed() throws Exception {
+        CMFile file = data(true);
+        file.load();
+        File stored = new File(folder.getRoot(), "data.yml");
+        byte[] bytes = Files.readAllBytes(stored.toPath());
+        assertEquals(0x1f, bytes[0] & 0xff);
+        assertEquals(0x8b, bytes[1] & 0xff);
+
+        CMLoadStats stats = file.getLoadStats();
+        assertNotNull(stats);
+        assertTrue(stats.isCompressed());
+        assertEquals(stored.length(), stats.getStoredSize());
+        assertTrue(stats.getContentSize() > stats.getStoredSize());
+        assertEquals((double) stats.getContentSize() / stats.getStoredSize(), stats.getCompressionRatio(), 0);
+
+        // Switching compression off takes effect the next time the file is written, which loading does.
+        CMFile plain = data(false);
+        plain.load();
+        assertEquals("player-99", plain.getString("players.99.name"));
+        assertTrue(new String(Files.readAllBytes(stored.toPath()), "UTF-8").contains("name: player-99"));
+        // The statistics describe the file as it's now stored.
+        assertFalse(plain.getLoadStats().isCompressed());
+        assertEquals(1, plain.getLoadStats().getCompressionRatio(), 0);
+        assertEquals(stored.length(), plain.getLoadStats().getContentSize());
+        assertEquals(stats.getContentSize(), plain.getLoadStats().getContentSize());
+    }
+
+    @Test
+    public void compressesOtherFormatsToo() throws Exception {
+        CMFile file = data(true);
+        file.setFormat(CMFormat.JSON);
+        file.load();
+        File stored = new File(folder.getRoot(), "data.json");
+        assertEquals(0x1f, Files.readAllBytes(stored.toPath())[0] & 0xff);
+
+        CMFile reloaded = data(false);
+        reloaded.setFormat(CMFormat.JSON);
+        reloaded.load();
+        assertEquals("player-42", reloaded.getString("players.42.name"));
+    }
+
+    @Test
+    public void recordsWhenAndHowLongLoadingTook() throws Exception {
+        CMFile file = data(false);
+        assertNull(file.getLoadStats());
+        long before = System.currentTimeMillis();
+        file.load();
+        CMLoadStats stats = file.getLoadStats();
+        assertTrue(stats.getLoadedAt() >= before);
+        assertTrue(stats.getLoadedAt() <= System.currentTimeMillis());
+        assertTrue(stats.getLoadTime(TimeUnit.NANOSECONDS) >= 0);
+        assertEquals(stats.getStoredSize(), stats.getContentSize());
+
+        file.load();
+        assertNotSame(stats, file.getLoadStats());
+    }
+
+    private CMFile data(boolean compressed) {
+        CMFile file = new CMFile(host, "data") {
+            @Override
+            public void loadDefaults() {
+                for (int i = 0; i < 100; i++) {
+                    addDefault("players." + i + ".name", "player-" + i);
+                    addDefault("players." + i + ".homes", Arrays.asList("home", "base"));
+                }
+            }
+        };
+        file.setCompressed(compressed);
+        return file;
+    }
+}
@@ -0,0 +1,129 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class CMDefaultsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StandaloneHost host;
+
+    @Before
+    public void setUp() {
+        host = new StandaloneHost("Test", folder.getRoot());
+    }
+
+    @After
+    public void tearDown() {
+        host.shutdown();
+    }
+
+    @Test
+    public void writesTheSameFileAsAddingEachDefault() throws Exception {
+        CMFile oneByOne = new CMFile(host, "one-by-one") {
+            @Override
+            public void loadDefaults() {
+                addComment("A comment at the top.");
+                addDefault("enabled", true, "Whether the plugin is enabled.");
+                addDefault("messages.join", "&aWelcome!", "Messages", "Sent when a player joins.");
+                addDefault("messages.quit", "&cGoodbye!");
+                addSection("Kits");
+                addExample("kits.starter.items", Arrays.asList("STONE_SWORD", "BREAD"), "An example kit.");
+                addLenientSection("kits");
+                addComment("kits.starter", "The starter kit.");
+                addDefault("limits.homes", 3);
+                addDefault("limits.warps", 5);
+            }
+        };
+        CMFile builder = new CMFile(host, "builder") {
+            @Override
+            public void loadDefaults() {
+                defaults()
+                        .comment("A comment at the top.")
+                        .add("enabled", true, "Whether the plugin is enabled.")
+                        .add("messages.join", "&aWelcome!", "Messages", "Sent when a player joins.")
+                        .add("messages.quit", "&cGoodbye!")
+                        .section("Kits")
+                        .example("kits.starter.items", Arrays.asList("STONE_SWORD", "BREAD"), "An example kit.")
+                        .lenientSection("kits")
+                        .comment("kits.starter", "The starter kit.")
+                        .add("limits.homes", 3)
+                        .add("limits.warps", 5)
+                        .apply();
+            }
+        };
+        oneByOne.load();
+        builder.load();
+        assertEquals(read("one-by-one.yml"), read("builder.yml"));
+        assertTrue(read("builder.yml").contains("# The starter kit."));
+        // The example is kept, rather than being replaced by an empty section.
+        assertTrue(read("builder.yml").contains("- BREAD"));
+    }
+
+    @Test
+    public void keepsWhatTheUserHasChanged() throws Exception {
+        Files.write(new File(folder.getRoot(), "config.yml").toPath(), "limits:\n  homes: 10\nextra: true\n".getBytes("UTF-8"));
+        CMFile file = built();
+        file.load();
+
+        assertEquals(10, file.getInteger("limits.homes"));
+        assertEquals(5, file.getInteger("limits.warps"));
+        // Examples are only added to new files.
+        assertFalse(file.getConfig().contains("kits.starter"));
+        String written = read("config.yml");
+        assertTrue(written.contains("homes: 10"));
+        assertTrue(written.contains("warps: 5"));
+    }
+
+    @Test
+    public void replacesOptionsThatBecomeSections() throws Exception {
+        CMFile file = new CMFile(host, "config") {
+            @Override
+            public void loadDefaults() {
+                defaults()
+                        .add("a.b", 1)
+                        .add("a", 2)
+                        .add("a.c.d", 3)
+                        .add("a.e", 4)
+                        .apply();
+            }
+        };
+        file.load();
+        assertEquals(3, file.getInteger("a.c.d"));
+        assertEquals(4, file.getInteger("a.e"));
+        assertNull(file.get("a.b"));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void cannotBeAppliedBeforeLoading() {
+        built().defaults().add("early", 1).apply();
+    }
+
+    private CMFile built() {
+        return new CMFile(host, "config") {
+            @Override
+            public void loadDefaults() {
+                defaults()
+                        .add("limits.homes", 3)
+                        .add("limits.warps", 5)
+                        .example("kits.starter.items", Arrays.asList("STONE_SWORD"))
+                        .apply();
+            }
+        };
+    }
+
+    private String read(String name) throws Exception {
+        return new String(Files.readAllBytes(new File(folder.getRoot(), name).toPath()), "UTF-8");
+    }
+}
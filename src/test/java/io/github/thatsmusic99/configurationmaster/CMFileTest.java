@@ -0,0 +1,557 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import io.github.thatsmusic99.configurationmaster.format.CMFormat;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+import static org.junit.Assert.*;
+
+public class CMFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StandaloneHost host;
+
+    @Before
+    public void setUp() {
+        host = new StandaloneHost("Test", folder.getRoot());
+    }
+
+    @After
+    public void tearDown() {
+        host.shutdown();
+    }
+
+    @Test
+    public void otherThreadsReadTheOldOptionsUntilTheLoadHasFinished() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean block = new AtomicBoolean();
+        AtomicInteger seenByLoader = new AtomicInteger();
+        CMFile file = new CMFile(host, "config") {
+            @Override
+            public void loadDefaults() {
+                addDefault("option", 1);
+                addDefault("other", "a");
+                if (!block.get()) return;
+                seenByLoader.set(getInteger("option"));
+                entered.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        file.load();
+        write("config.yml", "option: 5\nother: b\n");
+
+        block.set(true);
+        Thread loader = new Thread(file::load);
+        loader.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        // Halfway through the load, everything else still sees all of the old options.
+        assertTrue(file.isLoaded());
+        assertEquals(1, file.getInteger("option"));
+        assertEquals("a", file.getString("other"));
+        release.countDown();
+        loader.join(5000);
+
+        assertEquals(5, seenByLoader.get());
+        assertEquals(5, file.getInteger("option"));
+        assertEquals("b", file.getString("other"));
+    }
+
+    @Test
+    public void keepsTheOldOptionsWhenALoadFails() throws Exception {
+        AtomicBoolean fail = new AtomicBoolean();
+        CMFile file = new CMFile(host, "config") {
+            @Override
+            public void loadDefaults() {
+                addDefault("option", 1);
+                if (fail.get()) {
+                    throw new IllegalStateException("Failed to load");
+                }
+            }
+        };
+        file.load();
+        write("config.yml", "option: 5\n");
+
+        fail.set(true);
+        try {
+            file.load();
+            fail("The load should have failed");
+        } catch (IllegalStateException expected) {
+            // The file carries on with the options it had before.
+        }
+        assertEquals(1, file.getInteger("option"));
+        file.set("option", 3);
+        assertEquals(3, file.getInteger("option"));
+    }
+
+    @Test
+    public void letsGoOfWhatWasNeededToWriteTheFile() throws Exception {
+        CMFile file = commented();
+        file.load();
+        assertScratchReleased(file);
+
+        // Saving on its own works it out again, and writes the same file as loading did.
+        byte[] loaded = read("config.yml");
+        file.initiateSave();
+        assertArrayEquals(loaded, read("config.yml"));
+        assertScratchReleased(file);
+        assertEquals(1, file.getInteger("option"));
+    }
+
+    @Test
+    public void savingMethodsWorkAfterLoading() throws Exception {
+        CMFile file = commented();
+        file.load();
+        byte[] loaded = read("config.yml");
+        assertTrue(new String(loaded, "UTF-8").contains("# Sent to say hello."));
+
+        file.save(false);
+        assertFalse(file.hasSaveFailed());
+        assertArrayEquals(loaded, read("config.yml"));
+
+        // Called in the same order loading calls them, they write the same file again.
+        file.load();
+        file.save(true);
+        file.loadTitle();
+        file.writeComments();
+        file.save(false);
+        assertArrayEquals(loaded, read("config.yml"));
+
+        file.load();
+        file.writeComments();
+        file.save(false);
+        assertArrayEquals(loaded, read("config.yml"));
+
+        // Whatever was worked out is let go of by the next load.
+        file.load();
+        assertScratchReleased(file);
+        assertArrayEquals(loaded, read("config.yml"));
+    }
+
+    @Test
+    public void savesACopyOfTheOptions() throws Exception {
+        AtomicInteger saves = new AtomicInteger();
+        CMFile file = new CMFile(host, "config") {
+            @Override
+            public void loadDefaults() {
+                addDefault("option", 1, "An option.");
+            }
+
+            @Override
+            public void postSave() {
+                set("saves", saves.incrementAndGet());
+            }
+        };
+        file.load();
+        file.set("option", 4);
+        FileConfiguration before = file.getConfig();
+
+        file.initiateSave();
+        // The options other threads were reading weren't touched, they were replaced once the file was written.
+        assertNotSame(before, file.getConfig());
+        assertEquals(1, before.getInt("saves"));
+        assertEquals(2, file.getInteger("saves"));
+        assertEquals(4, file.getInteger("option"));
+        assertTrue(new String(read("config.yml"), "UTF-8").contains("option: 4"));
+        assertScratchReleased(file);
+    }
+
+    @Test
+    public void doesNotHoldOnToWhatWasNeededToWriteTheFile() throws Exception {
+        List<CMFile> files = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            files.add(new CMFile(host, "config-" + i) {
+                @Override
+                public void loadDefaults() {
+                    for (int j = 0; j < 500; j++) {
+                        addDefault("section-" + (j / 50) + ".option-" + j, "value " + j,
+                                "The option numbered " + j + ", with a long enough comment that keeping it around costs something.");
+                    }
+                }
+            });
+        }
+        long empty = retainedHeap();
+        for (CMFile file : files) {
+            file.load();
+        }
+        long loaded = retainedHeap() - empty;
+        // Working out how to write the files again gives the state loading used to hold on to.
+        for (CMFile file : files) {
+            file.writeComments();
+        }
+        long withScratch = retainedHeap() - empty;
+        // If loading held on to it, working it out again wouldn't have cost anything.
+
+        assertTrue("Loaded files take up " + loaded + " bytes, or " + withScratch + " with their scratch state",
+                withScratch - loaded > loaded / 4);
+        for (CMFile file : files) {
+            assertEquals("value 7", file.getString("section-0.option-7"));
+        }
+    }
+
+    @Test
+    public void forgetsWhatWasReadFromAnotherFileWhenItChanges() throws Exception {
+        CMFile source = new CMFile(host, "messages") {
+            @Override
+            public void loadDefaults() {
+                addDefault("prefix", "[A]");
+                addDefault("limit", 5);
+            }
+        };
+        CMFile file = new CMFile(host, "config") {
+            @Override
+            public void loadDefaults() {
+                addDefault("welcome", "${messages:prefix} Welcome!");
+                addDefault("limit", "${messages:limit}");
+            }
+        };
+        file.addReferenceSource("messages", source);
+        source.load();
+        file.load();
+        assertEquals("[A] Welcome!", file.getMessage("welcome").render());
+        assertEquals(5, file.getInteger("limit"));
+
+        source.set("prefix", "[B]");
+        source.set("limit", 6);
+        assertEquals("[B] Welcome!", file.getMessage("welcome").render());
+        assertEquals(6, file.getInteger("limit"));
+
+        // Reloading the other file does the same.
+        write("messages.yml", "prefix: '[C]'\nlimit: 7\n");
+        source.load();
+        assertEquals("[C] Welcome!", file.getMessage("welcome").render());
+        assertEquals(7, file.getInteger("limit"));
+    }
+
+    @Test
+    public void onlyRecordsAccessesOncePerSecond() throws Exception {
+        CMFile file = commented();
+        file.load();
+        long loaded = file.getLastAccessed();
+        file.getInteger("option");
+        file.getString("messages.hello");
+        // Reading straight after loading is too soon to be written down.
+        assertTrue(file.getLastAccessed() == loaded || System.currentTimeMillis() - loaded >= 1000);
+
+        Thread.sleep(1100);
+        file.getInteger("option");
+        assertTrue(file.getLastAccessed() >= loaded + 1000);
+    }
+
+    @Test
+    public void systemPropertiesWinOverEnvironmentVariablesAndTheFile() throws Exception {
+        String path = System.getenv("PATH");
+        assertNotNull(path);
+        CMFile file = overridden();
+        file.addEnvironmentOverride("host", "PATH");
+        file.addPropertyOverride("host", "cm.test.host");
+        try {
+            System.setProperty("cm.test.host", "db.example.com");
+            file.load();
+            assertEquals("db.example.com", file.getString("host"));
+
+            System.clearProperty("cm.test.host");
+            file.load();
+            assertEquals(path, file.getString("host"));
+
+            file.removeOverride("host");
+            file.load();
+            assertEquals("localhost", file.getString("host"));
+        } finally {
+            System.clearProperty("cm.test.host");
+        }
+    }
+
+    @Test
+    public void convertsOverridesToTheTypeOfTheOption() throws Exception {
+        CMFile file = overridden();
+        for (String option : new String[]{"port", "ratio", "enabled", "worlds", "host", "missing"}) {
+            file.addPropertyOverride(option, "cm.test." + option);
+        }
+        try {
+            System.setProperty("cm.test.port", "25566");
+            System.setProperty("cm.test.ratio", "2");
+            System.setProperty("cm.test.enabled", "false");
+            System.setProperty("cm.test.worlds", "world, world_nether");
+            System.setProperty("cm.test.host", "123");
+            System.setProperty("cm.test.missing", "7");
+            file.load();
+            assertEquals(25566, file.get("port"));
+            assertEquals(2.0, file.get("ratio"));
+            assertEquals(false, file.get("enabled"));
+            assertEquals(Arrays.asList("world", "world_nether"), file.getStringList("worlds"));
+            // Strings stay strings, even if they look like something else.
+            assertEquals("123", file.get("host"));
+            // Options that don't exist are read the same way YAML would.
+            assertEquals(7, file.get("missing"));
+            assertEquals(7, file.getInteger("missing"));
+            assertArrayEquals(new Object[]{25566, "123"}, file.getAll(null, "port", "host"));
+
+            // Anything that isn't the right type is ignored.
+            System.setProperty("cm.test.port", "not a number");
+            System.setProperty("cm.test.enabled", "maybe");
+            file.load();
+            assertEquals(25565, file.get("port"));
+            assertEquals(true, file.get("enabled"));
+        } finally {
+            for (String option : new String[]{"port", "ratio", "enabled", "worlds", "host", "missing"}) {
+                System.clearProperty("cm.test." + option);
+            }
+        }
+    }
+
+    @Test
+    public void neverWritesOverridesIntoTheFile() throws Exception {
+        CMFile file = overridden();
+        file.addPropertyOverride("host", "cm.test.host");
+        file.addPropertyOverride("port", "cm.test.port");
+        try {
+            System.setProperty("cm.test.host", "secret.example.com");
+            System.setProperty("cm.test.port", "3306");
+            file.load();
+            assertEquals("secret.example.com", file.getString("host"));
+            assertFalse(new String(read("config.yml"), "UTF-8").contains("secret"));
+            assertEquals("localhost", file.getConfig().getString("host"));
+
+            // Nothing that writes the file afterwards sees the overrides either.
+            file.set("enabled", false);
+            file.initiateSave();
+            file.save(false);
+            String written = new String(read("config.yml"), "UTF-8");
+            assertTrue(written.contains("enabled: false"));
+            assertFalse(written.contains("secret"));
+            assertFalse(written.contains("3306"));
+            // Setting an overridden option stores it, but the override is still what's read.
+            file.set("host", "stored.example.com");
+            assertEquals("secret.example.com", file.getString("host"));
+            assertEquals("stored.example.com", file.getConfig().getString("host"));
+        } finally {
+            System.clearProperty("cm.test.host");
+            System.clearProperty("cm.test.port");
+        }
+    }
+
+    @Test
+    public void neverWritesOverridesIntoAStore() throws Exception {
+        CMFile file = overridden();
+        file.setFormat(CMFormat.STORE);
+        file.addPropertyOverride("host", "cm.test.host");
+        try {
+            System.setProperty("cm.test.host", "secret.example.com");
+            file.load();
+            file.set("port", 3306);
+            assertEquals("secret.example.com", file.getString("host"));
+        } finally {
+            System.clearProperty("cm.test.host");
+        }
+        CMStore store = CMStore.open(new File(folder.getRoot(), "config" + CMFormat.STORE.getExtension()));
+        try {
+            assertEquals("localhost", store.get("host"));
+            assertEquals(3306, store.get("port"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void checksTypedOptionsOnTheFirstLoad() throws Exception {
+        Files.write(new File(folder.getRoot(), "config.yml").toPath(),
+                "cooldown: soon\nunit: FORTNIGHTS\nlimit: lots\nunchecked: whenever\n".getBytes("UTF-8"));
+        List<String> warnings = new ArrayList<>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                warnings.add(record.getMessage());
+            }
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {}
+        };
+        host.getLogger().addHandler(handler);
+        CMFile file = typed();
+        try {
+            file.load();
+        } finally {
+            host.getLogger().removeHandler(handler);
+        }
+
+        // Nothing has been read yet, but the bad values have already been found.
+        assertEquals(3, warnings.size());
+        String logged = String.join("\n", warnings);
+        assertTrue(logged.contains("option cooldown"));
+        assertTrue(logged.contains("option unit"));
+        assertTrue(logged.contains("option limit"));
+        assertEquals(Duration.ofSeconds(1), file.getDuration("cooldown", Duration.ofSeconds(1)));
+        assertEquals(TimeUnit.DAYS, file.getEnum("unit", TimeUnit.class, TimeUnit.DAYS));
+        assertEquals(7, file.getByteSize("limit", 7));
+    }
+
+    @Test
+    public void writesTypedDefaultsTheWayTheyAreRead() throws Exception {
+        CMFile file = typed();
+        file.load();
+        String written = new String(read("config.yml"), "UTF-8");
+        assertTrue(written.contains("cooldown: 1h30m"));
+        assertTrue(written.contains("unit: SECONDS"));
+        assertEquals(Duration.ofMinutes(90), file.getDuration("cooldown"));
+        assertEquals(TimeUnit.SECONDS, file.getEnum("unit", TimeUnit.class));
+        assertEquals(64L * 1024 * 1024, file.getByteSize("limit"));
+    }
+
+    @Test
+    public void overlaysFallThroughToTheirParent() throws Exception {
+        Files.write(new File(folder.getRoot(), "world.yml").toPath(), "section:\n  x: 5\n".getBytes("UTF-8"));
+        CMFile overlay = overlay();
+        overlay.load();
+
+        assertEquals(1, overlay.getInteger("a"));
+        assertEquals(5, overlay.getInteger("section.x"));
+        assertEquals(2, overlay.getInteger("section.y"));
+        assertArrayEquals(new Object[]{5, 2}, overlay.getAll("section", "x", "y"));
+        // Changes to the parent show through straight away.
+        overlay.getParent().set("a", 4);
+        assertEquals(4, overlay.getInteger("a"));
+    }
+
+    @Test
+    public void overlaysOnlySaveWhatIsTheirOwn() throws Exception {
+        Files.write(new File(folder.getRoot(), "world.yml").toPath(), "a: 1\nsection:\n  x: 5\n  y: 2\n".getBytes("UTF-8"));
+        CMFile overlay = overlay();
+        overlay.load();
+        // Anything the same as the parent is removed when loaded.
+        assertEquals("section:\n  x: 5\n", new String(read("world.yml"), "UTF-8"));
+
+        overlay.set("a", 3);
+        overlay.set("section.x", 1);
+        overlay.initiateSave();
+        assertEquals("a: 3\n", new String(read("world.yml"), "UTF-8"));
+        assertEquals(1, overlay.getInteger("section.x"));
+    }
+
+    @Test
+    public void readingAnInheritedSectionDoesNotCopyItIntoTheOverlay() throws Exception {
+        CMFile overlay = overlay();
+        overlay.load();
+
+        assertArrayEquals(new Object[]{1, 2}, overlay.getAll("section", "x", "y"));
+        assertNotNull(overlay.getRecord("section", "x"));
+        assertEquals(2, overlay.getInteger("section.y"));
+        assertFalse(overlay.getConfig().isSet("section"));
+        overlay.initiateSave();
+        assertFalse(new String(read("world.yml"), "UTF-8").contains("section"));
+    }
+
+    private CMFile overlay() {
+        CMFile parent = new CMFile(host, "config") {
+            @Override
+            public void loadDefaults() {
+                addDefault("a", 1);
+                addDefault("section.x", 1);
+                addDefault("section.y", 2);
+            }
+        };
+        CMFile overlay = new CMFile(host, "world") {
+            @Override
+            public void loadDefaults() {}
+        };
+        overlay.setParent(parent);
+        return overlay;
+    }
+
+    private CMFile typed() {
+        return new CMFile(host, "config") {
+            @Override
+            public void loadDefaults() {
+                addDefault("cooldown", Duration.ofMinutes(90));
+                addDefault("unit", TimeUnit.SECONDS);
+                addDefault("limit", "64MB");
+                expectByteSize("limit");
+                addDefault("unchecked", "5m");
+            }
+        };
+    }
+
+    private CMFile overridden() {
+        return new CMFile(host, "config") {
+            @Override
+            public void loadDefaults() {
+                addDefault("host", "localhost");
+                addDefault("port", 25565);
+                addDefault("ratio", 1.5);
+                addDefault("enabled", true);
+                addDefault("worlds", Arrays.asList("world"));
+            }
+        };
+    }
+
+    private CMFile commented() {
+        return new CMFile(host, "config") {
+            @Override
+            public void loadDefaults() {
+                addDefault("option", 1, "An option.");
+                addSection("Messages");
+                addDefault("messages.hello", "Hello!", "Sent to say hello.");
+            }
+        };
+    }
+
+    // How much of the heap is in use once everything unreachable has been collected.
+    private static long retainedHeap() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        // Keep collecting until it stops going down, since one collection doesn't always get everything.
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            Thread.sleep(20);
+            long now = memory.getHeapMemoryUsage().getUsed();
+            if (now >= used) break;
+            used = now;
+        }
+        return used;
+    }
+
+    private static void assertScratchReleased(CMFile file) throws Exception {
+        for (String name : new String[]{"tempConfig", "currentLines", "comments", "pendingComments"}) {
+            Field field = CMFile.class.getDeclaredField(name);
+            field.setAccessible(true);
+            assertNull(name, field.get(file));
+        }
+    }
+
+    private byte[] read(String name) throws Exception {
+        return Files.readAllBytes(new File(folder.getRoot(), name).toPath());
+    }
+
+    private void write(String name, String contents) throws Exception {
+        Files.write(new File(folder.getRoot(), name).toPath(), contents.getBytes("UTF-8"));
+    }
+}
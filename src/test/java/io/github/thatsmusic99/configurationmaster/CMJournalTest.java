@@ -0,0 +1,232 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.bukkit.configuration.MemoryConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class CMJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StandaloneHost host;
+
+    @Before
+    public void setUp() {
+        host = new StandaloneHost("Test", folder.getRoot());
+    }
+
+    @After
+    public void tearDown() {
+        host.shutdown();
+    }
+
+    @Test
+    public void replaysChangesInOrder() throws Exception {
+        CMJournal journal = new CMJournal(folder.newFile("config.yml.journal"));
+        journal.append("a", 1);
+        journal.append("b.c", "x");
+        journal.append("a", 2);
+        journal.append("b.d", null);
+        journal.close();
+
+        MemoryConfiguration config = new MemoryConfiguration();
+        config.set("b.d", true);
+        assertEquals(4, journal.replay(config));
+        assertEquals(2, config.get("a"));
+        assertEquals("x", config.get("b.c"));
+        assertNull(config.get("b.d"));
+    }
+
+    @Test
+    public void ignoresAndTruncatesAPartlyWrittenRecord() throws Exception {
+        File file = new File(folder.getRoot(), "config.yml.journal");
+        CMJournal journal = new CMJournal(file);
+        journal.append("a", 1);
+        journal.append("b", 2);
+        journal.close();
+        long valid = file.length();
+        // The server stopped partway through writing a third record.
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(valid);
+            raw.writeInt(100);
+            raw.writeInt(0);
+            raw.write(new byte[10]);
+        }
+
+        MemoryConfiguration config = new MemoryConfiguration();
+        assertEquals(2, journal.replay(config));
+        assertEquals(valid, file.length());
+    }
+
+    @Test
+    public void stopsAtARecordWithABadChecksum() throws Exception {
+        File file = new File(folder.getRoot(), "config.yml.journal");
+        CMJournal journal = new CMJournal(file);
+        journal.append("a", 1);
+        journal.close();
+        long first = file.length();
+        journal.append("b", 2);
+        journal.append("c", 3);
+        journal.close();
+        // Damage the body of the second record.
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(first + 10);
+            raw.write(raw.read() ^ 0xFF);
+        }
+
+        MemoryConfiguration config = new MemoryConfiguration();
+        assertEquals(1, journal.replay(config));
+        assertEquals(1, config.get("a"));
+        assertNull(config.get("b"));
+        assertNull(config.get("c"));
+        assertEquals(first, file.length());
+    }
+
+    @Test
+    public void clearingWhatWasReplayedKeepsLaterChanges() throws Exception {
+        CMJournal journal = new CMJournal(new File(folder.getRoot(), "config.yml.journal"));
+        journal.append("a", 1);
+        journal.replay(new MemoryConfiguration());
+        long replayed = journal.size();
+        journal.append("b", 2);
+
+        journal.clear(replayed);
+
+        MemoryConfiguration config = new MemoryConfiguration();
+        assertEquals(1, journal.replay(config));
+        assertNull(config.get("a"));
+        assertEquals(2, config.get("b"));
+    }
+
+    @Test
+    public void keepsLaterChangesAfterAFailedAppend() throws Exception {
+        CMJournal journal = new CMJournal(new File(folder.getRoot(), "config.yml.journal"));
+        journal.append("a", 1);
+        long valid = journal.size();
+
+        FailingChannel channel = FailingChannel.inject(journal, "channel");
+        try {
+            journal.append("b", 2);
+            fail("The append should have failed");
+        } catch (IOException expected) {
+            // Half of the record was written, but none of it is left behind.
+            assertEquals(valid, journal.size());
+        }
+        channel.recover();
+        journal.append("c", 3);
+        journal.close();
+
+        MemoryConfiguration config = new MemoryConfiguration();
+        assertEquals(2, journal.replay(config));
+        assertEquals(1, config.get("a"));
+        assertNull(config.get("b"));
+        assertEquals(3, config.get("c"));
+    }
+
+    @Test
+    public void flushesEachAppendUnlessInABatch() throws Exception {
+        CMJournal journal = new CMJournal(new File(folder.getRoot(), "config.yml.journal"));
+        journal.append("a", 1);
+        FailingChannel channel = FailingChannel.inject(journal, "channel");
+        channel.recover();
+
+        journal.append("b", 2);
+        assertEquals(1, channel.getForces());
+        try (CMWriteBatch batch = CMWriteBatch.begin()) {
+            journal.append("c", 3);
+            journal.append("d", 4);
+            assertEquals(1, channel.getForces());
+        }
+        // The batch flushed both changes at once.
+        assertEquals(2, channel.getForces());
+        journal.close();
+    }
+
+    @Test
+    public void writesTheJournalIntoTheFileOnceItIsTooLarge() throws Exception {
+        CMFile file = journalled();
+        file.setJournalThreshold(1);
+        file.load();
+        File journal = new File(folder.getRoot(), "config.yml.journal");
+
+        file.set("option", 7);
+        // The reload happens in steps on the host's scheduler.
+        long end = System.currentTimeMillis() + 5000;
+        while (journal.length() > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, journal.length());
+        assertTrue(new String(Files.readAllBytes(new File(folder.getRoot(), "config.yml").toPath()), "UTF-8").contains("option: 7"));
+        assertEquals(7, file.getInteger("option"));
+    }
+
+    @Test
+    public void keepsTheJournalWhenTheFileCannotBeWritten() throws Exception {
+        CMFile file = journalled();
+        file.load();
+        file.set("option", 7);
+        File journal = new File(folder.getRoot(), "config.yml.journal");
+        assertTrue(journal.length() > 0);
+
+        // A folder in the way of the temporary file stops the config file from being written.
+        File blocker = new File(folder.getRoot(), "config.yml.tmp");
+        assertTrue(blocker.mkdir());
+        assertTrue(new File(blocker, "in-the-way").createNewFile());
+        file.load();
+        assertTrue(file.hasSaveFailed());
+        assertTrue(journal.length() > 0);
+        assertEquals(7, file.getInteger("option"));
+
+        assertTrue(new File(blocker, "in-the-way").delete());
+        assertTrue(blocker.delete());
+        file.load();
+        assertFalse(file.hasSaveFailed());
+        assertEquals(0, journal.length());
+        assertTrue(new String(Files.readAllBytes(new File(folder.getRoot(), "config.yml").toPath()), "UTF-8").contains("option: 7"));
+    }
+
+    @Test
+    public void keepsTheJournalUntilTheBatchIsWritten() throws Exception {
+        CMFile file = journalled();
+        file.load();
+        file.set("option", 7);
+        File journal = new File(folder.getRoot(), "config.yml.journal");
+
+        try (CMWriteBatch batch = CMWriteBatch.begin()) {
+            file.load();
+            // The new file is only in the batch so far, so the journal is all that has the change.
+            assertTrue(journal.length() > 0);
+            assertFalse(new String(Files.readAllBytes(new File(folder.getRoot(), "config.yml").toPath()), "UTF-8").contains("option: 7"));
+            // Anything changed in the meantime has to survive the journal being cleared.
+            file.set("later", 5);
+        }
+
+        CMJournal reopened = new CMJournal(journal);
+        MemoryConfiguration config = new MemoryConfiguration();
+        assertEquals(1, reopened.replay(config));
+        assertEquals(5, config.get("later"));
+        assertTrue(new String(Files.readAllBytes(new File(folder.getRoot(), "config.yml").toPath()), "UTF-8").contains("option: 7"));
+    }
+
+    private CMFile journalled() {
+        CMFile file = new CMFile(host, "config") {
+            @Override
+            public void loadDefaults() {
+                addDefault("option", 1, "An option.");
+            }
+        };
+        file.setJournalled(true);
+        return file;
+    }
+}
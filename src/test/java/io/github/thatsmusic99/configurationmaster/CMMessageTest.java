@@ -0,0 +1,88 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CMMessageTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StandaloneHost host;
+
+    @Before
+    public void setUp() {
+        host = new StandaloneHost("Test", folder.getRoot());
+    }
+
+    @After
+    public void tearDown() {
+        host.shutdown();
+    }
+
+    @Test
+    public void fillsInPlaceholdersAndTranslatesColours() {
+        CMMessage message = new CMMessage("&aHello {player}, you have {amount} {coin.name}s.");
+        assertEquals(Arrays.asList("player", "amount", "coin.name"), message.getPlaceholders());
+        assertEquals("§aHello Steve, you have 5 Diamonds.", message.render("player", "Steve", "amount", 5, "coin.name", "Diamond"));
+
+        Map<String, Object> values = new HashMap<>();
+        values.put("player", "Alex");
+        values.put("amount", null);
+        // Anything left out stays as it was, but null is still filled in.
+        assertEquals("§aHello Alex, you have null {coin.name}s.", message.render(values));
+        assertEquals("§aHello {player}, you have {amount} {coin.name}s.", message.toString());
+    }
+
+    @Test
+    public void leavesAnythingThatIsNotAPlaceholderAlone() {
+        CMMessage message = new CMMessage("{} {not a placeholder} {{name}} {unclosed", '&');
+        assertEquals(Collections.singletonList("name"), message.getPlaceholders());
+        assertEquals("{} {not a placeholder} {Steve} {unclosed", message.render("name", "Steve"));
+        assertEquals("No placeholders", new CMMessage("No placeholders").render("name", "Steve"));
+        // Other colour characters can be used instead.
+        assertEquals("§cRed &c", new CMMessage("$cRed &c", '$').toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void needsAValueForEachName() {
+        new CMMessage("Hello {player}").render("player");
+    }
+
+    @Test
+    public void filesKeepPreparedMessagesUntilTheyChange() throws Exception {
+        CMFile file = new CMFile(host, "messages") {
+            @Override
+            public void loadDefaults() {
+                addDefault("welcome", "&eWelcome, {player}!");
+                addDefault("help", Arrays.asList("&6Help:", "/home {name}"));
+            }
+        };
+        file.load();
+
+        CMMessage welcome = file.getMessage("welcome");
+        assertSame(welcome, file.getMessage("welcome"));
+        assertEquals("§eWelcome, Steve!", welcome.render("player", "Steve"));
+        // Lists are joined into a message with several lines.
+        assertEquals("§6Help:\n/home base", file.getMessage("help").render("name", "base"));
+        assertNull(file.getMessage("missing"));
+        assertEquals("Not found", file.getMessage("missing", "Not found").toString());
+
+        file.set("welcome", "Hi {player}");
+        assertNotSame(welcome, file.getMessage("welcome"));
+        assertEquals("Hi Steve", file.getMessage("welcome").render("player", "Steve"));
+        welcome = file.getMessage("welcome");
+        file.load();
+        assertNotSame(welcome, file.getMessage("welcome"));
+    }
+}
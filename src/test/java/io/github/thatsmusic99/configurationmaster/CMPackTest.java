@@ -0,0 +1,138 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class CMPackTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void packsTheConfigFilesInAFolder() throws Exception {
+        write("a.yml", "a: 1\n");
+        write("b.json", "{\"b\": 2}");
+        write("notes.txt", "Not a config file.");
+        write("c-errored.yml", "c: [\n");
+
+        CMPack pack = CMPack.open(folder.getRoot(), "data");
+
+        assertEquals(new TreeSet<>(Arrays.asList("a.yml", "b.json")), pack.getFileNames());
+        assertEquals("a: 1\n", read(pack, "a.yml"));
+        assertFalse(pack.isChanged());
+        assertTrue(pack.getFile().exists());
+        // The files are only in the archive now, apart from the ones it doesn't hold.
+        assertFalse(new File(folder.getRoot(), "a.yml").exists());
+        assertFalse(new File(folder.getRoot(), "b.json").exists());
+        assertTrue(new File(folder.getRoot(), "notes.txt").exists());
+        assertTrue(new File(folder.getRoot(), "c-errored.yml").exists());
+    }
+
+    @Test
+    public void repacksOnlyWhenSomethingChanged() throws Exception {
+        write("a.yml", "a: 1\n");
+        write("b.yml", "b: 2\n");
+        CMPack pack = CMPack.open(folder.getRoot(), "data");
+
+        // Writing the same contents again isn't a change.
+        pack.write("a.yml", "a: 1\n".getBytes("UTF-8"));
+        assertFalse(pack.isChanged());
+        assertFalse(pack.repack());
+
+        pack.write("a.yml", "a: 3\n".getBytes("UTF-8"));
+        pack.write("c.yml", "c: 4\n".getBytes("UTF-8"));
+        pack.rename("b.yml", "b-errored.yml");
+        assertTrue(pack.isChanged());
+        assertEquals("a: 3\n", read(pack, "a.yml"));
+        assertTrue(pack.repack());
+        assertFalse(pack.isChanged());
+
+        CMPack reopened = CMPack.open(folder.getRoot(), "data");
+        assertEquals(new TreeSet<>(Arrays.asList("a.yml", "b-errored.yml", "c.yml")), reopened.getFileNames());
+        assertEquals("a: 3\n", read(reopened, "a.yml"));
+        assertEquals("b: 2\n", read(reopened, "b-errored.yml"));
+        assertEquals("c: 4\n", read(reopened, "c.yml"));
+    }
+
+    @Test
+    public void picksUpExportedFilesThatWereEdited() throws Exception {
+        write("a.yml", "a: 1\n");
+        write("b.yml", "b: 2\n");
+        CMPack pack = CMPack.open(folder.getRoot(), "data");
+        assertEquals(2, pack.export());
+
+        File edited = new File(folder.getRoot(), "a.yml");
+        write("a.yml", "a: 5\n");
+        assertTrue(edited.setLastModified(edited.lastModified() + 10000));
+        assertEquals(1, pack.refresh());
+        assertEquals("a: 5\n", read(pack, "a.yml"));
+
+        assertTrue(pack.repack());
+        // The edited file is back in the archive, but the untouched one was never picked up.
+        assertFalse(edited.exists());
+        assertTrue(new File(folder.getRoot(), "b.yml").exists());
+        assertEquals("a: 5\n", read(CMPack.open(folder.getRoot(), "data"), "a.yml"));
+    }
+
+    @Test
+    public void waitsForTheBatchBeforeTheFilesCountAsSaved() throws Exception {
+        write("a.yml", "a: 1\n");
+        CMPack pack = CMPack.open(folder.getRoot(), "data");
+        AtomicBoolean saved = new AtomicBoolean();
+
+        try (CMWriteBatch batch = CMWriteBatch.begin()) {
+            pack.write("a.yml", "a: 2\n".getBytes("UTF-8"));
+            pack.whenPacked("a.yml", () -> saved.set(true));
+            assertTrue(pack.repack());
+            assertFalse(saved.get());
+        }
+        assertTrue(saved.get());
+        assertEquals("a: 2\n", read(CMPack.open(folder.getRoot(), "data"), "a.yml"));
+
+        // Nothing is waiting for files that haven't changed.
+        AtomicBoolean unchanged = new AtomicBoolean();
+        pack.whenPacked("a.yml", () -> unchanged.set(true));
+        assertTrue(unchanged.get());
+    }
+
+    @Test
+    public void refusesADamagedArchive() throws Exception {
+        write("a.yml", "a: 1\n");
+        CMPack pack = CMPack.open(folder.getRoot(), "data");
+        // Claim that the file is far longer than the archive.
+        try (RandomAccessFile raw = new RandomAccessFile(pack.getFile(), "rw")) {
+            raw.seek(4 + 1 + 8 + 4 + 2 + "a.yml".length() + 4);
+            raw.writeInt(100000);
+        }
+        try {
+            CMPack.open(folder.getRoot(), "data");
+            fail("The damaged archive was opened");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("damaged"));
+        }
+    }
+
+    private void write(String name, String contents) throws Exception {
+        Files.write(new File(folder.getRoot(), name).toPath(), contents.getBytes("UTF-8"));
+    }
+
+    private static String read(CMPack pack, String name) throws Exception {
+        ByteBuffer data = pack.read(name);
+        assertNotNull(name, data);
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
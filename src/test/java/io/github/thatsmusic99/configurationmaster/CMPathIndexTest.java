@@ -0,0 +1,118 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.bukkit.configuration.MemoryConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class CMPathIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StandaloneHost host;
+
+    @Before
+    public void setUp() {
+        host = new StandaloneHost("Test", folder.getRoot());
+    }
+
+    @After
+    public void tearDown() {
+        host.shutdown();
+    }
+
+    @Test
+    public void listsKeysInOrderWithoutMixingUpSimilarSections() {
+        MemoryConfiguration config = new MemoryConfiguration();
+        config.set("b", 1);
+        config.set("a.y", 2);
+        config.set("a.x.deep", 3);
+        // These sort right next to the paths inside "a", but aren't in it.
+        config.set("a-b", 4);
+        config.set("a0", 5);
+        CMPathIndex index = new CMPathIndex(config);
+
+        assertEquals(Arrays.asList("a", "a-b", "a.x", "a.x.deep", "a.y", "a0", "b"), new ArrayList<>(index.getDeepKeys(null)));
+        assertEquals(new TreeSet<>(Arrays.asList("a", "a-b", "a0", "b")), index.keysUnder(null));
+        assertEquals(new TreeSet<>(Arrays.asList("x", "y")), index.keysUnder("a"));
+        assertEquals(new TreeSet<>(Arrays.asList("a.x", "a.x.deep", "a.y")), index.getDeepKeys("a"));
+        assertEquals(new TreeSet<>(Arrays.asList("a.x.deep", "a.y")), index.getKeysBetween("a.x.", "a0"));
+        assertTrue(index.keysUnder("b").isEmpty());
+        assertTrue(index.contains("a.x.deep"));
+        assertFalse(index.contains("a.z"));
+        assertEquals(7, index.size());
+    }
+
+    @Test
+    public void keysCannotBeChangedThroughTheIndex() {
+        MemoryConfiguration config = new MemoryConfiguration();
+        config.set("a.b", 1);
+        CMPathIndex index = new CMPathIndex(config);
+        try {
+            index.keysUnder("a").add("c");
+            fail("The keys should be read-only");
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            index.getDeepKeys(null).remove("a");
+            fail("The paths should be read-only");
+        } catch (UnsupportedOperationException expected) {
+        }
+        // Asking again hands out the same cached keys.
+        assertSame(index.keysUnder("a"), index.keysUnder("a"));
+    }
+
+    @Test
+    public void filesKeepTheirIndexUntilAnOptionIsSet() throws Exception {
+        CMFile file = new CMFile(host, "config") {
+            @Override
+            public void loadDefaults() {
+                addDefault("homes.spawn", 1);
+                addDefault("homes.base", 2);
+            }
+        };
+        file.load();
+        CMPathIndex index = file.getPathIndex();
+        assertSame(index, file.getPathIndex());
+        assertEquals(new TreeSet<>(Arrays.asList("base", "spawn")), file.keysUnder("homes"));
+
+        file.set("homes.mine", 3);
+        assertNotSame(index, file.getPathIndex());
+        assertEquals(new TreeSet<>(Arrays.asList("base", "mine", "spawn")), file.keysUnder("homes"));
+        assertEquals(new TreeSet<>(Arrays.asList("homes.base", "homes.mine", "homes.spawn")), file.getDeepKeys("homes"));
+
+        // Reloading throws the index away too.
+        index = file.getPathIndex();
+        file.load();
+        assertNotSame(index, file.getPathIndex());
+    }
+
+    @Test
+    public void overlaysIncludeTheirParentsPaths() throws Exception {
+        CMFile parent = new CMFile(host, "config") {
+            @Override
+            public void loadDefaults() {
+                addDefault("a", 1);
+                addDefault("section.x", 1);
+            }
+        };
+        CMFile overlay = new CMFile(host, "world") {
+            @Override
+            public void loadDefaults() {}
+        };
+        overlay.setParent(parent);
+        overlay.load();
+        overlay.set("section.y", 2);
+
+        assertEquals(new TreeSet<>(Arrays.asList("a", "section", "section.x", "section.y")), overlay.getDeepKeys(null));
+    }
+}
@@ -0,0 +1,95 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class CMRecordTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StandaloneHost host;
+
+    @Before
+    public void setUp() {
+        host = new StandaloneHost("Test", folder.getRoot());
+    }
+
+    @After
+    public void tearDown() {
+        host.shutdown();
+    }
+
+    @Test
+    public void readsEachKeyInTheOrderAskedFor() throws Exception {
+        CMFile file = kits();
+        file.load();
+
+        assertArrayEquals(new Object[]{15, "Starter", null}, file.getAll("kits.starter", "cost", "name", "missing"));
+        assertArrayEquals(new Object[]{true, 15}, file.getAll(null, "enabled", "kits.starter.cost"));
+        assertArrayEquals(new Object[]{"Starter", 15}, file.getAll("", "kits.starter.name", "kits.starter.cost"));
+        // A section that doesn't exist - or isn't a section - has nothing in it.
+        assertArrayEquals(new Object[]{null, null}, file.getAll("kits.missing", "cost", "name"));
+        assertArrayEquals(new Object[]{null}, file.getAll("enabled", "cost"));
+    }
+
+    @Test
+    public void convertsValuesTheSameWayAsTheFile() throws Exception {
+        CMFile file = kits();
+        file.load();
+        CMRecord record = file.getRecord("kits.starter", "name", "cost", "price", "cooldown", "items", "free", "missing");
+
+        assertEquals(7, record.size());
+        assertEquals("cost", record.getKey(1));
+        assertEquals(file.getString("kits.starter.name"), record.getString(0));
+        assertEquals(file.getInteger("kits.starter.cost"), record.getInteger(1, -1));
+        assertEquals(file.getDouble("kits.starter.price"), record.getDouble(2, -1), 0);
+        assertEquals(file.getLong("kits.starter.cooldown"), record.getLong(3, -1));
+        assertEquals(file.getStringList("kits.starter.items"), record.getStringList(4, null));
+        assertEquals(file.getBoolean("kits.starter.free"), record.getBoolean(5, true));
+        // Numbers stored as text are still read as numbers.
+        assertEquals(2, record.getInteger(3, -1));
+        assertEquals(15L, record.getLong(1, -1));
+        assertEquals(15.0, record.getDouble(1, -1), 0);
+
+        assertNull(record.get(6));
+        assertNull(record.getString(6));
+        assertEquals(-1, record.getInteger(6, -1));
+        assertEquals(-1, record.getInteger(0, -1));
+        assertTrue(record.getBoolean(6, true));
+        assertEquals(Collections.emptyList(), record.getStringList(0, Collections.emptyList()));
+    }
+
+    @Test
+    public void changingTheArrayDoesNotChangeTheRecord() throws Exception {
+        CMFile file = kits();
+        file.load();
+        CMRecord record = file.getRecord("kits.starter", "name");
+        record.toArray()[0] = "Changed";
+        assertEquals("Starter", record.get(0));
+        assertEquals("CMRecord{name=Starter}", record.toString());
+    }
+
+    private CMFile kits() {
+        return new CMFile(host, "config") {
+            @Override
+            public void loadDefaults() {
+                addDefault("enabled", true);
+                addDefault("kits.starter.name", "Starter");
+                addDefault("kits.starter.cost", 15);
+                addDefault("kits.starter.price", 2.5);
+                addDefault("kits.starter.cooldown", "2");
+                addDefault("kits.starter.items", Arrays.asList("STONE_SWORD", 4));
+                addDefault("kits.starter.free", false);
+            }
+        };
+    }
+}
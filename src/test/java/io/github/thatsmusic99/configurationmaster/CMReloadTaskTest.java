@@ -0,0 +1,126 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CMReloadTaskTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StandaloneHost host;
+    // Stands in for the scheduler, so that the test decides when each part of the reload runs.
+    private final Queue<Runnable> ticks = new ArrayDeque<>();
+
+    @Before
+    public void setUp() {
+        host = new StandaloneHost("Test", folder.getRoot());
+    }
+
+    @After
+    public void tearDown() {
+        host.shutdown();
+    }
+
+    @Test
+    public void keepsTheOldOptionsUntilTheReloadHasFinished() throws Exception {
+        CMFile file = file();
+        file.load();
+        file.setHistorySize(5);
+        CMSnapshot before = file.getSnapshot();
+        write("config.yml", "option: 5\nmessages:\n  hello: Hi!\n");
+
+        CompletableFuture<Void> future = file.reloadIncrementally(ticks::add, 1, TimeUnit.NANOSECONDS);
+        assertSame(future, file.reloadIncrementally(ticks::add, 1, TimeUnit.NANOSECONDS));
+        int runs = 0;
+        while (!future.isDone()) {
+            assertEquals(1, file.getInteger("option"));
+            assertEquals("Hello!", file.getString("messages.hello"));
+            assertSame(before, file.getSnapshot());
+            tick();
+            runs++;
+        }
+        future.get();
+        // Each step ran on a tick of its own.
+        assertTrue(runs > 1);
+
+        assertEquals(5, file.getInteger("option"));
+        assertEquals("Hi!", file.getString("messages.hello"));
+        assertEquals(2, file.getHistory().size());
+        assertEquals(5, file.getSnapshot().get("option"));
+        assertNotNull(file.getLoadStats());
+    }
+
+    @Test
+    public void setsWhatChangedDuringTheReloadAgain() throws Exception {
+        CMFile file = file();
+        file.load();
+        write("config.yml", "option: 5\nmessages:\n  hello: Hi!\n");
+
+        CompletableFuture<Void> future = file.reloadIncrementally(ticks::add, 1, TimeUnit.NANOSECONDS);
+        tick();
+        file.set("messages.hello", "Hey!");
+        assertEquals("Hey!", file.getString("messages.hello"));
+        while (!future.isDone()) {
+            tick();
+        }
+        future.get();
+
+        assertEquals(5, file.getInteger("option"));
+        assertEquals("Hey!", file.getString("messages.hello"));
+    }
+
+    @Test
+    public void isCancelledByLoading() throws Exception {
+        CMFile file = file();
+        file.load();
+        write("config.yml", "option: 5\nmessages:\n  hello: Hi!\n");
+
+        CompletableFuture<Void> future = file.reloadIncrementally(ticks::add, 1, TimeUnit.NANOSECONDS);
+        tick();
+        write("config.yml", "option: 6\nmessages:\n  hello: Hi!\n");
+        file.load();
+        assertTrue(future.isCancelled());
+        assertEquals(6, file.getInteger("option"));
+
+        // Whatever the reload had left to do doesn't touch the file.
+        while (!ticks.isEmpty()) {
+            tick();
+        }
+        assertEquals(6, file.getInteger("option"));
+        // A new reload can be started afterwards.
+        assertNotSame(future, file.reloadIncrementally(ticks::add, 1, TimeUnit.NANOSECONDS));
+    }
+
+    private void tick() {
+        Runnable task = ticks.poll();
+        assertNotNull("Nothing was scheduled", task);
+        task.run();
+    }
+
+    private CMFile file() {
+        return new CMFile(host, "config") {
+            @Override
+            public void loadDefaults() {
+                addDefault("option", 1, "An option.");
+                addDefault("messages.hello", "Hello!", "Sent to say hello.");
+            }
+        };
+    }
+
+    private void write(String name, String contents) throws Exception {
+        Files.write(new File(folder.getRoot(), name).toPath(), contents.getBytes("UTF-8"));
+    }
+}
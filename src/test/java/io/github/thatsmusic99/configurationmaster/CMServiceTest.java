@@ -0,0 +1,62 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CMServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StandaloneHost host;
+    private CMService service;
+
+    @Before
+    public void setUp() {
+        host = new StandaloneHost("Test", folder.getRoot());
+        service = new CMService(host, 2);
+    }
+
+    @After
+    public void tearDown() {
+        service.close();
+        host.shutdown();
+    }
+
+    @Test
+    public void reloadsOnTheMainThreadUnlessToldOtherwise() throws Exception {
+        Map<String, String> threads = new ConcurrentHashMap<>();
+        CMFile main = recording("main", threads);
+        CMFile io = recording("io", threads);
+        main.load();
+        io.load();
+        service.register(main);
+        service.register(io, false);
+
+        service.reloadAll().get(10, TimeUnit.SECONDS);
+
+        assertEquals("Test ConfigurationMaster", threads.get("main"));
+        assertTrue(threads.get("io"), threads.get("io").startsWith("ConfigurationMaster I/O"));
+        assertEquals(Arrays.asList(main, io), service.getFiles());
+    }
+
+    private CMFile recording(String name, Map<String, String> threads) {
+        return new CMFile(host, name) {
+            @Override
+            public void loadDefaults() {
+                addDefault("option", 1);
+                threads.put(name, Thread.currentThread().getName());
+            }
+        };
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CMSkeletonTest {
+
+    @Test
+    public void writesCommentsAboveTheirOptions() {
+        Map<String, String> comments = new LinkedHashMap<>();
+        comments.put("section.option", "An option.");
+        List<String> merged = CMSkeleton.of(null, comments).merge(Arrays.asList("section:", "  option: 1", "other: 2"));
+        assertEquals(Arrays.asList("section:", "  # An option.", "  option: 1", "other: 2"), merged);
+    }
+
+    @Test
+    public void findsQuotedKeys() {
+        Map<String, String> comments = new LinkedHashMap<>();
+        comments.put("it's", "Single quoted.");
+        comments.put("tab\there", "Double quoted.");
+        comments.put("say \"hi\"", "Escaped quotes.");
+        comments.put("caf\u00e9 \ud83d\ude00", "Unicode escapes.");
+        comments.put("nested", "A section.");
+        comments.put("nested.new\nline", "Nested.");
+        List<String> lines = Arrays.asList(
+                "'it''s': 1",
+                "\"tab\\there\": 2",
+                "\"say \\\"hi\\\"\": 3",
+                "\"caf\\xe9 \\U0001F600\": 4",
+                "nested:",
+                "  \"new\\nline\": 5");
+
+        List<String> merged = CMSkeleton.of(null, comments).merge(lines);
+
+        assertEquals(Arrays.asList(
+                "", "# Single quoted.", "'it''s': 1",
+                "", "# Double quoted.", "\"tab\\there\": 2",
+                "", "# Escaped quotes.", "\"say \\\"hi\\\"\": 3",
+                "", "# Unicode escapes.", "\"caf\\xe9 \\U0001F600\": 4",
+                "", "# A section.", "nested:",
+                "  # Nested.", "  \"new\\nline\": 5"), merged);
+    }
+
+    @Test
+    public void ignoresQuotedValuesThatArentKeys() {
+        Map<String, String> comments = new LinkedHashMap<>();
+        comments.put("key", "A comment.");
+        List<String> lines = Arrays.asList("\"key\"", "'key' x: 1", "\"key\\q\": 1");
+        assertEquals(lines, CMSkeleton.of(null, comments).merge(lines));
+    }
+}
@@ -0,0 +1,149 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CMSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StandaloneHost host;
+
+    @Before
+    public void setUp() {
+        host = new StandaloneHost("Test", folder.getRoot());
+    }
+
+    @After
+    public void tearDown() {
+        host.shutdown();
+    }
+
+    @Test
+    public void sharesWhatDidntChange() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("a", 1);
+        config.set("section.b", "text");
+        config.set("section.c", Arrays.asList("x", "y"));
+        CMSnapshot first = CMSnapshot.of(null, config);
+        assertEquals(1, first.getVersion());
+        assertEquals(3, first.size());
+        assertEquals(1, first.get("a"));
+        assertEquals(Arrays.asList("x", "y"), first.get("section.c"));
+        assertTrue(first.contains("section"));
+        assertFalse(first.contains("section.d"));
+        assertNull(first.get("a.b"));
+
+        // Nothing changed, so there's no new version.
+        assertSame(first, CMSnapshot.of(first, config));
+        assertSame(first, first.with("a", 1));
+
+        CMSnapshot second = first.with("section.b", "changed");
+        assertEquals(2, second.getVersion());
+        assertEquals("changed", second.get("section.b"));
+        // The old version is left alone.
+        assertEquals("text", first.get("section.b"));
+    }
+
+    @Test
+    public void listsOnlyWhatIsDifferent() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("kept", 1);
+        config.set("changed", "old");
+        config.set("removed", true);
+        config.set("section.kept", 2);
+        CMSnapshot before = CMSnapshot.of(null, config);
+
+        config.set("changed", "new");
+        config.set("removed", null);
+        config.set("added", 3);
+        config.set("section.added", 4);
+        config.set("new-section.option", 5);
+        CMSnapshot after = CMSnapshot.of(before, config);
+        assertEquals(2, after.getVersion());
+
+        List<String> changes = new ArrayList<>();
+        for (CMSnapshot.Change change : before.diff(after)) {
+            changes.add(change.toString());
+        }
+        assertEquals(Arrays.asList(
+                "added: null -> 3",
+                "changed: old -> new",
+                "new-section: null -> {option=5}",
+                "removed: true -> null",
+                "section.added: null -> 4"), changes);
+        assertTrue(before.diff(before).isEmpty());
+        // Going the other way undoes each change.
+        assertEquals(5, after.diff(before).size());
+    }
+
+    @Test
+    public void keepsAsManyVersionsAsItWasToldTo() {
+        CMFile file = file();
+        file.load();
+        file.setHistorySize(3);
+        assertEquals(1, file.getHistory().size());
+
+        file.set("option", 2);
+        file.set("option", 3);
+        file.set("option", 4);
+        List<CMSnapshot> history = file.getHistory();
+        assertEquals(3, history.size());
+        assertEquals(2, history.get(0).get("option"));
+        assertSame(file.getSnapshot(), history.get(2));
+
+        file.setHistorySize(0);
+        assertTrue(file.getHistory().isEmpty());
+        assertFalse(file.rollback(1));
+    }
+
+    @Test
+    public void rollsBackToAnEarlierVersion() {
+        CMFile file = file();
+        file.load();
+        file.setHistorySize(10);
+        CMSnapshot original = file.getSnapshot();
+
+        file.set("option", 2);
+        file.set("messages.hello", "Hi!");
+        file.set("messages.bye", "Bye!");
+        file.set("list", Collections.singletonList("c"));
+
+        assertTrue(file.rollback(1));
+        assertEquals(Arrays.asList("a", "b"), file.getStringList("list"));
+        assertEquals("Bye!", file.getString("messages.bye"));
+
+        assertEquals(3, file.rollback(original));
+        assertEquals(1, file.getInteger("option"));
+        assertEquals("Hello!", file.getString("messages.hello"));
+        assertFalse(file.getConfig().contains("messages.bye"));
+        assertTrue(original.diff(file.getSnapshot()).isEmpty());
+        // Each rollback is a single new version, so it can be undone too.
+        assertTrue(file.rollback(1));
+        assertEquals("Bye!", file.getString("messages.bye"));
+        assertFalse(file.rollback(100));
+    }
+
+    private CMFile file() {
+        return new CMFile(host, "config") {
+            @Override
+            public void loadDefaults() {
+                addDefault("option", 1);
+                addDefault("messages.hello", "Hello!");
+                addDefault("list", Arrays.asList("a", "b"));
+            }
+        };
+    }
+}
@@ -0,0 +1,206 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class CMStoreTest {
+
+    // A commit marker is a record with an empty key and no value.
+    private static final int COMMIT_SIZE = 8 + 1 + 4;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsCommittedChangesWhenReopened() throws Exception {
+        File file = new File(folder.getRoot(), "data.cmdb");
+        CMStore store = CMStore.open(file);
+        store.put("players.steve.name", "Steve");
+        store.put("players.steve.homes", Arrays.asList(1, 2));
+        store.put("players.alex", Collections.singletonMap("name", "Alex"));
+        store.commit();
+        store.close();
+
+        store = CMStore.open(file);
+        try {
+            assertEquals("Steve", store.get("players.steve.name"));
+            assertEquals(Arrays.asList(1, 2), store.get("players.steve.homes"));
+            assertEquals("Alex", store.get("players.alex.name"));
+            assertEquals(new TreeSet<>(Arrays.asList("players.alex.name", "players.steve.homes", "players.steve.name")), store.keys("players"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void throwsAwayChangesWithoutACommitMarker() throws Exception {
+        File file = new File(folder.getRoot(), "data.cmdb");
+        CMStore store = CMStore.open(file);
+        store.put("a", 1);
+        store.commit();
+        long committed = file.length();
+        store.put("b", 2);
+        store.put("a", 3);
+        store.commit();
+        store.close();
+        // The server stopped before the second commit marker reached the disk.
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.setLength(raw.length() - COMMIT_SIZE);
+        }
+
+        store = CMStore.open(file);
+        try {
+            assertEquals(1, store.get("a"));
+            assertFalse(store.contains("b"));
+            assertEquals(committed, file.length());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void stopsAtADamagedRecord() throws Exception {
+        File file = new File(folder.getRoot(), "data.cmdb");
+        CMStore store = CMStore.open(file);
+        store.put("a", 1);
+        store.commit();
+        long committed = file.length();
+        store.put("b", 2);
+        store.commit();
+        store.put("c", 3);
+        store.commit();
+        store.close();
+        // Damage the body of the record for b, which takes the commit after it down too.
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(committed + 12);
+            raw.write(raw.read() ^ 0xFF);
+        }
+
+        store = CMStore.open(file);
+        try {
+            assertEquals(1, store.get("a"));
+            assertFalse(store.contains("b"));
+            assertFalse(store.contains("c"));
+            assertEquals(committed, file.length());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void keepsLaterCommitsAfterAFailedWrite() throws Exception {
+        File file = new File(folder.getRoot(), "data.cmdb");
+        CMStore store = CMStore.open(file);
+        store.put("a", 1);
+        store.commit();
+        long committed = file.length();
+
+        FailingChannel channel = FailingChannel.inject(store, "channel");
+        store.put("b", 2);
+        try {
+            store.commit();
+            fail("The commit should have failed");
+        } catch (IOException expected) {
+            // Nothing of the failed commit is left behind.
+            assertEquals(committed, file.length());
+        }
+        channel.recover();
+        // The failed changes are still pending, so they go in with the next commit.
+        store.put("c", 3);
+        store.commit();
+        store.close();
+
+        store = CMStore.open(file);
+        try {
+            assertEquals(1, store.get("a"));
+            assertEquals(2, store.get("b"));
+            assertEquals(3, store.get("c"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void onlyCommitsWhatWasntRolledBack() throws Exception {
+        File file = new File(folder.getRoot(), "data.cmdb");
+        CMStore store = CMStore.open(file);
+        store.put("a", 1);
+        store.rollback();
+        store.put("b", 2);
+        store.commit();
+        store.put("c", 3);
+        // Closing throws away anything not committed.
+        store.close();
+
+        store = CMStore.open(file);
+        try {
+            assertFalse(store.contains("a"));
+            assertEquals(2, store.get("b"));
+            assertFalse(store.contains("c"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void replacesWhateverIsInTheWay() throws Exception {
+        CMStore store = CMStore.open(new File(folder.getRoot(), "data.cmdb"));
+        try {
+            store.put("a.b", 1);
+            store.put("a.c", 2);
+            store.commit();
+            store.put("a", "flat");
+            store.commit();
+            assertEquals("flat", store.get("a"));
+            assertTrue(store.keys("a").isEmpty());
+
+            store.put("a.d", 4);
+            store.commit();
+            assertFalse(store.contains("a"));
+            assertEquals(4, store.get("a.d"));
+
+            store.remove("a");
+            store.commit();
+            assertTrue(store.scan("").isEmpty());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void compactingKeepsOnlyTheLatestRecords() throws Exception {
+        File file = new File(folder.getRoot(), "data.cmdb");
+        CMStore store = CMStore.open(file);
+        for (int i = 0; i < 100; i++) {
+            store.put("counter", i);
+            store.put("removed." + i, i);
+            store.commit();
+        }
+        store.remove("removed");
+        store.commit();
+        long before = file.length();
+
+        store.compact();
+        assertTrue(file.length() < before / 10);
+        assertEquals(99, store.get("counter"));
+        assertTrue(store.isStored("counter", 99));
+        assertFalse(store.isStored("counter", 98));
+        store.close();
+
+        store = CMStore.open(file);
+        try {
+            assertEquals(99, store.get("counter"));
+            assertEquals(Collections.singletonMap("counter", 99), store.scan(""));
+        } finally {
+            store.close();
+        }
+    }
+}
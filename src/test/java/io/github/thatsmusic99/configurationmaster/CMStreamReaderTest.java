@@ -0,0 +1,138 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import io.github.thatsmusic99.configurationmaster.format.CMFormat;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class CMStreamReaderTest {
+
+    private static final String YAML = "a: 1\n"
+            + "b:\n"
+            + "  c: yes\n"
+            + "  d: 'x'\n"
+            + "  e: [1, 2]\n"
+            + "f:\n"
+            + "  g:\n"
+            + "    h: 0x10\n"
+            + "  big: 99999999999\n"
+            + "z: ~\n"
+            + "q: 1.5\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void visitsEveryOptionInOrder() throws Exception {
+        Map<String, Object> visited = new LinkedHashMap<>();
+        CMStreamReader.read(new StringReader(YAML), visited::put);
+
+        assertEquals(Arrays.asList("a", "b.c", "b.d", "b.e", "f.g.h", "f.big", "z", "q"), new ArrayList<>(visited.keySet()));
+        assertEquals(1, visited.get("a"));
+        assertEquals(true, visited.get("b.c"));
+        assertEquals("x", visited.get("b.d"));
+        assertEquals(Arrays.asList(1, 2), visited.get("b.e"));
+        assertEquals(16, visited.get("f.g.h"));
+        assertEquals(99999999999L, visited.get("f.big"));
+        assertNull(visited.get("z"));
+        assertEquals(1.5, visited.get("q"));
+    }
+
+    @Test
+    public void skipsSectionsTheVisitorDoesNotEnter() throws Exception {
+        List<String> paths = new ArrayList<>();
+        CMStreamReader.read(new StringReader(YAML), new CMStreamReader.EntryVisitor() {
+            @Override
+            public void visit(String path, Object value) {
+                paths.add(path);
+            }
+
+            @Override
+            public boolean enterSection(String path) {
+                return !path.equals("f");
+            }
+        });
+
+        assertEquals(Arrays.asList("a", "b.c", "b.d", "b.e", "z", "q"), paths);
+    }
+
+    @Test
+    public void indexesOnlyTheRequestedSection() throws Exception {
+        File file = folder.newFile("data.yml");
+        Files.write(file.toPath(), YAML.getBytes("UTF-8"));
+
+        CMStreamReader.Index index = CMStreamReader.index(file, "f");
+
+        assertEquals(2, index.size());
+        assertEquals(Arrays.asList("f.big", "f.g.h"), index.getPaths("f"));
+        assertEquals(16, index.get("f.g.h"));
+        assertFalse(index.contains("a"));
+    }
+
+    @Test
+    public void streamsFilesInEveryFormat() throws Exception {
+        for (CMFormat format : new CMFormat[]{CMFormat.YAML, CMFormat.JSON, CMFormat.BINARY, CMFormat.STORE}) {
+            CMFile file = dataFile(folder.newFolder());
+            file.setFormat(format);
+            file.load();
+            assertStreamed(file);
+        }
+    }
+
+    @Test
+    public void streamsCompressedFiles() throws Exception {
+        CMFile file = dataFile(folder.newFolder());
+        file.setCompressed(true);
+        file.load();
+        assertStreamed(file);
+    }
+
+    @Test
+    public void streamsFilesInAPack() throws Exception {
+        File packed = folder.newFolder();
+        CMFile file = dataFile(packed);
+        file.setPack(CMPack.open(packed, "data"));
+        file.load();
+        assertFalse(new File(packed, "data.yml").exists());
+        assertStreamed(file);
+    }
+
+    @Test
+    public void streamsNothingBeforeTheFileExists() throws Exception {
+        CMFile file = dataFile(folder.newFolder());
+        List<String> paths = new ArrayList<>();
+        file.stream((path, value) -> paths.add(path));
+        assertTrue(paths.isEmpty());
+        assertEquals(0, file.index(null).size());
+    }
+
+    private static void assertStreamed(CMFile file) throws Exception {
+        Map<String, Object> visited = new HashMap<>();
+        file.stream(visited::put);
+        assertEquals(file.getFormat().getExtension(), 3, visited.size());
+        assertEquals(1, visited.get("homes.spawn.x"));
+        assertEquals(Arrays.asList("a", "b"), visited.get("homes.spawn.tags"));
+
+        CMStreamReader.Index index = file.index("homes");
+        assertEquals(Arrays.asList("homes.spawn.tags", "homes.spawn.x"), index.getPaths("homes"));
+        assertFalse(index.contains("version"));
+    }
+
+    private static CMFile dataFile(File folder) {
+        return new CMFile(new StandaloneHost("Test", folder), "data") {
+            @Override
+            public void loadDefaults() {
+                addDefault("homes.spawn.x", 1);
+                addDefault("homes.spawn.tags", Arrays.asList("a", "b"));
+                addDefault("version", 2);
+            }
+        };
+    }
+}
@@ -0,0 +1,71 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class CMStringPoolTest {
+
+    @Test
+    public void sharesOneCopyOfEachString() {
+        String key = "key-" + UUID.randomUUID();
+        long duplicates = CMStringPool.getDuplicates();
+
+        String first = CMStringPool.intern(new String(key));
+        String second = CMStringPool.intern(new String(key));
+
+        assertSame(first, second);
+        assertEquals(duplicates + 1, CMStringPool.getDuplicates());
+        assertTrue(CMStringPool.getBytesSaved() > 0);
+    }
+
+    @Test
+    public void leavesLongValuesAlone() {
+        String value = "value-" + UUID.randomUUID();
+        int max = CMStringPool.getMaxValueLength();
+        CMStringPool.setMaxValueLength(10);
+        try {
+            String copy = new String(value);
+            assertSame(copy, CMStringPool.internValue(copy));
+            assertNotSame(copy, CMStringPool.internValue(new String(value)));
+        } finally {
+            CMStringPool.setMaxValueLength(max);
+        }
+    }
+
+    @Test
+    public void sharesStringsBetweenThreads() throws Exception {
+        String prefix = UUID.randomUUID() + "-";
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CyclicBarrier start = new CyclicBarrier(threads);
+        try {
+            List<Future<String[]>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    // Every thread makes its own copies, so only the pool can make them the same.
+                    String[] pooled = new String[2000];
+                    for (int j = 0; j < pooled.length; j++) {
+                        pooled[j] = CMStringPool.intern(new String(prefix + j));
+                    }
+                    return pooled;
+                }));
+            }
+            String[] expected = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<String[]> result : results) {
+                String[] pooled = result.get(10, TimeUnit.SECONDS);
+                for (int j = 0; j < pooled.length; j++) {
+                    assertSame(expected[j], pooled[j]);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
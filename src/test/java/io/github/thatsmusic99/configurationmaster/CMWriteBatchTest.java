@@ -0,0 +1,113 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class CMWriteBatchTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Every channel opened by the batch, by the path it was opened for.
+    private final Map<Path, List<FailingChannel>> opened = new HashMap<>();
+
+    @After
+    public void tearDown() {
+        CMWriteBatch.opener = FileChannel::open;
+    }
+
+    @Test
+    public void aFailedWriteLeavesTheOldFileAlone() throws Exception {
+        File file = new File(folder.getRoot(), "config.yml");
+        CMWriteBatch.write(file, "option: 1\n".getBytes("UTF-8"));
+
+        // The disk fills up partway through writing the new contents.
+        watch(false);
+        try {
+            CMWriteBatch.write(file, "option: 2\n".getBytes("UTF-8"));
+            fail("The write should have failed");
+        } catch (IOException expected) {
+            assertEquals("option: 1\n", new String(Files.readAllBytes(file.toPath()), "UTF-8"));
+            assertFalse(new File(folder.getRoot(), "config.yml.tmp").exists());
+        }
+
+        // The same goes for a batch, which doesn't touch the file until it's closed.
+        try (CMWriteBatch batch = CMWriteBatch.begin()) {
+            CMWriteBatch.write(file, "option: 3\n".getBytes("UTF-8"));
+            fail("The write should have failed");
+        } catch (IOException expected) {
+            assertEquals("option: 1\n", new String(Files.readAllBytes(file.toPath()), "UTF-8"));
+            assertFalse(new File(folder.getRoot(), "config.yml.tmp").exists());
+        }
+    }
+
+    @Test
+    public void aBatchFlushesEachFileOnce() throws Exception {
+        File first = new File(folder.getRoot(), "first.yml");
+        File second = new File(folder.getRoot(), "second.yml");
+        watch(true);
+        try (CMWriteBatch batch = CMWriteBatch.begin()) {
+            CMWriteBatch.write(first, "a: 1\n".getBytes("UTF-8"));
+            CMWriteBatch.write(second, "b: 1\n".getBytes("UTF-8"));
+            CMWriteBatch.write(first, "a: 2\n".getBytes("UTF-8"));
+            // Nothing is flushed until the batch is closed.
+            assertEquals(0, forces(first.getName() + ".tmp"));
+            assertEquals(2, batch.size());
+        }
+        assertEquals(1, forces(first.getName() + ".tmp"));
+        assertEquals(1, forces(second.getName() + ".tmp"));
+        // Both files were moved into the same folder, so it's only flushed once.
+        assertEquals(1, forces(folder.getRoot().toPath()));
+        assertEquals("a: 2\n", new String(Files.readAllBytes(first.toPath()), "UTF-8"));
+        assertEquals("b: 1\n", new String(Files.readAllBytes(second.toPath()), "UTF-8"));
+    }
+
+    @Test
+    public void writesOutsideOfABatchAreFlushedStraightAway() throws Exception {
+        File file = new File(folder.getRoot(), "config.yml");
+        watch(true);
+        CMWriteBatch.write(file, "a: 1\n".getBytes("UTF-8"));
+        CMWriteBatch.write(file, "a: 2\n".getBytes("UTF-8"));
+        assertEquals(2, forces(file.getName() + ".tmp"));
+        assertEquals(2, forces(folder.getRoot().toPath()));
+    }
+
+    /**
+     * Wraps every channel the batch opens so that its flushes are counted.
+     *
+     * @param working false for writes to fail partway through.
+     */
+    private void watch(boolean working) {
+        CMWriteBatch.opener = (path, options) -> {
+            FailingChannel channel = new FailingChannel(FileChannel.open(path, options));
+            if (working) {
+                channel.recover();
+            }
+            opened.computeIfAbsent(path.toAbsolutePath(), key -> new ArrayList<>()).add(channel);
+            return channel;
+        };
+    }
+
+    private int forces(String name) {
+        return forces(new File(folder.getRoot(), name).toPath());
+    }
+
+    private int forces(Path path) {
+        int forces = 0;
+        for (FailingChannel channel : opened.getOrDefault(path.toAbsolutePath(), Collections.emptyList())) {
+            forces += channel.getForces();
+        }
+        return forces;
+    }
+}
@@ -0,0 +1,153 @@
+package io.github.thatsmusic99.configurationmaster;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A file channel that writes part of the next write to the real file, then fails, as if the disk had filled up.
+ */
+class FailingChannel extends FileChannel {
+
+    private final FileChannel channel;
+    private boolean failing = true;
+    private int forces;
+
+    FailingChannel(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Swaps the channel held in an object's field for a failing one.
+     */
+    static FailingChannel inject(Object owner, String field) throws Exception {
+        Field channelField = owner.getClass().getDeclaredField(field);
+        channelField.setAccessible(true);
+        FailingChannel failing = new FailingChannel((FileChannel) channelField.get(owner));
+        channelField.set(owner, failing);
+        return failing;
+    }
+
+    /**
+     * Lets writes through again, as if space had been freed up.
+     */
+    void recover() {
+        failing = false;
+    }
+
+    int getForces() {
+        return forces;
+    }
+
+    private int write(ByteBuffer source, long position, boolean positioned) throws IOException {
+        if (!failing) {
+            return positioned ? channel.write(source, position) : channel.write(source);
+        }
+        // Get half of it onto the disk first.
+        ByteBuffer half = source.duplicate();
+        half.limit(half.position() + Math.max(1, half.remaining() / 2));
+        if (positioned) {
+            channel.write(half, position);
+        } else {
+            channel.write(half);
+        }
+        throw new IOException("No space left on device");
+    }
+
+    @Override
+    public int write(ByteBuffer source) throws IOException {
+        return write(source, 0, false);
+    }
+
+    @Override
+    public int write(ByteBuffer source, long position) throws IOException {
+        return write(source, position, true);
+    }
+
+    @Override
+    public long write(ByteBuffer[] sources, int offset, int length) throws IOException {
+        long written = 0;
+        for (int i = offset; i < offset + length; i++) {
+            written += write(sources[i]);
+        }
+        return written;
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+        forces++;
+        channel.force(metaData);
+    }
+
+    @Override
+    public int read(ByteBuffer destination) throws IOException {
+        return channel.read(destination);
+    }
+
+    @Override
+    public long read(ByteBuffer[] destinations, int offset, int length) throws IOException {
+        return channel.read(destinations, offset, length);
+    }
+
+    @Override
+    public int read(ByteBuffer destination, long position) throws IOException {
+        return channel.read(destination, position);
+    }
+
+    @Override
+    public long position() throws IOException {
+        return channel.position();
+    }
+
+    @Override
+    public FileChannel position(long position) throws IOException {
+        channel.position(position);
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public FileChannel truncate(long size) throws IOException {
+        channel.truncate(size);
+        return this;
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        return channel.transferTo(position, count, target);
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel source, long position, long count) throws IOException {
+        return channel.transferFrom(source, position, count);
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+        return channel.map(mode, position, size);
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+        return channel.lock(position, size, shared);
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        return channel.tryLock(position, size, shared);
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        channel.close();
+    }
+}
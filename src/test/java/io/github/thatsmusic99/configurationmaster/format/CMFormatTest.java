@@ -0,0 +1,78 @@
+package io.github.thatsmusic99.configurationmaster.format;
+
+import io.github.thatsmusic99.configurationmaster.CMWriteBatch;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CMFormatTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsTheWholeFileInOneBuffer() throws Exception {
+        // Bigger than any buffer a stream would use, so nothing is left behind.
+        byte[] data = new byte[3 * 1024 * 1024 + 7];
+        new Random(1).nextBytes(data);
+        File file = folder.newFile("large.bin");
+        Files.write(file.toPath(), data);
+
+        ByteBuffer contents = CMFormat.read(file);
+        assertEquals(0, contents.position());
+        assertEquals(data.length, contents.remaining());
+        assertTrue(contents.hasArray());
+        assertArrayEquals(data, Arrays.copyOfRange(contents.array(), contents.arrayOffset(), contents.arrayOffset() + contents.remaining()));
+
+        assertEquals(0, CMFormat.read(folder.newFile("empty.yml")).remaining());
+    }
+
+    @Test
+    public void readsWhatABatchHasNotWrittenYet() throws Exception {
+        File file = new File(folder.getRoot(), "config.yml");
+        Files.write(file.toPath(), "option: 1\n".getBytes("UTF-8"));
+        try (CMWriteBatch batch = CMWriteBatch.begin()) {
+            CMWriteBatch.write(file, "option: 2\n".getBytes("UTF-8"));
+            FileConfiguration config = new YamlConfiguration();
+            CMFormat.YAML.load(config, file);
+            assertEquals(2, config.get("option"));
+        }
+        FileConfiguration config = new YamlConfiguration();
+        CMFormat.YAML.load(config, file);
+        assertEquals(2, config.get("option"));
+    }
+
+    @Test
+    public void loadsOnlyTheRemainingPartOfABuffer() throws Exception {
+        FileConfiguration source = new YamlConfiguration();
+        source.set("name", "Zoë ☃");
+        source.set("list", Arrays.asList(1, 2));
+        for (CMFormat format : new CMFormat[]{CMFormat.YAML, CMFormat.JSON, CMFormat.BINARY}) {
+            File file = new File(folder.getRoot(), "copy" + format.getExtension());
+            format.save(source, file);
+            byte[] saved = Files.readAllBytes(file.toPath());
+            // The contents sit in the middle of a larger array, the same as a file read out of a pack.
+            byte[] padded = new byte[saved.length + 10];
+            Arrays.fill(padded, (byte) '#');
+            System.arraycopy(saved, 0, padded, 6, saved.length);
+            ByteBuffer contents = ByteBuffer.wrap(padded, 2, saved.length + 4).slice();
+            contents.position(4);
+            contents.limit(4 + saved.length);
+
+            FileConfiguration config = new YamlConfiguration();
+            format.load(config, contents);
+            assertEquals(format.getExtension(), "Zoë ☃", config.get("name"));
+            assertEquals(format.getExtension(), Arrays.asList(1, 2), config.getList("list"));
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package io.github.thatsmusic99.configurationmaster.format;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.Test;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares what the fast parser reads against what SnakeYAML and Bukkit read for the same text.
+ */
+public class FastYamlParserTest {
+
+    // Files the fast parser has to read by itself.
+    private static final String[] FAST = {"quoting", "escapes", "scalars", "sections", "lists", "literal",
+            "duplicate-keys", "crlf", "bom", "empty", "comment-only"};
+    // Files the fast parser has to hand over to SnakeYAML.
+    private static final String[] FALLBACK = {"anchors", "tags", "flow-collections", "maps-in-lists",
+            "folded-block", "serialized", "document-marker", "explicit-indent", "timestamps", "empty-list-item"};
+    // Files that neither of them can read.
+    private static final String[] INVALID = {"unknown-escape", "unterminated", "tab-indent", "nested-colon", "dash-value"};
+
+    @Test
+    public void readsTheCorpusLikeSnakeYaml() throws Exception {
+        for (String name : FAST) {
+            String text = fixture("fast/" + name);
+            YamlConfiguration fast = new YamlConfiguration();
+            assertTrue(name + " fell back", FastYamlParser.parse(text, fast));
+            assertEquals(name, describe(reference(text)), describe(fast));
+        }
+    }
+
+    @Test
+    public void fallsBackOnEverythingElse() throws Exception {
+        for (String name : FALLBACK) {
+            String text = fixture("fallback/" + name);
+            assertFalse(name + " was parsed", FastYamlParser.parse(text, new YamlConfiguration()));
+            // The format still has to end up with what SnakeYAML reads.
+            YamlConfiguration loaded = new YamlConfiguration();
+            CMFormat.YAML.load(loaded, ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+            assertEquals(name, describe(reference(text)), describe(loaded));
+        }
+    }
+
+    @Test
+    public void rejectsWhatSnakeYamlRejects() throws Exception {
+        for (String name : INVALID) {
+            String text = fixture("invalid/" + name);
+            assertFalse(name + " was parsed", FastYamlParser.parse(text, new YamlConfiguration()));
+            try {
+                CMFormat.YAML.load(new YamlConfiguration(), ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+                fail(name + " was loaded");
+            } catch (InvalidConfigurationException expected) {
+                // SnakeYAML gets the final say on what's wrong with it.
+            }
+        }
+    }
+
+    @Test
+    public void readsWhatSnakeYamlWrites() throws Exception {
+        DumperOptions options = new DumperOptions();
+        options.setIndent(2);
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        Yaml yaml = new Yaml(options);
+        Random random = new Random(42);
+        int fast = 0;
+        for (int i = 0; i < 2000; i++) {
+            Map<String, Object> values = new LinkedHashMap<>();
+            int size = 1 + random.nextInt(6);
+            for (int j = 0; j < size; j++) {
+                values.put(random.nextInt(4) == 0 ? word(random) : "k" + j, value(random, 0));
+            }
+            String text = yaml.dump(values);
+            if (random.nextBoolean()) {
+                text = "######\n# A header\n#\n######\n\n" + text.replace("\nk", "\n# A comment\nk");
+            }
+
+            String expected = describe(reference(text));
+            YamlConfiguration parsed = new YamlConfiguration();
+            if (FastYamlParser.parse(text, parsed)) {
+                fast++;
+                assertEquals(text, expected, describe(parsed));
+            }
+            YamlConfiguration loaded = new YamlConfiguration();
+            CMFormat.YAML.load(loaded, ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+            assertEquals(text, expected, describe(loaded));
+        }
+        // Most of what gets written is in the subset, so the fast path must actually be getting used.
+        assertTrue("Only " + fast + " files were parsed", fast > 1000);
+    }
+
+    private static final String[] WORDS = {"enabled", "a b", "x:y", "#hash", "it's", "\"q\"", "yes", "no", "on",
+            "~", "null", "123", "0x1F", "012", "1.5", "1e3", ".inf", "-7", "true", "&c&lHello {player}", "",
+            "  lead", "trail  ", "tab\there", "line\nbreak", "multi\n\nbreak", "ünï", "\\back", "emoji 😀",
+            "key: value", "- item", "[x]", "{y}", "a #b", "a# b", "2020-01-01", "1:30", "99999999999", "@at",
+            "`tick", "%pct", "!bang", "*star", "|pipe", ">gt", "?q", ":colon", ",comma",
+            "a very long string that goes past the eighty characters SnakeYAML allows, so that it gets folded when written",
+            "a long string with 'quotes' and \"doubles\" and enough words in it to be folded over several lines too"};
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static Object value(Random random, int depth) {
+        switch (random.nextInt(depth > 2 ? 6 : 9)) {
+            case 0:
+                return random.nextInt(2000) - 1000;
+            case 1:
+                return random.nextDouble() * 100;
+            case 2:
+                return random.nextBoolean();
+            case 3:
+            case 4:
+            case 5:
+                return word(random);
+            case 6: {
+                List<Object> list = new ArrayList<>();
+                for (int i = random.nextInt(4); i > 0; i--) {
+                    list.add(random.nextInt(3) == 0 ? random.nextInt(100) : word(random));
+                }
+                return list;
+            }
+            default: {
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = random.nextInt(5); i > 0; i--) {
+                    map.put(random.nextInt(4) == 0 ? word(random) : "k" + random.nextInt(20), value(random, depth + 1));
+                }
+                return map;
+            }
+        }
+    }
+
+    private static YamlConfiguration reference(String text) throws InvalidConfigurationException {
+        YamlConfiguration config = new YamlConfiguration();
+        config.loadFromString(text);
+        return config;
+    }
+
+    // Every path with its value and type, so that 1 and 1L or "1" and 1 don't count as the same.
+    private static String describe(ConfigurationSection section) {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Object> entry : section.getValues(true).entrySet()) {
+            builder.append(entry.getKey()).append(" = ");
+            Object value = entry.getValue();
+            if (value instanceof ConfigurationSection) {
+                builder.append("<section>");
+            } else if (value instanceof List) {
+                builder.append('[');
+                for (Object item : (List<?>) value) {
+                    builder.append(describe(item)).append(", ");
+                }
+                builder.append(']');
+            } else {
+                builder.append(describe(value));
+            }
+            builder.append('\n');
+        }
+        if (section instanceof YamlConfiguration) {
+            builder.append("header = ").append(((YamlConfiguration) section).options().header());
+        }
+        return builder.toString();
+    }
+
+    private static String describe(Object value) {
+        return value == null ? "null" : value + " (" + value.getClass().getSimpleName() + ")";
+    }
+
+    private static String fixture(String name) throws IOException {
+        try (InputStream input = FastYamlParserTest.class.getResourceAsStream("/yaml/" + name + ".yml")) {
+            assertNotNull(name, input);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return new String(output.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.thatsmusic99.configurationmaster.format;
+
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class JsonFormatTest {
+
+    @Test
+    public void nonFiniteNumbersComeBackAsDoubles() throws Exception {
+        FileConfiguration config = new YamlConfiguration();
+        config.set("nan", Double.NaN);
+        config.set("positive", Double.POSITIVE_INFINITY);
+        config.set("negative", Double.NEGATIVE_INFINITY);
+        config.set("list", Arrays.asList(Double.NaN, 1.5, Double.NEGATIVE_INFINITY));
+        String json = save(config);
+        assertTrue(json.contains("\"nan\":NaN"));
+
+        FileConfiguration loaded = load(json);
+        assertEquals(Double.NaN, loaded.get("nan"));
+        assertEquals(Double.POSITIVE_INFINITY, loaded.get("positive"));
+        assertEquals(Double.NEGATIVE_INFINITY, loaded.get("negative"));
+        assertEquals(Arrays.asList(Double.NaN, 1.5, Double.NEGATIVE_INFINITY), loaded.getList("list"));
+    }
+
+    @Test
+    public void quotedNonFiniteNumbersStayAsStrings() throws Exception {
+        FileConfiguration config = new YamlConfiguration();
+        config.set("NaN", "NaN");
+        config.set("infinity", "Infinity");
+        config.set("number", Double.POSITIVE_INFINITY);
+        config.set("escaped", "say \"NaN\"");
+        config.set("after", Double.NaN);
+
+        FileConfiguration loaded = load(save(config));
+        assertEquals("NaN", loaded.get("NaN"));
+        assertEquals("Infinity", loaded.get("infinity"));
+        assertEquals(Double.POSITIVE_INFINITY, loaded.get("number"));
+        assertEquals("say \"NaN\"", loaded.get("escaped"));
+        assertEquals(Double.NaN, loaded.get("after"));
+    }
+
+    @Test
+    public void readsNonFiniteNumbersWrittenByHand() throws Exception {
+        FileConfiguration loaded = load("// Written by hand\n"
+                + "{\n"
+                + "  'quoted': 'Infinity', # a string\n"
+                + "  unquoted = -Infinity;\n"
+                + "  \"values\": [NaN, \"NaN\", 2, true, null, Infinity]\n"
+                + "}");
+        assertEquals("Infinity", loaded.get("quoted"));
+        assertEquals(Double.NEGATIVE_INFINITY, loaded.get("unquoted"));
+        assertEquals(Arrays.asList(Double.NaN, "NaN", 2, true, null, Double.POSITIVE_INFINITY), loaded.getList("values"));
+    }
+
+    private static String save(FileConfiguration config) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CMFormat.JSON.save(config, output);
+        return new String(output.toByteArray(), "UTF-8");
+    }
+
+    private static FileConfiguration load(String json) throws Exception {
+        FileConfiguration config = new YamlConfiguration();
+        CMFormat.JSON.load(config, new ByteArrayInputStream(json.getBytes("UTF-8")));
+        return config;
+    }
+}
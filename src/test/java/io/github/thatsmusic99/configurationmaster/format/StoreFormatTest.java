@@ -0,0 +1,105 @@
+package io.github.thatsmusic99.configurationmaster.format;
+
+import io.github.thatsmusic99.configurationmaster.CMStore;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class StoreFormatTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void streamsHoldASnapshotOfTheStore() throws Exception {
+        FileConfiguration config = sample();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CMFormat.STORE.save(config, output);
+
+        FileConfiguration loaded = new YamlConfiguration();
+        CMFormat.STORE.load(loaded, new ByteArrayInputStream(output.toByteArray()));
+        assertSample(loaded);
+
+        // The buffer path goes through the stream too.
+        FileConfiguration buffered = new YamlConfiguration();
+        CMFormat.STORE.load(buffered, ByteBuffer.wrap(output.toByteArray()));
+        assertSample(buffered);
+    }
+
+    @Test
+    public void snapshotsCanBeOpenedAsStores() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CMFormat.STORE.save(sample(), output);
+        File file = folder.newFile("copy.cmdb");
+        Files.write(file.toPath(), output.toByteArray());
+
+        CMStore store = CMStore.open(file);
+        try {
+            assertEquals("Steve", store.get("players.steve.name"));
+            assertEquals(Arrays.asList(1, 2, 3), store.get("players.steve.homes"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void ignoresChangesAfterTheLastCommit() throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        CMFormat.STORE.save(sample(), output);
+        // Half of a second snapshot, which never got its commit marker.
+        ByteArrayOutputStream extra = new ByteArrayOutputStream();
+        FileConfiguration changed = new YamlConfiguration();
+        changed.set("players.steve.name", "Alex");
+        CMFormat.STORE.save(changed, extra);
+        output.write(extra.toByteArray(), 0, extra.size() - 4);
+
+        FileConfiguration loaded = new YamlConfiguration();
+        CMFormat.STORE.load(loaded, new ByteArrayInputStream(output.toByteArray()));
+        assertSample(loaded);
+    }
+
+    @Test
+    public void convertsToAndFromTheStore() throws Exception {
+        File yaml = folder.newFile("data.yml");
+        Files.write(yaml.toPath(), sample().saveToString().getBytes("UTF-8"));
+        File store = new File(folder.getRoot(), "data.cmdb");
+        File back = new File(folder.getRoot(), "back.yml");
+
+        CMFormat.convert(yaml, CMFormat.YAML, store, CMFormat.STORE);
+        CMFormat.convert(store, CMFormat.STORE, back, CMFormat.YAML);
+
+        FileConfiguration loaded = new YamlConfiguration();
+        CMFormat.YAML.load(loaded, back);
+        assertSample(loaded);
+        CMStore.open(store).close();
+    }
+
+    private static FileConfiguration sample() {
+        FileConfiguration config = new YamlConfiguration();
+        config.set("players.steve.name", "Steve");
+        config.set("players.steve.homes", Arrays.asList(1, 2, 3));
+        config.set("players.steve.balance", 12.5);
+        config.createSection("players.empty");
+        config.set("version", 3);
+        return config;
+    }
+
+    private static void assertSample(FileConfiguration config) {
+        assertEquals("Steve", config.getString("players.steve.name"));
+        assertEquals(Arrays.asList(1, 2, 3), config.getList("players.steve.homes"));
+        assertEquals(12.5, config.getDouble("players.steve.balance"), 0);
+        assertTrue(config.isConfigurationSection("players.empty"));
+        assertEquals(3, config.getInt("version"));
+    }
+}